@@ -22,7 +22,9 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheSerializer;
 import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.JavaCacheSerializer;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 
 // @formatter:off
@@ -59,7 +61,8 @@ public @interface CacheNamespace {
   Class<? extends Cache> implementation() default PerpetualCache.class;
 
   /**
-   * Returns the cache evicting implementation type to use.
+   * Returns the cache evicting implementation type to use (e.g. {@link LruCache}, {@code FifoCache} or
+   * {@code TinyLfuCache}).
    *
    * @return the cache evicting implementation type
    */
@@ -72,6 +75,33 @@ public @interface CacheNamespace {
    */
   long flushInterval() default 0;
 
+  /**
+   * Returns the number of milliseconds each entry is kept after it was put.
+   *
+   * @return the time to live of an entry, {@code 0} meaning no limit
+   *
+   * @since 3.5.13
+   */
+  long timeToLive() default 0;
+
+  /**
+   * Returns the number of milliseconds each entry is kept after it was last read.
+   *
+   * @return the time to idle of an entry, {@code 0} meaning no limit
+   *
+   * @since 3.5.13
+   */
+  long timeToIdle() default 0;
+
+  /**
+   * Returns the maximum number of milliseconds randomly added to the time to live of each entry.
+   *
+   * @return the expiry jitter
+   *
+   * @since 3.5.13
+   */
+  long expiryJitter() default 0;
+
   /**
    * Return the cache size.
    *
@@ -86,6 +116,15 @@ public @interface CacheNamespace {
    */
   boolean readWrite() default true;
 
+  /**
+   * Returns the serializer used to copy the objects of a read/write cache.
+   *
+   * @return the serializer class
+   *
+   * @since 3.5.13
+   */
+  Class<? extends CacheSerializer> serializer() default JavaCacheSerializer.class;
+
   /**
    * Returns whether block the cache at request time or not.
    *
@@ -93,6 +132,73 @@ public @interface CacheNamespace {
    */
   boolean blocking() default false;
 
+  /**
+   * Returns whether the concurrent misses of the same key wait for a single load instead of each querying the database.
+   * Supersedes {@link #blocking()}.
+   *
+   * @return {@code true} to coalesce the concurrent misses
+   *
+   * @since 3.5.13
+   */
+  boolean singleFlight() default false;
+
+  /**
+   * Returns the number of milliseconds after which a read entry is reloaded in the background, while it is still
+   * served. Implies {@link #singleFlight()}.
+   *
+   * @return the soft time to live, {@code 0} meaning the entries are never refreshed
+   *
+   * @since 3.5.13
+   */
+  long refreshAfter() default 0;
+
+  /**
+   * Returns the number of milliseconds the empty results are kept. The empty results are kept apart from the other
+   * entries when either this or {@link #negativeSize()} is set.
+   *
+   * @return the time to live of the empty results, {@code 0} meaning the empty results are kept as the other entries
+   *
+   * @since 3.5.13
+   */
+  long negativeTimeToLive() default 0;
+
+  /**
+   * Returns the maximum number of empty results kept apart from the other entries.
+   *
+   * @return the maximum number of empty results, {@code 0} meaning the default (1024) when
+   *         {@link #negativeTimeToLive()} is set
+   *
+   * @since 3.5.13
+   */
+  int negativeSize() default 0;
+
+  /**
+   * Returns the maximum number of rows of a result put in this cache. Larger results are returned but not cached.
+   *
+   * @return the maximum number of rows, {@code 0} meaning no limit
+   *
+   * @since 3.5.13
+   */
+  int maxEntryRows() default 0;
+
+  /**
+   * Returns the maximum estimated size of a result put in this cache, in bytes.
+   *
+   * @return the maximum estimated size, {@code 0} meaning no limit
+   *
+   * @since 3.5.13
+   */
+  long maxEntryBytes() default 0;
+
+  /**
+   * Returns the number of milliseconds a query must have taken for its result to be put in this cache.
+   *
+   * @return the minimum load time, {@code 0} meaning every result is cached
+   *
+   * @since 3.5.13
+   */
+  long minLoadTime() default 0;
+
   /**
    * Returns property values for a implementation object.
    *
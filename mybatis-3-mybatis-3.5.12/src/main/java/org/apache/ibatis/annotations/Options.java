@@ -136,6 +136,54 @@ public @interface Options {
    */
   String resultSets() default "";
 
+  /**
+   * Returns the names of the tables the statement reads or writes, used by the {@code TABLE} cache invalidation mode.
+   * <p>
+   * If you specify multiple tables, please separate using comma(','). By default, the tables are found in the SQL.
+   * </p>
+   *
+   * @return table names that separate with comma(',')
+   *
+   * @since 3.5.13
+   */
+  String tables() default "";
+
+  /**
+   * Returns whether the empty results of this statement are put in the 2nd cache.
+   *
+   * @return {@code true} to cache the empty results; {@code false} to query the database again for them
+   *
+   * @since 3.5.13
+   */
+  boolean negativeCache() default true;
+
+  /**
+   * Returns the maximum number of rows of a result of this statement put in the 2nd cache.
+   *
+   * @return the maximum number of rows, {@code 0} meaning the limit of the cache
+   *
+   * @since 3.5.13
+   */
+  int maxEntryRows() default 0;
+
+  /**
+   * Returns the maximum estimated size of a result of this statement put in the 2nd cache, in bytes.
+   *
+   * @return the maximum estimated size, {@code 0} meaning the limit of the cache
+   *
+   * @since 3.5.13
+   */
+  long maxEntryBytes() default 0;
+
+  /**
+   * Returns the number of milliseconds this statement must have taken for its result to be put in the 2nd cache.
+   *
+   * @return the minimum load time, {@code 0} meaning the limit of the cache
+   *
+   * @since 3.5.13
+   */
+  long minLoadTime() default 0;
+
   /**
    * @return A database id that correspond this options
    *
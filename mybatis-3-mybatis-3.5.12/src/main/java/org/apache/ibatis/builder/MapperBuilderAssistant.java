@@ -16,6 +16,7 @@
 package org.apache.ibatis.builder;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheAdmission;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.executor.ErrorContext;
@@ -23,6 +24,7 @@ import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.mapping.*;
 import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.scripting.LanguageDriver;
+import org.apache.ibatis.session.CacheInvalidationMode;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.TypeHandler;
@@ -103,10 +105,37 @@ public class MapperBuilderAssistant extends BaseBuilder {
 
   public Cache useNewCache(Class<? extends Cache> typeClass, Class<? extends Cache> evictionClass, Long flushInterval,
                            Integer size, boolean readWrite, boolean blocking, Properties props) {
-    Cache cache = new CacheBuilder(currentNamespace).implementation(valueOrDefault(typeClass, PerpetualCache.class))
+    return useNewCache(new CacheBuilder(currentNamespace)
+      .implementation(valueOrDefault(typeClass, PerpetualCache.class))
       .addDecorator(valueOrDefault(evictionClass, LruCache.class)).clearInterval(flushInterval).size(size)
-      .readWrite(readWrite).blocking(blocking).properties(props).build();
+      .readWrite(readWrite).blocking(blocking).properties(props), null);
+  }
+
+  /**
+   * Builds the cache of the current namespace, which the statements added afterwards use. The memory budget and, in
+   * table invalidation mode, the table versions of the configuration are set on the builder.
+   *
+   * @param cacheBuilder
+   *          the builder of the cache, created with the current namespace as id
+   * @param admission
+   *          the admission rules of the cache, {@code null} for none
+   *
+   * @return the cache
+   *
+   * @since 3.5.13
+   */
+  public Cache useNewCache(CacheBuilder cacheBuilder, CacheAdmission admission) {
+    Cache cache = cacheBuilder.memoryBudget(configuration.getCacheMemoryBudget())
+      .tableVersions(configuration.getCacheInvalidationMode() == CacheInvalidationMode.TABLE
+        ? configuration.getTableVersions() : null)
+      .build();
     configuration.addCache(cache);
+    if (!cacheBuilder.isReadWrite()) {
+      configuration.addReadOnlyCache(cache.getId());
+    }
+    if (admission != null) {
+      configuration.addCacheAdmission(cache.getId(), admission);
+    }
     currentCache = cache;
     return cache;
   }
@@ -180,6 +209,28 @@ public class MapperBuilderAssistant extends BaseBuilder {
                                             String resultMap, Class<?> resultType, ResultSetType resultSetType, boolean flushCache, boolean useCache,
                                             boolean resultOrdered, KeyGenerator keyGenerator, String keyProperty, String keyColumn, String databaseId,
                                             LanguageDriver lang, String resultSets, boolean dirtySelect) {
+    return addMappedStatement(id, sqlSource, statementType, sqlCommandType, fetchSize, timeout, parameterMap,
+      parameterType, resultMap, resultType, resultSetType, flushCache, useCache, resultOrdered, keyGenerator,
+      keyProperty, keyColumn, databaseId, lang, resultSets, dirtySelect, new StatementCacheOptions());
+  }
+
+  /**
+   * Adds a statement of the current namespace. A {@code null} language driver stands for the default one of the
+   * configuration.
+   *
+   * @param cacheOptions
+   *          the second level cache settings of the statement
+   *
+   * @return the mapped statement
+   *
+   * @since 3.5.13
+   */
+  public MappedStatement addMappedStatement(String id, SqlSource sqlSource, StatementType statementType,
+                                            SqlCommandType sqlCommandType, Integer fetchSize, Integer timeout, String parameterMap, Class<?> parameterType,
+                                            String resultMap, Class<?> resultType, ResultSetType resultSetType, boolean flushCache, boolean useCache,
+                                            boolean resultOrdered, KeyGenerator keyGenerator, String keyProperty, String keyColumn, String databaseId,
+                                            LanguageDriver lang, String resultSets, boolean dirtySelect,
+                                            StatementCacheOptions cacheOptions) {
 
     if (unresolvedCacheRef) {
       throw new IncompleteElementException("Cache-ref not yet resolved");
@@ -187,12 +238,22 @@ public class MapperBuilderAssistant extends BaseBuilder {
 
     id = applyCurrentNamespace(id, false);
 
+    CacheAdmission namespaceAdmission = currentCache == null ? null
+      : configuration.getCacheAdmission(currentCache.getId());
+    CacheAdmission admission = cacheOptions.getAdmission() == null ? namespaceAdmission
+      : cacheOptions.getAdmission().withDefaults(namespaceAdmission);
+
     MappedStatement.Builder statementBuilder = new MappedStatement.Builder(configuration, id, sqlSource, sqlCommandType)
       .resource(resource).fetchSize(fetchSize).timeout(timeout).statementType(statementType)
-      .keyGenerator(keyGenerator).keyProperty(keyProperty).keyColumn(keyColumn).databaseId(databaseId).lang(lang)
+      .keyGenerator(keyGenerator).keyProperty(keyProperty).keyColumn(keyColumn).databaseId(databaseId)
       .resultOrdered(resultOrdered).resultSets(resultSets)
       .resultMaps(getStatementResultMaps(resultMap, resultType, id)).resultSetType(resultSetType)
-      .flushCacheRequired(flushCache).useCache(useCache).cache(currentCache).dirtySelect(dirtySelect);
+      .flushCacheRequired(flushCache).useCache(useCache).cache(currentCache).dirtySelect(dirtySelect)
+      .tables(cacheOptions.getTables()).negativeCache(cacheOptions.isNegativeCache()).cacheAdmission(admission);
+
+    if (lang != null) {
+      statementBuilder.lang(lang);
+    }
 
     ParameterMap statementParameterMap = getStatementParameterMap(parameterMap, parameterType, id);
     if (statementParameterMap != null) {
@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+import org.apache.ibatis.cache.CacheAdmission;
+
+/**
+ * The second level cache settings of a statement, passed to
+ * {@link MapperBuilderAssistant#addMappedStatement(String, org.apache.ibatis.mapping.SqlSource,
+ * org.apache.ibatis.mapping.StatementType, org.apache.ibatis.mapping.SqlCommandType, Integer, Integer, String, Class,
+ * String, Class, org.apache.ibatis.mapping.ResultSetType, boolean, boolean, boolean,
+ * org.apache.ibatis.executor.keygen.KeyGenerator, String, String, String, org.apache.ibatis.scripting.LanguageDriver,
+ * String, boolean, StatementCacheOptions)}.
+ *
+ * @since 3.5.13
+ */
+public class StatementCacheOptions {
+
+  private String[] tables;
+  private boolean negativeCache = true;
+  private CacheAdmission admission;
+
+  /**
+   * @param tables
+   *          the tables the statement reads or writes, used by the table invalidation mode
+   *
+   * @return this
+   */
+  public StatementCacheOptions tables(String... tables) {
+    this.tables = tables;
+    return this;
+  }
+
+  /**
+   * @param negativeCache
+   *          whether the empty results of the statement may be cached, {@code true} by default
+   *
+   * @return this
+   */
+  public StatementCacheOptions negativeCache(boolean negativeCache) {
+    this.negativeCache = negativeCache;
+    return this;
+  }
+
+  /**
+   * @param admission
+   *          the admission rules of the statement, completed by the ones of its cache
+   *
+   * @return this
+   */
+  public StatementCacheOptions admission(CacheAdmission admission) {
+    this.admission = admission;
+    return this;
+  }
+
+  public String[] getTables() {
+    return tables;
+  }
+
+  public boolean isNegativeCache() {
+    return negativeCache;
+  }
+
+  public CacheAdmission getAdmission() {
+    return admission;
+  }
+
+}
@@ -64,13 +64,16 @@ import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.builder.CacheRefResolver;
 import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.apache.ibatis.builder.StatementCacheOptions;
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.cache.CacheAdmission;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.CacheBuilder;
 import org.apache.ibatis.mapping.Discriminator;
 import org.apache.ibatis.mapping.FetchType;
 import org.apache.ibatis.mapping.MappedStatement;
@@ -81,6 +84,7 @@ import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.SqlSource;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.parsing.PropertyParser;
+import org.apache.ibatis.parsing.TableNameParser;
 import org.apache.ibatis.reflection.TypeParameterResolver;
 import org.apache.ibatis.scripting.LanguageDriver;
 import org.apache.ibatis.session.Configuration;
@@ -196,9 +200,21 @@ public class MapperAnnotationBuilder {
     if (cacheDomain != null) {
       Integer size = cacheDomain.size() == 0 ? null : cacheDomain.size();
       Long flushInterval = cacheDomain.flushInterval() == 0 ? null : cacheDomain.flushInterval();
+      Long timeToLive = cacheDomain.timeToLive() == 0 ? null : cacheDomain.timeToLive();
+      Long timeToIdle = cacheDomain.timeToIdle() == 0 ? null : cacheDomain.timeToIdle();
+      Long expiryJitter = cacheDomain.expiryJitter() == 0 ? null : cacheDomain.expiryJitter();
+      Long refreshAfter = cacheDomain.refreshAfter() == 0 ? null : cacheDomain.refreshAfter();
+      Long negativeTimeToLive = cacheDomain.negativeTimeToLive() == 0 ? null : cacheDomain.negativeTimeToLive();
+      Integer negativeSize = cacheDomain.negativeSize() == 0 ? null : cacheDomain.negativeSize();
+      CacheAdmission admission = CacheAdmission.of(cacheDomain.maxEntryRows(), cacheDomain.maxEntryBytes(),
+          cacheDomain.minLoadTime());
       Properties props = convertToProperties(cacheDomain.properties());
-      assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), flushInterval, size,
-          cacheDomain.readWrite(), cacheDomain.blocking(), props);
+      assistant.useNewCache(new CacheBuilder(assistant.getCurrentNamespace())
+          .implementation(cacheDomain.implementation()).addDecorator(cacheDomain.eviction())
+          .clearInterval(flushInterval).size(size).timeToLive(timeToLive).timeToIdle(timeToIdle)
+          .expiryJitter(expiryJitter).readWrite(cacheDomain.readWrite()).serializer(cacheDomain.serializer())
+          .blocking(cacheDomain.blocking()).singleFlight(cacheDomain.singleFlight()).refreshAfter(refreshAfter)
+          .negativeTimeToLive(negativeTimeToLive).negativeSize(negativeSize).properties(props), admission);
     }
   }
 
@@ -377,10 +393,32 @@ public class MapperAnnotationBuilder {
           // TODO gcode issue #577
           false, keyGenerator, keyProperty, keyColumn, statementAnnotation.getDatabaseId(), languageDriver,
           // ResultSets
-          options != null ? nullOrEmpty(options.resultSets()) : null, statementAnnotation.isDirtySelect());
+          options != null ? nullOrEmpty(options.resultSets()) : null, statementAnnotation.isDirtySelect(),
+          new StatementCacheOptions().tables(getTables(statementAnnotation.getAnnotation(), options))
+              .negativeCache(options == null || options.negativeCache())
+              .admission(options == null ? null
+                  : CacheAdmission.of(options.maxEntryRows(), options.maxEntryBytes(), options.minLoadTime())));
     });
   }
 
+  private String[] getTables(Annotation annotation, Options options) {
+    if (options != null && !options.tables().isEmpty()) {
+      return TableNameParser.split(options.tables());
+    }
+    String[] strings = null;
+    if (annotation instanceof Select) {
+      strings = ((Select) annotation).value();
+    } else if (annotation instanceof Update) {
+      strings = ((Update) annotation).value();
+    } else if (annotation instanceof Insert) {
+      strings = ((Insert) annotation).value();
+    } else if (annotation instanceof Delete) {
+      strings = ((Delete) annotation).value();
+    }
+    // the SQL of providers is only known at runtime
+    return strings == null ? null : TableNameParser.parse(String.join(" ", strings));
+  }
+
   private LanguageDriver getLanguageDriver(Method method) {
     Lang lang = method.getAnnotation(Lang.class);
     Class<? extends LanguageDriver> langClass = null;
@@ -17,12 +17,14 @@ package org.apache.ibatis.builder.xml;
 
 import java.io.InputStream;
 import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Properties;
 
 import javax.sql.DataSource;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.InvalidationBus;
 import org.apache.ibatis.datasource.DataSourceFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
@@ -41,6 +43,7 @@ import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.AutoMappingUnknownColumnBehavior;
+import org.apache.ibatis.session.CacheInvalidationMode;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.LocalCacheScope;
@@ -264,6 +267,7 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setAutoMappingUnknownColumnBehavior(
         AutoMappingUnknownColumnBehavior.valueOf(props.getProperty("autoMappingUnknownColumnBehavior", "NONE")));
     configuration.setCacheEnabled(booleanValueOf(props.getProperty("cacheEnabled"), true));
+    configuration.setCacheMaxBytes(longValueOf(props.getProperty("cacheMaxBytes"), 0L));
     configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
     configuration.setLazyLoadingEnabled(booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
     configuration.setAggressiveLazyLoading(booleanValueOf(props.getProperty("aggressiveLazyLoading"), false));
@@ -277,6 +281,21 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setMapUnderscoreToCamelCase(booleanValueOf(props.getProperty("mapUnderscoreToCamelCase"), false));
     configuration.setSafeRowBoundsEnabled(booleanValueOf(props.getProperty("safeRowBoundsEnabled"), false));
     configuration.setLocalCacheScope(LocalCacheScope.valueOf(props.getProperty("localCacheScope", "SESSION")));
+    configuration.setLocalCacheSize(integerValueOf(props.getProperty("localCacheSize"), 0));
+    configuration.setLocalCacheMaxBytes(longValueOf(props.getProperty("localCacheMaxBytes"), 0L));
+    configuration.setCacheInvalidationMode(
+        CacheInvalidationMode.valueOf(props.getProperty("cacheInvalidationMode", "NAMESPACE")));
+    configuration.setCacheStatsJmxEnabled(booleanValueOf(props.getProperty("cacheStatsJmxEnabled"), false));
+    configuration.setEntityCacheEnabled(booleanValueOf(props.getProperty("entityCacheEnabled"), false));
+    configuration.setCacheSnapshotFile(props.getProperty("cacheSnapshotFile"));
+    String cacheSnapshotNamespaces = props.getProperty("cacheSnapshotNamespaces");
+    if (cacheSnapshotNamespaces != null) {
+      configuration.setCacheSnapshotNamespaces(stringSetValueOf(cacheSnapshotNamespaces, null));
+    }
+    configuration.setCacheSnapshotTimeToLive(longValueOf(props.getProperty("cacheSnapshotTimeToLive"), 0L));
+    configuration.setCacheInvalidationChannel(props.getProperty("cacheInvalidationChannel"));
+    configuration.setCacheInvalidationBus(
+        newInvalidationBus(props.getProperty("cacheInvalidationBus"), configuration.getCacheInvalidationChannel()));
     configuration.setJdbcTypeForNull(JdbcType.valueOf(props.getProperty("jdbcTypeForNull", "OTHER")));
     configuration.setLazyLoadTriggerMethods(
         stringSetValueOf(props.getProperty("lazyLoadTriggerMethods"), "equals,clone,hashCode,toString"));
@@ -295,6 +314,22 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setNullableOnForEach(booleanValueOf(props.getProperty("nullableOnForEach"), false));
   }
 
+  private InvalidationBus newInvalidationBus(String type, String channel) {
+    Class<? extends InvalidationBus> busClass = resolveClass(type);
+    if (busClass == null) {
+      return null;
+    }
+    try {
+      return busClass.getConstructor(String.class).newInstance(channel);
+    } catch (InvocationTargetException e) {
+      throw new BuilderException(
+          "Error creating the cache invalidation bus '" + type + "'.  Cause: " + e.getTargetException(),
+          e.getTargetException());
+    } catch (ReflectiveOperationException e) {
+      throw new BuilderException("Error creating the cache invalidation bus '" + type + "'.  Cause: " + e, e);
+    }
+  }
+
   private void environmentsElement(XNode context) throws Exception {
     if (context != null) {
       if (environment == null) {
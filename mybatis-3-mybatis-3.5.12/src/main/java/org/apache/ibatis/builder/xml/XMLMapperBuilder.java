@@ -34,8 +34,11 @@ import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
 import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheAdmission;
+import org.apache.ibatis.cache.CacheSerializer;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.CacheBuilder;
 import org.apache.ibatis.mapping.Discriminator;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
@@ -220,8 +223,23 @@ public class XMLMapperBuilder extends BaseBuilder {
       Integer size = context.getIntAttribute("size");
       boolean readWrite = !context.getBooleanAttribute("readOnly", false);
       boolean blocking = context.getBooleanAttribute("blocking", false);
+      Long timeToLive = context.getLongAttribute("timeToLive");
+      Long timeToIdle = context.getLongAttribute("timeToIdle");
+      Long expiryJitter = context.getLongAttribute("expiryJitter");
+      Class<? extends CacheSerializer> serializerClass = typeAliasRegistry
+          .resolveAlias(context.getStringAttribute("serializer"));
+      boolean singleFlight = context.getBooleanAttribute("singleFlight", false);
+      Long refreshAfter = context.getLongAttribute("refreshAfter");
+      Long negativeTimeToLive = context.getLongAttribute("negativeTimeToLive");
+      Integer negativeSize = context.getIntAttribute("negativeSize");
+      CacheAdmission admission = CacheAdmission.of(context.getIntAttribute("maxEntryRows"),
+          context.getLongAttribute("maxEntryBytes"), context.getLongAttribute("minLoadTime"));
       Properties props = context.getChildrenAsProperties();
-      builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props);
+      builderAssistant.useNewCache(new CacheBuilder(builderAssistant.getCurrentNamespace()).implementation(typeClass)
+          .addDecorator(evictionClass).clearInterval(flushInterval).size(size).timeToLive(timeToLive)
+          .timeToIdle(timeToIdle).expiryJitter(expiryJitter).readWrite(readWrite).serializer(serializerClass)
+          .blocking(blocking).singleFlight(singleFlight).refreshAfter(refreshAfter)
+          .negativeTimeToLive(negativeTimeToLive).negativeSize(negativeSize).properties(props), admission);
     }
   }
 
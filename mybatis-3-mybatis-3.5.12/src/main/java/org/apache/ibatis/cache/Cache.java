@@ -16,6 +16,7 @@
 package org.apache.ibatis.cache;
 
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.BiConsumer;
 
 /**
  * SPI for cache providers.
@@ -98,4 +99,59 @@ public interface Cache {
     return null;
   }
 
+  /**
+   * Optional. Returns the statistics of this cache. Decorators applied over the decorator recording the statistics
+   * should return the ones of their delegate.
+   *
+   * @return the statistics, or {@code null} when they are not recorded
+   *
+   * @since 3.5.13
+   */
+  default CacheStats getStats() {
+    return null;
+  }
+
+  /**
+   * Optional. Tells whether this cache may hold an entry for a key, without counting it as an access: the eviction
+   * order, the access frequencies and the references kept by the cache must not change. Used by
+   * {@link org.apache.ibatis.cache.decorators.ExpiringCache} to find the entries evicted below it. The default
+   * implementation cannot tell and returns {@code true}.
+   *
+   * @param key
+   *          the key
+   *
+   * @return {@code false} only when this cache holds no entry for the key
+   *
+   * @since 3.5.13
+   */
+  default boolean containsKey(Object key) {
+    return true;
+  }
+
+  /**
+   * Optional. Passes each entry of this cache to an action, e.g. to write a snapshot of the cache. The action must not
+   * modify the cache. The values are passed in the form expected by {@link #putObject(Object, Object)}, so that they
+   * can be put back, e.g. deserialized by a decorator serializing the values.
+   *
+   * @param action
+   *          the action receiving the keys and the values
+   *
+   * @throws UnsupportedOperationException
+   *           if the entries of this cache cannot be enumerated
+   *
+   * @since 3.5.13
+   */
+  default void forEachEntry(BiConsumer<Object, Object> action) {
+    throw new UnsupportedOperationException("Cache " + getId() + " does not support enumerating its entries");
+  }
+
+  /**
+   * Optional. Releases the resources held by this cache, e.g. files or threads. Called when the configuration the cache
+   * belongs to is closed, the cache must not be used afterwards. Decorators pass the call on to their delegate.
+   *
+   * @since 3.5.13
+   */
+  default void close() {
+  }
+
 }
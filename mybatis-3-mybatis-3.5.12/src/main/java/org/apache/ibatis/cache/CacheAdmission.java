@@ -0,0 +1,114 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.impl.RowCountCacheWeigher;
+
+/**
+ * Rules deciding whether the result of a select is worth storing in the second level cache.
+ * <p>
+ * A single large result, such as a report reading a whole table, would otherwise evict the entire working set of a
+ * bounded cache. A result is admitted when it has at most {@code maxRows} rows, when its size estimated by a
+ * {@link RowCountCacheWeigher} is at most {@code maxBytes}, and when reading it took at least {@code minLoadTime}
+ * milliseconds, so that cheap queries do not take the room of expensive ones. A limit of {@code 0} disables the rule.
+ * Rejected results are still returned to the caller, they are only counted by {@link CacheStats#recordRejection()}.
+ *
+ * @since 3.5.13
+ */
+public class CacheAdmission {
+
+  private static final CacheWeigher WEIGHER = new RowCountCacheWeigher();
+
+  private final int maxRows;
+  private final long maxBytes;
+  private final long minLoadTime;
+
+  public CacheAdmission(int maxRows, long maxBytes, long minLoadTime) {
+    if (maxRows < 0 || maxBytes < 0 || minLoadTime < 0) {
+      throw new IllegalArgumentException("The admission limits of a cache must not be negative.");
+    }
+    this.maxRows = maxRows;
+    this.maxBytes = maxBytes;
+    this.minLoadTime = minLoadTime;
+  }
+
+  /**
+   * Creates the admission rules of a cache or a statement from its optional settings.
+   *
+   * @return the rules, or {@code null} when none is set
+   */
+  public static CacheAdmission of(Integer maxRows, Long maxBytes, Long minLoadTime) {
+    int rows = maxRows == null ? 0 : maxRows;
+    long bytes = maxBytes == null ? 0 : maxBytes;
+    long loadTime = minLoadTime == null ? 0 : minLoadTime;
+    if (rows == 0 && bytes == 0 && loadTime == 0) {
+      return null;
+    }
+    return new CacheAdmission(rows, bytes, loadTime);
+  }
+
+  /**
+   * Completes the rules of a statement with the ones of its cache.
+   *
+   * @param defaults
+   *          the rules of the cache, may be {@code null}
+   *
+   * @return rules using the limits set on this instance, and the ones of {@code defaults} for the others
+   */
+  public CacheAdmission withDefaults(CacheAdmission defaults) {
+    if (defaults == null) {
+      return this;
+    }
+    return new CacheAdmission(maxRows != 0 ? maxRows : defaults.maxRows,
+        maxBytes != 0 ? maxBytes : defaults.maxBytes, minLoadTime != 0 ? minLoadTime : defaults.minLoadTime);
+  }
+
+  /**
+   * @param key
+   *          the cache key of the result
+   * @param rows
+   *          the result read from the database
+   * @param loadTime
+   *          the time spent reading it, in nanoseconds
+   *
+   * @return {@code true} if the result should be cached
+   */
+  public boolean admits(Object key, List<?> rows, long loadTime) {
+    if (maxRows != 0 && rows.size() > maxRows) {
+      return false;
+    }
+    if (maxBytes != 0 && WEIGHER.weigh(key, rows) > maxBytes) {
+      return false;
+    }
+    return minLoadTime == 0 || loadTime >= TimeUnit.MILLISECONDS.toNanos(minLoadTime);
+  }
+
+  public int getMaxRows() {
+    return maxRows;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getMinLoadTime() {
+    return minLoadTime;
+  }
+
+}
@@ -15,8 +15,13 @@
  */
 package org.apache.ibatis.cache;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringJoiner;
 
@@ -29,6 +34,12 @@ public class CacheKey implements Cloneable, Serializable {
 
   private static final long serialVersionUID = 1146682552656046210L;
 
+  // the serialized form of the previous versions, so that keys can still be exchanged with them
+  private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("multiplier", int.class),
+      new ObjectStreamField("hashcode", int.class), new ObjectStreamField("checksum", long.class),
+      new ObjectStreamField("count", int.class), new ObjectStreamField("updateList", List.class),
+      new ObjectStreamField("frozen", boolean.class) };
+
   public static final CacheKey NULL_CACHE_KEY = new CacheKey() {
 
     private static final long serialVersionUID = 1L;
@@ -47,19 +58,21 @@ public class CacheKey implements Cloneable, Serializable {
   private static final int DEFAULT_MULTIPLIER = 37;
   private static final int DEFAULT_HASHCODE = 17;
 
-  private final int multiplier;
-  private int hashcode;
-  private long checksum;
+  private static final Object[] EMPTY_COMPONENTS = {};
+  private static final int DEFAULT_CAPACITY = 8;
+  private static final long DEFAULT_FINGERPRINT = 0x2545F4914F6CDD1DL;
+  private static final long FINGERPRINT_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  private long fingerprint;
   private int count;
-  // 8/21/2017 - Sonarlint flags this as needing to be marked transient. While true if content is not serializable, this
-  // is not always true and thus should not be marked transient.
-  private List<Object> updateList;
+  private Object[] components;
+  // the components are shared with the key this one was cloned from, and must be copied before being updated
+  private transient boolean shared;
+  private boolean frozen;
 
   public CacheKey() {
-    this.hashcode = DEFAULT_HASHCODE;
-    this.multiplier = DEFAULT_MULTIPLIER;
-    this.count = 0;
-    this.updateList = new ArrayList<>();
+    this.fingerprint = DEFAULT_FINGERPRINT;
+    this.components = EMPTY_COMPONENTS;
   }
 
   public CacheKey(Object[] objects) {
@@ -68,19 +81,27 @@ public class CacheKey implements Cloneable, Serializable {
   }
 
   public int getUpdateCount() {
-    return updateList.size();
+    return count;
   }
 
   public void update(Object object) {
-    int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object);
-
-    count++;
-    checksum += baseHashCode;
-    baseHashCode *= count;
+    if (frozen) {
+      throw new CacheException("Not allowed to update a frozen cache key instance.");
+    }
+    append(object);
+  }
 
-    hashcode = multiplier * hashcode + baseHashCode;
+  private void append(Object object) {
+    int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object);
+    fingerprint = mix(fingerprint * FINGERPRINT_MULTIPLIER + baseHashCode);
 
-    updateList.add(object);
+    if (shared || count == components.length) {
+      Object[] newComponents = new Object[Math.max(DEFAULT_CAPACITY, count << 1)];
+      System.arraycopy(components, 0, newComponents, 0, count);
+      components = newComponents;
+      shared = false;
+    }
+    components[count++] = object;
   }
 
   public void updateAll(Object[] objects) {
@@ -89,6 +110,37 @@ public class CacheKey implements Cloneable, Serializable {
     }
   }
 
+  /**
+   * Prevents any further update of this key, so that it can safely be used as the key of a map. The components are not
+   * copied.
+   *
+   * @return this key
+   *
+   * @since 3.5.13
+   */
+  public CacheKey freeze() {
+    frozen = true;
+    return this;
+  }
+
+  /**
+   * @since 3.5.13
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Returns a 64-bit fingerprint of the components of this key. Keys with different fingerprints are never equal.
+   *
+   * @return the fingerprint
+   *
+   * @since 3.5.13
+   */
+  public long getFingerprint() {
+    return fingerprint;
+  }
+
   @Override
   public boolean equals(Object object) {
     if (this == object) {
@@ -100,14 +152,12 @@ public class CacheKey implements Cloneable, Serializable {
 
     final CacheKey cacheKey = (CacheKey) object;
 
-    if ((hashcode != cacheKey.hashcode) || (checksum != cacheKey.checksum) || (count != cacheKey.count)) {
+    if (fingerprint != cacheKey.fingerprint || count != cacheKey.count) {
       return false;
     }
 
-    for (int i = 0; i < updateList.size(); i++) {
-      Object thisObject = updateList.get(i);
-      Object thatObject = cacheKey.updateList.get(i);
-      if (!ArrayUtil.equals(thisObject, thatObject)) {
+    for (int i = 0; i < count; i++) {
+      if (!ArrayUtil.equals(components[i], cacheKey.components[i])) {
         return false;
       }
     }
@@ -116,23 +166,72 @@ public class CacheKey implements Cloneable, Serializable {
 
   @Override
   public int hashCode() {
-    return hashcode;
+    return (int) (fingerprint ^ fingerprint >>> 32);
   }
 
   @Override
   public String toString() {
     StringJoiner returnValue = new StringJoiner(":");
-    returnValue.add(String.valueOf(hashcode));
-    returnValue.add(String.valueOf(checksum));
-    updateList.stream().map(ArrayUtil::toString).forEach(returnValue::add);
+    returnValue.add(String.valueOf(hashCode()));
+    returnValue.add(Long.toHexString(fingerprint));
+    for (int i = 0; i < count; i++) {
+      returnValue.add(ArrayUtil.toString(components[i]));
+    }
     return returnValue.toString();
   }
 
   @Override
   public CacheKey clone() throws CloneNotSupportedException {
     CacheKey clonedCacheKey = (CacheKey) super.clone();
-    clonedCacheKey.updateList = new ArrayList<>(updateList);
+    // the clone only reads the components below its count, so the array is copied on its first update only
+    clonedCacheKey.shared = true;
+    clonedCacheKey.frozen = false;
     return clonedCacheKey;
   }
 
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    // the hash code and the checksum of the previous versions, which compare them in equals()
+    int hashcode = DEFAULT_HASHCODE;
+    long checksum = 0;
+    for (int i = 0; i < count; i++) {
+      int baseHashCode = components[i] == null ? 1 : ArrayUtil.hashCode(components[i]);
+      checksum += baseHashCode;
+      hashcode = DEFAULT_MULTIPLIER * hashcode + baseHashCode * (i + 1);
+    }
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("multiplier", DEFAULT_MULTIPLIER);
+    fields.put("hashcode", hashcode);
+    fields.put("checksum", checksum);
+    fields.put("count", count);
+    // the array may be larger than needed, or shared with a key holding more components
+    fields.put("updateList", new ArrayList<>(Arrays.asList(components).subList(0, count)));
+    fields.put("frozen", frozen);
+    out.writeFields();
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    fingerprint = DEFAULT_FINGERPRINT;
+    components = EMPTY_COMPONENTS;
+    List<?> updateList = (List<?>) fields.get("updateList", null);
+    if (updateList != null) {
+      for (Object object : updateList) {
+        append(object);
+      }
+    }
+    frozen = fields.get("frozen", false);
+  }
+
+  /**
+   * Applies the finalizer of MurmurHash3 so that every bit of the fingerprint depends on every component.
+   */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
 }
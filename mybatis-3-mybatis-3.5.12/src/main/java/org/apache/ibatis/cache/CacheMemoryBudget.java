@@ -0,0 +1,75 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A memory budget shared by all the weighted caches of a {@link org.apache.ibatis.session.Configuration}.
+ * <p>
+ * Each {@link org.apache.ibatis.cache.decorators.WeightedCache} reports the weight of the entries it adds or removes.
+ * When the sum goes over the maximum, the cache that is being written evicts its own entries until the budget is met
+ * again or only the entry just written is left, so the sum may stay over the maximum until the other caches are
+ * written.
+ *
+ * @since 3.5.13
+ */
+public class CacheMemoryBudget {
+
+  private final AtomicLong usedBytes = new AtomicLong();
+  private volatile long maxBytes;
+
+  public CacheMemoryBudget() {
+    this(0);
+  }
+
+  public CacheMemoryBudget(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return the maximum number of bytes, {@code 0} or less meaning unbounded
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  public long getUsedBytes() {
+    return usedBytes.get();
+  }
+
+  public boolean isExceeded() {
+    long max = maxBytes;
+    return max > 0 && usedBytes.get() > max;
+  }
+
+  /**
+   * Records a change of the weight held by a cache.
+   *
+   * @param delta
+   *          the number of bytes added, negative when entries are removed
+   */
+  public void add(long delta) {
+    if (delta != 0) {
+      usedBytes.addAndGet(delta);
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * SPI to turn cached values into bytes and back.
+ * <p>
+ * Used by {@link org.apache.ibatis.cache.decorators.SerializedCache} to hand out copies of the cached values of
+ * read-write caches, and by caches storing their entries outside of the heap. Implementations must be thread safe and
+ * must have a default constructor.
+ *
+ * @since 3.5.13
+ */
+public interface CacheSerializer {
+
+  /**
+   * Serializes a value.
+   *
+   * @param value
+   *          the value, may be {@code null}
+   *
+   * @return the serialized value
+   *
+   * @throws CacheException
+   *           if the value cannot be serialized
+   */
+  byte[] serialize(Object value);
+
+  /**
+   * Deserializes a value.
+   *
+   * @param bytes
+   *          bytes returned by {@link #serialize(Object)}
+   *
+   * @return a new copy of the value
+   *
+   * @throws CacheException
+   *           if the value cannot be deserialized
+   */
+  Object deserialize(byte[] bytes);
+
+}
@@ -0,0 +1,378 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.decorators.TableDependencyCache;
+import org.apache.ibatis.cache.impl.CompactCacheSerializer;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.io.SerialFilterChecker;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.session.CacheInvalidationMode;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * Writes the entries of the second level caches to a file, and puts them back into the caches of a new configuration,
+ * so that a restarted application does not start with cold caches.
+ * <p>
+ * The file holds one section per cache: its id, a fingerprint of its mapped statements and the entries, serialized with
+ * a {@link CompactCacheSerializer}. It is read through a memory mapped buffer. A section is skipped when its
+ * fingerprint does not match the current definitions, i.e. when the statements of the namespace, their SQL, their
+ * result maps or the properties of the result types changed; and its entries are discarded when one of them can not be
+ * deserialized.
+ * <p>
+ * Only the caches listed by {@link Configuration#getCacheSnapshotNamespaces()}, or all of them when it is empty, are
+ * written. Caches that can not enumerate their entries are skipped.
+ * <p>
+ * The header records when the snapshot was written, and a snapshot older than
+ * {@link Configuration#getCacheSnapshotTimeToLive()} is ignored as a whole, as the database most likely changed since.
+ * The classes of the restored entries are checked against the JEP-290 serial filter, like the classes of any other
+ * deserialized cache entry.
+ *
+ * @since 3.5.13
+ */
+public final class CacheSnapshot {
+
+  private static final Log log = LogFactory.getLog(CacheSnapshot.class);
+
+  private static final int MAGIC = 0x4d424353; // MBCS
+  private static final int FORMAT_VERSION = 2;
+
+  private CacheSnapshot() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * Writes the entries of the selected caches. The file is replaced atomically.
+   *
+   * @param configuration
+   *          the configuration holding the caches
+   * @param file
+   *          the snapshot file
+   *
+   * @return the number of entries written
+   *
+   * @throws IOException
+   *           if the file can not be written
+   */
+  public static int write(Configuration configuration, Path file) throws IOException {
+    CacheSerializer serializer = new CompactCacheSerializer();
+    List<Cache> caches = selectedCaches(configuration);
+    Path directory = file.toAbsolutePath().getParent();
+    if (directory != null) {
+      Files.createDirectories(directory);
+    }
+    Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    int entries = 0;
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(caches.size());
+        for (Cache cache : caches) {
+          ByteArrayOutputStream section = new ByteArrayOutputStream();
+          int count = writeEntries(cache, serializer, new DataOutputStream(section));
+          writeString(out, cache.getId());
+          out.writeLong(fingerprint(configuration, cache));
+          out.writeInt(count);
+          out.writeInt(section.size());
+          section.writeTo(out);
+          entries += count;
+        }
+      }
+      try {
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+    return entries;
+  }
+
+  /**
+   * Puts the entries of a snapshot back into the caches whose definitions did not change, unless the snapshot is older
+   * than the time to live of the configuration.
+   *
+   * @param configuration
+   *          the configuration holding the caches
+   * @param file
+   *          the snapshot file
+   *
+   * @return the number of entries put in the caches
+   *
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public static int read(Configuration configuration, Path file) throws IOException {
+    SerialFilterChecker.check();
+    CacheSerializer serializer = new CompactCacheSerializer();
+    Set<String> selected = new HashSet<>();
+    for (Cache cache : selectedCaches(configuration)) {
+      selected.add(cache.getId());
+    }
+    int entries = 0;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 20 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        log.warn("Ignoring the cache snapshot " + file + ", which was not written by this version.");
+        return 0;
+      }
+      long age = System.currentTimeMillis() - buffer.getLong();
+      long timeToLive = configuration.getCacheSnapshotTimeToLive();
+      if (timeToLive > 0 && (age > timeToLive || age < 0)) {
+        log.warn("Ignoring the cache snapshot " + file + ", which was written " + age + " ms ago.");
+        return 0;
+      }
+      int caches = buffer.getInt();
+      for (int i = 0; i < caches; i++) {
+        String id = readString(buffer);
+        long fingerprint = buffer.getLong();
+        int count = buffer.getInt();
+        int length = buffer.getInt();
+        ByteBuffer section = buffer.slice();
+        ((Buffer) section).limit(length);
+        skip(buffer, length);
+        Cache cache = selected.contains(id) ? configuration.getCache(id) : null;
+        if (cache == null || fingerprint != fingerprint(configuration, cache)) {
+          if (log.isDebugEnabled()) {
+            log.debug("Discarding the snapshot of cache " + id + ", which changed since it was written.");
+          }
+          continue;
+        }
+        try {
+          entries += readEntries(configuration, cache, serializer, section, count);
+        } catch (RuntimeException e) {
+          cache.clear();
+          log.warn("Discarding the snapshot of cache " + id + ".  Cause: " + e);
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static List<Cache> selectedCaches(Configuration configuration) {
+    Set<String> namespaces = configuration.getCacheSnapshotNamespaces();
+    // sorted and without the short names
+    TreeMap<String, Cache> caches = new TreeMap<>();
+    for (String name : configuration.getCacheNames()) {
+      if (name.indexOf('.') >= 0 && (namespaces.isEmpty() || namespaces.contains(name))) {
+        caches.put(name, configuration.getCache(name));
+      }
+    }
+    return new ArrayList<>(caches.values());
+  }
+
+  private static int writeEntries(Cache cache, CacheSerializer serializer, DataOutputStream out) throws IOException {
+    List<Object> keys = new ArrayList<>();
+    List<Object> values = new ArrayList<>();
+    try {
+      cache.forEachEntry((key, value) -> {
+        if (value != null) {
+          keys.add(key);
+          values.add(value);
+        }
+      });
+    } catch (UnsupportedOperationException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Skipping the snapshot of cache " + cache.getId() + ".  Cause: " + e.getMessage());
+      }
+      return 0;
+    }
+    int count = 0;
+    for (int i = 0; i < keys.size(); i++) {
+      byte[] key;
+      byte[] value;
+      try {
+        key = serializer.serialize(keys.get(i));
+        value = serializer.serialize(values.get(i));
+      } catch (CacheException e) {
+        continue;
+      }
+      out.writeInt(key.length);
+      out.write(key);
+      out.writeInt(value.length);
+      out.write(value);
+      count++;
+    }
+    return count;
+  }
+
+  private static int readEntries(Configuration configuration, Cache cache, CacheSerializer serializer,
+      ByteBuffer section, int count) {
+    boolean tableInvalidation = configuration.getCacheInvalidationMode() == CacheInvalidationMode.TABLE;
+    for (int i = 0; i < count; i++) {
+      Object key = serializer.deserialize(readBytes(section));
+      Object value = serializer.deserialize(readBytes(section));
+      if (value instanceof TableDependencyCache.Entry) {
+        TableDependencyCache.Entry entry = (TableDependencyCache.Entry) value;
+        if (tableInvalidation) {
+          // the versions of the previous run are meaningless, the entry is as fresh as the snapshot
+          entry.setVersions(configuration.getTableVersions().snapshot(entry.getTables()));
+        } else {
+          value = entry.getValue();
+        }
+      }
+      cache.putObject(key, value);
+    }
+    return count;
+  }
+
+  /**
+   * Digests what the cached results of a cache depend on: the ids, SQL and result maps of its statements, and the
+   * properties of the result types.
+   */
+  static long fingerprint(Configuration configuration, Cache cache) {
+    MessageDigest digest = newDigest();
+    TreeMap<String, MappedStatement> statements = new TreeMap<>();
+    for (String name : configuration.getMappedStatementNames()) {
+      if (name.indexOf('.') >= 0) {
+        MappedStatement ms = configuration.getMappedStatement(name, false);
+        if (ms.getCache() == cache && name.equals(ms.getId())) {
+          statements.put(name, ms);
+        }
+      }
+    }
+    Set<String> digested = new HashSet<>();
+    for (MappedStatement ms : statements.values()) {
+      update(digest, ms.getId());
+      update(digest, ms.getSqlCommandType().name());
+      if (ms.getResource() != null && digested.add(ms.getResource())) {
+        updateResource(digest, ms.getResource());
+      }
+      if (ms.getSqlSource() instanceof RawSqlSource || ms.getSqlSource() instanceof StaticSqlSource) {
+        update(digest, ms.getBoundSql(null).getSql());
+      }
+      for (ResultMap resultMap : ms.getResultMaps()) {
+        updateResultMap(configuration, digest, resultMap, digested);
+      }
+    }
+    byte[] hash = digest.digest();
+    long fingerprint = 0;
+    for (int i = 0; i < 8; i++) {
+      fingerprint = fingerprint << 8 | (hash[i] & 0xff);
+    }
+    return fingerprint;
+  }
+
+  private static void updateResultMap(Configuration configuration, MessageDigest digest, ResultMap resultMap,
+      Set<String> digested) {
+    if (!digested.add(resultMap.getId())) {
+      return;
+    }
+    update(digest, resultMap.getId());
+    updateType(configuration, digest, resultMap.getType(), digested);
+    for (ResultMapping mapping : resultMap.getResultMappings()) {
+      update(digest, mapping.getProperty() + ':' + mapping.getColumn() + ':' + mapping.getJavaType());
+      if (mapping.getNestedResultMapId() != null && configuration.hasResultMap(mapping.getNestedResultMapId())) {
+        updateResultMap(configuration, digest, configuration.getResultMap(mapping.getNestedResultMapId()), digested);
+      }
+    }
+  }
+
+  private static void updateType(Configuration configuration, MessageDigest digest, Class<?> type,
+      Set<String> digested) {
+    if (!digested.add(type.getName())) {
+      return;
+    }
+    update(digest, type.getName());
+    Reflector reflector = configuration.getReflectorFactory().findForClass(type);
+    for (String property : new TreeSet<>(Arrays.asList(reflector.getGetablePropertyNames()))) {
+      update(digest, property + ':' + reflector.getGetterType(property).getName());
+    }
+  }
+
+  private static void updateResource(MessageDigest digest, String resource) {
+    byte[] buffer = new byte[8192];
+    try (InputStream in = Resources.getResourceAsStream(resource)) {
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, n);
+      }
+    } catch (IOException e) {
+      // e.g. an annotated mapper, only its statements are digested
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new CacheException("SHA-256 is not available.  Cause: " + e, e);
+    }
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    return new String(readBytes(buffer), StandardCharsets.UTF_8);
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static void skip(ByteBuffer buffer, int length) {
+    // Buffer.position(int) returns a ByteBuffer as of Java 9
+    ((Buffer) buffer).position(buffer.position() + length);
+  }
+
+}
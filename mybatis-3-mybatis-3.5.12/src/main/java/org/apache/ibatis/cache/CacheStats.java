@@ -0,0 +1,210 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of a cache built by {@link org.apache.ibatis.mapping.CacheBuilder}.
+ * <p>
+ * Hits, misses, puts, removals and clears are counted by the {@link org.apache.ibatis.cache.decorators.LoggingCache}
+ * decorator, evictions and the estimated size by the decorators that evict or weigh entries, and loads by the
+ * executor when a miss is read from the database. Misses served by the load of another session are counted by the
+ * {@link org.apache.ibatis.cache.decorators.SingleFlightCache} decorator. The counters are {@link LongAdder}s, so that
+ * concurrent readers do not contend on them; the values read while the cache is used are not an atomic snapshot.
+ *
+ * @since 3.5.13
+ *
+ * @see Cache#getStats()
+ */
+public class CacheStats {
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder puts = new LongAdder();
+  private final LongAdder removals = new LongAdder();
+  private final LongAdder clears = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadTime = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+  private final LongAdder estimatedBytes = new LongAdder();
+
+  public void recordHit() {
+    hits.increment();
+  }
+
+  public void recordMiss() {
+    misses.increment();
+  }
+
+  public void recordPut() {
+    puts.increment();
+  }
+
+  public void recordRemoval() {
+    removals.increment();
+  }
+
+  public void recordClear() {
+    clears.increment();
+  }
+
+  public void recordEviction() {
+    evictions.increment();
+  }
+
+  /**
+   * Records a value read from the database after a miss.
+   *
+   * @param nanos
+   *          the time spent reading the value, in nanoseconds
+   */
+  public void recordLoad(long nanos) {
+    loads.increment();
+    loadTime.add(nanos);
+  }
+
+  /**
+   * Records a miss served by the load of another session.
+   */
+  public void recordCoalesced() {
+    coalesced.increment();
+  }
+
+  /**
+   * Records a loaded value that was not cached because it failed the admission rules of its statement.
+   *
+   * @see CacheAdmission
+   */
+  public void recordRejection() {
+    rejections.increment();
+  }
+
+  /**
+   * Records a change of the estimated size of the cached values.
+   *
+   * @param delta
+   *          the number of bytes added, or removed when negative
+   */
+  public void recordWeight(long delta) {
+    estimatedBytes.add(delta);
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getRequestCount() {
+    return getHitCount() + getMissCount();
+  }
+
+  /**
+   * @return the ratio of requests that were hits, {@code 0} when no request was made
+   */
+  public double getHitRatio() {
+    long hitCount = getHitCount();
+    long requestCount = hitCount + getMissCount();
+    return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+  }
+
+  public long getPutCount() {
+    return puts.sum();
+  }
+
+  public long getRemovalCount() {
+    return removals.sum();
+  }
+
+  public long getClearCount() {
+    return clears.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
+  /**
+   * @return the total time spent loading values, in nanoseconds
+   */
+  public long getTotalLoadTime() {
+    return loadTime.sum();
+  }
+
+  /**
+   * @return the average time spent loading a value, in nanoseconds
+   */
+  public double getAverageLoadPenalty() {
+    long loadCount = getLoadCount();
+    return loadCount == 0 ? 0 : (double) getTotalLoadTime() / loadCount;
+  }
+
+  /**
+   * @return the number of misses that waited for the load of another session instead of querying the database
+   */
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  /**
+   * @return the number of loaded values that were not cached because they failed the admission rules
+   */
+  public long getRejectionCount() {
+    return rejections.sum();
+  }
+
+  /**
+   * @return the estimated number of bytes held by the cache, {@code 0} when its entries are not weighed
+   */
+  public long getEstimatedBytes() {
+    return estimatedBytes.sum();
+  }
+
+  /**
+   * Resets the counters, but not the estimated size.
+   */
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    puts.reset();
+    removals.reset();
+    clears.reset();
+    evictions.reset();
+    loads.reset();
+    loadTime.reset();
+    coalesced.reset();
+    rejections.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{hits=" + getHitCount() + ", misses=" + getMissCount() + ", puts=" + getPutCount()
+        + ", removals=" + getRemovalCount() + ", clears=" + getClearCount() + ", evictions=" + getEvictionCount()
+        + ", loads=" + getLoadCount() + ", totalLoadTime=" + getTotalLoadTime() + ", coalesced="
+        + getCoalescedCount() + ", rejections=" + getRejectionCount() + ", estimatedBytes=" + getEstimatedBytes()
+        + "}";
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * The JMX view of the {@link CacheStats} of a cache.
+ *
+ * @since 3.5.13
+ *
+ * @see org.apache.ibatis.session.Configuration#setCacheStatsJmxEnabled(boolean)
+ */
+public interface CacheStatsMXBean {
+
+  String getId();
+
+  /**
+   * @return the number of entries
+   */
+  int getSize();
+
+  long getEstimatedBytes();
+
+  long getHitCount();
+
+  long getMissCount();
+
+  double getHitRatio();
+
+  long getPutCount();
+
+  long getRemovalCount();
+
+  long getClearCount();
+
+  long getEvictionCount();
+
+  long getLoadCount();
+
+  long getTotalLoadTime();
+
+  double getAverageLoadPenalty();
+
+  long getCoalescedCount();
+
+  long getRejectionCount();
+
+  void resetStats();
+
+}
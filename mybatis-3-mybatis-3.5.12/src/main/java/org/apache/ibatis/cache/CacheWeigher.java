@@ -0,0 +1,40 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * SPI to estimate how many bytes of heap a cached value retains.
+ * <p>
+ * Used by {@link org.apache.ibatis.cache.decorators.WeightedCache} to bound a cache by memory instead of by number of
+ * entries. Implementations must be thread safe and must have a default constructor.
+ *
+ * @since 3.5.13
+ */
+public interface CacheWeigher {
+
+  /**
+   * Estimates the size of an entry.
+   *
+   * @param key
+   *          the key, usually a {@link CacheKey}
+   * @param value
+   *          the result of a select, or its serialized form in a read-write cache, may be {@code null}
+   *
+   * @return the estimated number of bytes retained by the entry, never negative
+   */
+  long weigh(Object key, Object value);
+
+}
@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Marker for cache implementations and decorators that can be accessed concurrently without any external
+ * synchronization.
+ * <p>
+ * When the base cache and every decorator in a chain implement this interface, the
+ * {@link org.apache.ibatis.mapping.CacheBuilder} does not wrap the chain with a
+ * {@link org.apache.ibatis.cache.decorators.SynchronizedCache}, so reads on a namespace cache do not contend on a
+ * single monitor.
+ * <p>
+ * A decorator implementing this interface must not introduce any state that requires a global lock on the read path.
+ *
+ * @since 3.5.13
+ */
+public interface ConcurrentCache extends Cache {
+
+}
@@ -0,0 +1,305 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.mapping.ResultFlag;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.ArrayUtil;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * Canonical row objects shared by the statements and sessions of a {@link Configuration}.
+ * <p>
+ * Only the statements whose results are put in a read-only second level cache use this cache: their results are
+ * already shared by all the sessions, and must be treated as immutable, so sharing their rows does not change what a
+ * session may do with them. The other statements still return objects of their own.
+ * <p>
+ * The rows mapped by a result map declaring {@code <id>} columns are keyed by the result map id and their id values, so
+ * that the same row read by different statements is held once, whatever the query. Each row read is still mapped, and
+ * the canonical entity replaces it only when both were mapped from the same columns and hold the same property values:
+ * a row modified since the canonical entity was mapped, e.g. by another application, replaces it instead. The canonical
+ * objects are only weakly referenced: they stay in this cache as long as a result list, e.g. held by a second level
+ * cache, uses them.
+ * <p>
+ * An entity belongs to the namespace of its result map. While a session has uncommitted writes in a namespace, its
+ * entities are neither read from nor added to this cache, and when the session ends its transaction the entities it
+ * wrote are evicted: by id when the parameter of the statement was such an entity, otherwise all the entities of the
+ * namespace. A version, bumped by every write, keeps the results read before a write from being added after it.
+ *
+ * @since 3.5.13
+ */
+public class EntityCache {
+
+  private final Map<CacheKey, EntityReference> entities = new ConcurrentHashMap<>();
+  private final ReferenceQueue<Object> collectedEntities = new ReferenceQueue<>();
+  private final Map<String, AtomicInteger> pendingWrites = new ConcurrentHashMap<>();
+  private final AtomicLong version = new AtomicLong();
+  private final ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+
+  /**
+   * Returns whether the rows of a result map can be shared: it must declare simple {@code <id>} properties and must
+   * neither have nested result maps, nested queries nor a discriminator.
+   *
+   * @param resultMap
+   *          the result map
+   *
+   * @return {@code true} if its rows can be kept in this cache
+   */
+  public static boolean isEntity(ResultMap resultMap) {
+    if (resultMap.getDiscriminator() != null || resultMap.hasNestedResultMaps() || resultMap.hasNestedQueries()
+        || Map.class.isAssignableFrom(resultMap.getType())) {
+      return false;
+    }
+    List<ResultMapping> idMappings = resultMap.getIdResultMappings();
+    if (idMappings.isEmpty()) {
+      return false;
+    }
+    for (ResultMapping idMapping : idMappings) {
+      // without any <id>, the id mappings are all the mappings
+      if (!idMapping.getFlags().contains(ResultFlag.ID) || !idMapping.isSimple() || idMapping.getColumn() == null
+          || idMapping.getProperty() == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static String namespaceOf(String id) {
+    int lastPeriod = id.lastIndexOf('.');
+    return lastPeriod < 0 ? id : id.substring(0, lastPeriod);
+  }
+
+  /**
+   * Creates the keys of the entities a write statement may modify, from the id properties of its parameter.
+   *
+   * @param configuration
+   *          the configuration holding the result maps
+   * @param namespace
+   *          the namespace of the write statement
+   * @param parameter
+   *          the parameter of the write statement
+   *
+   * @return the entity keys, or {@code null} when they can not be determined and the whole namespace must be evicted
+   */
+  public static Set<CacheKey> createKeys(Configuration configuration, String namespace, Object parameter) {
+    if (parameter == null) {
+      return null;
+    }
+    Set<CacheKey> keys = new HashSet<>();
+    String prefix = namespace + ".";
+    for (String name : configuration.getResultMapNames()) {
+      if (!name.startsWith(prefix)) {
+        continue;
+      }
+      ResultMap resultMap = configuration.getResultMap(name);
+      if (!name.equals(resultMap.getId()) || !isEntity(resultMap)) {
+        continue;
+      }
+      if (!resultMap.getType().isInstance(parameter)) {
+        // another entity of the namespace may be modified too
+        return null;
+      }
+      MetaObject metaParameter = configuration.newMetaObject(parameter);
+      CacheKey key = new CacheKey();
+      key.update(resultMap.getId());
+      for (ResultMapping idMapping : resultMap.getIdResultMappings()) {
+        Object value = metaParameter.getValue(idMapping.getProperty());
+        if (value == null) {
+          return null;
+        }
+        key.update(value);
+      }
+      keys.add(key);
+    }
+    return keys;
+  }
+
+  /**
+   * Returns the version to pass to {@link #putObject(String, CacheKey, List, Object, long)}, read before the query.
+   *
+   * @return the current version
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
+  public int getSize() {
+    removeCollectedEntities();
+    return entities.size();
+  }
+
+  /**
+   * Gets the canonical entity of a row.
+   *
+   * @param namespace
+   *          the namespace of the result map of the entity
+   * @param key
+   *          the entity key
+   * @param columns
+   *          the columns of the result set
+   *
+   * @return the entity, {@code null} if it is not cached or was mapped from other columns. The row may have been
+   *         modified since the entity was mapped.
+   */
+  public Object getObject(String namespace, CacheKey key, List<String> columns) {
+    if (isWritePending(namespace)) {
+      return null;
+    }
+    EntityReference reference = entities.get(key);
+    return reference == null || !reference.columns.equals(columns) ? null : reference.get();
+  }
+
+  /**
+   * Adds an entity, unless an entity mapped from the same columns to the same property values is already cached.
+   *
+   * @param namespace
+   *          the namespace of the result map of the entity
+   * @param key
+   *          the entity key
+   * @param columns
+   *          the columns of the result set
+   * @param entity
+   *          the entity just mapped
+   * @param readVersion
+   *          the version read before the entity was queried
+   *
+   * @return the canonical entity, which is the given one when it could not be cached
+   */
+  public Object putObject(String namespace, CacheKey key, List<String> columns, Object entity, long readVersion) {
+    removeCollectedEntities();
+    EntityReference reference = new EntityReference(namespace, key, columns, entity, collectedEntities);
+    while (readVersion == version.get() && !isWritePending(namespace)) {
+      EntityReference previous = entities.putIfAbsent(key, reference);
+      if (previous == null) {
+        if (readVersion != version.get()) {
+          // a write began meanwhile
+          entities.remove(key, reference);
+        }
+        return entity;
+      }
+      Object canonical = previous.get();
+      if (canonical != null && previous.columns.equals(columns) && hasSameValues(canonical, entity)) {
+        return canonical;
+      }
+      // mapped from other columns, or the row was modified since
+      entities.remove(key, previous);
+    }
+    return entity;
+  }
+
+  /**
+   * Marks the entities of a namespace as being written by a session.
+   *
+   * @param namespace
+   *          the namespace of the write statement
+   */
+  public void beginWrite(String namespace) {
+    pendingWrites.computeIfAbsent(namespace, k -> new AtomicInteger()).incrementAndGet();
+    version.incrementAndGet();
+  }
+
+  /**
+   * Evicts the entities written by a session and ends its write.
+   *
+   * @param namespace
+   *          the namespace of the write statements
+   * @param keys
+   *          the keys of the written entities, {@code null} to evict all the entities of the namespace
+   */
+  public void endWrite(String namespace, Set<CacheKey> keys) {
+    try {
+      version.incrementAndGet();
+      if (keys == null) {
+        entities.values().removeIf(reference -> reference.namespace.equals(namespace));
+      } else {
+        for (CacheKey key : keys) {
+          entities.remove(key);
+        }
+      }
+    } finally {
+      AtomicInteger writes = pendingWrites.get(namespace);
+      if (writes != null) {
+        writes.decrementAndGet();
+      }
+    }
+  }
+
+  public void clear() {
+    version.incrementAndGet();
+    entities.clear();
+  }
+
+  private boolean hasSameValues(Object canonical, Object entity) {
+    if (canonical.getClass() != entity.getClass()) {
+      return false;
+    }
+    Reflector reflector = reflectorFactory.findForClass(entity.getClass());
+    try {
+      for (String property : reflector.getGetablePropertyNames()) {
+        Invoker getter = reflector.getGetInvoker(property);
+        if (!ArrayUtil.equals(getter.invoke(canonical, null), getter.invoke(entity, null))) {
+          return false;
+        }
+      }
+    } catch (ReflectiveOperationException e) {
+      return false;
+    }
+    return true;
+  }
+
+  private boolean isWritePending(String namespace) {
+    AtomicInteger writes = pendingWrites.get(namespace);
+    return writes != null && writes.get() > 0;
+  }
+
+  private void removeCollectedEntities() {
+    EntityReference reference;
+    while ((reference = (EntityReference) collectedEntities.poll()) != null) {
+      entities.remove(reference.key, reference);
+    }
+  }
+
+  private static final class EntityReference extends WeakReference<Object> {
+    private final String namespace;
+    private final CacheKey key;
+    private final List<String> columns;
+
+    EntityReference(String namespace, CacheKey key, List<String> columns, Object entity,
+        ReferenceQueue<Object> queue) {
+      super(entity, queue);
+      this.namespace = namespace;
+      this.key = key;
+      this.columns = columns;
+    }
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A change of the second level caches propagated by an {@link InvalidationBus}.
+ *
+ * @since 3.5.13
+ */
+public final class Invalidation {
+
+  private static final Invalidation ALL = new Invalidation(Type.ALL, Collections.emptySet());
+
+  public enum Type {
+    /**
+     * The caches whose ids are the names were cleared.
+     */
+    CACHE,
+    /**
+     * The tables whose names are given were modified, see {@link TableVersions}.
+     */
+    TABLES,
+    /**
+     * Some invalidations were lost, every cache must be cleared.
+     */
+    ALL
+  }
+
+  private final Type type;
+  private final Set<String> names;
+
+  private Invalidation(Type type, Set<String> names) {
+    this.type = type;
+    this.names = names;
+  }
+
+  public static Invalidation caches(Collection<String> cacheIds) {
+    return new Invalidation(Type.CACHE, Collections.unmodifiableSet(new LinkedHashSet<>(cacheIds)));
+  }
+
+  public static Invalidation tables(Collection<String> tables) {
+    return new Invalidation(Type.TABLES, Collections.unmodifiableSet(new LinkedHashSet<>(tables)));
+  }
+
+  public static Invalidation all() {
+    return ALL;
+  }
+
+  public static Invalidation of(Type type, Collection<String> names) {
+    switch (type) {
+      case CACHE:
+        return caches(names);
+      case TABLES:
+        return tables(names);
+      default:
+        return ALL;
+    }
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public Set<String> getNames() {
+    return names;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Invalidation)) {
+      return false;
+    }
+    Invalidation other = (Invalidation) o;
+    return type == other.type && names.equals(other.names);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * type.hashCode() + names.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return type + (names.isEmpty() ? "" : " " + names);
+  }
+
+}
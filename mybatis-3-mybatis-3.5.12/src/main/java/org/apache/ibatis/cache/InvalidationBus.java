@@ -0,0 +1,59 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * SPI to propagate the invalidations of the second level caches to the other nodes working on the same database.
+ * <p>
+ * The clears of the caches and, in {@link org.apache.ibatis.session.CacheInvalidationMode#TABLE TABLE} mode, the
+ * modified tables are published when the transaction that caused them is committed, and applied by the
+ * {@link org.apache.ibatis.session.Configuration Configuration} of the other nodes. An invalidation is never delivered
+ * to the listeners of the instance that published it, the publishing node having applied it already. Implementations
+ * must be thread safe; those created from the {@code cacheInvalidationBus} setting must have a constructor taking the
+ * {@code cacheInvalidationChannel} setting as a {@code String}.
+ *
+ * @since 3.5.13
+ *
+ * @see org.apache.ibatis.cache.impl.LocalInvalidationBus
+ * @see org.apache.ibatis.cache.impl.MappedFileInvalidationBus
+ */
+public interface InvalidationBus {
+
+  /**
+   * Sends an invalidation to the other nodes. It must not block on them.
+   *
+   * @param invalidation
+   *          the invalidation
+   */
+  void publish(Invalidation invalidation);
+
+  /**
+   * Registers a listener of the invalidations published by the other nodes. The listener may be called by any thread.
+   *
+   * @param listener
+   *          the listener
+   */
+  void subscribe(Consumer<Invalidation> listener);
+
+  /**
+   * Stops publishing and delivering invalidations, and releases the resources of the bus. It is called by
+   * {@link org.apache.ibatis.session.Configuration#close()}.
+   */
+  void close();
+
+}
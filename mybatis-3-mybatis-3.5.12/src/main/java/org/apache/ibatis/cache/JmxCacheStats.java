@@ -0,0 +1,198 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Publishes the {@link CacheStats} of a cache to the platform MBean server, under the name
+ * {@code org.apache.ibatis:type=CacheStats,environment=<environment id>,name=<cache id>}.
+ *
+ * @since 3.5.13
+ */
+public class JmxCacheStats implements CacheStatsMXBean {
+
+  private static final Log log = LogFactory.getLog(JmxCacheStats.class);
+  private static final Map<ObjectName, JmxCacheStats> registered = new ConcurrentHashMap<>();
+  private static final ReentrantLock registrationLock = new ReentrantLock();
+
+  private final Cache cache;
+  private final CacheStats stats;
+
+  public JmxCacheStats(Cache cache, CacheStats stats) {
+    this.cache = cache;
+    this.stats = stats;
+  }
+
+  /**
+   * Registers the statistics of a cache, replacing the ones registered with the same name.
+   *
+   * @param cache
+   *          the cache
+   * @param environmentId
+   *          the id of the environment of the configuration, may be {@code null}
+   */
+  public static void register(Cache cache, String environmentId) {
+    CacheStats stats = cache.getStats();
+    if (stats == null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    registrationLock.lock();
+    try {
+      ObjectName name = objectName(cache, environmentId);
+      JmxCacheStats mbean = new JmxCacheStats(cache, stats);
+      try {
+        server.registerMBean(mbean, name);
+      } catch (InstanceAlreadyExistsException e) {
+        // the same mappers loaded by another configuration, or reloaded
+        server.unregisterMBean(name);
+        server.registerMBean(mbean, name);
+      }
+      registered.put(name, mbean);
+    } catch (JMException e) {
+      log.warn("Could not register the statistics of cache '" + cache.getId() + "'.  Cause: " + e);
+    } finally {
+      registrationLock.unlock();
+    }
+  }
+
+  /**
+   * Unregisters the statistics of a cache, unless the statistics of another cache were registered with the same name
+   * since.
+   *
+   * @param cache
+   *          the cache
+   * @param environmentId
+   *          the id of the environment of the configuration, may be {@code null}
+   */
+  public static void unregister(Cache cache, String environmentId) {
+    registrationLock.lock();
+    try {
+      ObjectName name = objectName(cache, environmentId);
+      JmxCacheStats mbean = registered.get(name);
+      if (mbean != null && mbean.cache == cache) {
+        registered.remove(name);
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      }
+    } catch (InstanceNotFoundException e) {
+      // already unregistered by the application
+    } catch (JMException e) {
+      log.warn("Could not unregister the statistics of cache '" + cache.getId() + "'.  Cause: " + e);
+    } finally {
+      registrationLock.unlock();
+    }
+  }
+
+  private static ObjectName objectName(Cache cache, String environmentId) throws JMException {
+    return new ObjectName("org.apache.ibatis:type=CacheStats"
+        + (environmentId == null ? "" : ",environment=" + ObjectName.quote(environmentId)) + ",name="
+        + ObjectName.quote(cache.getId()));
+  }
+
+  @Override
+  public String getId() {
+    return cache.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return cache.getSize();
+  }
+
+  @Override
+  public long getEstimatedBytes() {
+    return stats.getEstimatedBytes();
+  }
+
+  @Override
+  public long getHitCount() {
+    return stats.getHitCount();
+  }
+
+  @Override
+  public long getMissCount() {
+    return stats.getMissCount();
+  }
+
+  @Override
+  public double getHitRatio() {
+    return stats.getHitRatio();
+  }
+
+  @Override
+  public long getPutCount() {
+    return stats.getPutCount();
+  }
+
+  @Override
+  public long getRemovalCount() {
+    return stats.getRemovalCount();
+  }
+
+  @Override
+  public long getClearCount() {
+    return stats.getClearCount();
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return stats.getEvictionCount();
+  }
+
+  @Override
+  public long getLoadCount() {
+    return stats.getLoadCount();
+  }
+
+  @Override
+  public long getTotalLoadTime() {
+    return stats.getTotalLoadTime();
+  }
+
+  @Override
+  public double getAverageLoadPenalty() {
+    return stats.getAverageLoadPenalty();
+  }
+
+  @Override
+  public long getCoalescedCount() {
+    return stats.getCoalescedCount();
+  }
+
+  @Override
+  public long getRejectionCount() {
+    return stats.getRejectionCount();
+  }
+
+  @Override
+  public void resetStats() {
+    stats.reset();
+  }
+
+}
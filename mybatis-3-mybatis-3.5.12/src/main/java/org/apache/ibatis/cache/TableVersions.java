@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.util.MapUtil;
+
+/**
+ * Version numbers of the tables of a {@link org.apache.ibatis.session.Configuration}, used when the cache invalidation
+ * mode is {@link org.apache.ibatis.session.CacheInvalidationMode#TABLE TABLE}.
+ * <p>
+ * A cached result records the versions of the tables it was read from, taken before the query is executed. A committed
+ * write increments the versions of the tables it modified, which makes every result depending on them stale, whatever
+ * the namespace of the statement that read it.
+ *
+ * @since 3.5.13
+ */
+public class TableVersions {
+
+  private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the current versions of some tables.
+   *
+   * @param tables
+   *          the table names
+   *
+   * @return the versions, in the order of the tables
+   */
+  public long[] snapshot(String[] tables) {
+    long[] snapshot = new long[tables.length];
+    for (int i = 0; i < tables.length; i++) {
+      snapshot[i] = version(tables[i]).get();
+    }
+    return snapshot;
+  }
+
+  /**
+   * Returns whether none of the tables changed since a snapshot was taken.
+   *
+   * @param tables
+   *          the table names
+   * @param snapshot
+   *          the versions returned by {@link #snapshot(String[])} for the same tables
+   *
+   * @return {@code true} if the tables did not change
+   */
+  public boolean isCurrent(String[] tables, long[] snapshot) {
+    for (int i = 0; i < tables.length; i++) {
+      AtomicLong version = versions.get(tables[i]);
+      if (version == null ? snapshot[i] != 0 : version.get() != snapshot[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Marks the results depending on some tables as stale.
+   *
+   * @param tables
+   *          the modified table names
+   */
+  public void invalidate(Collection<String> tables) {
+    for (String table : tables) {
+      version(table).incrementAndGet();
+    }
+  }
+
+  private AtomicLong version(String table) {
+    return MapUtil.computeIfAbsent(versions, table, k -> new AtomicLong());
+  }
+
+}
@@ -15,8 +15,14 @@
  */
 package org.apache.ibatis.cache;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ibatis.cache.decorators.TransactionalCache;
 import org.apache.ibatis.util.MapUtil;
@@ -29,11 +35,26 @@ public class TransactionalCacheManager {
   //Cache 和用 TransactionalCache 包装后的 Cache 的映射关系
   //如果事务提交，对缓存的操作才会生效，如果事务回滚或者不提交事务，则不对缓存产生影响
   private final Map<Cache, TransactionalCache> transactionalCaches = new HashMap<>();
+  private final Set<String> invalidatedTables = new HashSet<>();
+  private TableVersions tableVersions;
+  private InvalidationBus invalidationBus;
 
   public void clear(Cache cache) {
     getTransactionalCache(cache).clear();
   }
 
+  /**
+   * Sets the bus the clears and the table invalidations are published to when the transaction is committed.
+   *
+   * @param invalidationBus
+   *          the bus, may be {@code null}
+   *
+   * @since 3.5.13
+   */
+  public void setInvalidationBus(InvalidationBus invalidationBus) {
+    this.invalidationBus = invalidationBus;
+  }
+
   public Object getObject(Cache cache, CacheKey key) {
     return getTransactionalCache(cache).getObject(key);
   }
@@ -42,16 +63,63 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  /**
+   * Invalidates the cached results read from some tables when the transaction is committed.
+   *
+   * @param tableVersions
+   *          the versions of the tables
+   * @param tables
+   *          the modified tables
+   *
+   * @since 3.5.13
+   */
+  public void invalidateOnCommit(TableVersions tableVersions, String[] tables) {
+    this.tableVersions = tableVersions;
+    invalidatedTables.addAll(Arrays.asList(tables));
+  }
+
+  /**
+   * Returns whether the transaction modified one of the tables.
+   *
+   * @since 3.5.13
+   */
+  public boolean isInvalidated(String[] tables) {
+    if (!invalidatedTables.isEmpty()) {
+      for (String table : tables) {
+        if (invalidatedTables.contains(table)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   public void commit() {
+    List<String> clearedCaches = new ArrayList<>();
     for (TransactionalCache txCache : transactionalCaches.values()) {
+      if (txCache.isClearOnCommit()) {
+        clearedCaches.add(txCache.getId());
+      }
       txCache.commit();
     }
+    if (invalidationBus != null && !clearedCaches.isEmpty()) {
+      invalidationBus.publish(Invalidation.caches(clearedCaches));
+    }
+    // after the new entries are added, as they may have been read before the tables were modified
+    if (!invalidatedTables.isEmpty()) {
+      tableVersions.invalidate(Collections.unmodifiableSet(invalidatedTables));
+      if (invalidationBus != null) {
+        invalidationBus.publish(Invalidation.tables(invalidatedTables));
+      }
+      invalidatedTables.clear();
+    }
   }
 
   public void rollback() {
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.rollback();
     }
+    invalidatedTables.clear();
   }
 
   private TransactionalCache getTransactionalCache(Cache cache) {
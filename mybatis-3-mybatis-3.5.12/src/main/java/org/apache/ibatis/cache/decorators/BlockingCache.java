@@ -18,8 +18,11 @@ package org.apache.ibatis.cache.decorators;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
 import org.apache.ibatis.cache.CacheException;
 
 /**
@@ -34,7 +37,7 @@ import org.apache.ibatis.cache.CacheException;
  *
  * @author Eduardo Macarron
  */
-public class BlockingCache implements Cache {
+public class BlockingCache implements ConcurrentCache {
 
   private long timeout;
   private final Cache delegate;
@@ -55,6 +58,11 @@ public class BlockingCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public CacheStats getStats() {
+    return delegate.getStats();
+  }
+
   @Override
   public void putObject(Object key, Object value) {
     try {
@@ -86,6 +94,16 @@ public class BlockingCache implements Cache {
     delegate.clear();
   }
 
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry(action);
+  }
+
   private void acquireLock(Object key) {
     CountDownLatch newLatch = new CountDownLatch(1);
     while (true) {
@@ -0,0 +1,247 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
+
+/**
+ * Per entry expiration decorator.
+ * <p>
+ * Unlike {@link ScheduledCache}, which flushes the whole cache at once, each entry ages out on its own: it expires
+ * {@code timeToLive} milliseconds after it was put and/or {@code timeToIdle} milliseconds after it was last read. An
+ * optional random {@code expiryJitter} is added to the time to live of each entry, so that entries loaded together do
+ * not all expire at the same time.
+ * <p>
+ * Expired entries are removed lazily when they are read, and every put also sweeps a few of the eldest entries, so
+ * that entries which are never read again do not stay in the cache forever. The expiry of an entry evicted by a
+ * decorator below this one is forgotten when that decorator reports the eviction, see {@link #onEviction(Object)}, or
+ * else when the sweep finds that the delegate no longer holds it. The sweep asks {@link Cache#containsKey(Object)},
+ * which does not count as a read, so that it does not keep the eldest entries alive; a delegate that cannot tell keeps
+ * the expiry until the entry expires.
+ *
+ * @since 3.5.13
+ */
+public class ExpiringCache implements ConcurrentCache {
+
+  private static final int SWEEP_BATCH = 8;
+
+  private final Cache delegate;
+  private final Map<Object, Expiry> expiries = new ConcurrentHashMap<>();
+  private final Queue<Expiry> sweepQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queuedCount = new AtomicInteger();
+  private volatile long timeToLive;
+  private volatile long timeToIdle;
+  private volatile long expiryJitter;
+  private volatile CacheStats stats = new CacheStats();
+
+  public ExpiringCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public long getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * @param timeToLive
+   *          the number of milliseconds an entry is kept after it was put, {@code 0} for no limit
+   */
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  public long getTimeToIdle() {
+    return timeToIdle;
+  }
+
+  /**
+   * @param timeToIdle
+   *          the number of milliseconds an entry is kept after it was last read, {@code 0} for no limit
+   */
+  public void setTimeToIdle(long timeToIdle) {
+    this.timeToIdle = timeToIdle;
+  }
+
+  public long getExpiryJitter() {
+    return expiryJitter;
+  }
+
+  /**
+   * @param expiryJitter
+   *          the maximum number of milliseconds randomly added to the time to live of each entry
+   */
+  public void setExpiryJitter(long expiryJitter) {
+    this.expiryJitter = expiryJitter;
+  }
+
+  public void setCacheStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long now = System.currentTimeMillis();
+    Expiry expiry = new Expiry(key, expirationTime(now), now);
+    delegate.putObject(key, value);
+    expiries.put(key, expiry);
+    enqueue(expiry);
+    sweep(now);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Expiry expiry = expiries.get(key);
+    if (expiry != null) {
+      long now = System.currentTimeMillis();
+      if (expiry.isExpired(now, timeToIdle)) {
+        expire(expiry);
+        return null;
+      }
+      if (timeToIdle > 0) {
+        expiry.lastAccessTime = now;
+      }
+    }
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    expiries.remove(key);
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    expiries.clear();
+    sweepQueue.clear();
+    queuedCount.set(0);
+    delegate.clear();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  /**
+   * Forgets the expiry of an entry that a decorator below this one evicted.
+   *
+   * @param key
+   *          the key of the evicted entry
+   */
+  public void onEviction(Object key) {
+    expiries.remove(key);
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    long now = System.currentTimeMillis();
+    delegate.forEachEntry((key, value) -> {
+      Expiry expiry = expiries.get(key);
+      if (expiry == null || !expiry.isExpired(now, timeToIdle)) {
+        action.accept(key, value);
+      }
+    });
+  }
+
+  private long expirationTime(long now) {
+    long ttl = timeToLive;
+    if (ttl <= 0) {
+      return Long.MAX_VALUE;
+    }
+    long jitter = expiryJitter;
+    return now + ttl + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+  }
+
+  private void enqueue(Expiry expiry) {
+    sweepQueue.offer(expiry);
+    queuedCount.incrementAndGet();
+  }
+
+  /**
+   * Checks a bounded number of the eldest entries. Entries that are still alive because they were read recently go back
+   * to the tail of the queue, overwritten, removed or evicted entries are just dropped. The sweep does not stop at the
+   * first live entry while the queue holds more than twice the tracked entries, so that the queue stays bounded.
+   */
+  private void sweep(long now) {
+    for (int i = 0; i < SWEEP_BATCH; i++) {
+      Expiry expiry = sweepQueue.poll();
+      if (expiry == null) {
+        return;
+      }
+      queuedCount.decrementAndGet();
+      if (expiries.get(expiry.key) != expiry) {
+        continue;
+      }
+      if (expiry.isExpired(now, timeToIdle)) {
+        expire(expiry);
+      } else if (expiries.size() > delegate.getSize() && !delegate.containsKey(expiry.key)) {
+        // evicted or flushed below without being reported
+        expiries.remove(expiry.key, expiry);
+      } else {
+        enqueue(expiry);
+        if (expiry.expirationTime > now && timeToIdle <= 0 && queuedCount.get() <= 2 * expiries.size()) {
+          // entries are queued in put order, the next ones are most likely alive too
+          return;
+        }
+      }
+    }
+  }
+
+  private void expire(Expiry expiry) {
+    if (expiries.remove(expiry.key, expiry)) {
+      delegate.removeObject(expiry.key);
+      stats.recordEviction();
+    }
+  }
+
+  private static final class Expiry {
+    private final Object key;
+    private final long expirationTime;
+    private volatile long lastAccessTime;
+
+    Expiry(Object key, long expirationTime, long lastAccessTime) {
+      this.key = key;
+      this.expirationTime = expirationTime;
+      this.lastAccessTime = lastAccessTime;
+    }
+
+    boolean isExpired(long now, long timeToIdle) {
+      return now >= expirationTime || (timeToIdle > 0 && now - lastAccessTime >= timeToIdle);
+    }
+  }
+
+}
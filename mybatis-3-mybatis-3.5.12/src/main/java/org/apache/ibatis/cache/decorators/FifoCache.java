@@ -17,19 +17,29 @@ package org.apache.ibatis.cache.decorators;
 
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
 
 /**
  * FIFO (first in, first out) cache decorator.
+ * <p>
+ * Reads do not touch the key list, only writes are serialized by an internal lock.
  *
  * @author Clinton Begin
  */
-public class FifoCache implements Cache {
+public class FifoCache implements ConcurrentCache {
 
   private final Cache delegate;
+  private final ReentrantLock lock = new ReentrantLock();
   private final Deque<Object> keyList;
-  private int size;
+  private volatile int size;
+  private volatile CacheStats stats = new CacheStats();
+  private volatile Consumer<Object> evictionListener;
 
   public FifoCache(Cache delegate) {
     this.delegate = delegate;
@@ -51,10 +61,29 @@ public class FifoCache implements Cache {
     this.size = size;
   }
 
+  public void setCacheStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
+  /**
+   * @param evictionListener
+   *          called with the key of each entry this decorator evicts
+   *
+   * @since 3.5.13
+   */
+  public void setEvictionListener(Consumer<Object> evictionListener) {
+    this.evictionListener = evictionListener;
+  }
+
   @Override
   public void putObject(Object key, Object value) {
-    cycleKeyList(key);
-    delegate.putObject(key, value);
+    lock.lock();
+    try {
+      cycleKeyList(key);
+      delegate.putObject(key, value);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
@@ -62,6 +91,11 @@ public class FifoCache implements Cache {
     return delegate.getObject(key);
   }
 
+  @Override
+  public boolean containsKey(Object key) {
+    return delegate.containsKey(key);
+  }
+
   @Override
   public Object removeObject(Object key) {
     return delegate.removeObject(key);
@@ -69,8 +103,23 @@ public class FifoCache implements Cache {
 
   @Override
   public void clear() {
-    delegate.clear();
-    keyList.clear();
+    lock.lock();
+    try {
+      delegate.clear();
+      keyList.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry(action);
   }
 
   private void cycleKeyList(Object key) {
@@ -78,6 +127,15 @@ public class FifoCache implements Cache {
     if (keyList.size() > size) {
       Object oldestKey = keyList.removeFirst();
       delegate.removeObject(oldestKey);
+      stats.recordEviction();
+      notifyEviction(oldestKey);
+    }
+  }
+
+  private void notifyEviction(Object key) {
+    Consumer<Object> listener = evictionListener;
+    if (listener != null) {
+      listener.accept(key);
     }
   }
 
@@ -15,22 +15,47 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.function.BiConsumer;
+
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
+ * Records the {@link CacheStats} of the cache, and logs its hit ratio at debug level. The counters of the stats are
+ * {@link java.util.concurrent.atomic.LongAdder}s, so that the ratio stays exact when the decorator is not wrapped in a
+ * {@link SynchronizedCache}.
+ *
  * @author Clinton Begin
  */
-public class LoggingCache implements Cache {
+public class LoggingCache implements ConcurrentCache {
 
   private final Log log;
   private final Cache delegate;
+  private final CacheStats stats;
+  /**
+   * @deprecated The counts are not exact when the cache is accessed concurrently, use {@link #getStats()} instead.
+   */
+  @Deprecated
   protected int requests;
+  /**
+   * @deprecated The counts are not exact when the cache is accessed concurrently, use {@link #getStats()} instead.
+   */
+  @Deprecated
   protected int hits;
 
   public LoggingCache(Cache delegate) {
+    this(delegate, new CacheStats());
+  }
+
+  /**
+   * @since 3.5.13
+   */
+  public LoggingCache(Cache delegate, CacheStats stats) {
     this.delegate = delegate;
+    this.stats = stats;
     this.log = LogFactory.getLog(getId());
   }
 
@@ -47,6 +72,7 @@ public class LoggingCache implements Cache {
   @Override
   public void putObject(Object key, Object object) {
     delegate.putObject(key, object);
+    stats.recordPut();
   }
 
   @Override
@@ -55,21 +81,41 @@ public class LoggingCache implements Cache {
     final Object value = delegate.getObject(key);
     if (value != null) {
       hits++;
+      stats.recordHit();
+    } else {
+      stats.recordMiss();
     }
     if (log.isDebugEnabled()) {
-      log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio());
+      log.debug("Cache Hit Ratio [" + getId() + "]: " + stats.getHitRatio());
     }
     return value;
   }
 
   @Override
   public Object removeObject(Object key) {
+    stats.recordRemoval();
     return delegate.removeObject(key);
   }
 
   @Override
   public void clear() {
     delegate.clear();
+    stats.recordClear();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry(action);
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return stats;
   }
 
   @Override
@@ -82,8 +128,4 @@ public class LoggingCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private double getHitRatio() {
-    return (double) hits / (double) requests;
-  }
-
 }
@@ -17,19 +17,30 @@ package org.apache.ibatis.cache.decorators;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
 
 /**
  * Lru (least recently used) cache decorator.
+ * <p>
+ * The key order is guarded by an internal lock that is only tried on reads: when another thread holds it, the read is
+ * served without touching the key, so the eviction order becomes approximate under contention but reads never block.
  *
  * @author Clinton Begin
  */
-public class LruCache implements Cache {
+public class LruCache implements ConcurrentCache {
 
   private final Cache delegate;
+  private final ReentrantLock lock = new ReentrantLock();
   private Map<Object, Object> keyMap;
   private Object eldestKey;
+  private volatile CacheStats stats = new CacheStats();
+  private volatile Consumer<Object> evictionListener;
 
   public LruCache(Cache delegate) {
     this.delegate = delegate;
@@ -47,32 +58,67 @@ public class LruCache implements Cache {
   }
 
   public void setSize(final int size) {
-    keyMap = new LinkedHashMap<Object, Object>(size, .75F, true) {
-      private static final long serialVersionUID = 4267176411845948333L;
-
-      @Override
-      protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
-        boolean tooBig = size() > size;
-        if (tooBig) {
-          eldestKey = eldest.getKey();
+    lock.lock();
+    try {
+      keyMap = new LinkedHashMap<Object, Object>(size, .75F, true) {
+        private static final long serialVersionUID = 4267176411845948333L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+          boolean tooBig = size() > size;
+          if (tooBig) {
+            eldestKey = eldest.getKey();
+          }
+          return tooBig;
         }
-        return tooBig;
-      }
-    };
+      };
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void setCacheStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
+  /**
+   * @param evictionListener
+   *          called with the key of each entry this decorator evicts
+   *
+   * @since 3.5.13
+   */
+  public void setEvictionListener(Consumer<Object> evictionListener) {
+    this.evictionListener = evictionListener;
   }
 
   @Override
   public void putObject(Object key, Object value) {
-    delegate.putObject(key, value);
-    cycleKeyList(key);
+    lock.lock();
+    try {
+      delegate.putObject(key, value);
+      cycleKeyList(key);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
   public Object getObject(Object key) {
-    keyMap.get(key); // touch
+    if (lock.tryLock()) {
+      try {
+        keyMap.get(key); // touch
+      } finally {
+        lock.unlock();
+      }
+    }
     return delegate.getObject(key);
   }
 
+  @Override
+  public boolean containsKey(Object key) {
+    return delegate.containsKey(key);
+  }
+
   @Override
   public Object removeObject(Object key) {
     return delegate.removeObject(key);
@@ -80,16 +126,40 @@ public class LruCache implements Cache {
 
   @Override
   public void clear() {
-    delegate.clear();
-    keyMap.clear();
+    lock.lock();
+    try {
+      delegate.clear();
+      keyMap.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry(action);
   }
 
   private void cycleKeyList(Object key) {
     keyMap.put(key, key);
     if (eldestKey != null) {
       delegate.removeObject(eldestKey);
+      stats.recordEviction();
+      notifyEviction(eldestKey);
       eldestKey = null;
     }
   }
 
+  private void notifyEviction(Object key) {
+    Consumer<Object> listener = evictionListener;
+    if (listener != null) {
+      listener.accept(key);
+    }
+  }
+
 }
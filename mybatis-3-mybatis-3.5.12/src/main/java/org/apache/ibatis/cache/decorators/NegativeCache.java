@@ -0,0 +1,207 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
+
+/**
+ * Keeps the empty results apart from the other entries, with their own time to live and size limit.
+ * <p>
+ * Lookups of rows that do not exist, e.g. a {@code selectOne} by a natural key that returns {@code null}, yield an
+ * empty list. Such results are cheap to keep but, when kept along with the other entries, take the room of useful
+ * entries and stay as long as them. This decorator stores them in a bounded side map instead, where they expire
+ * {@code timeToLive} milliseconds after they were put, and the eldest ones are dropped when there are more than
+ * {@code size} of them. A fresh empty list is returned on each hit, so the callers can not alter the cached result.
+ *
+ * @since 3.5.13
+ */
+public class NegativeCache implements ConcurrentCache {
+
+  private final Cache delegate;
+  private final Map<Object, Negative> negatives = new ConcurrentHashMap<>();
+  private final Queue<Negative> evictionQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private volatile long timeToLive;
+  private volatile int size = 1024;
+  private volatile CacheStats stats = new CacheStats();
+
+  public NegativeCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize() + negatives.size();
+  }
+
+  public long getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * @param timeToLive
+   *          the number of milliseconds an empty result is kept after it was put, {@code 0} for no limit
+   */
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  /**
+   * @param size
+   *          the maximum number of empty results kept
+   */
+  public void setSize(int size) {
+    this.size = size;
+  }
+
+  public void setCacheStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (!isEmptyResult(value)) {
+      negatives.remove(key);
+      delegate.putObject(key, value);
+      return;
+    }
+    long ttl = timeToLive;
+    Negative negative = new Negative(key, value instanceof TableDependencyCache.Entry
+        ? (TableDependencyCache.Entry) value : null, ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE);
+    delegate.removeObject(key);
+    negatives.put(key, negative);
+    evictionQueue.offer(negative);
+    queued.incrementAndGet();
+    trim();
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Negative negative = negatives.get(key);
+    if (negative == null) {
+      return delegate.getObject(key);
+    }
+    if (negative.isExpired(System.currentTimeMillis())) {
+      evict(negative);
+      return null;
+    }
+    return negative.newValue();
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Negative negative = negatives.remove(key);
+    Object value = delegate.removeObject(key);
+    return negative != null ? negative.newValue() : value;
+  }
+
+  @Override
+  public void clear() {
+    negatives.clear();
+    evictionQueue.clear();
+    queued.set(0);
+    delegate.clear();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    long now = System.currentTimeMillis();
+    negatives.forEach((key, negative) -> {
+      if (!negative.isExpired(now)) {
+        action.accept(key, negative.newValue());
+      }
+    });
+    delegate.forEachEntry(action);
+  }
+
+  private static boolean isEmptyResult(Object value) {
+    if (value instanceof TableDependencyCache.Entry) {
+      value = ((TableDependencyCache.Entry) value).getValue();
+    }
+    return value instanceof Collection && ((Collection<?>) value).isEmpty();
+  }
+
+  /**
+   * Drops the heads of the queue that were replaced, removed or expired, and the eldest ones while there are too many.
+   */
+  private void trim() {
+    long now = System.currentTimeMillis();
+    Negative head;
+    while ((head = evictionQueue.peek()) != null) {
+      boolean live = negatives.get(head.key) == head;
+      if (live && !head.isExpired(now) && negatives.size() <= size && queued.get() <= size * 2) {
+        return;
+      }
+      if (evictionQueue.remove(head)) {
+        queued.decrementAndGet();
+        if (live) {
+          evict(head);
+        }
+      }
+    }
+  }
+
+  private void evict(Negative negative) {
+    if (negatives.remove(negative.key, negative)) {
+      stats.recordEviction();
+    }
+  }
+
+  private static final class Negative {
+    private final Object key;
+    private final TableDependencyCache.Entry entry;
+    private final long expirationTime;
+
+    Negative(Object key, TableDependencyCache.Entry entry, long expirationTime) {
+      this.key = key;
+      this.entry = entry;
+      this.expirationTime = expirationTime;
+    }
+
+    boolean isExpired(long now) {
+      return now >= expirationTime;
+    }
+
+    Object newValue() {
+      if (entry == null) {
+        return new ArrayList<>();
+      }
+      return new TableDependencyCache.Entry(entry.getTables(), entry.getVersions(), new ArrayList<>());
+    }
+  }
+
+}
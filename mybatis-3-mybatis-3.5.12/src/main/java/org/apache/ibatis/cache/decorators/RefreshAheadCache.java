@@ -0,0 +1,267 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Serves entries older than a soft time to live while they are reloaded in the background (stale while revalidate).
+ * <p>
+ * When an entry loaded more than {@code refreshAfter} milliseconds ago is read, it is still returned, and the statement
+ * that produced it is executed again on a background thread, in its own transaction. The new result replaces the entry
+ * when the query returns, unless the cache was cleared in the meantime. An entry is refreshed by one thread at a time,
+ * and the concurrent misses of the same key share a single load, as with {@link SingleFlightCache}. Entries that must
+ * not be served after some time anyway are bounded by a time to live.
+ *
+ * @since 3.5.13
+ */
+public class RefreshAheadCache extends SingleFlightCache {
+
+  private static final Log log = LogFactory.getLog(RefreshAheadCache.class);
+
+  private static final int SWEEP_BATCH = 8;
+  private static final int REFRESH_QUEUE_SIZE = 1024;
+
+  private final Cache delegate;
+  private final Map<Object, Stamp> stamps = new ConcurrentHashMap<>();
+  private final Queue<Stamp> sweepQueue = new ConcurrentLinkedQueue<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private volatile long refreshAfter;
+  private volatile int refreshThreads = 1;
+  private volatile ThreadPoolExecutor refreshExecutor;
+  private long clears;
+
+  public RefreshAheadCache(Cache delegate) {
+    super(delegate);
+    this.delegate = delegate;
+  }
+
+  public long getRefreshAfter() {
+    return refreshAfter;
+  }
+
+  /**
+   * Sets the soft time to live of the entries.
+   *
+   * @param refreshAfter
+   *          the number of milliseconds after which a read entry is reloaded
+   */
+  public void setRefreshAfter(long refreshAfter) {
+    this.refreshAfter = refreshAfter;
+  }
+
+  /**
+   * Sets the maximum number of threads reloading the entries of this cache. Refreshes are queued when all are busy and
+   * skipped when the queue is full, the entry is then reloaded on a later read.
+   *
+   * @param refreshThreads
+   *          the number of threads
+   */
+  public void setRefreshThreads(int refreshThreads) {
+    this.refreshThreads = refreshThreads;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    Stamp stamp = new Stamp(key, System.currentTimeMillis());
+    delegate.putObject(key, value);
+    stamps.put(key, stamp);
+    sweepQueue.offer(stamp);
+    sweep(stamp.loadTime);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    stamps.remove(key);
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      clears++;
+      stamps.clear();
+      sweepQueue.clear();
+      delegate.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns whether an entry that was just read is older than the soft time to live.
+   *
+   * @param key
+   *          the key of the entry
+   *
+   * @return {@code true} if the entry should be reloaded
+   */
+  public boolean isRefreshDue(Object key) {
+    Stamp stamp = stamps.get(key);
+    // stamps of old entries are swept, a missing stamp means the entry is old too
+    return stamp == null || System.currentTimeMillis() - stamp.loadTime >= refreshAfter;
+  }
+
+  /**
+   * Reloads an entry in the background, unless it is already being reloaded.
+   *
+   * @param key
+   *          the key of the entry
+   * @param loader
+   *          reads the value, in its own transaction, and returns {@code null} when the value must not be cached: the
+   *          entry is removed then
+   */
+  public void refresh(Object key, Loader loader) {
+    long now = System.currentTimeMillis();
+    Stamp stamp = stamps.get(key);
+    if (stamp != null && now - stamp.loadTime < refreshAfter) {
+      // refreshed, or being refreshed, by another thread
+      return;
+    }
+    Stamp claimed = new Stamp(key, now);
+    if (stamp == null ? stamps.putIfAbsent(key, claimed) != null : !stamps.replace(key, stamp, claimed)) {
+      return;
+    }
+    sweepQueue.offer(claimed);
+    long clearsAtStart;
+    lock.lock();
+    try {
+      clearsAtStart = clears;
+    } finally {
+      lock.unlock();
+    }
+    try {
+      getRefreshExecutor().execute(() -> reload(key, loader, claimed, clearsAtStart));
+    } catch (RejectedExecutionException e) {
+      stamps.remove(key, claimed);
+    }
+  }
+
+  private void reload(Object key, Loader loader, Stamp claimed, long clearsAtStart) {
+    Object value;
+    try {
+      value = load(key, loader);
+    } catch (Exception e) {
+      stamps.remove(key, claimed);
+      log.warn("Could not refresh an entry of cache '" + getId() + "'.  Cause: " + e);
+      return;
+    }
+    lock.lock();
+    try {
+      // a clear means the tables were modified while the value was read
+      if (clears != clearsAtStart) {
+        stamps.remove(key, claimed);
+      } else if (value == null) {
+        removeObject(key);
+      } else {
+        putObject(key, value);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stops the threads reloading the entries, and closes the delegate.
+   */
+  @Override
+  public void close() {
+    ThreadPoolExecutor executor;
+    lock.lock();
+    try {
+      executor = refreshExecutor;
+      refreshExecutor = null;
+    } finally {
+      lock.unlock();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    super.close();
+  }
+
+  private ThreadPoolExecutor getRefreshExecutor() {
+    ThreadPoolExecutor executor = refreshExecutor;
+    if (executor == null) {
+      lock.lock();
+      try {
+        executor = refreshExecutor;
+        if (executor == null) {
+          int threads = Math.max(1, refreshThreads);
+          AtomicInteger counter = new AtomicInteger();
+          executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+              new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE), runnable -> {
+                Thread thread = new Thread(runnable, "mybatis-refresh-" + getId() + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              });
+          executor.allowCoreThreadTimeOut(true);
+          refreshExecutor = executor;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return executor;
+  }
+
+  /**
+   * Drops a bounded number of the eldest stamps, which are not needed once they are older than the soft time to live.
+   */
+  private void sweep(long now) {
+    for (int i = 0; i < SWEEP_BATCH; i++) {
+      Stamp stamp = sweepQueue.poll();
+      if (stamp == null) {
+        return;
+      }
+      if (stamps.get(stamp.key) != stamp) {
+        continue;
+      }
+      if (now - stamp.loadTime >= refreshAfter) {
+        stamps.remove(stamp.key, stamp);
+      } else {
+        sweepQueue.offer(stamp);
+        // stamps are queued in load order, the next ones are younger
+        return;
+      }
+    }
+  }
+
+  private static final class Stamp {
+    private final Object key;
+    private final long loadTime;
+
+    Stamp(Object key, long loadTime) {
+      this.key = key;
+      this.loadTime = loadTime;
+    }
+  }
+
+}
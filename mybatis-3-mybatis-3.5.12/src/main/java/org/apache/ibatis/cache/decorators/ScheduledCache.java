@@ -16,17 +16,23 @@
 package org.apache.ibatis.cache.decorators;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.BiConsumer;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ConcurrentCache;
 
 /**
  * @author Clinton Begin
  */
-public class ScheduledCache implements Cache {
+public class ScheduledCache implements ConcurrentCache {
+
+  private static final AtomicLongFieldUpdater<ScheduledCache> LAST_CLEAR_UPDATER = AtomicLongFieldUpdater
+      .newUpdater(ScheduledCache.class, "lastClear");
 
   private final Cache delegate;
-  protected long clearInterval;
-  protected long lastClear;
+  protected volatile long clearInterval;
+  protected volatile long lastClear;
 
   public ScheduledCache(Cache delegate) {
     this.delegate = delegate;
@@ -60,6 +66,11 @@ public class ScheduledCache implements Cache {
     return clearWhenStale() ? null : delegate.getObject(key);
   }
 
+  @Override
+  public boolean containsKey(Object key) {
+    return delegate.containsKey(key);
+  }
+
   @Override
   public Object removeObject(Object key) {
     clearWhenStale();
@@ -72,6 +83,16 @@ public class ScheduledCache implements Cache {
     delegate.clear();
   }
 
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry(action);
+  }
+
   @Override
   public int hashCode() {
     return delegate.hashCode();
@@ -83,8 +104,13 @@ public class ScheduledCache implements Cache {
   }
 
   private boolean clearWhenStale() {
-    if (System.currentTimeMillis() - lastClear > clearInterval) {
-      clear();
+    long last = lastClear;
+    long now = System.currentTimeMillis();
+    if (now - last > clearInterval) {
+      // only the thread that wins the race flushes, the others just report a miss
+      if (LAST_CLEAR_UPDATER.compareAndSet(this, last, now)) {
+        delegate.clear();
+      }
       return true;
     }
     return false;
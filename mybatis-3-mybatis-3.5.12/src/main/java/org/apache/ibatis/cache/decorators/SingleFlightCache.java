@@ -0,0 +1,221 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
+
+/**
+ * Coalesces the concurrent misses of the same key into a single load.
+ * <p>
+ * The first session missing a key loads it and the others missing it in the meantime wait for its result instead of
+ * querying the database too. Unlike {@link BlockingCache}, nothing is locked until the transaction ends: the waiting
+ * sessions are released as soon as the query returns, and the loaded value still reaches the cache only when the
+ * loading session commits. When the load fails, one of the waiting sessions loads the key again; when a wait times out,
+ * the waiting session loads the key by itself.
+ * <p>
+ * When a serializer is set (read-write caches), the waiting sessions receive copies of the loaded value. When the
+ * value cannot be serialized, they are released at once and load the key by themselves.
+ *
+ * @since 3.5.13
+ */
+public class SingleFlightCache implements ConcurrentCache {
+
+  private static final Object FAILED = new Object();
+  private static final Object TIMED_OUT = new Object();
+  private static final Object NOT_SHARED = new Object();
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+  private volatile long loadTimeout;
+  private volatile CacheSerializer serializer;
+
+  public SingleFlightCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return delegate.getStats();
+  }
+
+  /**
+   * Sets how long a session waits for the load of another session, {@code 0} meaning no limit.
+   *
+   * @param loadTimeout
+   *          the timeout, in milliseconds
+   */
+  public void setLoadTimeout(long loadTimeout) {
+    this.loadTimeout = loadTimeout;
+  }
+
+  public long getLoadTimeout() {
+    return loadTimeout;
+  }
+
+  public void setCacheSerializer(CacheSerializer serializer) {
+    this.serializer = serializer;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry(action);
+  }
+
+  /**
+   * Loads a missing value, or waits for the load of the same key by another session.
+   *
+   * @param key
+   *          the key that missed
+   * @param loader
+   *          reads the value
+   *
+   * @return the loaded value, which is not added to the cache
+   *
+   * @throws SQLException
+   *           if the loader fails
+   */
+  public Object load(Object key, Loader loader) throws SQLException {
+    while (true) {
+      CompletableFuture<Object> flight = new CompletableFuture<>();
+      CompletableFuture<Object> inFlight = flights.putIfAbsent(key, flight);
+      if (inFlight == null) {
+        return lead(key, flight, loader);
+      }
+      Object shared = await(key, inFlight);
+      if (shared == TIMED_OUT || shared == NOT_SHARED) {
+        return loader.load();
+      }
+      if (shared != FAILED) {
+        CacheStats stats = getStats();
+        if (stats != null) {
+          stats.recordCoalesced();
+        }
+        CacheSerializer copier = serializer;
+        return copier == null ? shared : copier.deserialize((byte[]) shared);
+      }
+    }
+  }
+
+  private Object lead(Object key, CompletableFuture<Object> flight, Loader loader) throws SQLException {
+    Object shared = FAILED;
+    try {
+      Object value = loader.load();
+      shared = share(value);
+      return value;
+    } finally {
+      flights.remove(key, flight);
+      flight.complete(shared);
+    }
+  }
+
+  private Object share(Object value) {
+    if (value == null) {
+      // not a result, e.g. a refresh that must not be cached
+      return NOT_SHARED;
+    }
+    CacheSerializer copier = serializer;
+    if (copier == null) {
+      return value;
+    }
+    try {
+      return copier.serialize(value);
+    } catch (RuntimeException e) {
+      // the loaded value is still returned to the loading session, the waiting ones load their own copy
+      return NOT_SHARED;
+    }
+  }
+
+  private Object await(Object key, CompletableFuture<Object> flight) {
+    try {
+      long timeout = loadTimeout;
+      return timeout > 0 ? flight.get(timeout, TimeUnit.MILLISECONDS) : flight.get();
+    } catch (TimeoutException e) {
+      return TIMED_OUT;
+    } catch (ExecutionException e) {
+      return FAILED;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheException("Got interrupted while waiting for the load of key " + key + " at the cache " + getId(),
+          e);
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /**
+   * Reads a missing value. A {@code null} value is not shared, the waiting sessions then load the key by themselves.
+   */
+  @FunctionalInterface
+  public interface Loader {
+    Object load() throws SQLException;
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ConcurrentCache;
+import org.apache.ibatis.cache.TableVersions;
+
+/**
+ * Drops the entries read from tables that were modified since the entries were read.
+ * <p>
+ * The values are stored as {@link Entry} instances, which record the versions of the tables the value was read from.
+ * Any other value is stored and returned as is. A stale entry is reported as missing, so that it is reloaded.
+ *
+ * @since 3.5.13
+ *
+ * @see TableVersions
+ */
+public class TableDependencyCache implements ConcurrentCache {
+
+  private final Cache delegate;
+  private volatile TableVersions tableVersions = new TableVersions();
+
+  public TableDependencyCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  public void setTableVersions(TableVersions tableVersions) {
+    this.tableVersions = tableVersions;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (!(value instanceof Entry)) {
+      return value;
+    }
+    Entry entry = (Entry) value;
+    if (!tableVersions.isCurrent(entry.getTables(), entry.getVersions())) {
+      delegate.removeObject(key);
+      return null;
+    }
+    return entry.getValue();
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  /**
+   * Passes the current entries as {@link Entry} instances, so that they are still checked once put back.
+   */
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry((key, value) -> {
+      if (!(value instanceof Entry)
+          || tableVersions.isCurrent(((Entry) value).getTables(), ((Entry) value).getVersions())) {
+        action.accept(key, value);
+      }
+    });
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /**
+   * A cached value with the versions of the tables it was read from.
+   */
+  public static class Entry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String[] tables;
+    private long[] versions;
+    private Object value;
+
+    public Entry() {
+    }
+
+    public Entry(String[] tables, long[] versions, Object value) {
+      this.tables = tables;
+      this.versions = versions;
+      this.value = value;
+    }
+
+    public String[] getTables() {
+      return tables;
+    }
+
+    public void setTables(String[] tables) {
+      this.tables = tables;
+    }
+
+    public long[] getVersions() {
+      return versions;
+    }
+
+    public void setVersions(long[] versions) {
+      this.versions = versions;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+
+    public void setValue(Object value) {
+      this.value = value;
+    }
+  }
+
+}
@@ -0,0 +1,353 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
+
+/**
+ * W-TinyLFU (window tiny least frequently used) cache decorator.
+ * <p>
+ * New keys enter a small admission window. When the window overflows, its eldest key competes with the eviction
+ * victim of the main region and is only admitted when it has been requested more often, according to a count-min
+ * sketch of the recent access frequencies. This keeps the hot set in the cache when scan-like queries go through it.
+ * <p>
+ * Both regions use a CLOCK (second chance) policy, so a read only records the frequency of the key and flags its entry
+ * as referenced. Reads never reorder a shared list nor take a lock, writes are serialized by an internal lock.
+ *
+ * @since 3.5.13
+ */
+public class TinyLfuCache implements ConcurrentCache {
+
+  private static final int WINDOW = 0;
+  private static final int MAIN = 1;
+
+  private final Cache delegate;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<Object, Node> nodes = new ConcurrentHashMap<>();
+  private final Deque<Node> window = new ArrayDeque<>();
+  private final Deque<Node> main = new ArrayDeque<>();
+  private volatile FrequencySketch sketch;
+  private int windowSize;
+  private int mainSize;
+  private int windowMaximum;
+  private int mainMaximum;
+  private volatile CacheStats stats = new CacheStats();
+  private volatile Consumer<Object> evictionListener;
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    setSize(1024);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void setSize(int size) {
+    lock.lock();
+    try {
+      int maximum = Math.max(size, 2);
+      windowMaximum = Math.max(1, maximum / 100);
+      mainMaximum = maximum - windowMaximum;
+      sketch = new FrequencySketch(maximum);
+      drainWindow();
+      Node victim;
+      while (mainSize > mainMaximum && (victim = selectVictim(main)) != null) {
+        mainSize--;
+        discard(victim);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void setCacheStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
+  /**
+   * @param evictionListener
+   *          called with the key of each entry this decorator evicts
+   *
+   * @since 3.5.13
+   */
+  public void setEvictionListener(Consumer<Object> evictionListener) {
+    this.evictionListener = evictionListener;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    lock.lock();
+    try {
+      delegate.putObject(key, value);
+      sketch.increment(key);
+      Node node = nodes.get(key);
+      if (node != null) {
+        node.referenced = true;
+        return;
+      }
+      node = new Node(key);
+      nodes.put(key, node);
+      window.addLast(node);
+      windowSize++;
+      drainWindow();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    sketch.increment(key);
+    Node node = nodes.get(key);
+    if (node != null && !node.referenced) {
+      node.referenced = true;
+    }
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return delegate.containsKey(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      Node node = nodes.remove(key);
+      if (node != null) {
+        unlink(node);
+      }
+      return delegate.removeObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      delegate.clear();
+      nodes.clear();
+      window.clear();
+      main.clear();
+      windowSize = 0;
+      mainSize = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry(action);
+  }
+
+  private void drainWindow() {
+    while (windowSize > windowMaximum) {
+      if (!evict()) {
+        break;
+      }
+    }
+  }
+
+  private boolean evict() {
+    Node candidate = selectVictim(window);
+    if (candidate == null) {
+      return false;
+    }
+    windowSize--;
+    if (mainSize < mainMaximum) {
+      candidate.queue = MAIN;
+      main.addLast(candidate);
+      mainSize++;
+      return true;
+    }
+    Node victim = selectVictim(main);
+    if (victim == null) {
+      discard(candidate);
+      return true;
+    }
+    if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+      mainSize--;
+      discard(victim);
+      candidate.queue = MAIN;
+      main.addLast(candidate);
+      mainSize++;
+    } else {
+      // the victim stays the next one to compete for its place
+      main.addFirst(victim);
+      discard(candidate);
+    }
+    return true;
+  }
+
+  /**
+   * Polls the first entry that was not referenced since the hand last passed over it, giving a second chance to the
+   * others. Entries removed on demand are dropped lazily here. The hand goes around at most once, so concurrent reads
+   * cannot keep it spinning.
+   */
+  private Node selectVictim(Deque<Node> queue) {
+    int chances = queue.size();
+    Node node;
+    while ((node = queue.pollFirst()) != null) {
+      if (node.removed) {
+        continue;
+      }
+      if (node.referenced && chances-- > 0) {
+        node.referenced = false;
+        queue.addLast(node);
+        continue;
+      }
+      return node;
+    }
+    return null;
+  }
+
+  private void discard(Node node) {
+    node.removed = true;
+    nodes.remove(node.key, node);
+    delegate.removeObject(node.key);
+    stats.recordEviction();
+    notifyEviction(node.key);
+  }
+
+  private void unlink(Node node) {
+    node.removed = true;
+    if (node.queue == WINDOW) {
+      windowSize--;
+    } else {
+      mainSize--;
+    }
+  }
+
+  private static final class Node {
+    private final Object key;
+    private int queue = WINDOW;
+    private boolean removed;
+    private volatile boolean referenced;
+
+    Node(Object key) {
+      this.key = key;
+    }
+  }
+
+  /**
+   * A count-min sketch with 4 hash functions over 16 byte-sized counters per cache entry, saturating at 15. All the
+   * counters are halved once the number of recorded accesses reaches ten times the cache size, so that old popularity
+   * fades away.
+   * <p>
+   * Concurrent increments are not synchronized: a lost update only makes the estimated frequency slightly lower.
+   */
+  static final class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L };
+    private static final int MAXIMUM_FREQUENCY = 15;
+
+    private final byte[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+      int length = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 5;
+      this.table = new byte[length];
+      this.mask = length - 1;
+      this.sampleSize = 10 * maximumSize;
+    }
+
+    int frequency(Object key) {
+      return frequency(spread(key));
+    }
+
+    private int frequency(int hash) {
+      int frequency = MAXIMUM_FREQUENCY;
+      for (int i = 0; i < SEEDS.length; i++) {
+        frequency = Math.min(frequency, table[indexOf(hash, i)]);
+      }
+      return frequency;
+    }
+
+    void increment(Object key) {
+      int hash = spread(key);
+      int minimum = frequency(hash);
+      if (minimum == MAXIMUM_FREQUENCY) {
+        return;
+      }
+      // conservative update: only the counters holding the estimate are incremented
+      for (int i = 0; i < SEEDS.length; i++) {
+        int index = indexOf(hash, i);
+        if (table[index] == minimum) {
+          table[index] = (byte) (minimum + 1);
+        }
+      }
+      if (++additions >= sampleSize) {
+        reset();
+      }
+    }
+
+    private void reset() {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (byte) (table[i] >>> 1);
+      }
+      additions = additions >>> 1;
+    }
+
+    private int indexOf(int hash, int row) {
+      long h = (hash + SEEDS[row]) * SEEDS[row];
+      h += h >>> 32;
+      return (int) h & mask;
+    }
+
+    private static int spread(Object key) {
+      int h = key == null ? 0 : key.hashCode();
+      h = ((h >>> 16) ^ h) * 0x45d9f3b;
+      return (h >>> 16) ^ h;
+    }
+  }
+
+  private void notifyEviction(Object key) {
+    Consumer<Object> listener = evictionListener;
+    if (listener != null) {
+      listener.accept(key);
+    }
+  }
+
+}
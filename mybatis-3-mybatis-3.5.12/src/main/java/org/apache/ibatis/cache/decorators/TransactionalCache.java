@@ -19,6 +19,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.logging.Log;
@@ -95,6 +96,20 @@ public class TransactionalCache implements Cache {
     entriesToAddOnCommit.clear();
   }
 
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry(action);
+  }
+
+  /**
+   * Returns whether the cache is cleared when the transaction is committed.
+   *
+   * @since 3.5.13
+   */
+  public boolean isClearOnCommit() {
+    return clearOnCommit;
+  }
+
   public void commit() {
     if (clearOnCommit) {
       delegate.clear();
@@ -0,0 +1,263 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheMemoryBudget;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.ConcurrentCache;
+import org.apache.ibatis.cache.impl.RowCountCacheWeigher;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Memory bounded cache decorator.
+ * <p>
+ * Each entry is weighed by a {@link CacheWeigher} when it is added, and the least recently used entries are evicted to
+ * keep the total weight under {@code maxBytes}. An entry heavier than {@code maxBytes} is not cached at all. In a
+ * read-write cache this decorator sits below the serialization, so the default weigher sees the serialized bytes.
+ * <p>
+ * When a {@link CacheMemoryBudget} shared by several caches is set, this cache also evicts its own entries while the
+ * shared budget is exceeded, but never the entry just written: when it holds nothing else, the other caches catch up
+ * on their next write.
+ * <p>
+ * Like {@link LruCache}, reads only try the internal lock to record the access, so they never block.
+ *
+ * @since 3.5.13
+ */
+public class WeightedCache implements ConcurrentCache {
+
+  private final Cache delegate;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<Object, Long> weights = new LinkedHashMap<>(16, .75F, true);
+  private final RowCountCacheWeigher defaultWeigher = new RowCountCacheWeigher();
+  private volatile CacheWeigher weigher = defaultWeigher;
+  private volatile CacheMemoryBudget memoryBudget;
+  private long maxBytes = 64L * 1024 * 1024;
+  private int size = Integer.MAX_VALUE;
+  private long weightedSize;
+  private volatile CacheStats stats = new CacheStats();
+  private volatile Consumer<Object> evictionListener;
+
+  public WeightedCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Sets an optional upper bound of entries, on top of the memory bound.
+   *
+   * @param size
+   *          the maximum number of entries
+   */
+  public void setSize(int size) {
+    this.size = size;
+  }
+
+  /**
+   * Sets the estimated footprint of one row used by the default weigher.
+   *
+   * @param estimatedRowBytes
+   *          the number of bytes of one row
+   */
+  public void setEstimatedRowBytes(long estimatedRowBytes) {
+    defaultWeigher.setRowBytes(estimatedRowBytes);
+  }
+
+  /**
+   * Sets the {@link CacheWeigher} by its fully qualified class name or alias.
+   *
+   * @param weigher
+   *          the class name of the weigher
+   */
+  public void setWeigher(String weigher) {
+    try {
+      setCacheWeigher((CacheWeigher) Resources.classForName(weigher).getDeclaredConstructor().newInstance());
+    } catch (Exception e) {
+      throw new CacheException("Error creating cache weigher '" + weigher + "'.  Cause: " + e, e);
+    }
+  }
+
+  public void setCacheWeigher(CacheWeigher weigher) {
+    this.weigher = weigher;
+  }
+
+  public void setMemoryBudget(CacheMemoryBudget memoryBudget) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  public void setCacheStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
+  /**
+   * @param evictionListener
+   *          called with the key of each entry this decorator evicts
+   *
+   * @since 3.5.13
+   */
+  public void setEvictionListener(Consumer<Object> evictionListener) {
+    this.evictionListener = evictionListener;
+  }
+
+  /**
+   * @return the estimated number of bytes held by this cache
+   */
+  public long getWeightedSize() {
+    lock.lock();
+    try {
+      return weightedSize;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long weight = Math.max(0, weigher.weigh(key, value));
+    lock.lock();
+    try {
+      if (weight > maxBytes) {
+        // an entry that can never fit would flush the whole cache for nothing
+        Long previous = weights.remove(key);
+        if (previous != null) {
+          adjust(-previous);
+          delegate.removeObject(key);
+        }
+        return;
+      }
+      delegate.putObject(key, value);
+      Long previous = weights.put(key, weight);
+      adjust(previous == null ? weight : weight - previous);
+      evictWhileOverweight();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    if (lock.tryLock()) {
+      try {
+        weights.get(key); // touch
+      } finally {
+        lock.unlock();
+      }
+    }
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return delegate.containsKey(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      Long weight = weights.remove(key);
+      if (weight != null) {
+        adjust(-weight);
+      }
+      return delegate.removeObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      delegate.clear();
+      weights.clear();
+      adjust(-weightedSize);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    delegate.forEachEntry(action);
+  }
+
+  private void adjust(long delta) {
+    weightedSize += delta;
+    stats.recordWeight(delta);
+    CacheMemoryBudget budget = memoryBudget;
+    if (budget != null) {
+      budget.add(delta);
+    }
+  }
+
+  private void evictWhileOverweight() {
+    // the entry just written is the most recently used one, so it is the last to be evicted
+    Iterator<Map.Entry<Object, Long>> iterator = weights.entrySet().iterator();
+    while (iterator.hasNext() && (isOverweight() || (weights.size() > 1 && isOverBudget()))) {
+      Map.Entry<Object, Long> eldest = iterator.next();
+      iterator.remove();
+      delegate.removeObject(eldest.getKey());
+      adjust(-eldest.getValue());
+      stats.recordEviction();
+      notifyEviction(eldest.getKey());
+    }
+  }
+
+  private boolean isOverweight() {
+    return weightedSize > maxBytes || weights.size() > size;
+  }
+
+  private boolean isOverBudget() {
+    CacheMemoryBudget budget = memoryBudget;
+    return budget != null && budget.isExceeded();
+  }
+
+  private void notifyEviction(Object key) {
+    Consumer<Object> listener = evictionListener;
+    if (listener != null) {
+      listener.accept(key);
+    }
+  }
+
+}
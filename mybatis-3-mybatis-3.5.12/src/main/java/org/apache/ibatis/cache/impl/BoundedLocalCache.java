@@ -0,0 +1,129 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.apache.ibatis.cache.CacheWeigher;
+
+/**
+ * A session local cache bounded by a number of entries and/or an estimated number of bytes.
+ * <p>
+ * The entries are kept in access order, and {@link #trim()} evicts the least recently used ones until both bounds are
+ * met. Nothing is evicted on put: while a query is running, its nested queries and their execution placeholders must
+ * stay in the cache, so the executor trims the cache once the outermost query is complete. Like
+ * {@link PerpetualCache}, this cache is not thread safe.
+ *
+ * @since 3.5.13
+ */
+public class BoundedLocalCache extends PerpetualCache {
+
+  private final Map<Object, Entry> entries = new LinkedHashMap<>(16, .75F, true);
+  private final CacheWeigher weigher;
+  private final int size;
+  private final long maxBytes;
+  private long weightedSize;
+
+  /**
+   * @param id
+   *          the cache id
+   * @param size
+   *          the maximum number of entries, {@code 0} or less for no limit
+   * @param maxBytes
+   *          the maximum estimated number of bytes, {@code 0} or less for no limit
+   */
+  public BoundedLocalCache(String id, int size, long maxBytes) {
+    this(id, size, maxBytes, new RowCountCacheWeigher());
+  }
+
+  public BoundedLocalCache(String id, int size, long maxBytes, CacheWeigher weigher) {
+    super(id);
+    this.size = size > 0 ? size : Integer.MAX_VALUE;
+    this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+    this.weigher = weigher;
+  }
+
+  @Override
+  public int getSize() {
+    return entries.size();
+  }
+
+  /**
+   * @return the estimated number of bytes held by this cache, {@code 0} when it is not bounded by bytes
+   */
+  public long getWeightedSize() {
+    return weightedSize;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long weight = maxBytes == Long.MAX_VALUE ? 0 : Math.max(0, weigher.weigh(key, value));
+    Entry previous = entries.put(key, new Entry(value, weight));
+    weightedSize += previous == null ? weight : weight - previous.weight;
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Entry entry = entries.get(key);
+    return entry == null ? null : entry.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Entry entry = entries.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    weightedSize -= entry.weight;
+    return entry.value;
+  }
+
+  @Override
+  public void clear() {
+    entries.clear();
+    weightedSize = 0;
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    entries.forEach((key, entry) -> action.accept(key, entry.value));
+  }
+
+  /**
+   * Evicts the least recently used entries until the cache is within its bounds.
+   */
+  public void trim() {
+    Iterator<Entry> eldest = entries.values().iterator();
+    while ((entries.size() > size || weightedSize > maxBytes) && eldest.hasNext()) {
+      weightedSize -= eldest.next().weight;
+      eldest.remove();
+    }
+  }
+
+  private static final class Entry {
+    private final Object value;
+    private final long weight;
+
+    Entry(Object value, long weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+}
@@ -0,0 +1,727 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.Externalizable;
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.io.SerialFilterChecker;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.util.MapUtil;
+
+/**
+ * A compact {@link CacheSerializer} for result objects.
+ * <p>
+ * Result objects are written as their class followed by the values of their properties, in an order derived from the
+ * {@link Reflector} of the class, so that neither property names nor stream metadata are written. JDK value types,
+ * enums, object arrays and the common collections are written in a compact form as well. Shared references and cycles
+ * are preserved.
+ * <p>
+ * A class is written property by property when it is {@link Serializable}, has a default constructor, does not
+ * customize its serialization ({@code writeObject}, {@code writeReplace}, ...) and each of its non transient fields can
+ * be read and written through a property. Other values, lazy loading proxies included, fall back to Java
+ * serialization. The classes read are checked against the JEP-290 serial filter, see {@link SerialFilterChecker}.
+ *
+ * @since 3.5.13
+ */
+public class CompactCacheSerializer implements CacheSerializer {
+
+  private static final byte NULL = 0;
+  private static final byte REFERENCE = 1;
+  private static final byte STRING = 2;
+  private static final byte INTEGER = 3;
+  private static final byte LONG = 4;
+  private static final byte SHORT = 5;
+  private static final byte BYTE = 6;
+  private static final byte BOOLEAN = 7;
+  private static final byte CHARACTER = 8;
+  private static final byte FLOAT = 9;
+  private static final byte DOUBLE = 10;
+  private static final byte BIG_DECIMAL = 11;
+  private static final byte BIG_INTEGER = 12;
+  private static final byte DATE = 13;
+  private static final byte SQL_DATE = 14;
+  private static final byte SQL_TIME = 15;
+  private static final byte SQL_TIMESTAMP = 16;
+  private static final byte LOCAL_DATE = 17;
+  private static final byte LOCAL_TIME = 18;
+  private static final byte LOCAL_DATE_TIME = 19;
+  private static final byte INSTANT = 20;
+  private static final byte BYTES = 21;
+  private static final byte ENUM = 22;
+  private static final byte ARRAY = 23;
+  private static final byte COLLECTION = 24;
+  private static final byte MAP = 25;
+  private static final byte BEAN = 26;
+  private static final byte JAVA = 27;
+
+  private static final byte NEW_CLASS = 0;
+  private static final byte CLASS_REFERENCE = 1;
+
+  private static final List<String> SERIALIZATION_METHODS = Arrays.asList("writeObject", "readObject",
+      "readObjectNoData", "writeReplace", "readResolve");
+
+  private final ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+  private final Map<Class<?>, BeanType> beanTypes = new ConcurrentHashMap<>();
+  private final JavaCacheSerializer javaSerializer = new JavaCacheSerializer();
+
+  @Override
+  public byte[] serialize(Object value) {
+    try {
+      Output out = new Output();
+      new Writer(out).writeValue(value);
+      return out.toByteArray();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] bytes) {
+    try {
+      return new Reader(new Input(bytes)).readValue();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Returns how to write a class property by property, or {@code null} when the class must be written with Java
+   * serialization.
+   */
+  private BeanType beanType(Class<?> type) {
+    BeanType beanType = MapUtil.computeIfAbsent(beanTypes, type, k -> {
+      String[] properties = isBean(k) ? findProperties(k) : null;
+      return properties == null ? BeanType.NONE : new BeanType(reflectorFactory.findForClass(k), properties);
+    });
+    return beanType == BeanType.NONE ? null : beanType;
+  }
+
+  private boolean isBean(Class<?> type) {
+    if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)
+        || type.isAnonymousClass() || type.isLocalClass()
+        || type.isMemberClass() && !Modifier.isStatic(type.getModifiers())) {
+      return false;
+    }
+    if (!reflectorFactory.findForClass(type).hasDefaultConstructor()) {
+      return false;
+    }
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Method method : current.getDeclaredMethods()) {
+        if (!Modifier.isStatic(method.getModifiers()) && SERIALIZATION_METHODS.contains(method.getName())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the properties to write, or {@code null} when a field of the class cannot be both read and written through
+   * a property of the same name, as the field would be lost.
+   */
+  private String[] findProperties(Class<?> type) {
+    Reflector reflector = reflectorFactory.findForClass(type);
+    List<String> properties = new ArrayList<>();
+    for (String property : reflector.getGetablePropertyNames()) {
+      if (reflector.hasSetter(property) && !isTransient(type, property)) {
+        properties.add(property);
+      }
+    }
+    Set<String> fields = new HashSet<>();
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+          continue;
+        }
+        // a hidden field of a superclass is not reachable through the property
+        if (!fields.add(field.getName()) || !properties.contains(field.getName())) {
+          return null;
+        }
+      }
+    }
+    String[] result = properties.toArray(new String[0]);
+    // the order of the reflector is not stable between JVMs
+    Arrays.sort(result);
+    return result;
+  }
+
+  private static boolean isTransient(Class<?> type, String property) {
+    for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        if (field.getName().equals(property)) {
+          return Modifier.isTransient(field.getModifiers());
+        }
+      }
+    }
+    return false;
+  }
+
+  private static long zigZag(long value) {
+    return value << 1 ^ value >> 63;
+  }
+
+  private static long unZigZag(long value) {
+    return value >>> 1 ^ -(value & 1);
+  }
+
+  private static boolean isCopyableCollection(Class<?> type) {
+    return type == ArrayList.class || type == LinkedList.class || type == HashSet.class
+        || type == LinkedHashSet.class;
+  }
+
+  private static boolean isCopyableMap(Class<?> type) {
+    return type == HashMap.class || type == LinkedHashMap.class;
+  }
+
+  private static final class BeanType {
+    static final BeanType NONE = new BeanType(null, null);
+
+    private final Constructor<?> constructor;
+    private final String[] properties;
+    private final Invoker[] getters;
+    private final Invoker[] setters;
+
+    BeanType(Reflector reflector, String[] properties) {
+      this.constructor = reflector == null ? null : reflector.getDefaultConstructor();
+      this.properties = properties;
+      int count = properties == null ? 0 : properties.length;
+      this.getters = new Invoker[count];
+      this.setters = new Invoker[count];
+      for (int i = 0; i < count; i++) {
+        getters[i] = reflector.getGetInvoker(properties[i]);
+        setters[i] = reflector.getSetInvoker(properties[i]);
+      }
+    }
+  }
+
+  private final class Writer {
+    private final Output out;
+    private final Map<Object, Integer> objects = new IdentityHashMap<>();
+    private final Map<Class<?>, Integer> classes = new HashMap<>();
+
+    Writer(Output out) {
+      this.out = out;
+    }
+
+    void writeValue(Object value) {
+      if (value == null) {
+        out.writeByte(NULL);
+        return;
+      }
+      Class<?> type = value.getClass();
+      if (type == String.class) {
+        if (!writeReference(value)) {
+          out.writeByte(STRING);
+          writeString((String) value);
+        }
+      } else if (type == Integer.class) {
+        out.writeByte(INTEGER);
+        writeVarLong(zigZag((Integer) value));
+      } else if (type == Long.class) {
+        out.writeByte(LONG);
+        writeVarLong(zigZag((Long) value));
+      } else if (type == Short.class) {
+        out.writeByte(SHORT);
+        out.writeShort((Short) value);
+      } else if (type == Byte.class) {
+        out.writeByte(BYTE);
+        out.writeByte((Byte) value);
+      } else if (type == Boolean.class) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      } else if (type == Character.class) {
+        out.writeByte(CHARACTER);
+        out.writeChar((Character) value);
+      } else if (type == Float.class) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (type == Double.class) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (type == BigDecimal.class) {
+        BigDecimal decimal = (BigDecimal) value;
+        out.writeByte(BIG_DECIMAL);
+        writeVarLong(zigZag(decimal.scale()));
+        writeBytes(decimal.unscaledValue().toByteArray());
+      } else if (type == BigInteger.class) {
+        out.writeByte(BIG_INTEGER);
+        writeBytes(((BigInteger) value).toByteArray());
+      } else if (type == Date.class) {
+        out.writeByte(DATE);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == java.sql.Date.class) {
+        out.writeByte(SQL_DATE);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == java.sql.Time.class) {
+        out.writeByte(SQL_TIME);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == Timestamp.class) {
+        Timestamp timestamp = (Timestamp) value;
+        out.writeByte(SQL_TIMESTAMP);
+        out.writeLong(timestamp.getTime());
+        out.writeInt(timestamp.getNanos());
+      } else if (type == LocalDate.class) {
+        out.writeByte(LOCAL_DATE);
+        out.writeLong(((LocalDate) value).toEpochDay());
+      } else if (type == LocalTime.class) {
+        out.writeByte(LOCAL_TIME);
+        out.writeLong(((LocalTime) value).toNanoOfDay());
+      } else if (type == LocalDateTime.class) {
+        LocalDateTime dateTime = (LocalDateTime) value;
+        out.writeByte(LOCAL_DATE_TIME);
+        out.writeLong(dateTime.toLocalDate().toEpochDay());
+        out.writeLong(dateTime.toLocalTime().toNanoOfDay());
+      } else if (type == Instant.class) {
+        Instant instant = (Instant) value;
+        out.writeByte(INSTANT);
+        out.writeLong(instant.getEpochSecond());
+        out.writeInt(instant.getNano());
+      } else if (type == byte[].class) {
+        out.writeByte(BYTES);
+        writeBytes((byte[]) value);
+      } else if (value instanceof Enum) {
+        out.writeByte(ENUM);
+        writeClass(((Enum<?>) value).getDeclaringClass());
+        writeVarInt(((Enum<?>) value).ordinal());
+      } else if (!writeReference(value)) {
+        writeObject(type, value);
+      }
+    }
+
+    private void writeObject(Class<?> type, Object value) {
+      BeanType beanType;
+      if (type.isArray() && !type.getComponentType().isPrimitive()) {
+        Object[] array = (Object[]) value;
+        out.writeByte(ARRAY);
+        writeClass(type.getComponentType());
+        writeVarInt(array.length);
+        for (Object element : array) {
+          writeValue(element);
+        }
+      } else if (isCopyableCollection(type)) {
+        Collection<?> collection = (Collection<?>) value;
+        out.writeByte(COLLECTION);
+        writeClass(type);
+        writeVarInt(collection.size());
+        for (Object element : collection) {
+          writeValue(element);
+        }
+      } else if (isCopyableMap(type)) {
+        Map<?, ?> map = (Map<?, ?>) value;
+        out.writeByte(MAP);
+        writeClass(type);
+        writeVarInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          writeValue(entry.getKey());
+          writeValue(entry.getValue());
+        }
+      } else if ((beanType = beanType(type)) != null) {
+        out.writeByte(BEAN);
+        writeClass(type);
+        for (int i = 0; i < beanType.getters.length; i++) {
+          try {
+            writeValue(beanType.getters[i].invoke(value, null));
+          } catch (ReflectiveOperationException e) {
+            throw new CacheException(
+                "Error reading property '" + beanType.properties[i] + "' of " + type + ".  Cause: " + e, e);
+          }
+        }
+      } else {
+        out.writeByte(JAVA);
+        writeBytes(javaSerializer.serialize(value));
+      }
+    }
+
+    private boolean writeReference(Object value) {
+      Integer handle = objects.get(value);
+      if (handle != null) {
+        out.writeByte(REFERENCE);
+        writeVarInt(handle);
+        return true;
+      }
+      objects.put(value, objects.size());
+      return false;
+    }
+
+    private void writeClass(Class<?> type) {
+      Integer handle = classes.get(type);
+      if (handle != null) {
+        out.writeByte(CLASS_REFERENCE);
+        writeVarInt(handle);
+      } else {
+        classes.put(type, classes.size());
+        out.writeByte(NEW_CLASS);
+        writeString(type.getName());
+      }
+    }
+
+    private void writeString(String value) {
+      writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(byte[] value) {
+      writeVarInt(value.length);
+      out.write(value);
+    }
+
+    private void writeVarInt(int value) {
+      writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        out.writeByte((int) (value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      out.writeByte((int) value);
+    }
+  }
+
+  private final class Reader {
+    private final Input in;
+    private final List<Object> objects = new ArrayList<>();
+    private final List<Class<?>> classes = new ArrayList<>();
+
+    Reader(Input in) {
+      this.in = in;
+    }
+
+    Object readValue() throws Exception {
+      byte tag = in.readByte();
+      switch (tag) {
+        case NULL:
+          return null;
+        case REFERENCE:
+          return objects.get(readVarInt());
+        case STRING:
+          String string = readString();
+          objects.add(string);
+          return string;
+        case INTEGER:
+          return (int) unZigZag(readVarLong());
+        case LONG:
+          return unZigZag(readVarLong());
+        case SHORT:
+          return in.readShort();
+        case BYTE:
+          return in.readByte();
+        case BOOLEAN:
+          return in.readBoolean();
+        case CHARACTER:
+          return in.readChar();
+        case FLOAT:
+          return in.readFloat();
+        case DOUBLE:
+          return in.readDouble();
+        case BIG_DECIMAL:
+          int scale = (int) unZigZag(readVarLong());
+          return new BigDecimal(new BigInteger(readBytes()), scale);
+        case BIG_INTEGER:
+          return new BigInteger(readBytes());
+        case DATE:
+          return new Date(in.readLong());
+        case SQL_DATE:
+          return new java.sql.Date(in.readLong());
+        case SQL_TIME:
+          return new java.sql.Time(in.readLong());
+        case SQL_TIMESTAMP:
+          Timestamp timestamp = new Timestamp(in.readLong());
+          timestamp.setNanos(in.readInt());
+          return timestamp;
+        case LOCAL_DATE:
+          return LocalDate.ofEpochDay(in.readLong());
+        case LOCAL_TIME:
+          return LocalTime.ofNanoOfDay(in.readLong());
+        case LOCAL_DATE_TIME:
+          LocalDate date = LocalDate.ofEpochDay(in.readLong());
+          return LocalDateTime.of(date, LocalTime.ofNanoOfDay(in.readLong()));
+        case INSTANT:
+          long seconds = in.readLong();
+          return Instant.ofEpochSecond(seconds, in.readInt());
+        case BYTES:
+          return readBytes();
+        case ENUM:
+          return readClass().getEnumConstants()[readVarInt()];
+        case ARRAY:
+          return readArray();
+        case COLLECTION:
+          return readCollection();
+        case MAP:
+          return readMap();
+        case BEAN:
+          return readBean();
+        case JAVA:
+          Object value = javaSerializer.deserialize(readBytes());
+          objects.add(value);
+          return value;
+        default:
+          throw new CacheException("Unknown tag " + tag + " in serialized object.");
+      }
+    }
+
+    private Object readArray() throws Exception {
+      Class<?> componentType = readClass();
+      Object[] array = (Object[]) Array.newInstance(componentType, readVarInt());
+      objects.add(array);
+      for (int i = 0; i < array.length; i++) {
+        array[i] = readValue();
+      }
+      return array;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readCollection() throws Exception {
+      Class<?> type = readClass();
+      if (!isCopyableCollection(type)) {
+        throw new CacheException("Unexpected collection type " + type + " in serialized object.");
+      }
+      Collection<Object> collection = (Collection<Object>) type.getDeclaredConstructor().newInstance();
+      objects.add(collection);
+      for (int size = readVarInt(); size > 0; size--) {
+        collection.add(readValue());
+      }
+      return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readMap() throws Exception {
+      Class<?> type = readClass();
+      if (!isCopyableMap(type)) {
+        throw new CacheException("Unexpected map type " + type + " in serialized object.");
+      }
+      Map<Object, Object> map = (Map<Object, Object>) type.getDeclaredConstructor().newInstance();
+      objects.add(map);
+      for (int size = readVarInt(); size > 0; size--) {
+        Object key = readValue();
+        map.put(key, readValue());
+      }
+      return map;
+    }
+
+    private Object readBean() throws Exception {
+      Class<?> type = readClass();
+      BeanType beanType = beanType(type);
+      if (beanType == null) {
+        throw new CacheException("Unexpected type " + type + " in serialized object.");
+      }
+      Object bean = beanType.constructor.newInstance();
+      objects.add(bean);
+      Object[] args = new Object[1];
+      for (Invoker setter : beanType.setters) {
+        args[0] = readValue();
+        setter.invoke(bean, args);
+      }
+      return bean;
+    }
+
+    private Class<?> readClass() throws ClassNotFoundException, InvalidClassException {
+      if (in.readByte() == CLASS_REFERENCE) {
+        return classes.get(readVarInt());
+      }
+      Class<?> type = Resources.classForName(readString());
+      SerialFilterChecker.checkClass(type);
+      classes.add(type);
+      return type;
+    }
+
+    private String readString() {
+      return in.readString(readVarInt());
+    }
+
+    private byte[] readBytes() {
+      byte[] bytes = new byte[readVarInt()];
+      in.readFully(bytes);
+      return bytes;
+    }
+
+    private int readVarInt() {
+      return (int) readVarLong();
+    }
+
+    private long readVarLong() {
+      long value = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = in.readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+  }
+
+  /**
+   * A growable buffer, unlike {@code ByteArrayOutputStream} it is not synchronized.
+   */
+  private static final class Output {
+    private byte[] buffer = new byte[256];
+    private int count;
+
+    void write(byte[] bytes) {
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, count, bytes.length);
+      count += bytes.length;
+    }
+
+    void writeByte(int value) {
+      ensureCapacity(1);
+      buffer[count++] = (byte) value;
+    }
+
+    void writeBoolean(boolean value) {
+      writeByte(value ? 1 : 0);
+    }
+
+    void writeShort(int value) {
+      writeByte(value >>> 8);
+      writeByte(value);
+    }
+
+    void writeChar(int value) {
+      writeShort(value);
+    }
+
+    void writeInt(int value) {
+      writeShort(value >>> 16);
+      writeShort(value);
+    }
+
+    void writeLong(long value) {
+      writeInt((int) (value >>> 32));
+      writeInt((int) value);
+    }
+
+    void writeFloat(float value) {
+      writeInt(Float.floatToIntBits(value));
+    }
+
+    void writeDouble(double value) {
+      writeLong(Double.doubleToLongBits(value));
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, count);
+    }
+
+    private void ensureCapacity(int length) {
+      if (count + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, count + length));
+      }
+    }
+  }
+
+  private static final class Input {
+    private final byte[] bytes;
+    private int position;
+
+    Input(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    void readFully(byte[] target) {
+      checkAvailable(target.length);
+      System.arraycopy(bytes, position, target, 0, target.length);
+      position += target.length;
+    }
+
+    String readString(int length) {
+      checkAvailable(length);
+      String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+
+    byte readByte() {
+      checkAvailable(1);
+      return bytes[position++];
+    }
+
+    boolean readBoolean() {
+      return readByte() != 0;
+    }
+
+    short readShort() {
+      return (short) (readByte() << 8 | readByte() & 0xFF);
+    }
+
+    char readChar() {
+      return (char) readShort();
+    }
+
+    int readInt() {
+      return readShort() << 16 | readShort() & 0xFFFF;
+    }
+
+    long readLong() {
+      return (long) readInt() << 32 | readInt() & 0xFFFFFFFFL;
+    }
+
+    float readFloat() {
+      return Float.intBitsToFloat(readInt());
+    }
+
+    double readDouble() {
+      return Double.longBitsToDouble(readLong());
+    }
+
+    private void checkAvailable(int length) {
+      if (length < 0 || length > bytes.length - position) {
+        throw new CacheException("Unexpected end of serialized object.");
+      }
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.apache.ibatis.cache.Invalidation;
+import org.apache.ibatis.cache.InvalidationBus;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * An {@link InvalidationBus} between the configurations of the same JVM, for instance several
+ * {@code SqlSessionFactory}s working on the same database. The invalidations are delivered synchronously, by the
+ * thread committing the transaction, to the other buses of the same channel.
+ * <p>
+ * The buses of a channel are registered in a static map until they are closed, which
+ * {@link org.apache.ibatis.session.Configuration#close()} does for the bus of the configuration.
+ *
+ * @since 3.5.13
+ */
+public class LocalInvalidationBus implements InvalidationBus {
+
+  private static final Log log = LogFactory.getLog(LocalInvalidationBus.class);
+
+  public static final String DEFAULT_CHANNEL = "default";
+
+  private static final Map<String, Set<LocalInvalidationBus>> channels = new ConcurrentHashMap<>();
+
+  private final String channel;
+  private final List<Consumer<Invalidation>> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * @param channel
+   *          the name of the channel, {@link #DEFAULT_CHANNEL} when {@code null}
+   */
+  public LocalInvalidationBus(String channel) {
+    this.channel = channel == null ? DEFAULT_CHANNEL : channel;
+    channels.compute(this.channel, (k, buses) -> {
+      Set<LocalInvalidationBus> channelBuses = buses == null ? ConcurrentHashMap.newKeySet() : buses;
+      channelBuses.add(this);
+      return channelBuses;
+    });
+  }
+
+  public String getChannel() {
+    return channel;
+  }
+
+  @Override
+  public void publish(Invalidation invalidation) {
+    Set<LocalInvalidationBus> buses = channels.get(channel);
+    if (buses == null) {
+      return;
+    }
+    for (LocalInvalidationBus bus : buses) {
+      if (bus != this) {
+        bus.deliver(invalidation);
+      }
+    }
+  }
+
+  @Override
+  public void subscribe(Consumer<Invalidation> listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void close() {
+    channels.computeIfPresent(channel, (k, buses) -> {
+      buses.remove(this);
+      return buses.isEmpty() ? null : buses;
+    });
+    listeners.clear();
+  }
+
+  private void deliver(Invalidation invalidation) {
+    for (Consumer<Invalidation> listener : listeners) {
+      try {
+        listener.accept(invalidation);
+      } catch (RuntimeException e) {
+        log.warn("Could not apply the cache invalidation " + invalidation + " of channel '" + channel + "'.  Cause: "
+            + e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,318 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.Invalidation;
+import org.apache.ibatis.cache.InvalidationBus;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * An {@link InvalidationBus} between the processes of the same host, through a ring buffer in a memory mapped file.
+ * <p>
+ * The file starts with a header holding the number of slots, their size and the sequence of the last invalidation
+ * written. Each invalidation is written in the slot following the last one, under a lock of the file, and a daemon
+ * thread of every bus reads the slots written since its previous poll. The slot is stamped with its sequence last, so
+ * that a reader can detect a slot overwritten while it was read. When a reader falls more than a whole ring behind,
+ * or an invalidation does not fit in a slot, the invalidations are lost and {@link Invalidation#all()} is delivered
+ * instead. Placing the file on a memory backed file system, such as {@code /dev/shm}, avoids any disk write.
+ * <p>
+ * The polling thread and the file stay open until {@link #close()} is called, which
+ * {@link org.apache.ibatis.session.Configuration#close()} does for the bus of the configuration.
+ *
+ * @since 3.5.13
+ */
+public class MappedFileInvalidationBus implements InvalidationBus {
+
+  private static final Log log = LogFactory.getLog(MappedFileInvalidationBus.class);
+
+  private static final int MAGIC = 0x4d42494e;
+  private static final int HEADER_SIZE = 64;
+  private static final int SLOTS_OFFSET = 4;
+  private static final int SLOT_SIZE_OFFSET = 8;
+  private static final int SEQUENCE_OFFSET = 16;
+  /**
+   * The sequence, the source, the type and the length of the payload.
+   */
+  private static final int SLOT_HEADER_SIZE = 24;
+
+  public static final int DEFAULT_SLOTS = 1024;
+  public static final int DEFAULT_SLOT_SIZE = 512;
+  public static final long DEFAULT_POLL_INTERVAL = 10;
+
+  /**
+   * A file lock is held by the whole JVM, so the buses of a JVM sharing a file also exclude each other with a lock.
+   */
+  private static final Map<Path, Lock> fileLocks = new ConcurrentHashMap<>();
+
+  private final Path file;
+  private final Lock writeLock;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int slots;
+  private final int slotSize;
+  private final long source = UUID.randomUUID().getMostSignificantBits();
+  private final List<Consumer<Invalidation>> listeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService poller;
+  private long lastSequence;
+  private volatile boolean closed;
+
+  /**
+   * @param file
+   *          the file shared by the processes, created if it does not exist
+   */
+  public MappedFileInvalidationBus(String file) {
+    this(toPath(file), DEFAULT_SLOTS, DEFAULT_SLOT_SIZE, DEFAULT_POLL_INTERVAL);
+  }
+
+  /**
+   * @param file
+   *          the file shared by the processes, created if it does not exist
+   * @param slots
+   *          the number of invalidations kept in a new file
+   * @param slotSize
+   *          the size of a slot of a new file, in bytes
+   * @param pollInterval
+   *          the number of milliseconds between two reads of the file
+   */
+  public MappedFileInvalidationBus(Path file, int slots, int slotSize, long pollInterval) {
+    if (slots <= 0 || slotSize <= SLOT_HEADER_SIZE || pollInterval <= 0) {
+      throw new CacheException("Invalid cache invalidation file settings: slots (" + slots + ") and pollInterval ("
+          + pollInterval + ") must be positive and slotSize (" + slotSize + ") greater than " + SLOT_HEADER_SIZE);
+    }
+    this.file = file.toAbsolutePath().normalize();
+    this.writeLock = fileLocks.computeIfAbsent(this.file, k -> new ReentrantLock());
+    try {
+      this.channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.CREATE);
+    } catch (IOException e) {
+      throw new CacheException("Could not open the cache invalidation file '" + this.file + "'.  Cause: " + e, e);
+    }
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      writeLock.lock();
+      try (FileLock lock = channel.lock()) {
+        if (channel.size() == 0) {
+          header.putInt(MAGIC).putInt(slots).putInt(slotSize);
+          ((Buffer) header).clear();
+          channel.write(header, 0);
+          channel.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) slots * slotSize - 1);
+        } else {
+          channel.read(header, 0);
+        }
+      } finally {
+        writeLock.unlock();
+      }
+      if (header.getInt(0) != MAGIC) {
+        closeChannel();
+        throw new CacheException("The file '" + this.file + "' is not a cache invalidation file.");
+      }
+      this.slots = header.getInt(SLOTS_OFFSET);
+      this.slotSize = header.getInt(SLOT_SIZE_OFFSET);
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.slots * this.slotSize);
+    } catch (IOException e) {
+      closeChannel();
+      throw new CacheException("Could not open the cache invalidation file '" + this.file + "'.  Cause: " + e, e);
+    }
+    this.lastSequence = buffer.getLong(SEQUENCE_OFFSET);
+    this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "mybatis-invalidation-" + this.file.getFileName());
+      thread.setDaemon(true);
+      return thread;
+    });
+    poller.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  @Override
+  public void publish(Invalidation invalidation) {
+    if (closed) {
+      return;
+    }
+    int capacity = slotSize - SLOT_HEADER_SIZE;
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    for (String name : invalidation.getNames()) {
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      if (bytes.length > capacity) {
+        append(Invalidation.Type.ALL, new byte[0]);
+        return;
+      }
+      if (payload.size() > 0 && payload.size() + 1 + bytes.length > capacity) {
+        append(invalidation.getType(), payload.toByteArray());
+        payload.reset();
+      }
+      if (payload.size() > 0) {
+        payload.write('\n');
+      }
+      payload.write(bytes, 0, bytes.length);
+    }
+    if (payload.size() > 0 || invalidation.getNames().isEmpty()) {
+      append(invalidation.getType(), payload.toByteArray());
+    }
+  }
+
+  @Override
+  public void subscribe(Consumer<Invalidation> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Stops the polling thread, waiting for a poll in progress, and closes the file. Calling it again has no effect.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    listeners.clear();
+    poller.shutdownNow();
+    try {
+      poller.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    closeChannel();
+  }
+
+  private void closeChannel() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.debug("Could not close the cache invalidation file '" + file + "'.  Cause: " + e);
+    }
+  }
+
+  private static Path toPath(String file) {
+    if (file == null || file.isEmpty()) {
+      throw new CacheException("The cache invalidation file is not set, see the cacheInvalidationChannel setting.");
+    }
+    return Paths.get(file);
+  }
+
+  private void append(Invalidation.Type type, byte[] payload) {
+    writeLock.lock();
+    try (FileLock lock = channel.lock()) {
+      long sequence = buffer.getLong(SEQUENCE_OFFSET) + 1;
+      int offset = slotOffset(sequence);
+      // a reader of the previous content of the slot must see that it changed
+      buffer.putLong(offset, 0);
+      buffer.putLong(offset + 8, source);
+      buffer.putInt(offset + 16, type.ordinal());
+      buffer.putInt(offset + 20, payload.length);
+      ByteBuffer slot = buffer.duplicate();
+      ((Buffer) slot).position(offset + SLOT_HEADER_SIZE);
+      slot.put(payload);
+      buffer.putLong(offset, sequence);
+      buffer.putLong(SEQUENCE_OFFSET, sequence);
+    } catch (IOException e) {
+      log.warn("Could not publish a cache invalidation to '" + file + "'.  Cause: " + e);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void poll() {
+    try {
+      long head = buffer.getLong(SEQUENCE_OFFSET);
+      if (head - lastSequence > slots) {
+        lost(head);
+        return;
+      }
+      while (lastSequence < head && !closed) {
+        long sequence = lastSequence + 1;
+        int offset = slotOffset(sequence);
+        long slotSource = buffer.getLong(offset + 8);
+        int type = buffer.getInt(offset + 16);
+        int length = buffer.getInt(offset + 20);
+        if (length < 0 || length > slotSize - SLOT_HEADER_SIZE || type < 0
+            || type >= Invalidation.Type.values().length) {
+          lost(head);
+          return;
+        }
+        byte[] payload = new byte[length];
+        ByteBuffer slot = buffer.duplicate();
+        ((Buffer) slot).position(offset + SLOT_HEADER_SIZE);
+        slot.get(payload);
+        if (buffer.getLong(offset) != sequence) {
+          lost(head);
+          return;
+        }
+        lastSequence = sequence;
+        if (slotSource != source) {
+          deliver(decode(Invalidation.Type.values()[type], payload));
+        }
+      }
+    } catch (RuntimeException e) {
+      log.warn("Could not read the cache invalidations of '" + file + "'.  Cause: " + e);
+    }
+  }
+
+  private void lost(long head) {
+    lastSequence = head;
+    deliver(Invalidation.all());
+  }
+
+  private int slotOffset(long sequence) {
+    return HEADER_SIZE + (int) ((sequence - 1) % slots) * slotSize;
+  }
+
+  private static Invalidation decode(Invalidation.Type type, byte[] payload) {
+    List<String> names = payload.length == 0 ? Collections.emptyList()
+        : Arrays.asList(new String(payload, StandardCharsets.UTF_8).split("\n"));
+    return Invalidation.of(type, names);
+  }
+
+  private void deliver(Invalidation invalidation) {
+    for (Consumer<Invalidation> listener : listeners) {
+      try {
+        listener.accept(invalidation);
+      } catch (RuntimeException e) {
+        log.warn("Could not apply the cache invalidation " + invalidation + " read from '" + file + "'.  Cause: " + e);
+      }
+    }
+  }
+
+}
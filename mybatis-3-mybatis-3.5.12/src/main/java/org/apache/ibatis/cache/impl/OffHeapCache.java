@@ -0,0 +1,391 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+import org.apache.ibatis.builder.InitializingObject;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * A cache storing serialized entries outside of the Java heap.
+ * <p>
+ * Entries are serialized with the {@code serializer} (Java serialization by default) and appended to fixed size slabs
+ * of direct {@link ByteBuffer}s, or of a memory mapped file when the {@code file} property is set. Only the keys and
+ * an index of the entry locations stay on the heap. When all the slabs are full, the eldest slab is recycled as a
+ * whole, which evicts the entries it holds in insertion order.
+ * <p>
+ * Each hit returns a fresh copy of the cached value, so this cache behaves like a read-write cache. Slabs are allocated
+ * lazily, the first time they are written.
+ *
+ * <pre>
+ * &lt;cache type="OFF_HEAP"&gt;
+ *   &lt;property name="maxBytes" value="1073741824"/&gt;
+ *   &lt;property name="slabSize" value="16777216"/&gt;
+ * &lt;/cache&gt;
+ * </pre>
+ *
+ * @since 3.5.13
+ */
+public class OffHeapCache implements ConcurrentCache, InitializingObject {
+
+  private final String id;
+  private final Map<Object, Location> index = new ConcurrentHashMap<>();
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private long maxBytes = 64L * 1024 * 1024;
+  private int slabSize = 4 * 1024 * 1024;
+  private String file;
+  private CacheSerializer serializer = new JavaCacheSerializer();
+  private volatile Slab[] slabs;
+  private int currentSlab;
+  private FileChannel channel;
+  private volatile CacheStats stats = new CacheStats();
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  public void setSlabSize(int slabSize) {
+    this.slabSize = slabSize;
+  }
+
+  /**
+   * Sets a file to memory map instead of allocating direct buffers.
+   *
+   * @param file
+   *          the path of the file, created when missing
+   */
+  public void setFile(String file) {
+    this.file = file;
+  }
+
+  public void setSerializer(String serializer) {
+    try {
+      setCacheSerializer((CacheSerializer) Resources.classForName(serializer).getDeclaredConstructor().newInstance());
+    } catch (Exception e) {
+      throw new CacheException("Error creating cache serializer '" + serializer + "'.  Cause: " + e, e);
+    }
+  }
+
+  public void setCacheSerializer(CacheSerializer serializer) {
+    this.serializer = serializer;
+  }
+
+  public void setCacheStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
+  @Override
+  public void initialize() {
+    writeLock.lock();
+    try {
+      if (slabs != null) {
+        return;
+      }
+      if (slabSize <= 0 || maxBytes < slabSize) {
+        throw new CacheException("Invalid off heap cache size for '" + id + "': maxBytes (" + maxBytes
+            + ") must be greater than slabSize (" + slabSize + ").");
+      }
+      long count = maxBytes / slabSize;
+      if (count < 2 || count > Integer.MAX_VALUE) {
+        throw new CacheException("Invalid off heap cache size for '" + id + "': maxBytes must hold from 2 to "
+            + Integer.MAX_VALUE + " slabs.");
+      }
+      if (file != null) {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+      }
+      Slab[] allocated = new Slab[(int) count];
+      for (int i = 0; i < allocated.length; i++) {
+        allocated[i] = new Slab(i);
+      }
+      slabs = allocated;
+    } catch (IOException e) {
+      throw new CacheException("Error opening off heap cache file '" + file + "'.  Cause: " + e, e);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    return index.size();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      removeObject(key);
+      return;
+    }
+    if (!(value instanceof Serializable)) {
+      throw new CacheException("OffHeapCache failed to store a non-serializable object: " + value);
+    }
+    byte[] bytes = serializer.serialize(value);
+    if (bytes.length > slabSize) {
+      // can never fit in a slab
+      index.remove(key);
+      return;
+    }
+    writeLock.lock();
+    try {
+      if (slabs == null) {
+        initialize();
+      }
+      Slab slab = slabs[currentSlab];
+      if (slab.position + bytes.length > slabSize) {
+        currentSlab = (currentSlab + 1) % slabs.length;
+        slab = slabs[currentSlab];
+        stats.recordWeight(-slab.position);
+        for (Location location : slab.reset()) {
+          if (index.remove(location.key, location)) {
+            stats.recordEviction();
+          }
+        }
+      }
+      Location location = slab.append(key, bytes);
+      index.put(key, location);
+      stats.recordWeight(bytes.length);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Location location = index.get(key);
+    if (location == null) {
+      return null;
+    }
+    byte[] bytes = location.slab.read(location);
+    if (bytes == null) {
+      index.remove(key, location);
+      return null;
+    }
+    return serializer.deserialize(bytes);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    // the space is reclaimed when the slab is recycled
+    index.remove(key);
+    return null;
+  }
+
+  @Override
+  public void clear() {
+    writeLock.lock();
+    try {
+      index.clear();
+      if (slabs != null) {
+        for (Slab slab : slabs) {
+          stats.recordWeight(-slab.position);
+          slab.reset();
+        }
+        currentSlab = 0;
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Drops all the entries and closes the mapped file. The memory of the slabs is released when they are garbage
+   * collected, as there is no portable way to unmap a buffer. The slabs are allocated again if the cache is used
+   * afterwards.
+   */
+  @Override
+  public void close() {
+    writeLock.lock();
+    try {
+      clear();
+      if (slabs != null) {
+        for (Slab slab : slabs) {
+          slab.release();
+        }
+        slabs = null;
+      }
+      if (channel != null) {
+        try {
+          channel.close();
+        } finally {
+          channel = null;
+        }
+      }
+    } catch (IOException e) {
+      throw new CacheException("Error closing off heap cache file '" + file + "'.  Cause: " + e, e);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    for (Object key : index.keySet()) {
+      Object value = getObject(key);
+      if (value != null) {
+        action.accept(key, value);
+      }
+    }
+  }
+
+  private ByteBuffer allocate(int slabIndex) {
+    if (channel == null) {
+      return ByteBuffer.allocateDirect(slabSize);
+    }
+    try {
+      return channel.map(FileChannel.MapMode.READ_WRITE, (long) slabIndex * slabSize, slabSize);
+    } catch (IOException e) {
+      throw new CacheException("Error mapping off heap cache file '" + file + "'.  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  /**
+   * A region entries are appended to. Readers copy an entry out under the read lock, so that the slab cannot be
+   * recycled in the middle of the copy; the generation tells whether the slab was recycled since the entry was written.
+   */
+  private final class Slab {
+    private final int slabIndex;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Location> locations = new ArrayList<>();
+    private ByteBuffer buffer;
+    private int position;
+    private long generation;
+
+    Slab(int slabIndex) {
+      this.slabIndex = slabIndex;
+    }
+
+    Location append(Object key, byte[] bytes) {
+      if (buffer == null) {
+        buffer = allocate(slabIndex);
+      }
+      ByteBuffer target = buffer.duplicate();
+      ((Buffer) target).position(position);
+      target.put(bytes);
+      Location location = new Location(key, this, generation, position, bytes.length);
+      position += bytes.length;
+      locations.add(location);
+      return location;
+    }
+
+    byte[] read(Location location) {
+      lock.readLock().lock();
+      try {
+        if (location.generation != generation || buffer == null) {
+          return null;
+        }
+        byte[] bytes = new byte[location.length];
+        ByteBuffer source = buffer.duplicate();
+        ((Buffer) source).position(location.offset);
+        source.get(bytes);
+        return bytes;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    List<Location> reset() {
+      lock.writeLock().lock();
+      try {
+        generation++;
+        position = 0;
+        List<Location> evicted = new ArrayList<>(locations);
+        locations.clear();
+        return evicted;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    void release() {
+      lock.writeLock().lock();
+      try {
+        generation++;
+        buffer = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  private static final class Location {
+    private final Object key;
+    private final Slab slab;
+    private final long generation;
+    private final int offset;
+    private final int length;
+
+    Location(Object key, Slab slab, long generation, int offset, int length) {
+      this.key = key;
+      this.slab = slab;
+      this.generation = generation;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+}
@@ -17,6 +17,7 @@ package org.apache.ibatis.cache.impl;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
@@ -54,6 +55,11 @@ public class PerpetualCache implements Cache {
     return cache.get(key);
   }
 
+  @Override
+  public boolean containsKey(Object key) {
+    return cache.containsKey(key);
+  }
+
   @Override
   public Object removeObject(Object key) {
     return cache.remove(key);
@@ -64,6 +70,11 @@ public class PerpetualCache implements Cache {
     cache.clear();
   }
 
+  @Override
+  public void forEachEntry(BiConsumer<Object, Object> action) {
+    cache.forEach(action);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (getId() == null) {
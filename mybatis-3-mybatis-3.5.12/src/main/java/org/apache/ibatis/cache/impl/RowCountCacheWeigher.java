@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.decorators.TableDependencyCache;
+
+/**
+ * The default {@link CacheWeigher}: a cached list is estimated as its number of rows times an estimated row footprint.
+ * A serialized value, as held by the read-write caches, is weighed by its actual length instead.
+ *
+ * @since 3.5.13
+ */
+public class RowCountCacheWeigher implements CacheWeigher {
+
+  /**
+   * Rough size of the key, the map entry and the list holding the rows.
+   */
+  private static final long ENTRY_OVERHEAD = 128;
+
+  private volatile long rowBytes = 256;
+
+  public long getRowBytes() {
+    return rowBytes;
+  }
+
+  public void setRowBytes(long rowBytes) {
+    this.rowBytes = rowBytes;
+  }
+
+  @Override
+  public long weigh(Object key, Object value) {
+    if (value instanceof byte[]) {
+      return ENTRY_OVERHEAD + ((byte[]) value).length;
+    }
+    return ENTRY_OVERHEAD + rows(value) * rowBytes;
+  }
+
+  private long rows(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof TableDependencyCache.Entry) {
+      return rows(((TableDependencyCache.Entry) value).getValue());
+    }
+    if (value instanceof Collection) {
+      return ((Collection<?>) value).size();
+    }
+    if (value instanceof Map) {
+      return ((Map<?, ?>) value).size();
+    }
+    if (value instanceof Object[]) {
+      return ((Object[]) value).length;
+    }
+    return 1;
+  }
+
+}
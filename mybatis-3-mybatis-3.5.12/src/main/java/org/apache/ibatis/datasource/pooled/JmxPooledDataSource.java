@@ -0,0 +1,218 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Publishes the {@link PoolState} of a pooled data source to the platform MBean server, under the name
+ * {@code org.apache.ibatis:type=PooledDataSource,name=<name>}.
+ *
+ * @since 3.5.13
+ */
+public class JmxPooledDataSource implements PooledDataSourceMXBean {
+
+  private static final Log log = LogFactory.getLog(JmxPooledDataSource.class);
+
+  private final PooledDataSource dataSource;
+
+  public JmxPooledDataSource(PooledDataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /**
+   * Registers the statistics of a pooled data source, replacing the ones registered with the same name.
+   *
+   * @param dataSource
+   *          the data source
+   * @param name
+   *          the name of the data source
+   */
+  public static void register(PooledDataSource dataSource, String name) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName objectName = objectName(name);
+      JmxPooledDataSource mbean = new JmxPooledDataSource(dataSource);
+      try {
+        server.registerMBean(mbean, objectName);
+      } catch (InstanceAlreadyExistsException e) {
+        // the same environment loaded again
+        server.unregisterMBean(objectName);
+        server.registerMBean(mbean, objectName);
+      }
+    } catch (JMException e) {
+      log.warn("Could not register the statistics of data source '" + name + "'.  Cause: " + e);
+    }
+  }
+
+  /**
+   * Unregisters the statistics registered with a name, if any.
+   *
+   * @param name
+   *          the name of the data source
+   */
+  public static void unregister(String name) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+    } catch (InstanceNotFoundException e) {
+      // already unregistered
+    } catch (JMException e) {
+      log.warn("Could not unregister the statistics of data source '" + name + "'.  Cause: " + e);
+    }
+  }
+
+  private static ObjectName objectName(String name) throws JMException {
+    return new ObjectName("org.apache.ibatis:type=PooledDataSource,name=" + ObjectName.quote(name));
+  }
+
+  @Override
+  public int getActiveConnectionCount() {
+    return dataSource.getPoolState().getActiveConnectionCount();
+  }
+
+  @Override
+  public int getIdleConnectionCount() {
+    return dataSource.getPoolState().getIdleConnectionCount();
+  }
+
+  @Override
+  public int getMaximumActiveConnections() {
+    return dataSource.getPoolMaximumActiveConnections();
+  }
+
+  @Override
+  public int getWaitingThreadCount() {
+    return dataSource.getWaitingThreadCount();
+  }
+
+  @Override
+  public long getRequestCount() {
+    return dataSource.getPoolState().getRequestCount();
+  }
+
+  @Override
+  public long getHadToWaitCount() {
+    return dataSource.getPoolState().getHadToWaitCount();
+  }
+
+  @Override
+  public long getBadConnectionCount() {
+    return dataSource.getPoolState().getBadConnectionCount();
+  }
+
+  @Override
+  public long getClaimedOverdueConnectionCount() {
+    return dataSource.getPoolState().getClaimedOverdueConnectionCount();
+  }
+
+  @Override
+  public double getAcquireTimeMean() {
+    return dataSource.getPoolState().getAcquireTime().getMean();
+  }
+
+  @Override
+  public double getAcquireTime50thPercentile() {
+    return dataSource.getPoolState().getAcquireTime().getPercentile(50);
+  }
+
+  @Override
+  public double getAcquireTime99thPercentile() {
+    return dataSource.getPoolState().getAcquireTime().getPercentile(99);
+  }
+
+  @Override
+  public double getAcquireTimeMax() {
+    return dataSource.getPoolState().getAcquireTime().getMax();
+  }
+
+  @Override
+  public double getCheckoutTimeMean() {
+    return dataSource.getPoolState().getCheckoutTime().getMean();
+  }
+
+  @Override
+  public double getCheckoutTime50thPercentile() {
+    return dataSource.getPoolState().getCheckoutTime().getPercentile(50);
+  }
+
+  @Override
+  public double getCheckoutTime99thPercentile() {
+    return dataSource.getPoolState().getCheckoutTime().getPercentile(99);
+  }
+
+  @Override
+  public double getCheckoutTimeMax() {
+    return dataSource.getPoolState().getCheckoutTime().getMax();
+  }
+
+  @Override
+  public long getConnectionCreationCount() {
+    return dataSource.getPoolState().getConnectionCreationTime().getCount();
+  }
+
+  @Override
+  public double getConnectionCreationTimeMean() {
+    return dataSource.getPoolState().getConnectionCreationTime().getMean();
+  }
+
+  @Override
+  public double getConnectionCreationTime99thPercentile() {
+    return dataSource.getPoolState().getConnectionCreationTime().getPercentile(99);
+  }
+
+  @Override
+  public double getConnectionCreationTimeMax() {
+    return dataSource.getPoolState().getConnectionCreationTime().getMax();
+  }
+
+  @Override
+  public long getSuspectedLeakCount() {
+    return dataSource.getPoolState().getSuspectedLeakCount();
+  }
+
+  @Override
+  public Map<String, Double> getStatementCheckoutTimeMeans() {
+    Map<String, Double> means = new TreeMap<>();
+    dataSource.getPoolState().getStatementCheckoutTimes()
+        .forEach((id, histogram) -> means.put(id, histogram.getMean()));
+    return means;
+  }
+
+  @Override
+  public Map<String, Double> getStatementCheckoutTime99thPercentiles() {
+    Map<String, Double> percentiles = new TreeMap<>();
+    dataSource.getPoolState().getStatementCheckoutTimes()
+        .forEach((id, histogram) -> percentiles.put(id, histogram.getPercentile(99)));
+    return percentiles;
+  }
+
+  @Override
+  public void resetStats() {
+    dataSource.getPoolState().resetStatistics();
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations, recorded in microseconds in buckets growing exponentially with 8 linear
+ * sub-buckets each, so that any percentile is known within 12.5% whatever the magnitude of the durations.
+ *
+ * @since 3.5.13
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // the values below are counted one per bucket
+  private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+  private static final int LINEAR_MAGNITUDE = Long.numberOfTrailingZeros(LINEAR_LIMIT);
+  private static final int BUCKETS = LINEAR_LIMIT + (Long.SIZE - 1 - LINEAR_MAGNITUDE) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+  private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records a duration.
+   *
+   * @param nanos
+   *          the duration in nanoseconds, counted as 0 when negative
+   */
+  public void record(long nanos) {
+    long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    buckets.incrementAndGet(indexOf(micros));
+    count.increment();
+    totalMicros.add(micros);
+    maxMicros.accumulate(micros);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @return the mean of the recorded durations in milliseconds
+   */
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : totalMicros.sum() / 1000.0 / n;
+  }
+
+  /**
+   * @return the longest recorded duration in milliseconds
+   */
+  public double getMax() {
+    return maxMicros.get() / 1000.0;
+  }
+
+  /**
+   * Returns the duration that the given percentage of the recorded durations do not exceed, rounded up to the upper
+   * bound of its bucket.
+   *
+   * @param percentile
+   *          the percentage, between 0 and 100
+   *
+   * @return the duration in milliseconds, 0 if nothing was recorded
+   */
+  public double getPercentile(double percentile) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), maxMicros.get()) / 1000.0;
+      }
+    }
+    return getMax();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+    count.reset();
+    totalMicros.reset();
+    maxMicros.reset();
+  }
+
+  static int indexOf(long micros) {
+    if (micros < LINEAR_LIMIT) {
+      return (int) micros;
+    }
+    int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+    int subBucket = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_LIMIT + (magnitude - LINEAR_MAGNITUDE) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBoundOf(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int magnitude = (index - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_MAGNITUDE;
+    int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+    long upper = (long) (SUB_BUCKETS + subBucket + 1) << (magnitude - SUB_BUCKET_BITS);
+    return upper < 0 ? Long.MAX_VALUE : upper - 1;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d, mean=%.3fms, p50=%.3fms, p99=%.3fms, max=%.3fms", getCount(), getMean(),
+        getPercentile(50), getPercentile(99), getMax());
+  }
+
+}
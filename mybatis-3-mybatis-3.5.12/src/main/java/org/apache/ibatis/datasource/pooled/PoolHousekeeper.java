@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Periodically runs the housekeeping of a {@link PooledDataSource}, so that request threads neither open nor ping
+ * connections. All the pools share one daemon thread, and a pool that is no longer referenced stops being kept.
+ *
+ * @since 3.5.13
+ */
+final class PoolHousekeeper implements Runnable {
+
+  private static final Log log = LogFactory.getLog(PoolHousekeeper.class);
+
+  private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "mybatis-pool-housekeeper");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final WeakReference<PooledDataSource> dataSource;
+
+  private PoolHousekeeper(PooledDataSource dataSource) {
+    this.dataSource = new WeakReference<>(dataSource);
+  }
+
+  static void start(PooledDataSource dataSource) {
+    scheduler.execute(new PoolHousekeeper(dataSource));
+  }
+
+  @Override
+  public void run() {
+    PooledDataSource pool = dataSource.get();
+    if (pool == null) {
+      return;
+    }
+    try {
+      pool.housekeep();
+    } catch (RuntimeException e) {
+      log.warn("Pool housekeeping failed. Cause: " + e);
+    }
+    scheduler.schedule(this, Math.max(1, pool.getPoolHousekeepingInterval()), TimeUnit.MILLISECONDS);
+  }
+
+}
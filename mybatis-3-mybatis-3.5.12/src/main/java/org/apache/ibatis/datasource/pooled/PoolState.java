@@ -15,75 +15,380 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author Clinton Begin
  */
 public class PoolState {
 
+  /**
+   * The number of statement ids whose checkout times are tracked apart.
+   *
+   * @since 3.5.13
+   */
+  public static final int MAX_TRACKED_STATEMENTS = 256;
+
+  /**
+   * The key of the checkout times of the statements beyond {@link #MAX_TRACKED_STATEMENTS}.
+   *
+   * @since 3.5.13
+   */
+  public static final String OTHER_STATEMENTS = "(other)";
+
   protected PooledDataSource dataSource;
 
+  /**
+   * @deprecated no longer maintained, the pool keeps its connections in concurrent collections since 3.5.13. Use
+   *             {@link #getIdleConnectionCount()} instead.
+   */
+  @Deprecated
   protected final List<PooledConnection> idleConnections = new ArrayList<>();
+  /**
+   * @deprecated no longer maintained, the pool keeps its connections in concurrent collections since 3.5.13. Use
+   *             {@link #getActiveConnectionCount()} instead.
+   */
+  @Deprecated
   protected final List<PooledConnection> activeConnections = new ArrayList<>();
-  protected long requestCount;
-  protected long accumulatedRequestTime;
-  protected long accumulatedCheckoutTime;
-  protected long claimedOverdueConnectionCount;
-  protected long accumulatedCheckoutTimeOfOverdueConnections;
-  protected long accumulatedWaitTime;
-  protected long hadToWaitCount;
-  protected long badConnectionCount;
+  /**
+   * @deprecated no longer maintained, the pool updates its statistics without locking since 3.5.13. Use the getters
+   *             instead.
+   */
+  @Deprecated
+  protected long requestCount, accumulatedRequestTime, accumulatedCheckoutTime, claimedOverdueConnectionCount,
+      accumulatedCheckoutTimeOfOverdueConnections, accumulatedWaitTime, hadToWaitCount, badConnectionCount;
+
+  /*
+   * The idle connections, the most recently returned first. A connection may stay in the deque a little after it was
+   * claimed through the thread affinity, so the idle connections are counted apart.
+   */
+  private final Deque<PooledConnection> idleConnectionQueue = new ConcurrentLinkedDeque<>();
+  private final Set<PooledConnection> activeConnectionSet = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger idleConnectionCount = new AtomicInteger();
+  /*
+   * The open connections, idle or checked out, including the ones being opened, bounded by the maximum active
+   * connections.
+   */
+  private final AtomicInteger openConnectionCount = new AtomicInteger();
+  /*
+   * The connection each thread returned last, tried first on its next checkout as the driver and the database likely
+   * still hold its state warm.
+   */
+  private final ThreadLocal<WeakReference<PooledConnection>> lastReturned = new ThreadLocal<>();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder totalRequestTime = new LongAdder();
+  private final LongAdder totalCheckoutTime = new LongAdder();
+  private final LongAdder overdueClaims = new LongAdder();
+  private final LongAdder totalOverdueCheckoutTime = new LongAdder();
+  private final LongAdder totalWaitTime = new LongAdder();
+  private final LongAdder waits = new LongAdder();
+  private final LongAdder badConnections = new LongAdder();
+  private final LatencyHistogram acquireTime = new LatencyHistogram();
+  private final LatencyHistogram checkoutTime = new LatencyHistogram();
+  private final LatencyHistogram connectionCreationTime = new LatencyHistogram();
+  /*
+   * Bounded, as the checkout statement comes from the error context which the application can set to anything.
+   */
+  private final Map<String, LatencyHistogram> statementCheckoutTimes = new ConcurrentHashMap<>();
+  private final LongAdder suspectedLeakCount = new LongAdder();
 
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
 
-  public synchronized long getRequestCount() {
-    return requestCount;
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  public long getAverageRequestTime() {
+    long count = requests.sum();
+    return count == 0 ? 0 : totalRequestTime.sum() / count;
+  }
+
+  public long getAverageWaitTime() {
+    long count = waits.sum();
+    return count == 0 ? 0 : totalWaitTime.sum() / count;
+
+  }
+
+  public long getHadToWaitCount() {
+    return waits.sum();
+  }
+
+  public long getBadConnectionCount() {
+    return badConnections.sum();
+  }
+
+  public long getClaimedOverdueConnectionCount() {
+    return overdueClaims.sum();
+  }
+
+  public long getAverageOverdueCheckoutTime() {
+    long count = overdueClaims.sum();
+    return count == 0 ? 0 : totalOverdueCheckoutTime.sum() / count;
+  }
+
+  public long getAverageCheckoutTime() {
+    long count = requests.sum();
+    return count == 0 ? 0 : totalCheckoutTime.sum() / count;
+  }
+
+  /**
+   * @return the time the requests took to get a connection, waiting, opening and validating it included
+   *
+   * @since 3.5.13
+   */
+  public LatencyHistogram getAcquireTime() {
+    return acquireTime;
+  }
+
+  /**
+   * @return the time the connections were checked out for
+   *
+   * @since 3.5.13
+   */
+  public LatencyHistogram getCheckoutTime() {
+    return checkoutTime;
+  }
+
+  /**
+   * @return the time the driver took to open a connection
+   *
+   * @since 3.5.13
+   */
+  public LatencyHistogram getConnectionCreationTime() {
+    return connectionCreationTime;
+  }
+
+  /**
+   * Gets the time the connections were checked out for, by the id of the mapped statement that checked them out. About
+   * {@link #MAX_TRACKED_STATEMENTS} ids are tracked, the checkouts of the statements seen afterwards are recorded
+   * under {@link #OTHER_STATEMENTS}.
+   *
+   * @return the histograms by statement id
+   *
+   * @since 3.5.13
+   */
+  public Map<String, LatencyHistogram> getStatementCheckoutTimes() {
+    return Collections.unmodifiableMap(statementCheckoutTimes);
+  }
+
+  /**
+   * @return the number of connections reported as held longer than the leak detection threshold
+   *
+   * @since 3.5.13
+   *
+   * @see PooledDataSource#setPoolLeakDetectionThreshold(int)
+   */
+  public long getSuspectedLeakCount() {
+    return suspectedLeakCount.sum();
   }
 
-  public synchronized long getAverageRequestTime() {
-    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+  void recordCheckoutTime(PooledConnection conn, long checkoutTime) {
+    long nanos = TimeUnit.MILLISECONDS.toNanos(checkoutTime);
+    totalCheckoutTime.add(checkoutTime);
+    this.checkoutTime.record(nanos);
+    String statement = conn.getCheckoutStatement();
+    if (statement != null) {
+      LatencyHistogram histogram = statementCheckoutTimes.get(statement);
+      if (histogram == null) {
+        // may slightly exceed the limit when several threads add a statement at once
+        String key = statementCheckoutTimes.size() < MAX_TRACKED_STATEMENTS ? statement : OTHER_STATEMENTS;
+        histogram = statementCheckoutTimes.computeIfAbsent(key, k -> new LatencyHistogram());
+      }
+      histogram.record(nanos);
+    }
   }
 
-  public synchronized long getAverageWaitTime() {
-    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+  void recordRequest(long requestTime, long acquireNanos) {
+    requests.increment();
+    totalRequestTime.add(requestTime);
+    acquireTime.record(acquireNanos);
+  }
+
+  void recordOverdueCheckout(PooledConnection conn, long checkoutTime) {
+    overdueClaims.increment();
+    totalOverdueCheckoutTime.add(checkoutTime);
+    recordCheckoutTime(conn, checkoutTime);
+  }
+
+  void recordHadToWait() {
+    waits.increment();
+  }
+
+  void recordWaitTime(long waitTime) {
+    totalWaitTime.add(waitTime);
+  }
+
+  void recordBadConnection() {
+    badConnections.increment();
+  }
+
+  void recordSuspectedLeak() {
+    suspectedLeakCount.increment();
+  }
+
+  void recordConnectionCreationTime(long nanos) {
+    connectionCreationTime.record(nanos);
+  }
+
+  /**
+   * Resets the counters and the histograms, so that they describe the activity since the last reset.
+   *
+   * @since 3.5.13
+   */
+  public void resetStatistics() {
+    requests.reset();
+    totalRequestTime.reset();
+    totalCheckoutTime.reset();
+    overdueClaims.reset();
+    totalOverdueCheckoutTime.reset();
+    totalWaitTime.reset();
+    waits.reset();
+    badConnections.reset();
+    acquireTime.reset();
+    checkoutTime.reset();
+    connectionCreationTime.reset();
+    statementCheckoutTimes.clear();
+    suspectedLeakCount.reset();
+  }
+
+  public int getIdleConnectionCount() {
+    return idleConnectionCount.get();
+  }
+
+  public int getActiveConnectionCount() {
+    return activeConnectionSet.size();
+  }
+
+  int getOpenConnectionCount() {
+    return openConnectionCount.get();
+  }
+
+  /**
+   * @return a weakly consistent view of the checked out connections
+   */
+  Collection<PooledConnection> getActiveConnections() {
+    return activeConnectionSet;
+  }
+
+  /**
+   * @return a weakly consistent view of the idle connections, which may include some just claimed
+   */
+  Collection<PooledConnection> getIdleConnections() {
+    return idleConnectionQueue;
+  }
+
+  void addActiveConnection(PooledConnection conn) {
+    activeConnectionSet.add(conn);
+  }
 
+  boolean removeActiveConnection(PooledConnection conn) {
+    return activeConnectionSet.remove(conn);
   }
 
-  public synchronized long getHadToWaitCount() {
-    return hadToWaitCount;
+  /**
+   * Claims an idle connection, the one last returned by the calling thread if it is still idle.
+   *
+   * @return the connection, or null if there is no idle connection
+   */
+  PooledConnection claimIdleConnection() {
+    WeakReference<PooledConnection> reference = lastReturned.get();
+    PooledConnection conn = reference == null ? null : reference.get();
+    if (conn != null && conn.claim()) {
+      // usually at the head of the deque, as it was returned last
+      idleConnectionQueue.removeFirstOccurrence(conn);
+      idleConnectionCount.decrementAndGet();
+      return conn;
+    }
+    while ((conn = idleConnectionQueue.pollFirst()) != null) {
+      if (conn.claim()) {
+        idleConnectionCount.decrementAndGet();
+        return conn;
+      }
+    }
+    return null;
   }
 
-  public synchronized long getBadConnectionCount() {
-    return badConnectionCount;
+  /**
+   * Claims a given idle connection, for the housekeeper to validate or retire it.
+   *
+   * @return true if the connection was still idle
+   */
+  boolean claimIdleConnection(PooledConnection conn) {
+    if (!conn.claim()) {
+      return false;
+    }
+    idleConnectionQueue.removeFirstOccurrence(conn);
+    idleConnectionCount.decrementAndGet();
+    return true;
   }
 
-  public synchronized long getClaimedOverdueConnectionCount() {
-    return claimedOverdueConnectionCount;
+  /**
+   * Puts back a connection claimed by the housekeeper, behind the connections returned in the meantime.
+   */
+  void restoreIdleConnection(PooledConnection conn) {
+    conn.markIdle();
+    idleConnectionCount.incrementAndGet();
+    idleConnectionQueue.addLast(conn);
   }
 
-  public synchronized long getAverageOverdueCheckoutTime() {
-    return claimedOverdueConnectionCount == 0 ? 0
-        : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+  /**
+   * Adds a returned connection to the idle ones, unless there are already enough of them.
+   *
+   * @return true if the connection was added
+   */
+  boolean addIdleConnection(PooledConnection conn, int maximumIdleConnections) {
+    if (!reserve(idleConnectionCount, maximumIdleConnections)) {
+      return false;
+    }
+    conn.markIdle();
+    idleConnectionQueue.addFirst(conn);
+    lastReturned.set(new WeakReference<>(conn));
+    return true;
   }
 
-  public synchronized long getAverageCheckoutTime() {
-    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+  /**
+   * Reserves the opening of a new connection.
+   *
+   * @return true if less than the maximum active connections are open
+   */
+  boolean reserveConnection(int maximumActiveConnections) {
+    return reserve(openConnectionCount, maximumActiveConnections);
   }
 
-  public synchronized int getIdleConnectionCount() {
-    return idleConnections.size();
+  /**
+   * Releases a connection reserved by {@link #reserveConnection(int)}, once it is closed or failed to open.
+   */
+  void releaseConnection() {
+    openConnectionCount.decrementAndGet();
   }
 
-  public synchronized int getActiveConnectionCount() {
-    return activeConnections.size();
+  private static boolean reserve(AtomicInteger count, int maximum) {
+    int current;
+    do {
+      current = count.get();
+      if (current >= maximum) {
+        return false;
+      }
+    } while (!count.compareAndSet(current, current + 1));
+    return true;
   }
 
   @Override
-  public synchronized String toString() {
+  public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append("\n===CONFIGURATION==============================================");
     builder.append("\n jdbcDriver                     ").append(dataSource.getDriver());
@@ -98,6 +403,11 @@ public class PoolState {
     builder.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolMinIdleConnections         ").append(dataSource.poolMinimumIdleConnections);
+    builder.append("\n poolMaxLifetime                ").append(dataSource.poolMaximumLifetime);
+    builder.append("\n poolMaxIdleTime                ").append(dataSource.poolMaximumIdleTime);
+    builder.append("\n poolPingInBackground           ").append(dataSource.poolPingInBackground);
+    builder.append("\n poolLeakDetectionThreshold     ").append(dataSource.poolLeakDetectionThreshold);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
@@ -108,7 +418,11 @@ public class PoolState {
     builder.append("\n averageOverdueCheckoutTime     ").append(getAverageOverdueCheckoutTime());
     builder.append("\n hadToWait                      ").append(getHadToWaitCount());
     builder.append("\n averageWaitTime                ").append(getAverageWaitTime());
+    builder.append("\n acquireTime                    ").append(acquireTime);
+    builder.append("\n checkoutTime                   ").append(checkoutTime);
+    builder.append("\n connectionCreationTime         ").append(connectionCreationTime);
     builder.append("\n badConnectionCount             ").append(getBadConnectionCount());
+    builder.append("\n suspectedLeakCount             ").append(getSuspectedLeakCount());
     builder.append("\n===============================================================");
     return builder.toString();
   }
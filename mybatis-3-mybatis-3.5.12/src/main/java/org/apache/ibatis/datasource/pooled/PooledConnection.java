@@ -15,21 +15,19 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-
-import org.apache.ibatis.reflection.ExceptionUtil;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Clinton Begin
  */
-class PooledConnection implements InvocationHandler {
+class PooledConnection {
 
-  private static final String CLOSE = "close";
-  private static final Class<?>[] IFACES = { Connection.class };
+  private static final int IDLE = 0;
+  private static final int IN_USE = 1;
+  private static final int RETIRED = 2;
 
   private final int hashCode;
   private final PooledDataSource dataSource;
@@ -38,8 +36,15 @@ class PooledConnection implements InvocationHandler {
   private long checkoutTimestamp;
   private long createdTimestamp;
   private long lastUsedTimestamp;
+  private long lastValidatedTimestamp;
   private int connectionTypeCode;
-  private boolean valid;
+  private String checkoutThread;
+  private String checkoutStatement;
+  private StackTraceElement[] checkoutStackTrace;
+  private volatile boolean leakReported;
+  private volatile boolean valid;
+  private final AtomicInteger poolState = new AtomicInteger(IN_USE);
+  private PreparedStatementCache statementCache;
 
   /**
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in.
@@ -56,7 +61,7 @@ class PooledConnection implements InvocationHandler {
     this.createdTimestamp = System.currentTimeMillis();
     this.lastUsedTimestamp = System.currentTimeMillis();
     this.valid = true;
-    this.proxyConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES, this);
+    this.proxyConnection = new ProxyConnection(this, dataSource);
   }
 
   /**
@@ -66,6 +71,51 @@ class PooledConnection implements InvocationHandler {
     valid = false;
   }
 
+  /**
+   * Marks the connection as idle in the pool, so that it can be claimed by one thread.
+   */
+  void markIdle() {
+    poolState.set(IDLE);
+  }
+
+  /**
+   * Claims an idle connection for a checkout.
+   *
+   * @return True if the calling thread now owns the connection, false if another thread claimed it first
+   */
+  boolean claim() {
+    return poolState.compareAndSet(IDLE, IN_USE);
+  }
+
+  /**
+   * Takes a checked out connection back from its user, when it is returned, claimed as overdue or closed.
+   *
+   * @return True if the calling thread took the connection back, false if it was already taken back
+   */
+  boolean retire() {
+    return poolState.compareAndSet(IN_USE, RETIRED);
+  }
+
+  /**
+   * Hands the prepared statements cached by the previous wrapper of the same physical connection over to this one.
+   *
+   * @param previous
+   *          - the previous wrapper
+   */
+  void inheritStatementCache(PooledConnection previous) {
+    this.statementCache = previous.statementCache;
+  }
+
+  /**
+   * Closes the prepared statements cached for the physical connection.
+   */
+  void closeStatementCache() {
+    if (statementCache != null) {
+      statementCache.close();
+      statementCache = null;
+    }
+  }
+
   /**
    * Method to see if the connection is usable.
    *
@@ -159,6 +209,25 @@ class PooledConnection implements InvocationHandler {
     this.lastUsedTimestamp = lastUsedTimestamp;
   }
 
+  /**
+   * Getter for the time that the connection was last pinged by the housekeeper of the pool.
+   *
+   * @return - the timestamp, 0 if it was never pinged
+   */
+  public long getLastValidatedTimestamp() {
+    return lastValidatedTimestamp;
+  }
+
+  /**
+   * Setter for the time that the connection was last pinged by the housekeeper of the pool.
+   *
+   * @param lastValidatedTimestamp
+   *          - the timestamp
+   */
+  public void setLastValidatedTimestamp(long lastValidatedTimestamp) {
+    this.lastValidatedTimestamp = lastValidatedTimestamp;
+  }
+
   /**
    * Getter for the time since this connection was last used.
    *
@@ -205,6 +274,42 @@ class PooledConnection implements InvocationHandler {
     return System.currentTimeMillis() - checkoutTimestamp;
   }
 
+  /**
+   * Records who checked this connection out, for the leak reports and the checkout time by statement.
+   *
+   * @param thread
+   *          the name of the thread
+   * @param statement
+   *          the id of the mapped statement being executed, if any
+   * @param stackTrace
+   *          the stack of the thread, if it was sampled
+   */
+  void setCheckout(String thread, String statement, StackTraceElement[] stackTrace) {
+    this.checkoutThread = thread;
+    this.checkoutStatement = statement;
+    this.checkoutStackTrace = stackTrace;
+  }
+
+  String getCheckoutThread() {
+    return checkoutThread;
+  }
+
+  String getCheckoutStatement() {
+    return checkoutStatement;
+  }
+
+  StackTraceElement[] getCheckoutStackTrace() {
+    return checkoutStackTrace;
+  }
+
+  boolean isLeakReported() {
+    return leakReported;
+  }
+
+  void setLeakReported(boolean leakReported) {
+    this.leakReported = leakReported;
+  }
+
   @Override
   public int hashCode() {
     return hashCode;
@@ -230,39 +335,15 @@ class PooledConnection implements InvocationHandler {
     }
   }
 
-  /**
-   * Required for InvocationHandler implementation.
-   *
-   * @param proxy
-   *          - not used
-   * @param method
-   *          - the method to be executed
-   * @param args
-   *          - the parameters to be passed to the method
-   *
-   * @see java.lang.reflect.InvocationHandler#invoke(Object, java.lang.reflect.Method, Object[])
-   */
-  @Override
-  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-    String methodName = method.getName();
-    if (CLOSE.equals(methodName)) {
-      dataSource.pushConnection(this);
-      return null;
-    }
-    try {
-      if (!Object.class.equals(method.getDeclaringClass())) {
-        // issue #579 toString() should never fail
-        // throw an SQLException instead of a Runtime
-        checkConnection();
-      }
-      return method.invoke(realConnection, args);
-    } catch (Throwable t) {
-      throw ExceptionUtil.unwrapThrowable(t);
+  PreparedStatement prepareCachedStatement(String sql, int resultSetType, int resultSetConcurrency)
+      throws SQLException {
+    if (statementCache == null) {
+      statementCache = new PreparedStatementCache(dataSource.getPoolPreparedStatementCacheSize());
     }
-
+    return statementCache.prepare(realConnection, proxyConnection, sql, resultSetType, resultSetConcurrency);
   }
 
-  private void checkConnection() throws SQLException {
+  void checkConnection() throws SQLException {
     if (!valid) {
       throw new SQLException("Error accessing PooledConnection. Connection is invalid.");
     }
@@ -16,14 +16,16 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.io.PrintWriter;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -32,11 +34,17 @@ import java.util.logging.Logger;
 import javax.sql.DataSource;
 
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
  * This is a simple, synchronous, thread-safe database connection pool.
+ * <p>
+ * The idle connections are kept in a lock-free deque, and each thread first tries to claim the connection it returned
+ * last. Connections are opened, validated and rolled back by the thread checking them out or returning them, without
+ * holding a lock shared with the other threads; a lock is only taken to wait for a connection when the pool is
+ * exhausted.
  *
  * @author Clinton Begin
  */
@@ -57,11 +65,25 @@ public class PooledDataSource implements DataSource {
   protected String poolPingQuery = "NO PING QUERY SET";
   protected boolean poolPingEnabled;
   protected int poolPingConnectionsNotUsedFor;
-
-  private int expectedConnectionTypeCode;
-
+  protected int poolMinimumIdleConnections;
+  protected int poolMaximumLifetime;
+  protected int poolMaximumIdleTime;
+  protected boolean poolPingInBackground;
+  protected int poolHousekeepingInterval = 30000;
+  protected String poolJmxName;
+  protected int poolPreparedStatementCacheSize;
+  protected int poolLeakDetectionThreshold;
+  protected double poolLeakDetectionSampleRate = 1.0;
+
+  private volatile int expectedConnectionTypeCode;
+
+  /*
+   * Only used to park the threads waiting for a connection, the checkouts and returns do not take it.
+   */
   private final Lock lock = new ReentrantLock();
   private final Condition condition = lock.newCondition();
+  private final AtomicInteger waitingThreads = new AtomicInteger();
+  private final AtomicBoolean housekeeperStarted = new AtomicBoolean();
 
   public PooledDataSource() {
     dataSource = new UnpooledDataSource();
@@ -213,7 +235,7 @@ public class PooledDataSource implements DataSource {
    * The maximum time a connection can be used before it *may* be given away again.
    *
    * @param poolMaximumCheckoutTime
-   *          The maximum time
+   *          The maximum time, a negative value meaning the connections are never taken back from their users
    */
   public void setPoolMaximumCheckoutTime(int poolMaximumCheckoutTime) {
     this.poolMaximumCheckoutTime = poolMaximumCheckoutTime;
@@ -265,6 +287,133 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /**
+   * The number of idle connections the housekeeper keeps open, so that checkouts do not wait for a connection to be
+   * opened.
+   *
+   * @param poolMinimumIdleConnections
+   *          The minimum number of idle connections
+   *
+   * @since 3.5.13
+   */
+  public void setPoolMinimumIdleConnections(int poolMinimumIdleConnections) {
+    this.poolMinimumIdleConnections = poolMinimumIdleConnections;
+  }
+
+  /**
+   * The maximum time a connection is kept open. Idle connections are closed by the housekeeper and checked out ones
+   * when they are returned; each connection lives up to 2.5% less, so that the connections opened together are not
+   * closed all at once.
+   *
+   * @param milliseconds
+   *          The maximum lifetime, 0 meaning the connections are never retired for their age
+   *
+   * @since 3.5.13
+   */
+  public void setPoolMaximumLifetime(int milliseconds) {
+    this.poolMaximumLifetime = milliseconds;
+  }
+
+  /**
+   * The time after which the housekeeper closes an unused connection, as long as more than the minimum idle
+   * connections are open.
+   *
+   * @param milliseconds
+   *          The maximum idle time, 0 meaning the idle connections are not closed for their idle time
+   *
+   * @since 3.5.13
+   */
+  public void setPoolMaximumIdleTime(int milliseconds) {
+    this.poolMaximumIdleTime = milliseconds;
+  }
+
+  /**
+   * Determines if the idle connections are pinged by the housekeeper instead of when they are checked out or
+   * returned.
+   *
+   * @param poolPingInBackground
+   *          True to ping the connections in background
+   *
+   * @since 3.5.13
+   */
+  public void setPoolPingInBackground(boolean poolPingInBackground) {
+    this.poolPingInBackground = poolPingInBackground;
+  }
+
+  /**
+   * The time between two runs of the housekeeper. The housekeeper only runs when the minimum idle connections, the
+   * maximum lifetime, the maximum idle time, the ping in background or the leak detection threshold is set.
+   *
+   * @param milliseconds
+   *          The housekeeping interval
+   *
+   * @since 3.5.13
+   */
+  public void setPoolHousekeepingInterval(int milliseconds) {
+    this.poolHousekeepingInterval = milliseconds;
+  }
+
+  /**
+   * The number of prepared statements kept open for each connection, so that the sessions using the connection one
+   * after the other do not prepare the same SQL again. The statements are cached by SQL, result set type and
+   * concurrency, and only the ones prepared without generated keys or holdability are cached.
+   *
+   * @param poolPreparedStatementCacheSize
+   *          The number of statements cached per connection, 0 to disable the cache
+   *
+   * @since 3.5.13
+   */
+  public void setPoolPreparedStatementCacheSize(int poolPreparedStatementCacheSize) {
+    this.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    forceCloseAll();
+  }
+
+  /**
+   * The name to publish the statistics of the pool under to the platform MBean server, as a
+   * {@link PooledDataSourceMXBean}.
+   *
+   * @param poolJmxName
+   *          The name, null to stop publishing them
+   *
+   * @since 3.5.13
+   */
+  public void setPoolJmxName(String poolJmxName) {
+    if (this.poolJmxName != null) {
+      JmxPooledDataSource.unregister(this.poolJmxName);
+    }
+    this.poolJmxName = poolJmxName;
+    if (poolJmxName != null) {
+      JmxPooledDataSource.register(this, poolJmxName);
+    }
+  }
+
+  /**
+   * The time after which a checked out connection is reported as a possible leak. The housekeeper logs a warning
+   * with the thread and the mapped statement that checked it out and, if it was sampled, the stack trace of the
+   * checkout.
+   *
+   * @param milliseconds
+   *          The leak detection threshold, 0 to disable the leak detection
+   *
+   * @since 3.5.13
+   */
+  public void setPoolLeakDetectionThreshold(int milliseconds) {
+    this.poolLeakDetectionThreshold = milliseconds;
+  }
+
+  /**
+   * The fraction of the checkouts whose stack trace is recorded for the leak reports, as capturing it takes a few
+   * microseconds.
+   *
+   * @param poolLeakDetectionSampleRate
+   *          The sample rate, between 0 (never) and 1 (every checkout)
+   *
+   * @since 3.5.13
+   */
+  public void setPoolLeakDetectionSampleRate(double poolLeakDetectionSampleRate) {
+    this.poolLeakDetectionSampleRate = poolLeakDetectionSampleRate;
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -336,50 +485,90 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public int getPoolMinimumIdleConnections() {
+    return poolMinimumIdleConnections;
+  }
+
+  public int getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  public int getPoolMaximumIdleTime() {
+    return poolMaximumIdleTime;
+  }
+
+  public boolean isPoolPingInBackground() {
+    return poolPingInBackground;
+  }
+
+  public int getPoolHousekeepingInterval() {
+    return poolHousekeepingInterval;
+  }
+
+  public int getPoolPreparedStatementCacheSize() {
+    return poolPreparedStatementCacheSize;
+  }
+
+  public String getPoolJmxName() {
+    return poolJmxName;
+  }
+
+  public int getPoolLeakDetectionThreshold() {
+    return poolLeakDetectionThreshold;
+  }
+
+  public double getPoolLeakDetectionSampleRate() {
+    return poolLeakDetectionSampleRate;
+  }
+
+  /**
+   * @return the number of threads waiting for a connection to be returned
+   *
+   * @since 3.5.13
+   */
+  public int getWaitingThreadCount() {
+    return waitingThreads.get();
+  }
+
   /**
    * Closes all active and idle connections in the pool.
    */
   public void forceCloseAll() {
-    lock.lock();
-    try {
-      expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(),
-          dataSource.getPassword());
-      for (int i = state.activeConnections.size(); i > 0; i--) {
-        try {
-          PooledConnection conn = state.activeConnections.remove(i - 1);
-          conn.invalidate();
-
-          Connection realConn = conn.getRealConnection();
-          if (!realConn.getAutoCommit()) {
-            realConn.rollback();
-          }
-          realConn.close();
-        } catch (Exception e) {
-          // ignore
-        }
-      }
-      for (int i = state.idleConnections.size(); i > 0; i--) {
-        try {
-          PooledConnection conn = state.idleConnections.remove(i - 1);
-          conn.invalidate();
-
-          Connection realConn = conn.getRealConnection();
-          if (!realConn.getAutoCommit()) {
-            realConn.rollback();
-          }
-          realConn.close();
-        } catch (Exception e) {
-          // ignore
-        }
+    expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(),
+        dataSource.getPassword());
+    for (PooledConnection conn : state.getActiveConnections()) {
+      if (conn.retire()) {
+        state.removeActiveConnection(conn);
+        state.releaseConnection();
+        closeRealConnection(conn);
       }
-    } finally {
-      lock.unlock();
     }
+    PooledConnection conn;
+    while ((conn = state.claimIdleConnection()) != null) {
+      state.releaseConnection();
+      closeRealConnection(conn);
+    }
+    signalWaiters();
     if (log.isDebugEnabled()) {
       log.debug("PooledDataSource forcefully closed/removed all connections.");
     }
   }
 
+  private void closeRealConnection(PooledConnection conn) {
+    try {
+      conn.invalidate();
+      conn.closeStatementCache();
+
+      Connection realConn = conn.getRealConnection();
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
   public PoolState getPoolState() {
     return state;
   }
@@ -389,165 +578,368 @@ public class PooledDataSource implements DataSource {
   }
 
   protected void pushConnection(PooledConnection conn) throws SQLException {
-
-    lock.lock();
+    if (!conn.retire()) {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode()
+            + ") attempted to return to the pool, discarding connection.");
+      }
+      state.recordBadConnection();
+      return;
+    }
+    state.removeActiveConnection(conn);
+    boolean idle = false;
     try {
-      state.activeConnections.remove(conn);
+      long checkoutTime = conn.getCheckoutTime();
+      state.recordCheckoutTime(conn, checkoutTime);
+      if (conn.isLeakReported() && log.isDebugEnabled()) {
+        log.debug("Connection " + conn.getRealHashCode() + " reported as a possible leak was returned after "
+            + checkoutTime + " ms.");
+      }
       if (conn.isValid()) {
-        if (state.idleConnections.size() < poolMaximumIdleConnections
-            && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
-          PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
-          state.idleConnections.add(newConn);
-          newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
-          newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
-          conn.invalidate();
+        if (!conn.getRealConnection().getAutoCommit()) {
+          conn.getRealConnection().rollback();
+        }
+        PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
+        newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
+        newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+        newConn.inheritStatementCache(conn);
+        conn.invalidate();
+        if (conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isExpired(conn)
+            && state.addIdleConnection(newConn, poolMaximumIdleConnections)) {
+          idle = true;
           if (log.isDebugEnabled()) {
             log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
           }
-          condition.signal();
         } else {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
+          conn.closeStatementCache();
           conn.getRealConnection().close();
           if (log.isDebugEnabled()) {
             log.debug("Closed connection " + conn.getRealHashCode() + ".");
           }
-          conn.invalidate();
         }
       } else {
         if (log.isDebugEnabled()) {
           log.debug("A bad connection (" + conn.getRealHashCode()
               + ") attempted to return to the pool, discarding connection.");
         }
-        state.badConnectionCount++;
+        state.recordBadConnection();
       }
     } finally {
-      lock.unlock();
+      if (!idle) {
+        state.releaseConnection();
+      }
+      signalWaiters();
     }
   }
 
   private PooledConnection popConnection(String username, String password) throws SQLException {
     boolean countedWait = false;
-    PooledConnection conn = null;
     long t = System.currentTimeMillis();
+    long start = System.nanoTime();
     int localBadConnectionCount = 0;
+    startHousekeeperIfRequired();
 
-    while (conn == null) {
-      lock.lock();
-      try {
-        if (!state.idleConnections.isEmpty()) {
-          // Pool has available connection
-          conn = state.idleConnections.remove(0);
-          if (log.isDebugEnabled()) {
-            log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
-          }
-        } else if (state.activeConnections.size() < poolMaximumActiveConnections) {
-          // Pool does not have available connection and can create a new connection
-          conn = new PooledConnection(dataSource.getConnection(), this);
-          if (log.isDebugEnabled()) {
-            log.debug("Created connection " + conn.getRealHashCode() + ".");
+    while (true) {
+      // neither opening, validating nor rolling back a connection holds a lock shared with the other threads
+      PooledConnection conn = state.claimIdleConnection();
+      if (conn != null) {
+        // Pool has available connection
+        if (log.isDebugEnabled()) {
+          log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
+        }
+      } else if (state.reserveConnection(poolMaximumActiveConnections)) {
+        // Pool does not have available connection and can create a new connection
+        try {
+          conn = openConnection();
+        } catch (SQLException | RuntimeException e) {
+          state.releaseConnection();
+          signalWaiters();
+          throw e;
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("Created connection " + conn.getRealHashCode() + ".");
+        }
+      } else {
+        // Cannot create new connection
+        conn = claimOverdueConnection();
+        if (conn == null) {
+          // Must wait
+          if (!countedWait) {
+            state.recordHadToWait();
+            countedWait = true;
           }
-        } else {
-          // Cannot create new connection
-          PooledConnection oldestActiveConnection = state.activeConnections.get(0);
-          long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
-          if (longestCheckoutTime > poolMaximumCheckoutTime) {
-            // Can claim overdue connection
-            state.claimedOverdueConnectionCount++;
-            state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
-            state.accumulatedCheckoutTime += longestCheckoutTime;
-            state.activeConnections.remove(oldestActiveConnection);
-            if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
-              try {
-                oldestActiveConnection.getRealConnection().rollback();
-              } catch (SQLException e) {
-                /*
-                 * Just log a message for debug and continue to execute the following statement like nothing happened.
-                 * Wrap the bad connection with a new PooledConnection, this will help to not interrupt current
-                 * executing thread and give current thread a chance to join the next competition for another valid/good
-                 * database connection. At the end of this loop, bad {@link @conn} will be set as null.
-                 */
-                log.debug("Bad connection. Could not roll back");
-              }
-            }
-            conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
-            conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
-            conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
-            oldestActiveConnection.invalidate();
+          if (!awaitConnection()) {
             if (log.isDebugEnabled()) {
-              log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
-            }
-          } else {
-            // Must wait
-            try {
-              if (!countedWait) {
-                state.hadToWaitCount++;
-                countedWait = true;
-              }
-              if (log.isDebugEnabled()) {
-                log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
-              }
-              long wt = System.currentTimeMillis();
-              condition.await(poolTimeToWait, TimeUnit.MILLISECONDS);
-              state.accumulatedWaitTime += System.currentTimeMillis() - wt;
-            } catch (InterruptedException e) {
-              // set interrupt flag
-              Thread.currentThread().interrupt();
-              break;
+              log.debug(
+                  "PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
             }
+            throw new SQLException(
+                "PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
           }
+          continue;
         }
-        if (conn != null) {
-          // ping to server and check the connection is valid or not
-          if (conn.isValid()) {
-            if (!conn.getRealConnection().getAutoCommit()) {
-              conn.getRealConnection().rollback();
-            }
-            conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
-            conn.setCheckoutTimestamp(System.currentTimeMillis());
-            conn.setLastUsedTimestamp(System.currentTimeMillis());
-            state.activeConnections.add(conn);
-            state.requestCount++;
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
-          } else {
-            if (log.isDebugEnabled()) {
-              log.debug("A bad connection (" + conn.getRealHashCode()
-                  + ") was returned from the pool, getting another connection.");
-            }
-            state.badConnectionCount++;
-            localBadConnectionCount++;
-            conn = null;
-            if (localBadConnectionCount > poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance) {
-              if (log.isDebugEnabled()) {
-                log.debug("PooledDataSource: Could not get a good connection to the database.");
-              }
-              throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
-            }
-          }
+      }
+      // ping to server and check the connection is valid or not
+      if (validateForCheckout(conn)) {
+        conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+        conn.setCheckoutTimestamp(System.currentTimeMillis());
+        conn.setLastUsedTimestamp(System.currentTimeMillis());
+        traceCheckout(conn);
+        state.addActiveConnection(conn);
+        state.recordRequest(System.currentTimeMillis() - t, System.nanoTime() - start);
+        return conn;
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode()
+            + ") was returned from the pool, getting another connection.");
+      }
+      conn.retire();
+      closeRealConnection(conn);
+      state.releaseConnection();
+      signalWaiters();
+      state.recordBadConnection();
+      localBadConnectionCount++;
+      if (localBadConnectionCount > poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance) {
+        if (log.isDebugEnabled()) {
+          log.debug("PooledDataSource: Could not get a good connection to the database.");
         }
+        throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
+      }
+    }
+  }
+
+  /**
+   * Pings a connection about to be checked out and rolls back the work left pending on it.
+   *
+   * @return false if the connection failed, it must then be discarded
+   */
+  private boolean validateForCheckout(PooledConnection conn) {
+    try {
+      if (!conn.isValid()) {
+        return false;
+      }
+      if (!conn.getRealConnection().getAutoCommit()) {
+        conn.getRealConnection().rollback();
+      }
+      return true;
+    } catch (SQLException | RuntimeException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + conn.getRealHashCode() + " could not be reset: " + e.getMessage());
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Takes the connection checked out for the longest time back from its user, if it exceeded the maximum checkout
+   * time, and hands it over to the calling thread.
+   */
+  private PooledConnection claimOverdueConnection() {
+    if (poolMaximumCheckoutTime < 0) {
+      return null;
+    }
+    PooledConnection oldestActiveConnection = null;
+    for (PooledConnection active : state.getActiveConnections()) {
+      if (oldestActiveConnection == null
+          || active.getCheckoutTimestamp() < oldestActiveConnection.getCheckoutTimestamp()) {
+        oldestActiveConnection = active;
+      }
+    }
+    if (oldestActiveConnection == null) {
+      return null;
+    }
+    long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+    if (longestCheckoutTime <= poolMaximumCheckoutTime || !oldestActiveConnection.retire()) {
+      return null;
+    }
+    // Can claim overdue connection
+    state.removeActiveConnection(oldestActiveConnection);
+    state.recordOverdueCheckout(oldestActiveConnection, longestCheckoutTime);
+    log.warn("Claiming overdue connection, " + describeCheckout(oldestActiveConnection, longestCheckoutTime));
+    oldestActiveConnection.invalidate();
+    // the statements may still be in use by the thread the connection is taken from
+    oldestActiveConnection.closeStatementCache();
+    try {
+      if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
+        oldestActiveConnection.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      /*
+       * Just log a message for debug and continue to execute the following statement like nothing happened. Wrap the
+       * bad connection with a new PooledConnection, this will help to not interrupt current executing thread and give
+       * current thread a chance to join the next competition for another valid/good database connection. The bad
+       * connection is then discarded by the validation of the caller.
+       */
+      log.debug("Bad connection. Could not roll back");
+    }
+    PooledConnection conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+    conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
+    conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
+    if (log.isDebugEnabled()) {
+      log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+    }
+    return conn;
+  }
+
+  /**
+   * Waits up to the pool time to wait for a connection to be returned.
+   *
+   * @return false if the thread was interrupted
+   */
+  private boolean awaitConnection() {
+    waitingThreads.incrementAndGet();
+    lock.lock();
+    try {
+      // checked again after registering as a waiter, as a connection returned before would not signal
+      if (state.getIdleConnectionCount() > 0 || state.getOpenConnectionCount() < poolMaximumActiveConnections) {
+        return true;
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+      }
+      long wt = System.currentTimeMillis();
+      condition.await(poolTimeToWait, TimeUnit.MILLISECONDS);
+      state.recordWaitTime(System.currentTimeMillis() - wt);
+      return true;
+    } catch (InterruptedException e) {
+      // set interrupt flag
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      lock.unlock();
+      waitingThreads.decrementAndGet();
+    }
+  }
+
+  private void signalWaiters() {
+    if (waitingThreads.get() > 0) {
+      lock.lock();
+      try {
+        condition.signal();
       } finally {
         lock.unlock();
       }
+    }
+  }
 
+  private void startHousekeeperIfRequired() {
+    if (!housekeeperStarted.get()
+        && (poolMinimumIdleConnections > 0 || poolMaximumLifetime > 0 || poolMaximumIdleTime > 0
+            || poolPingInBackground || poolLeakDetectionThreshold > 0)
+        && housekeeperStarted.compareAndSet(false, true)) {
+      PoolHousekeeper.start(this);
     }
+  }
 
-    if (conn == null) {
+  /**
+   * Reports the connections checked out for too long, closes the expired and the long unused idle connections, pings
+   * the idle connections in background and opens connections up to the minimum idle connections. Called by the
+   * {@link PoolHousekeeper}.
+   */
+  void housekeep() {
+    if (poolLeakDetectionThreshold > 0) {
+      for (PooledConnection conn : state.getActiveConnections()) {
+        long checkoutTime = conn.getCheckoutTime();
+        if (checkoutTime > poolLeakDetectionThreshold && !conn.isLeakReported()) {
+          conn.setLeakReported(true);
+          state.recordSuspectedLeak();
+          log.warn("Possible connection leak, " + describeCheckout(conn, checkoutTime));
+        }
+      }
+    }
+    for (PooledConnection conn : state.getIdleConnections()) {
+      long now = System.currentTimeMillis();
+      boolean retired = isExpired(conn) || poolMaximumIdleTime > 0
+          && conn.getTimeElapsedSinceLastUse() > poolMaximumIdleTime
+          && state.getIdleConnectionCount() > poolMinimumIdleConnections;
+      boolean pingDue = poolPingInBackground && poolPingEnabled && poolPingConnectionsNotUsedFor >= 0
+          && now - Math.max(conn.getLastUsedTimestamp(), conn.getLastValidatedTimestamp())
+              > poolPingConnectionsNotUsedFor;
+      if ((retired || pingDue) && state.claimIdleConnection(conn)) {
+        if (!retired && pingConnection(conn, true)) {
+          conn.setLastValidatedTimestamp(now);
+          state.restoreIdleConnection(conn);
+        } else {
+          state.releaseConnection();
+          closeRealConnection(conn);
+          if (log.isDebugEnabled()) {
+            log.debug("Retired idle connection " + conn.getRealHashCode() + ".");
+          }
+        }
+      }
+    }
+    while (state.getIdleConnectionCount() < poolMinimumIdleConnections
+        && state.reserveConnection(poolMaximumActiveConnections)) {
+      PooledConnection conn;
+      try {
+        conn = openConnection();
+      } catch (SQLException | RuntimeException e) {
+        state.releaseConnection();
+        log.warn("Could not open an idle connection. Cause: " + e);
+        break;
+      }
+      conn.setConnectionTypeCode(expectedConnectionTypeCode);
+      if (!state.addIdleConnection(conn, poolMaximumIdleConnections)) {
+        state.releaseConnection();
+        closeRealConnection(conn);
+        break;
+      }
       if (log.isDebugEnabled()) {
-        log.debug("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+        log.debug("Opened idle connection " + conn.getRealHashCode() + ".");
+      }
+    }
+    signalWaiters();
+  }
+
+  private void traceCheckout(PooledConnection conn) {
+    StackTraceElement[] stackTrace = null;
+    if (poolLeakDetectionThreshold > 0 && (poolLeakDetectionSampleRate >= 1.0
+        || ThreadLocalRandom.current().nextDouble() < poolLeakDetectionSampleRate)) {
+      StackTraceElement[] frames = new Throwable().getStackTrace();
+      int first = 0;
+      // starts at the caller of the pool
+      while (first < frames.length - 1 && frames[first].getClassName().equals(PooledDataSource.class.getName())) {
+        first++;
+      }
+      stackTrace = Arrays.copyOfRange(frames, first, frames.length);
+    }
+    conn.setCheckout(Thread.currentThread().getName(), ErrorContext.instance().getObject(), stackTrace);
+  }
+
+  private String describeCheckout(PooledConnection conn, long checkoutTime) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("connection ").append(conn.getRealHashCode()).append(" has been checked out for ")
+        .append(checkoutTime).append(" ms by thread '").append(conn.getCheckoutThread()).append('\'');
+    if (conn.getCheckoutStatement() != null) {
+      builder.append(" executing '").append(conn.getCheckoutStatement()).append('\'');
+    }
+    StackTraceElement[] stackTrace = conn.getCheckoutStackTrace();
+    if (stackTrace == null) {
+      builder.append('.');
+    } else {
+      builder.append(", checked out at:");
+      for (StackTraceElement element : stackTrace) {
+        builder.append(System.lineSeparator()).append("\tat ").append(element);
       }
-      throw new SQLException(
-          "PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
     }
+    return builder.toString();
+  }
 
+  private PooledConnection openConnection() throws SQLException {
+    long start = System.nanoTime();
+    PooledConnection conn = new PooledConnection(dataSource.getConnection(), this);
+    state.recordConnectionCreationTime(System.nanoTime() - start);
     return conn;
   }
 
+  private boolean isExpired(PooledConnection conn) {
+    if (poolMaximumLifetime <= 0) {
+      return false;
+    }
+    long jitter = (conn.getRealHashCode() & Integer.MAX_VALUE) % (poolMaximumLifetime / 40 + 1);
+    return conn.getAge() > poolMaximumLifetime - jitter;
+  }
+
   /**
    * Method to check to see if a connection is still usable
    *
@@ -557,6 +949,11 @@ public class PooledDataSource implements DataSource {
    * @return True if the connection is still usable
    */
   protected boolean pingConnection(PooledConnection conn) {
+    // the housekeeper pings the idle connections when it is done in background
+    return pingConnection(conn, !poolPingInBackground);
+  }
+
+  private boolean pingConnection(PooledConnection conn, boolean pingQuery) {
     boolean result = true;
 
     try {
@@ -568,7 +965,7 @@ public class PooledDataSource implements DataSource {
       result = false;
     }
 
-    if (result && poolPingEnabled && poolPingConnectionsNotUsedFor >= 0
+    if (result && pingQuery && poolPingEnabled && poolPingConnectionsNotUsedFor >= 0
         && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
       try {
         if (log.isDebugEnabled()) {
@@ -610,11 +1007,8 @@ public class PooledDataSource implements DataSource {
    * @return The 'real' connection
    */
   public static Connection unwrapConnection(Connection conn) {
-    if (Proxy.isProxyClass(conn.getClass())) {
-      InvocationHandler handler = Proxy.getInvocationHandler(conn);
-      if (handler instanceof PooledConnection) {
-        return ((PooledConnection) handler).getRealConnection();
-      }
+    if (conn instanceof ProxyConnection) {
+      return ((ProxyConnection) conn).getPooledConnection().getRealConnection();
     }
     return conn;
   }
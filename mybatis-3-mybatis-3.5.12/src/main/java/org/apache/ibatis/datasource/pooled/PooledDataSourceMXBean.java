@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the {@link PoolState} of a pooled data source. The times are in milliseconds, the percentiles
+ * within 12.5%.
+ *
+ * @since 3.5.13
+ *
+ * @see PooledDataSource#setPoolJmxName(String)
+ */
+public interface PooledDataSourceMXBean {
+
+  int getActiveConnectionCount();
+
+  int getIdleConnectionCount();
+
+  int getMaximumActiveConnections();
+
+  int getWaitingThreadCount();
+
+  long getRequestCount();
+
+  long getHadToWaitCount();
+
+  long getBadConnectionCount();
+
+  long getClaimedOverdueConnectionCount();
+
+  double getAcquireTimeMean();
+
+  double getAcquireTime50thPercentile();
+
+  double getAcquireTime99thPercentile();
+
+  double getAcquireTimeMax();
+
+  double getCheckoutTimeMean();
+
+  double getCheckoutTime50thPercentile();
+
+  double getCheckoutTime99thPercentile();
+
+  double getCheckoutTimeMax();
+
+  long getConnectionCreationCount();
+
+  double getConnectionCreationTimeMean();
+
+  double getConnectionCreationTime99thPercentile();
+
+  double getConnectionCreationTimeMax();
+
+  long getSuspectedLeakCount();
+
+  /**
+   * @return the mean checkout time by the id of the mapped statement that checked the connections out
+   */
+  Map<String, Double> getStatementCheckoutTimeMeans();
+
+  /**
+   * @return the 99th percentile of the checkout time by the id of the mapped statement that checked the connections
+   *         out
+   */
+  Map<String, Double> getStatementCheckoutTime99thPercentiles();
+
+  /**
+   * Resets the counters and the histograms, so that they describe the activity since the last reset.
+   */
+  void resetStats();
+
+}
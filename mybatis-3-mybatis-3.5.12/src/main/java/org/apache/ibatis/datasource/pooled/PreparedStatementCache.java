@@ -0,0 +1,172 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * The prepared statements of a physical connection, kept open across the checkouts of the connection so that the same
+ * SQL is not prepared again by every session. A statement is handed out to one user at a time and comes back to the
+ * cache when that user closes it; the least recently used ones are closed beyond the size of the cache.
+ *
+ * @since 3.5.13
+ */
+class PreparedStatementCache {
+
+  private static final Log log = LogFactory.getLog(PreparedStatementCache.class);
+
+  private final int size;
+  private final Map<Key, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+  private final Lock lock = new ReentrantLock();
+  private boolean closed;
+
+  PreparedStatementCache(int size) {
+    this.size = size;
+  }
+
+  /**
+   * Returns a cached statement for the SQL, or prepares a new one.
+   *
+   * @param realConnection
+   *          the physical connection
+   * @param proxyConnection
+   *          the connection the users of the statement see
+   *
+   * @return a statement that returns to the cache when it is closed
+   */
+  PreparedStatement prepare(Connection realConnection, Connection proxyConnection, String sql, int resultSetType,
+      int resultSetConcurrency) throws SQLException {
+    Key key = new Key(sql, resultSetType, resultSetConcurrency);
+    PreparedStatement statement = take(key);
+    if (statement == null) {
+      statement = realConnection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+    }
+    return new CachedPreparedStatement(this, key, statement, proxyConnection);
+  }
+
+  private PreparedStatement take(Key key) throws SQLException {
+    PreparedStatement statement;
+    lock.lock();
+    try {
+      statement = statements.remove(key);
+    } finally {
+      lock.unlock();
+    }
+    // asks the driver outside of the lock
+    return statement == null || statement.isClosed() ? null : statement;
+  }
+
+  /**
+   * Caches a statement again once its user closed it, unless the same SQL was cached in the meantime.
+   */
+  void release(CachedPreparedStatement cached) {
+    PreparedStatement statement = cached.getStatement();
+    List<PreparedStatement> evicted = new ArrayList<>(1);
+    if (!cached.reset()) {
+      evicted.add(statement);
+    } else {
+      lock.lock();
+      try {
+        Key key = (Key) cached.getKey();
+        if (closed || statements.containsKey(key)) {
+          evicted.add(statement);
+        } else {
+          statements.put(key, statement);
+          Iterator<PreparedStatement> eldest = statements.values().iterator();
+          while (statements.size() > size) {
+            evicted.add(eldest.next());
+            eldest.remove();
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    evicted.forEach(PreparedStatementCache::closeQuietly);
+  }
+
+  /**
+   * Closes the cached statements, and the ones still in use once they are returned.
+   */
+  void close() {
+    List<PreparedStatement> cached;
+    lock.lock();
+    try {
+      closed = true;
+      cached = new ArrayList<>(statements.values());
+      statements.clear();
+    } finally {
+      lock.unlock();
+    }
+    cached.forEach(PreparedStatementCache::closeQuietly);
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException | RuntimeException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Could not close a cached prepared statement. Cause: " + e);
+      }
+    }
+  }
+
+  private static final class Key {
+
+    private final String sql;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+
+    Key(String sql, int resultSetType, int resultSetConcurrency) {
+      this.sql = sql;
+      this.resultSetType = resultSetType;
+      this.resultSetConcurrency = resultSetConcurrency;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return resultSetType == other.resultSetType && resultSetConcurrency == other.resultSetConcurrency
+          && sql.equals(other.sql);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sql, resultSetType, resultSetConcurrency);
+    }
+
+  }
+
+}
@@ -0,0 +1,418 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * The connection handed out by a {@link PooledDataSource} for a {@link PooledConnection}. Its methods call the
+ * physical connection directly, without the reflective dispatch and the argument arrays of a dynamic proxy; closing
+ * it returns the connection to the pool.
+ *
+ * @since 3.5.13
+ */
+final class ProxyConnection implements Connection {
+
+  private final PooledConnection pooledConnection;
+  private final PooledDataSource dataSource;
+  private final Connection realConnection;
+
+  ProxyConnection(PooledConnection pooledConnection, PooledDataSource dataSource) {
+    this.pooledConnection = pooledConnection;
+    this.dataSource = dataSource;
+    this.realConnection = pooledConnection.getRealConnection();
+  }
+
+  PooledConnection getPooledConnection() {
+    return pooledConnection;
+  }
+
+  @Override
+  public Statement createStatement() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.createStatement();
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql) throws SQLException {
+    pooledConnection.checkConnection();
+    if (dataSource.getPoolPreparedStatementCacheSize() > 0) {
+      return pooledConnection.prepareCachedStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+    return realConnection.prepareStatement(sql);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.prepareCall(sql);
+  }
+
+  @Override
+  public String nativeSQL(String sql) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.nativeSQL(sql);
+  }
+
+  @Override
+  public void setAutoCommit(boolean autoCommit) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.setAutoCommit(autoCommit);
+  }
+
+  @Override
+  public boolean getAutoCommit() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getAutoCommit();
+  }
+
+  @Override
+  public void commit() throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.commit();
+  }
+
+  @Override
+  public void rollback() throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.rollback();
+  }
+
+  @Override
+  public void close() throws SQLException {
+    dataSource.pushConnection(pooledConnection);
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.isClosed();
+  }
+
+  @Override
+  public DatabaseMetaData getMetaData() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getMetaData();
+  }
+
+  @Override
+  public void setReadOnly(boolean readOnly) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.setReadOnly(readOnly);
+  }
+
+  @Override
+  public boolean isReadOnly() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.isReadOnly();
+  }
+
+  @Override
+  public void setCatalog(String catalog) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.setCatalog(catalog);
+  }
+
+  @Override
+  public String getCatalog() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getCatalog();
+  }
+
+  @Override
+  public void setTransactionIsolation(int level) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.setTransactionIsolation(level);
+  }
+
+  @Override
+  public int getTransactionIsolation() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getTransactionIsolation();
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getWarnings();
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.clearWarnings();
+  }
+
+  @Override
+  public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.createStatement(resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+      throws SQLException {
+    pooledConnection.checkConnection();
+    if (dataSource.getPoolPreparedStatementCacheSize() > 0) {
+      return pooledConnection.prepareCachedStatement(sql, resultSetType, resultSetConcurrency);
+    }
+    return realConnection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.prepareCall(sql, resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public Map<String,Class<?>> getTypeMap() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getTypeMap();
+  }
+
+  @Override
+  public void setTypeMap(Map<String,Class<?>> map) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.setTypeMap(map);
+  }
+
+  @Override
+  public void setHoldability(int holdability) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.setHoldability(holdability);
+  }
+
+  @Override
+  public int getHoldability() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getHoldability();
+  }
+
+  @Override
+  public Savepoint setSavepoint() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.setSavepoint();
+  }
+
+  @Override
+  public Savepoint setSavepoint(String name) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.setSavepoint(name);
+  }
+
+  @Override
+  public void rollback(Savepoint savepoint) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.rollback(savepoint);
+  }
+
+  @Override
+  public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.releaseSavepoint(savepoint);
+  }
+
+  @Override
+  public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+      throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+      int resultSetHoldability) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+      int resultSetHoldability) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.prepareStatement(sql, autoGeneratedKeys);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.prepareStatement(sql, columnIndexes);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.prepareStatement(sql, columnNames);
+  }
+
+  @Override
+  public Clob createClob() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.createClob();
+  }
+
+  @Override
+  public Blob createBlob() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.createBlob();
+  }
+
+  @Override
+  public NClob createNClob() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.createNClob();
+  }
+
+  @Override
+  public SQLXML createSQLXML() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.createSQLXML();
+  }
+
+  @Override
+  public boolean isValid(int timeout) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.isValid(timeout);
+  }
+
+  @Override
+  public void setClientInfo(String name, String value) throws SQLClientInfoException {
+    checkClientInfoConnection();
+    realConnection.setClientInfo(name, value);
+  }
+
+  @Override
+  public void setClientInfo(Properties properties) throws SQLClientInfoException {
+    checkClientInfoConnection();
+    realConnection.setClientInfo(properties);
+  }
+
+  @Override
+  public String getClientInfo(String name) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getClientInfo(name);
+  }
+
+  @Override
+  public Properties getClientInfo() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getClientInfo();
+  }
+
+  @Override
+  public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.createArrayOf(typeName, elements);
+  }
+
+  @Override
+  public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.createStruct(typeName, attributes);
+  }
+
+  @Override
+  public void setSchema(String schema) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.setSchema(schema);
+  }
+
+  @Override
+  public String getSchema() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getSchema();
+  }
+
+  @Override
+  public void abort(Executor executor) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.abort(executor);
+  }
+
+  @Override
+  public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+    pooledConnection.checkConnection();
+    realConnection.setNetworkTimeout(executor, milliseconds);
+  }
+
+  @Override
+  public int getNetworkTimeout() throws SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.getNetworkTimeout();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws java.sql.SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws java.sql.SQLException {
+    pooledConnection.checkConnection();
+    return realConnection.isWrapperFor(iface);
+  }
+
+  private void checkClientInfoConnection() throws SQLClientInfoException {
+    try {
+      pooledConnection.checkConnection();
+    } catch (SQLException e) {
+      throw new SQLClientInfoException(e.getMessage(), null, e);
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return realConnection.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return realConnection.equals(obj);
+  }
+
+  @Override
+  public String toString() {
+    // issue #579 toString() should never fail
+    return realConnection.toString();
+  }
+
+}
@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+/**
+ * How a {@link RoutingDataSource} spreads the connections over its replicas.
+ *
+ * @since 3.5.13
+ */
+public enum LoadBalancing {
+  /**
+   * Picks a replica at random, in proportion to its weight.
+   */
+  WEIGHTED_RANDOM,
+  /**
+   * Picks the replica with the fewest connections in use relative to its weight, so that a replica that has become
+   * slow is given less work.
+   */
+  LEAST_OUTSTANDING
+}
@@ -0,0 +1,488 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * The connection handed out by a {@link RoutingDataSource}. It opens the connection to the database it routes to when
+ * its first statement is created, and replays on it the auto-commit mode, the isolation level and the read-only flag
+ * set until then. Like any new JDBC connection it starts in auto-commit mode.
+ *
+ * @since 3.5.13
+ */
+final class RoutingConnection implements Connection {
+
+  private static final Log log = LogFactory.getLog(RoutingConnection.class);
+
+  private final RoutingDataSource dataSource;
+  private final String username;
+  private final String password;
+
+  private Connection connection;
+  private RoutingDataSource.Replica replica;
+  private Connection replicaConnection;
+  private boolean closed;
+  private boolean autoCommit = true;
+  private boolean readOnly;
+  private Integer transactionIsolation;
+
+  RoutingConnection(RoutingDataSource dataSource, String username, String password) {
+    this.dataSource = dataSource;
+    this.username = username;
+    this.password = password;
+  }
+
+  /**
+   * Returns the connection this one currently delegates to.
+   *
+   * @return the connection, or <code>null</code> if no statement was created yet
+   */
+  Connection getTargetConnection() {
+    return connection;
+  }
+
+  boolean isOnReplica() {
+    return connection != null && connection == replicaConnection;
+  }
+
+  @Override
+  public Statement createStatement() throws SQLException {
+    return statementTarget().createStatement();
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql) throws SQLException {
+    return statementTarget().prepareStatement(sql);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql) throws SQLException {
+    return statementTarget().prepareCall(sql);
+  }
+
+  @Override
+  public String nativeSQL(String sql) throws SQLException {
+    return target().nativeSQL(sql);
+  }
+
+  @Override
+  public void setAutoCommit(boolean autoCommit) throws SQLException {
+    checkOpen();
+    this.autoCommit = autoCommit;
+    if (connection != null) {
+      connection.setAutoCommit(autoCommit);
+    }
+  }
+
+  @Override
+  public boolean getAutoCommit() throws SQLException {
+    checkOpen();
+    return connection == null ? autoCommit : connection.getAutoCommit();
+  }
+
+  @Override
+  public void commit() throws SQLException {
+    checkOpen();
+    if (connection != null) {
+      connection.commit();
+    }
+  }
+
+  @Override
+  public void rollback() throws SQLException {
+    checkOpen();
+    if (connection != null) {
+      connection.rollback();
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    release();
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException {
+    return closed;
+  }
+
+  @Override
+  public DatabaseMetaData getMetaData() throws SQLException {
+    return target().getMetaData();
+  }
+
+  @Override
+  public void setReadOnly(boolean readOnly) throws SQLException {
+    checkOpen();
+    this.readOnly = readOnly;
+    if (connection != null) {
+      connection.setReadOnly(readOnly);
+    }
+  }
+
+  @Override
+  public boolean isReadOnly() throws SQLException {
+    checkOpen();
+    return readOnly;
+  }
+
+  @Override
+  public void setCatalog(String catalog) throws SQLException {
+    target().setCatalog(catalog);
+  }
+
+  @Override
+  public String getCatalog() throws SQLException {
+    return target().getCatalog();
+  }
+
+  @Override
+  public void setTransactionIsolation(int level) throws SQLException {
+    checkOpen();
+    this.transactionIsolation = level;
+    if (connection != null) {
+      connection.setTransactionIsolation(level);
+    }
+  }
+
+  @Override
+  public int getTransactionIsolation() throws SQLException {
+    return target().getTransactionIsolation();
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    checkOpen();
+    return connection == null ? null : connection.getWarnings();
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    checkOpen();
+    if (connection != null) {
+      connection.clearWarnings();
+    }
+  }
+
+  @Override
+  public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+    return statementTarget().createStatement(resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+      throws SQLException {
+    return statementTarget().prepareStatement(sql, resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    return statementTarget().prepareCall(sql, resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public Map<String, Class<?>> getTypeMap() throws SQLException {
+    return target().getTypeMap();
+  }
+
+  @Override
+  public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+    target().setTypeMap(map);
+  }
+
+  @Override
+  public void setHoldability(int holdability) throws SQLException {
+    target().setHoldability(holdability);
+  }
+
+  @Override
+  public int getHoldability() throws SQLException {
+    return target().getHoldability();
+  }
+
+  @Override
+  public Savepoint setSavepoint() throws SQLException {
+    return target().setSavepoint();
+  }
+
+  @Override
+  public Savepoint setSavepoint(String name) throws SQLException {
+    return target().setSavepoint(name);
+  }
+
+  @Override
+  public void rollback(Savepoint savepoint) throws SQLException {
+    target().rollback(savepoint);
+  }
+
+  @Override
+  public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+    target().releaseSavepoint(savepoint);
+  }
+
+  @Override
+  public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+      throws SQLException {
+    return statementTarget().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+      int resultSetHoldability) throws SQLException {
+    return statementTarget().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+      int resultSetHoldability) throws SQLException {
+    return statementTarget().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+    return statementTarget().prepareStatement(sql, autoGeneratedKeys);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+    return statementTarget().prepareStatement(sql, columnIndexes);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+    return statementTarget().prepareStatement(sql, columnNames);
+  }
+
+  @Override
+  public Clob createClob() throws SQLException {
+    return target().createClob();
+  }
+
+  @Override
+  public Blob createBlob() throws SQLException {
+    return target().createBlob();
+  }
+
+  @Override
+  public NClob createNClob() throws SQLException {
+    return target().createNClob();
+  }
+
+  @Override
+  public SQLXML createSQLXML() throws SQLException {
+    return target().createSQLXML();
+  }
+
+  @Override
+  public boolean isValid(int timeout) throws SQLException {
+    return target().isValid(timeout);
+  }
+
+  @Override
+  public void setClientInfo(String name, String value) throws SQLClientInfoException {
+    clientInfoTarget().setClientInfo(name, value);
+  }
+
+  @Override
+  public void setClientInfo(Properties properties) throws SQLClientInfoException {
+    clientInfoTarget().setClientInfo(properties);
+  }
+
+  @Override
+  public String getClientInfo(String name) throws SQLException {
+    return target().getClientInfo(name);
+  }
+
+  @Override
+  public Properties getClientInfo() throws SQLException {
+    return target().getClientInfo();
+  }
+
+  @Override
+  public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+    return target().createArrayOf(typeName, elements);
+  }
+
+  @Override
+  public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+    return target().createStruct(typeName, attributes);
+  }
+
+  @Override
+  public void setSchema(String schema) throws SQLException {
+    target().setSchema(schema);
+  }
+
+  @Override
+  public String getSchema() throws SQLException {
+    return target().getSchema();
+  }
+
+  @Override
+  public void abort(Executor executor) throws SQLException {
+    target().abort(executor);
+  }
+
+  @Override
+  public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+    target().setNetworkTimeout(executor, milliseconds);
+  }
+
+  @Override
+  public int getNetworkTimeout() throws SQLException {
+    return target().getNetworkTimeout();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    return target().unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return target().isWrapperFor(iface);
+  }
+
+  private Connection target() throws SQLException {
+    checkOpen();
+    if (connection == null) {
+      bind(dataSource.currentRoute(readOnly, autoCommit));
+    }
+    return connection;
+  }
+
+  private Connection statementTarget() throws SQLException {
+    checkOpen();
+    Route route = dataSource.currentRoute(readOnly, autoCommit);
+    if (connection == null) {
+      bind(route);
+    } else if (route == Route.PRIMARY && isOnReplica()) {
+      if (!autoCommit) {
+        replicaConnection.rollback();
+      }
+      bind(Route.PRIMARY);
+    }
+    return connection;
+  }
+
+  private Connection clientInfoTarget() throws SQLClientInfoException {
+    try {
+      return target();
+    } catch (SQLException e) {
+      throw new SQLClientInfoException(e.getMessage(), null, e);
+    }
+  }
+
+  private void bind(Route route) throws SQLException {
+    Connection newConnection = null;
+    if (route == Route.REPLICA && replica == null) {
+      List<RoutingDataSource.Replica> failed = new ArrayList<>(0);
+      RoutingDataSource.Replica candidate;
+      while (newConnection == null && (candidate = dataSource.selectReplica(failed)) != null) {
+        try {
+          newConnection = dataSource.openReplicaConnection(candidate, username, password);
+          replica = candidate;
+          replicaConnection = newConnection;
+        } catch (SQLException e) {
+          failed.add(candidate);
+        }
+      }
+      if (newConnection == null && log.isDebugEnabled()) {
+        log.debug("No replica available, reading from the primary.");
+      }
+    }
+    if (newConnection == null) {
+      newConnection = dataSource.openPrimaryConnection(username, password);
+    }
+    try {
+      if (newConnection.getAutoCommit() != autoCommit) {
+        newConnection.setAutoCommit(autoCommit);
+      }
+      if (transactionIsolation != null) {
+        newConnection.setTransactionIsolation(transactionIsolation);
+      }
+      if (readOnly) {
+        newConnection.setReadOnly(true);
+      }
+    } catch (SQLException e) {
+      closeQuietly(newConnection);
+      throw e;
+    }
+    connection = newConnection;
+  }
+
+  private void release() throws SQLException {
+    Connection primaryConnection = connection == replicaConnection ? null : connection;
+    connection = null;
+    try {
+      if (replicaConnection != null) {
+        try {
+          replicaConnection.close();
+        } finally {
+          replicaConnection = null;
+          dataSource.releaseReplicaConnection(replica);
+          replica = null;
+        }
+      }
+    } finally {
+      if (primaryConnection != null) {
+        primaryConnection.close();
+      }
+    }
+  }
+
+  private void closeQuietly(Connection connection) {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      // ignore
+    }
+  }
+
+  private void checkOpen() throws SQLException {
+    if (closed) {
+      throw new SQLException("Error accessing RoutingConnection. Connection is closed.");
+    }
+  }
+
+}
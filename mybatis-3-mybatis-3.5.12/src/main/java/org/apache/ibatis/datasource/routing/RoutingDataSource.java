@@ -0,0 +1,390 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * A data source that sends the writes to a primary database and the reads to its replicas.
+ * <p>
+ * The connections it hands out do not pick a database until their first statement is created. The route is then
+ * taken from, in this order, the hint set with {@link #setRouteHint(Route)}, the read-only flag of the connection
+ * (which transaction managers set for read-only transactions), and the kind of statement being executed as told by
+ * the {@link RoutingInterceptor}; without any of them the primary is used. A connection routed to a replica moves to
+ * the primary at its first write and stays there, the replica connection being kept open until it is closed. In a
+ * read-write transaction the reads before the first write thus go to a replica, and may not see the latest writes of
+ * other transactions; {@link #setTransactionsOnPrimary(boolean)} sends such transactions to the primary from their
+ * first statement instead.
+ * <p>
+ * A replica that fails to hand out a connection {@link #setEjectionThreshold(int) several times in a row} is left out
+ * for {@link #setEjectionTime(int) a while}, after which a single connection is tried before the others are sent to
+ * it again. The statements of a connection whose replica could not be reached go to another replica, or to the
+ * primary when there is none left.
+ *
+ * @since 3.5.13
+ */
+public class RoutingDataSource implements DataSource {
+
+  private static final Log log = LogFactory.getLog(RoutingDataSource.class);
+
+  private static final ThreadLocal<Route> routeHint = new ThreadLocal<>();
+  private static final ThreadLocal<Route> statementRoute = new ThreadLocal<>();
+
+  private final DataSource primary;
+  private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+
+  private volatile LoadBalancing loadBalancing = LoadBalancing.LEAST_OUTSTANDING;
+  private volatile int ejectionThreshold = 3;
+  private volatile int ejectionTime = 30000;
+  private volatile boolean transactionsOnPrimary;
+
+  public RoutingDataSource(DataSource primary) {
+    if (primary == null) {
+      throw new IllegalArgumentException("The primary data source must not be null.");
+    }
+    this.primary = primary;
+  }
+
+  /**
+   * Sends the statements of the connections of the current thread to the given database, whatever they are. It is
+   * only looked at when a connection picks its database, so it should be set before the session is opened or its
+   * first statement is executed.
+   *
+   * @param route
+   *          the database to use, or <code>null</code> to let the statements decide
+   */
+  public static void setRouteHint(Route route) {
+    if (route == null) {
+      routeHint.remove();
+    } else {
+      routeHint.set(route);
+    }
+  }
+
+  public static Route getRouteHint() {
+    return routeHint.get();
+  }
+
+  public static void clearRouteHint() {
+    routeHint.remove();
+  }
+
+  static Route setStatementRoute(Route route) {
+    Route previous = statementRoute.get();
+    if (route == null) {
+      statementRoute.remove();
+    } else {
+      statementRoute.set(route);
+    }
+    return previous;
+  }
+
+  static Route getStatementRoute() {
+    return statementRoute.get();
+  }
+
+  Route currentRoute(boolean readOnly, boolean autoCommit) {
+    Route hint = routeHint.get();
+    if (hint != null) {
+      return hint;
+    }
+    if (readOnly) {
+      return Route.REPLICA;
+    }
+    if (!autoCommit && transactionsOnPrimary) {
+      // a read-write transaction
+      return Route.PRIMARY;
+    }
+    Route route = statementRoute.get();
+    return route == null ? Route.PRIMARY : route;
+  }
+
+  public void addReplica(DataSource dataSource) {
+    addReplica(dataSource, 1);
+  }
+
+  /**
+   * Adds a replica of the primary database.
+   *
+   * @param dataSource
+   *          the data source of the replica, usually a pool of its own
+   * @param weight
+   *          the share of the reads it gets compared to the other replicas
+   */
+  public void addReplica(DataSource dataSource, int weight) {
+    if (dataSource == null) {
+      throw new IllegalArgumentException("The replica data source must not be null.");
+    }
+    if (weight < 1) {
+      throw new IllegalArgumentException("The weight of a replica must be positive, but was " + weight + ".");
+    }
+    replicas.add(new Replica(dataSource, weight));
+  }
+
+  public DataSource getPrimary() {
+    return primary;
+  }
+
+  public List<DataSource> getReplicas() {
+    List<DataSource> dataSources = new ArrayList<>(replicas.size());
+    for (Replica replica : replicas) {
+      dataSources.add(replica.dataSource);
+    }
+    return dataSources;
+  }
+
+  /**
+   * Tells whether a replica is currently left out because it failed to hand out connections.
+   *
+   * @param dataSource
+   *          the data source of the replica
+   *
+   * @return true if no connection is being opened to it
+   */
+  public boolean isEjected(DataSource dataSource) {
+    long now = System.currentTimeMillis();
+    for (Replica replica : replicas) {
+      if (replica.dataSource == dataSource) {
+        return replica.isEjected(now);
+      }
+    }
+    return false;
+  }
+
+  public LoadBalancing getLoadBalancing() {
+    return loadBalancing;
+  }
+
+  public void setLoadBalancing(LoadBalancing loadBalancing) {
+    this.loadBalancing = loadBalancing;
+  }
+
+  public int getEjectionThreshold() {
+    return ejectionThreshold;
+  }
+
+  /**
+   * Sets the number of consecutive failures to open a connection after which a replica is left out.
+   *
+   * @param ejectionThreshold
+   *          the number of failures
+   */
+  public void setEjectionThreshold(int ejectionThreshold) {
+    this.ejectionThreshold = ejectionThreshold;
+  }
+
+  public int getEjectionTime() {
+    return ejectionTime;
+  }
+
+  /**
+   * Sets how long a failing replica is left out, in milliseconds.
+   *
+   * @param ejectionTime
+   *          the time in milliseconds
+   */
+  public void setEjectionTime(int ejectionTime) {
+    this.ejectionTime = ejectionTime;
+  }
+
+  public boolean isTransactionsOnPrimary() {
+    return transactionsOnPrimary;
+  }
+
+  /**
+   * Sets whether the connections in a read-write transaction use the primary from their first statement, so that their
+   * reads are consistent with the latest writes. By default their selects go to a replica until their first write.
+   *
+   * @param transactionsOnPrimary
+   *          true to send the read-write transactions to the primary
+   */
+  public void setTransactionsOnPrimary(boolean transactionsOnPrimary) {
+    this.transactionsOnPrimary = transactionsOnPrimary;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return new RoutingConnection(this, null, null);
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return new RoutingConnection(this, username, password);
+  }
+
+  Connection openPrimaryConnection(String username, String password) throws SQLException {
+    return username == null ? primary.getConnection() : primary.getConnection(username, password);
+  }
+
+  /**
+   * Picks the replica to open a connection to.
+   *
+   * @param excluded
+   *          the replicas that already failed for this connection
+   *
+   * @return the replica, or <code>null</code> if none is available
+   */
+  Replica selectReplica(List<Replica> excluded) {
+    long now = System.currentTimeMillis();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    Replica selected = null;
+    if (loadBalancing == LoadBalancing.LEAST_OUTSTANDING) {
+      int ties = 0;
+      for (Replica replica : replicas) {
+        if (excluded.contains(replica) || replica.isEjected(now)) {
+          continue;
+        }
+        // compares (outstanding + 1) / weight without dividing, ties are broken at random
+        long load = (long) (replica.outstanding.get() + 1) * (selected == null ? 1 : selected.weight);
+        long selectedLoad = selected == null ? Long.MAX_VALUE
+            : (long) (selected.outstanding.get() + 1) * replica.weight;
+        if (load < selectedLoad) {
+          selected = replica;
+          ties = 1;
+        } else if (load == selectedLoad && random.nextInt(++ties) == 0) {
+          selected = replica;
+        }
+      }
+    } else {
+      int totalWeight = 0;
+      for (Replica replica : replicas) {
+        if (!excluded.contains(replica) && !replica.isEjected(now)) {
+          totalWeight += replica.weight;
+        }
+      }
+      if (totalWeight > 0) {
+        int point = random.nextInt(totalWeight);
+        for (Replica replica : replicas) {
+          if (!excluded.contains(replica) && !replica.isEjected(now)) {
+            point -= replica.weight;
+            if (point < 0) {
+              selected = replica;
+              break;
+            }
+          }
+        }
+      }
+    }
+    return selected;
+  }
+
+  Connection openReplicaConnection(Replica replica, String username, String password) throws SQLException {
+    replica.outstanding.incrementAndGet();
+    try {
+      Connection connection = username == null ? replica.dataSource.getConnection()
+          : replica.dataSource.getConnection(username, password);
+      replica.consecutiveFailures.set(0);
+      return connection;
+    } catch (SQLException | RuntimeException e) {
+      replica.outstanding.decrementAndGet();
+      int failures = replica.consecutiveFailures.incrementAndGet();
+      if (failures >= ejectionThreshold) {
+        replica.ejectedUntil = System.currentTimeMillis() + ejectionTime;
+        log.warn("Ejected replica " + replica.dataSource + " for " + ejectionTime + " ms after " + failures
+            + " consecutive failures to connect: " + e);
+      } else if (log.isDebugEnabled()) {
+        log.debug("Could not connect to replica " + replica.dataSource + ": " + e);
+      }
+      throw e;
+    }
+  }
+
+  void releaseReplicaConnection(Replica replica) {
+    replica.outstanding.decrementAndGet();
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return primary.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    primary.setLogWriter(out);
+    for (Replica replica : replicas) {
+      replica.dataSource.setLogWriter(out);
+    }
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    primary.setLoginTimeout(seconds);
+    for (Replica replica : replicas) {
+      replica.dataSource.setLoginTimeout(seconds);
+    }
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return primary.getLoginTimeout();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    throw new SQLException(getClass().getName() + " is not a wrapper for " + iface.getName() + ".");
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this);
+  }
+
+  @Override
+  public Logger getParentLogger() {
+    return Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+  }
+
+  static final class Replica {
+
+    private final DataSource dataSource;
+    private final int weight;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long ejectedUntil;
+
+    Replica(DataSource dataSource, int weight) {
+      this.dataSource = dataSource;
+      this.weight = weight;
+    }
+
+    boolean isEjected(long now) {
+      return now < ejectedUntil;
+    }
+
+    @Override
+    public String toString() {
+      return "Replica[" + dataSource + ", weight=" + weight + ", outstanding=" + outstanding + "]";
+    }
+
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.DataSourceException;
+import org.apache.ibatis.datasource.DataSourceFactory;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
+
+/**
+ * Creates a {@link RoutingDataSource} with a pool for the primary and for each replica. The properties are those of
+ * the <code>POOLED</code> data source and apply to every pool, unless given for a single one with the
+ * <code>primary.</code> or <code>replica.&lt;name&gt;.</code> prefix. The replicas are named by the
+ * <code>replicas</code> property, a comma separated list, and get their share of the reads with the
+ * <code>replica.&lt;name&gt;.weight</code> property.
+ *
+ * @since 3.5.13
+ */
+public class RoutingDataSourceFactory implements DataSourceFactory {
+
+  public static final String REPLICAS = "replicas";
+  public static final String LOAD_BALANCING = "loadBalancing";
+  public static final String EJECTION_THRESHOLD = "ejectionThreshold";
+  public static final String EJECTION_TIME = "ejectionTime";
+  public static final String TRANSACTIONS_ON_PRIMARY = "transactionsOnPrimary";
+  public static final String PRIMARY_PREFIX = "primary.";
+  public static final String REPLICA_PREFIX = "replica.";
+  public static final String WEIGHT = "weight";
+
+  private RoutingDataSource dataSource;
+
+  @Override
+  public void setProperties(Properties properties) {
+    Properties commonProperties = new Properties();
+    Properties primaryProperties = new Properties();
+    Map<String, Properties> replicaProperties = new LinkedHashMap<>();
+    for (String name : properties.getProperty(REPLICAS, "").split(",")) {
+      if (!name.trim().isEmpty()) {
+        replicaProperties.put(name.trim(), new Properties());
+      }
+    }
+    for (String key : properties.stringPropertyNames()) {
+      String value = properties.getProperty(key);
+      if (key.startsWith(PRIMARY_PREFIX)) {
+        primaryProperties.setProperty(key.substring(PRIMARY_PREFIX.length()), value);
+      } else if (key.startsWith(REPLICA_PREFIX)) {
+        String replicaKey = key.substring(REPLICA_PREFIX.length());
+        int dot = replicaKey.indexOf('.');
+        Properties target = dot < 0 ? null : replicaProperties.get(replicaKey.substring(0, dot));
+        if (target == null) {
+          throw new DataSourceException("Unknown replica in DataSource property: " + key
+              + ". The replicas must be listed in the '" + REPLICAS + "' property.");
+        }
+        target.setProperty(replicaKey.substring(dot + 1), value);
+      } else if (!REPLICAS.equals(key) && !LOAD_BALANCING.equals(key) && !EJECTION_THRESHOLD.equals(key)
+          && !EJECTION_TIME.equals(key) && !TRANSACTIONS_ON_PRIMARY.equals(key)) {
+        commonProperties.setProperty(key, value);
+      }
+    }
+
+    RoutingDataSource routingDataSource = new RoutingDataSource(createDataSource(commonProperties, primaryProperties));
+    for (Properties replica : replicaProperties.values()) {
+      String weight = (String) replica.remove(WEIGHT);
+      routingDataSource.addReplica(createDataSource(commonProperties, replica),
+          weight == null ? 1 : Integer.parseInt(weight));
+    }
+    if (properties.containsKey(LOAD_BALANCING)) {
+      routingDataSource.setLoadBalancing(
+          LoadBalancing.valueOf(properties.getProperty(LOAD_BALANCING).toUpperCase(Locale.ENGLISH)));
+    }
+    if (properties.containsKey(EJECTION_THRESHOLD)) {
+      routingDataSource.setEjectionThreshold(Integer.parseInt(properties.getProperty(EJECTION_THRESHOLD)));
+    }
+    if (properties.containsKey(EJECTION_TIME)) {
+      routingDataSource.setEjectionTime(Integer.parseInt(properties.getProperty(EJECTION_TIME)));
+    }
+    if (properties.containsKey(TRANSACTIONS_ON_PRIMARY)) {
+      routingDataSource
+          .setTransactionsOnPrimary(Boolean.parseBoolean(properties.getProperty(TRANSACTIONS_ON_PRIMARY)));
+    }
+    dataSource = routingDataSource;
+  }
+
+  @Override
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  /**
+   * Creates the data source of the primary or of a replica.
+   *
+   * @param commonProperties
+   *          the properties shared by all the data sources
+   * @param properties
+   *          the properties of this one
+   *
+   * @return the data source
+   */
+  protected DataSource createDataSource(Properties commonProperties, Properties properties) {
+    Properties merged = new Properties();
+    merged.putAll(commonProperties);
+    merged.putAll(properties);
+    DataSourceFactory factory = new PooledDataSourceFactory();
+    factory.setProperties(merged);
+    return factory.getDataSource();
+  }
+
+}
@@ -74,6 +74,8 @@ public class UnpooledDataSourceFactory implements DataSourceFactory {
       convertedValue = Long.valueOf(value);
     } else if (targetType == Boolean.class || targetType == boolean.class) {
       convertedValue = Boolean.valueOf(value);
+    } else if (targetType == Double.class || targetType == double.class) {
+      convertedValue = Double.valueOf(value);
     }
     return convertedValue;
   }
@@ -20,10 +20,16 @@ import static org.apache.ibatis.executor.ExecutionPlaceholder.EXECUTION_PLACEHOL
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.EntityCache;
+import org.apache.ibatis.cache.impl.BoundedLocalCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.statement.StatementUtil;
@@ -64,14 +70,16 @@ public abstract class BaseExecutor implements Executor {
   //queryStack主要用于递归调用query()方法时防止一级缓存被清空
   protected int queryStack;
   private boolean closed;
+  // namespaces written in the current transaction, with the keys of the written entities or null for all of them
+  private final Map<String, Set<CacheKey>> entityWrites = new HashMap<>();
 
   protected BaseExecutor(Configuration configuration, Transaction transaction) {
     this.transaction = transaction;
     this.deferredLoads = new ConcurrentLinkedQueue<>();
-    this.localCache = new PerpetualCache("LocalCache");
-    this.localOutputParameterCache = new PerpetualCache("LocalOutputParameterCache");
-    this.closed = false;
     this.configuration = configuration;
+    this.localCache = newLocalCache("LocalCache");
+    this.localOutputParameterCache = newLocalCache("LocalOutputParameterCache");
+    this.closed = false;
     this.wrapper = this;
   }
 
@@ -118,6 +126,7 @@ public abstract class BaseExecutor implements Executor {
     }
     //清空预编译的sql缓存
     clearLocalCache();
+    recordEntityWrite(ms, parameter);
     //执行sql
     return doUpdate(ms, parameter);
   }
@@ -184,6 +193,8 @@ public abstract class BaseExecutor implements Executor {
       if (configuration.getLocalCacheScope() == LocalCacheScope.STATEMENT) {
         // issue #482
         clearLocalCache();
+      } else {
+        trimLocalCache();
       }
     }
     return list;
@@ -264,6 +275,7 @@ public abstract class BaseExecutor implements Executor {
     if (required) {
       transaction.commit();
     }
+    completeEntityWrites();
   }
 
   @Override
@@ -273,8 +285,12 @@ public abstract class BaseExecutor implements Executor {
         clearLocalCache();
         flushStatements(true);
       } finally {
-        if (required) {
-          transaction.rollback();
+        try {
+          if (required) {
+            transaction.rollback();
+          }
+        } finally {
+          completeEntityWrites();
         }
       }
     }
@@ -288,6 +304,69 @@ public abstract class BaseExecutor implements Executor {
     }
   }
 
+  private void recordEntityWrite(MappedStatement ms, Object parameter) {
+    EntityCache entityCache = configuration.getEntityCache();
+    if (entityCache == null) {
+      return;
+    }
+    String namespace = EntityCache.namespaceOf(ms.getId());
+    if (!entityWrites.containsKey(namespace)) {
+      entityCache.beginWrite(namespace);
+      entityWrites.put(namespace, new HashSet<>());
+    }
+    Set<CacheKey> keys = entityWrites.get(namespace);
+    if (keys != null) {
+      Set<CacheKey> written = EntityCache.createKeys(configuration, namespace, parameter);
+      if (written == null) {
+        entityWrites.put(namespace, null);
+      } else {
+        keys.addAll(written);
+      }
+    }
+  }
+
+  /**
+   * Evicts the entities written by the transaction, whether it was committed or not, since with auto commit the
+   * statements are already applied.
+   */
+  private void completeEntityWrites() {
+    if (entityWrites.isEmpty()) {
+      return;
+    }
+    EntityCache entityCache = configuration.getEntityCache();
+    try {
+      if (entityCache != null) {
+        for (Map.Entry<String, Set<CacheKey>> entry : entityWrites.entrySet()) {
+          entityCache.endWrite(entry.getKey(), entry.getValue());
+        }
+      }
+    } finally {
+      entityWrites.clear();
+    }
+  }
+
+  private PerpetualCache newLocalCache(String id) {
+    // executors without a configuration, e.g. the closed executor of the deserialized lazy loaders, are never queried
+    if (configuration == null
+        || configuration.getLocalCacheSize() <= 0 && configuration.getLocalCacheMaxBytes() <= 0) {
+      return new PerpetualCache(id);
+    }
+    return new BoundedLocalCache(id, configuration.getLocalCacheSize(), configuration.getLocalCacheMaxBytes());
+  }
+
+  /**
+   * Evicts the least recently used results once no query is running, so that neither the execution placeholders nor
+   * the results awaited by the deferred loads are evicted.
+   */
+  private void trimLocalCache() {
+    if (localCache instanceof BoundedLocalCache) {
+      ((BoundedLocalCache) localCache).trim();
+    }
+    if (localOutputParameterCache instanceof BoundedLocalCache) {
+      ((BoundedLocalCache) localOutputParameterCache).trim();
+    }
+  }
+
   protected abstract int doUpdate(MappedStatement ms, Object parameter) throws SQLException;
 
   protected abstract List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException;
@@ -16,21 +16,38 @@
 package org.apache.ibatis.executor;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheAdmission;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.TableVersions;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.decorators.RefreshAheadCache;
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
+import org.apache.ibatis.cache.decorators.TableDependencyCache;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.result.DefaultResultHandler;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.CacheInvalidationMode;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.type.TypeHandlerRegistry;
 
 /**
  * @author Clinton Begin
@@ -40,6 +57,8 @@ public class CachingExecutor implements Executor {
 
   private final Executor delegate;
   private final TransactionalCacheManager tcm = new TransactionalCacheManager();
+  // whether this transaction wrote, its reads may not be shared with other sessions then
+  private boolean dirty;
 
   public CachingExecutor(Executor delegate) {
     this.delegate = delegate;
@@ -74,6 +93,7 @@ public class CachingExecutor implements Executor {
   public int update(MappedStatement ms, Object parameterObject) throws SQLException {
     //如果需要，则清空二级缓存
     flushCacheIfRequired(ms);
+    dirty = true;
     //默认为SimpleExecutor，由被包装器类执行，但是其继承自BaseExecutor，由BaseExecutor执行
     return delegate.update(ms, parameterObject);
   }
@@ -105,14 +125,22 @@ public class CachingExecutor implements Executor {
       if (ms.isUseCache() && resultHandler == null) {
         //处理存储过程
         ensureNoOutParams(ms, boundSql);
+        if (isTableInvalidation(ms)) {
+          return queryWithTableDependencies(ms, parameterObject, rowBounds, key, boundSql, cache);
+        }
         //尝试从TransactionalCacheManager获取缓存
         @SuppressWarnings("unchecked")
         List<E> list = (List<E>) tcm.getObject(cache, key);
         if (list == null) {
           //没有缓存则查询数据
-          list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+          long start = System.nanoTime();
+          list = load(cache, key, () -> delegate.query(ms, parameterObject, rowBounds, null, key, boundSql));
           //设置缓存
-          tcm.putObject(cache, key, list); // issue #578 and #116
+          if (isCacheable(ms, cache, key, list, System.nanoTime() - start)) {
+            tcm.putObject(cache, key, list); // issue #578 and #116
+          }
+        } else {
+          refreshIfDue(ms, parameterObject, rowBounds, key, boundSql, cache, null);
         }
         return list;
       }
@@ -129,6 +157,7 @@ public class CachingExecutor implements Executor {
   public void commit(boolean required) throws SQLException {
     delegate.commit(required);
     tcm.commit();
+    dirty = false;
   }
 
   @Override
@@ -136,12 +165,155 @@ public class CachingExecutor implements Executor {
     try {
       delegate.rollback(required);
     } finally {
+      dirty = false;
       if (required) {
         tcm.rollback();
       }
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private <E> List<E> queryWithTableDependencies(MappedStatement ms, Object parameterObject, RowBounds rowBounds,
+      CacheKey key, BoundSql boundSql, Cache cache) throws SQLException {
+    String[] tables = ms.getTables() != null ? ms.getTables() : new String[] { cache.getId() };
+    if (tcm.isInvalidated(tables)) {
+      // modified by this transaction, neither the cached result nor the one read now are visible to the others
+      return delegate.query(ms, parameterObject, rowBounds, null, key, boundSql);
+    }
+    List<E> list = (List<E>) tcm.getObject(cache, key);
+    if (list == null) {
+      TableVersions tableVersions = ms.getConfiguration().getTableVersions();
+      long start = System.nanoTime();
+      TableDependencyCache.Entry entry = load(cache, key, () -> {
+        // taken before the query, so a concurrent write makes the result stale rather than being missed
+        long[] versions = tableVersions.snapshot(tables);
+        return new TableDependencyCache.Entry(tables, versions,
+            delegate.query(ms, parameterObject, rowBounds, null, key, boundSql));
+      });
+      list = (List<E>) entry.getValue();
+      if (isCacheable(ms, cache, key, list, System.nanoTime() - start)) {
+        tcm.putObject(cache, key, entry);
+      }
+    } else {
+      refreshIfDue(ms, parameterObject, rowBounds, key, boundSql, cache, tables);
+    }
+    return list;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T load(Cache cache, CacheKey key, SingleFlightCache.Loader loader) throws SQLException {
+    SingleFlightCache.Loader timedLoader = timed(cache, loader);
+    if (cache instanceof SingleFlightCache && !dirty) {
+      return (T) ((SingleFlightCache) cache).load(key, timedLoader);
+    }
+    return (T) timedLoader.load();
+  }
+
+  private SingleFlightCache.Loader timed(Cache cache, SingleFlightCache.Loader loader) {
+    CacheStats stats = cache.getStats();
+    if (stats == null) {
+      return loader;
+    }
+    return () -> {
+      long start = System.nanoTime();
+      Object value = loader.load();
+      stats.recordLoad(System.nanoTime() - start);
+      return value;
+    };
+  }
+
+  private void refreshIfDue(MappedStatement ms, Object parameterObject, RowBounds rowBounds, CacheKey key,
+      BoundSql boundSql, Cache cache, String[] tables) {
+    if (cache instanceof RefreshAheadCache && ((RefreshAheadCache) cache).isRefreshDue(key)
+        && ms.getConfiguration().getEnvironment() != null) {
+      // the caller may modify its parameter object once the query returned
+      BoundSql parameters = copyParameters(ms, parameterObject, boundSql);
+      ((RefreshAheadCache) cache).refresh(key,
+          timed(cache, () -> reload(ms, rowBounds, key, parameters, cache, tables)));
+    }
+  }
+
+  /**
+   * Executes a query again in its own transaction, so that its result can be shared before this session ends.
+   *
+   * @return the result, or {@code null} when it must not be cached
+   */
+  private Object reload(MappedStatement ms, RowBounds rowBounds, CacheKey key, BoundSql boundSql, Cache cache,
+      String[] tables) throws SQLException {
+    Configuration configuration = ms.getConfiguration();
+    Environment environment = configuration.getEnvironment();
+    Transaction tx = environment.getTransactionFactory().newTransaction(environment.getDataSource(), null, false);
+    Executor executor = configuration.newExecutor(tx, ExecutorType.SIMPLE);
+    try {
+      long start = System.nanoTime();
+      long[] versions = tables == null ? null : configuration.getTableVersions().snapshot(tables);
+      // a result handler keeps the query away from the second level cache, which holds the entry being refreshed
+      DefaultResultHandler resultHandler = new DefaultResultHandler(configuration.getObjectFactory());
+      executor.query(ms, boundSql.getParameterObject(), rowBounds, resultHandler, key, boundSql);
+      List<Object> list = resultHandler.getResultList();
+      if (!isCacheable(ms, cache, key, list, System.nanoTime() - start)) {
+        return null;
+      }
+      return tables == null ? list : new TableDependencyCache.Entry(tables, versions, list);
+    } finally {
+      executor.close(false);
+    }
+  }
+
+  /**
+   * Returns a bound statement holding the current values of the parameters of a query. The values are resolved the
+   * same way as in {@link BaseExecutor#createCacheKey}, and are passed by position.
+   */
+  private static BoundSql copyParameters(MappedStatement ms, Object parameterObject, BoundSql boundSql) {
+    Configuration configuration = ms.getConfiguration();
+    TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+    MetaObject metaObject = null;
+    List<ParameterMapping> parameterMappings = new ArrayList<>();
+    Map<String, Object> values = new HashMap<>();
+    for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+      Object value;
+      String propertyName = parameterMapping.getProperty();
+      if (boundSql.hasAdditionalParameter(propertyName)) {
+        value = boundSql.getAdditionalParameter(propertyName);
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        value = metaObject.getValue(propertyName);
+      }
+      String name = "param" + (parameterMappings.size() + 1);
+      values.put(name, value);
+      parameterMappings.add(new ParameterMapping.Builder(configuration, name, parameterMapping.getTypeHandler())
+          .mode(parameterMapping.getMode()).javaType(parameterMapping.getJavaType())
+          .jdbcType(parameterMapping.getJdbcType()).numericScale(parameterMapping.getNumericScale())
+          .jdbcTypeName(parameterMapping.getJdbcTypeName()).build());
+    }
+    return new BoundSql(configuration, boundSql.getSql(), parameterMappings, values);
+  }
+
+  private boolean isCacheable(MappedStatement ms, Cache cache, CacheKey key, List<?> list, long loadTime) {
+    if (list.isEmpty() && !ms.isNegativeCache()) {
+      return false;
+    }
+    CacheAdmission admission = ms.getCacheAdmission();
+    if (admission == null || admission.admits(key, list, loadTime)) {
+      return true;
+    }
+    CacheStats stats = cache.getStats();
+    if (stats != null) {
+      stats.recordRejection();
+    }
+    return false;
+  }
+
+  private boolean isTableInvalidation(MappedStatement ms) {
+    return ms.getConfiguration().getCacheInvalidationMode() == CacheInvalidationMode.TABLE;
+  }
+
   private void ensureNoOutParams(MappedStatement ms, BoundSql boundSql) {
     if (ms.getStatementType() == StatementType.CALLABLE) {
       for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
@@ -177,7 +349,19 @@ public class CachingExecutor implements Executor {
 
   private void flushCacheIfRequired(MappedStatement ms) {
     Cache cache = ms.getCache();
-    if (cache != null && ms.isFlushCacheRequired()) {
+    if (ms.isFlushCacheRequired()) {
+      tcm.setInvalidationBus(ms.getConfiguration().getCacheInvalidationBus());
+    }
+    if (ms.isFlushCacheRequired() && isTableInvalidation(ms) && ms.getSqlCommandType() != SqlCommandType.SELECT
+        && ms.getTables() != null) {
+      // the results of the namespace whose tables are unknown depend on its id
+      String[] tables = ms.getTables();
+      if (cache != null) {
+        tables = Arrays.copyOf(tables, tables.length + 1);
+        tables[tables.length - 1] = cache.getId();
+      }
+      tcm.invalidateOnCommit(ms.getConfiguration().getTableVersions(), tables);
+    } else if (cache != null && ms.isFlushCacheRequired()) {
       tcm.clear(cache);
     }
   }
@@ -68,6 +68,17 @@ public class ErrorContext {
     return this;
   }
 
+  /**
+   * Returns the object being worked on, e.g. the id of the mapped statement being executed.
+   *
+   * @return the object, or <code>null</code> if not set
+   *
+   * @since 3.5.13
+   */
+  public String getObject() {
+    return object;
+  }
+
   public ErrorContext message(String message) {
     this.message = message;
     return this;
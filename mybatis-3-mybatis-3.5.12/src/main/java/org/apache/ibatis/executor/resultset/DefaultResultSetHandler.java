@@ -18,7 +18,9 @@ package org.apache.ibatis.executor.resultset;
 import org.apache.ibatis.annotations.AutomapConstructor;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.binding.MapperMethod.ParamMap;
+import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.EntityCache;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.cursor.defaults.DefaultCursor;
 import org.apache.ibatis.executor.ErrorContext;
@@ -70,6 +72,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private final TypeHandlerRegistry typeHandlerRegistry;
   private final ObjectFactory objectFactory;
   private final ReflectorFactory reflectorFactory;
+  private final EntityCache entityCache;
+  private final long entityCacheVersion;
 
   // nested resultmaps
   private final Map<CacheKey, Object> nestedResultObjects = new HashMap<>();
@@ -118,6 +122,19 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     this.objectFactory = configuration.getObjectFactory();
     this.reflectorFactory = configuration.getReflectorFactory();
     this.resultHandler = resultHandler;
+    this.entityCache = sharesResults(mappedStatement, resultHandler) ? configuration.getEntityCache() : null;
+    // read before the statement is executed
+    this.entityCacheVersion = entityCache == null ? 0 : entityCache.getVersion();
+  }
+
+  /**
+   * Tells whether the results of the statement are put in a read-only second level cache, and thus already shared by
+   * all the sessions. The entity cache does not share the rows of the other statements.
+   */
+  private boolean sharesResults(MappedStatement ms, ResultHandler<?> resultHandler) {
+    Cache cache = ms.getCache();
+    return resultHandler == null && configuration.isCacheEnabled() && ms.isUseCache() && cache != null
+        && configuration.isReadOnlyCache(cache.getId());
   }
 
   //
@@ -381,7 +398,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       // 处理discrimination标签。类似于Java中的switch语法。如果resultMap标签有鉴别器。则根据case的情况动态的获取resultMap映射结果集
       ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(resultSet, resultMap, null);
       // 第三步：获取记录映射的对象（重要！！！！！！）
-      Object rowValue = getRowValue(rsw, discriminatedResultMap, null);
+      Object rowValue = parentMapping == null ? getEntityRowValue(rsw, discriminatedResultMap)
+          : getRowValue(rsw, discriminatedResultMap, null);
       // 第四步：把对象存储到上下文中。
       storeObject(resultHandler, resultContext, rowValue, parentMapping, resultSet);
     }
@@ -455,6 +473,37 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return rowValue;
   }
 
+  //
+  // GET VALUE FROM ROW FOR SHARED ENTITY
+  //
+
+  private Object getEntityRowValue(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    CacheKey entityKey = createEntityKey(rsw, resultMap);
+    // the row is always mapped, the cached entity may not hold its current values
+    Object rowValue = getRowValue(rsw, resultMap, null);
+    if (entityKey == null || rowValue == null) {
+      return rowValue;
+    }
+    String namespace = EntityCache.namespaceOf(resultMap.getId());
+    return entityCache.putObject(namespace, entityKey, rsw.getColumnNames(), rowValue, entityCacheVersion);
+  }
+
+  private CacheKey createEntityKey(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    if (entityCache == null || !EntityCache.isEntity(resultMap)) {
+      return null;
+    }
+    final CacheKey entityKey = new CacheKey();
+    entityKey.update(resultMap.getId());
+    for (ResultMapping idMapping : resultMap.getIdResultMappings()) {
+      final Object value = idMapping.getTypeHandler().getResult(rsw.getResultSet(), idMapping.getColumn());
+      if (value == null) {
+        return null;
+      }
+      entityKey.update(value);
+    }
+    return entityKey;
+  }
+
   //
   // GET VALUE FROM ROW FOR NESTED RESULT MAP
   //
@@ -688,7 +737,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
     }
-    return cacheKey;
+    return cacheKey.freeze();
   }
 
   //
@@ -1213,7 +1262,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     if (cacheKey.getUpdateCount() < 2) {
       return CacheKey.NULL_CACHE_KEY;
     }
-    return cacheKey;
+    return cacheKey.freeze();
   }
 
   private CacheKey combineKeys(CacheKey rowKey, CacheKey parentRowKey) {
@@ -1225,7 +1274,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         throw new ExecutorException("Error cloning cache key.  Cause: " + e, e);
       }
       combinedKey.update(parentRowKey);
-      return combinedKey;
+      return combinedKey.freeze();
     }
     return CacheKey.NULL_CACHE_KEY;
   }
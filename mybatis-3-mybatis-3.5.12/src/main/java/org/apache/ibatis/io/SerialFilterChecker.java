@@ -15,6 +15,9 @@
  */
 package org.apache.ibatis.io;
 
+import java.io.InvalidClassException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.security.Security;
 
 import org.apache.ibatis.logging.Log;
@@ -25,8 +28,28 @@ public final class SerialFilterChecker {
   /* Property key for the JEP-290 serialization filters */
   private static final String JDK_SERIAL_FILTER = "jdk.serialFilter";
   private static final boolean SERIAL_FILTER_MISSING;
+  private static final Method GET_SERIAL_FILTER;
+  private static final Method CHECK_INPUT;
   private static boolean firstInvocation = true;
 
+  static {
+    Method getSerialFilter = null;
+    Method checkInput = null;
+    // the filter API moved from sun.misc (Java 8u121) to java.io (Java 9)
+    for (String filterType : new String[] { "java.io.ObjectInputFilter", "sun.misc.ObjectInputFilter" }) {
+      try {
+        Class<?> filterInfo = Class.forName(filterType + "$FilterInfo");
+        checkInput = Class.forName(filterType).getMethod("checkInput", filterInfo);
+        getSerialFilter = Class.forName(filterType + "$Config").getMethod("getSerialFilter");
+        break;
+      } catch (ReflectiveOperationException e) {
+        checkInput = null;
+      }
+    }
+    GET_SERIAL_FILTER = getSerialFilter;
+    CHECK_INPUT = checkInput;
+  }
+
   static {
     Object serialFilter;
     try {
@@ -48,6 +71,59 @@ public final class SerialFilterChecker {
     }
   }
 
+  /**
+   * Checks a class that is about to be instantiated from serialized data read without an {@code ObjectInputStream},
+   * which applies the JEP-290 serial filter by itself, against the process-wide serial filter.
+   *
+   * @param type
+   *          the class to check
+   *
+   * @throws InvalidClassException
+   *           if the serial filter rejects the class
+   *
+   * @since 3.5.13
+   */
+  public static void checkClass(Class<?> type) throws InvalidClassException {
+    check();
+    if (CHECK_INPUT == null) {
+      return;
+    }
+    Object status;
+    try {
+      Object filter = GET_SERIAL_FILTER.invoke(null);
+      if (filter == null) {
+        return;
+      }
+      Class<?> filterInfo = CHECK_INPUT.getParameterTypes()[0];
+      Object info = Proxy.newProxyInstance(filterInfo.getClassLoader(), new Class<?>[] { filterInfo },
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "serialClass":
+                return type;
+              case "arrayLength":
+                return -1L;
+              case "depth":
+                return 1L;
+              case "references":
+              case "streamBytes":
+                return 0L;
+              case "equals":
+                return proxy == args[0];
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              default:
+                return "FilterInfo[" + type.getName() + "]";
+            }
+          });
+      status = CHECK_INPUT.invoke(filter, info);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot apply the serial filter.  Cause: " + e, e);
+    }
+    if ("REJECTED".equals(String.valueOf(status))) {
+      throw new InvalidClassException(type.getName(), "Rejected by the serial filter");
+    }
+  }
+
   private SerialFilterChecker() {
   }
 }
@@ -20,16 +20,29 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.function.Consumer;
 
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheMemoryBudget;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.ConcurrentCache;
+import org.apache.ibatis.cache.TableVersions;
 import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.NegativeCache;
+import org.apache.ibatis.cache.decorators.RefreshAheadCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TableDependencyCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.apache.ibatis.cache.impl.JavaCacheSerializer;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
@@ -43,9 +56,19 @@ public class CacheBuilder {
   private final List<Class<? extends Cache>> decorators;
   private Integer size;
   private Long clearInterval;
+  private Long timeToLive;
+  private Long timeToIdle;
+  private Long expiryJitter;
   private boolean readWrite;
   private Properties properties;
   private boolean blocking;
+  private boolean singleFlight;
+  private Long refreshAfter;
+  private Long negativeTimeToLive;
+  private Integer negativeSize;
+  private CacheMemoryBudget memoryBudget;
+  private Class<? extends CacheSerializer> serializer;
+  private TableVersions tableVersions;
 
   public CacheBuilder(String id) {
     this.id = id;
@@ -74,16 +97,75 @@ public class CacheBuilder {
     return this;
   }
 
+  public CacheBuilder timeToLive(Long timeToLive) {
+    this.timeToLive = timeToLive;
+    return this;
+  }
+
+  public CacheBuilder timeToIdle(Long timeToIdle) {
+    this.timeToIdle = timeToIdle;
+    return this;
+  }
+
+  public CacheBuilder expiryJitter(Long expiryJitter) {
+    this.expiryJitter = expiryJitter;
+    return this;
+  }
+
   public CacheBuilder readWrite(boolean readWrite) {
     this.readWrite = readWrite;
     return this;
   }
 
+  /**
+   * @return {@code false} when the cache hands out the cached objects themselves, shared by all the sessions
+   *
+   * @since 3.5.13
+   */
+  public boolean isReadWrite() {
+    return readWrite;
+  }
+
   public CacheBuilder blocking(boolean blocking) {
     this.blocking = blocking;
     return this;
   }
 
+  public CacheBuilder singleFlight(boolean singleFlight) {
+    this.singleFlight = singleFlight;
+    return this;
+  }
+
+  public CacheBuilder refreshAfter(Long refreshAfter) {
+    this.refreshAfter = refreshAfter;
+    return this;
+  }
+
+  public CacheBuilder negativeTimeToLive(Long negativeTimeToLive) {
+    this.negativeTimeToLive = negativeTimeToLive;
+    return this;
+  }
+
+  public CacheBuilder negativeSize(Integer negativeSize) {
+    this.negativeSize = negativeSize;
+    return this;
+  }
+
+  public CacheBuilder memoryBudget(CacheMemoryBudget memoryBudget) {
+    this.memoryBudget = memoryBudget;
+    return this;
+  }
+
+  public CacheBuilder serializer(Class<? extends CacheSerializer> serializer) {
+    this.serializer = serializer;
+    return this;
+  }
+
+  public CacheBuilder tableVersions(TableVersions tableVersions) {
+    this.tableVersions = tableVersions;
+    return this;
+  }
+
   public CacheBuilder properties(Properties properties) {
     this.properties = properties;
     return this;
@@ -91,17 +173,29 @@ public class CacheBuilder {
 
   public Cache build() {
     setDefaultImplementations();
+    CacheStats stats = new CacheStats();
     Cache cache = newBaseCacheInstance(implementation, id);
+    setCacheSerializer(cache);
+    setCacheStats(cache, stats);
     setCacheProperties(cache);
     // issue #352, do not apply decorators to custom caches
-    if (PerpetualCache.class.equals(cache.getClass())) {
+    if (PerpetualCache.class.equals(cache.getClass()) || ConcurrentPerpetualCache.class.equals(cache.getClass())) {
+      boolean concurrent = cache instanceof ConcurrentCache;
+      List<Cache> decoratorInstances = new ArrayList<>();
       for (Class<? extends Cache> decorator : decorators) {
         cache = newCacheDecoratorInstance(decorator, cache);
+        setCacheStats(cache, stats);
         setCacheProperties(cache);
+        concurrent = concurrent && cache instanceof ConcurrentCache;
+        decoratorInstances.add(cache);
+      }
+      cache = setStandardDecorators(cache, concurrent, stats, decoratorInstances);
+    } else {
+      boolean logging = LoggingCache.class.isAssignableFrom(cache.getClass());
+      cache = setTableDependencyDecorator(cache);
+      if (!logging) {
+        cache = new LoggingCache(cache, stats);
       }
-      cache = setStandardDecorators(cache);
-    } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
-      cache = new LoggingCache(cache);
     }
     return cache;
   }
@@ -115,22 +209,66 @@ public class CacheBuilder {
     }
   }
 
-  private Cache setStandardDecorators(Cache cache) {
+  private Cache setStandardDecorators(Cache cache, boolean concurrent, CacheStats stats,
+      List<Cache> decoratorInstances) {
     try {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
       if (size != null && metaCache.hasSetter("size")) {
         metaCache.setValue("size", size);
       }
+      if (memoryBudget != null && metaCache.hasSetter("memoryBudget")) {
+        metaCache.setValue("memoryBudget", memoryBudget);
+      }
       if (clearInterval != null) {
         cache = new ScheduledCache(cache);
         ((ScheduledCache) cache).setClearInterval(clearInterval);
       }
+      if (timeToLive != null || timeToIdle != null) {
+        ExpiringCache expiringCache = new ExpiringCache(cache);
+        expiringCache.setTimeToLive(valueOrZero(timeToLive));
+        expiringCache.setTimeToIdle(valueOrZero(timeToIdle));
+        expiringCache.setExpiryJitter(valueOrZero(expiryJitter));
+        expiringCache.setCacheStats(stats);
+        for (Cache decorator : decoratorInstances) {
+          MetaObject metaDecorator = SystemMetaObject.forObject(decorator);
+          if (metaDecorator.hasSetter("evictionListener")) {
+            metaDecorator.setValue("evictionListener", (Consumer<Object>) expiringCache::onEviction);
+          }
+        }
+        cache = expiringCache;
+      }
       if (readWrite) {
-        cache = new SerializedCache(cache);
+        cache = serializer == null ? new SerializedCache(cache) : new SerializedCache(cache, newSerializerInstance());
+      }
+      if (negativeTimeToLive != null || negativeSize != null) {
+        NegativeCache negativeCache = new NegativeCache(cache);
+        negativeCache.setTimeToLive(valueOrZero(negativeTimeToLive));
+        if (negativeSize != null) {
+          negativeCache.setSize(negativeSize);
+        }
+        negativeCache.setCacheStats(stats);
+        cache = negativeCache;
       }
-      cache = new LoggingCache(cache);
-      cache = new SynchronizedCache(cache);
-      if (blocking) {
+      cache = setTableDependencyDecorator(cache);
+      cache = new LoggingCache(cache, stats);
+      if (!concurrent) {
+        cache = new SynchronizedCache(cache);
+      }
+      if (singleFlight || refreshAfter != null) {
+        SingleFlightCache singleFlightCache;
+        if (refreshAfter != null) {
+          RefreshAheadCache refreshAheadCache = new RefreshAheadCache(cache);
+          refreshAheadCache.setRefreshAfter(refreshAfter);
+          singleFlightCache = refreshAheadCache;
+        } else {
+          singleFlightCache = new SingleFlightCache(cache);
+        }
+        if (readWrite) {
+          singleFlightCache.setCacheSerializer(serializer == null ? new JavaCacheSerializer() : newSerializerInstance());
+        }
+        setCacheProperties(singleFlightCache);
+        cache = singleFlightCache;
+      } else if (blocking) {
         cache = new BlockingCache(cache);
       }
       return cache;
@@ -139,6 +277,43 @@ public class CacheBuilder {
     }
   }
 
+  private Cache setTableDependencyDecorator(Cache cache) {
+    if (tableVersions == null) {
+      return cache;
+    }
+    TableDependencyCache tableDependencyCache = new TableDependencyCache(cache);
+    tableDependencyCache.setTableVersions(tableVersions);
+    return tableDependencyCache;
+  }
+
+  private static long valueOrZero(Long value) {
+    return value == null ? 0 : value;
+  }
+
+  private void setCacheSerializer(Cache cache) {
+    if (serializer != null) {
+      MetaObject metaCache = SystemMetaObject.forObject(cache);
+      if (metaCache.hasSetter("cacheSerializer")) {
+        metaCache.setValue("cacheSerializer", newSerializerInstance());
+      }
+    }
+  }
+
+  private void setCacheStats(Cache cache, CacheStats stats) {
+    MetaObject metaCache = SystemMetaObject.forObject(cache);
+    if (metaCache.hasSetter("cacheStats")) {
+      metaCache.setValue("cacheStats", stats);
+    }
+  }
+
+  private CacheSerializer newSerializerInstance() {
+    try {
+      return serializer.getDeclaredConstructor().newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Could not instantiate cache serializer (" + serializer + "). Cause: " + e, e);
+    }
+  }
+
   private void setCacheProperties(Cache cache) {
     if (properties != null) {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
@@ -16,6 +16,7 @@
 package org.apache.ibatis.mapping;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheAdmission;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
@@ -62,6 +63,9 @@ public final class MappedStatement {
   private LanguageDriver lang;
   private String[] resultSets;
   private boolean dirtySelect;
+  private String[] tables;
+  private boolean negativeCache = true;
+  private CacheAdmission cacheAdmission;
 
   MappedStatement() {
     // constructor disabled
@@ -187,6 +191,21 @@ public final class MappedStatement {
       return this;
     }
 
+    public Builder tables(String[] tables) {
+      mappedStatement.tables = tables;
+      return this;
+    }
+
+    public Builder negativeCache(boolean negativeCache) {
+      mappedStatement.negativeCache = negativeCache;
+      return this;
+    }
+
+    public Builder cacheAdmission(CacheAdmission cacheAdmission) {
+      mappedStatement.cacheAdmission = cacheAdmission;
+      return this;
+    }
+
     /**
      * Resul sets.
      *
@@ -307,6 +326,40 @@ public final class MappedStatement {
     return dirtySelect;
   }
 
+  /**
+   * Gets the names of the tables this statement reads or writes.
+   *
+   * @return the table names, {@code null} when unknown
+   *
+   * @since 3.5.13
+   */
+  public String[] getTables() {
+    return tables;
+  }
+
+  /**
+   * Gets whether the empty results of this statement are put in the 2nd cache.
+   *
+   * @return {@code true} when the empty results are cached
+   *
+   * @since 3.5.13
+   */
+  public boolean isNegativeCache() {
+    return negativeCache;
+  }
+
+  /**
+   * Gets the rules deciding whether a result of this statement is put in the 2nd cache.
+   *
+   * @return the rules of the statement completed with the ones of its cache, or {@code null} when every result is
+   *         cached
+   *
+   * @since 3.5.13
+   */
+  public CacheAdmission getCacheAdmission() {
+    return cacheAdmission;
+  }
+
   /**
    * Gets the resul sets.
    *
@@ -0,0 +1,244 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.parsing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Finds the names of the tables an SQL statement reads or writes.
+ * <p>
+ * This is not a full SQL parser: the names following {@code FROM}, {@code JOIN}, {@code INTO}, {@code UPDATE} and
+ * {@code TABLE} are collected, which may include a few names that are not tables (common table expressions for
+ * instance). Schema qualifiers and quotes are removed and names are lower cased. The statement text may contain
+ * dynamic SQL tags, which are ignored.
+ *
+ * @since 3.5.13
+ */
+public class TableNameParser {
+
+  private static final String DYNAMIC = "${";
+
+  private static final Set<String> TABLE_KEYWORDS = new HashSet<>(
+      Arrays.asList("from", "join", "into", "update", "table"));
+
+  private static final Set<String> CLAUSE_KEYWORDS = new HashSet<>(Arrays.asList("where", "group", "order", "having",
+      "limit", "offset", "fetch", "union", "intersect", "except", "minus", "set", "values", "select", "returning",
+      "window", "for"));
+
+  private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList("as", "where", "on", "using", "set",
+      "values", "value", "select", "left", "right", "inner", "outer", "cross", "full", "natural", "join", "group",
+      "order", "having", "limit", "offset", "union", "intersect", "except", "minus", "for", "with", "window", "fetch",
+      "straight_join", "default", "returning", "partition", "lateral", "only", "if", "exists"));
+
+  private TableNameParser() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * Finds the tables of a statement.
+   *
+   * @param sql
+   *          the statement text
+   *
+   * @return the table names, or {@code null} when they cannot be determined (no table found, or a table name built
+   *         with a <code>${}</code> placeholder)
+   */
+  public static String[] parse(String sql) {
+    if (sql == null) {
+      return null;
+    }
+    List<String> tokens = tokenize(sql);
+    Set<String> tables = new LinkedHashSet<>();
+    // whether the tokens are in a FROM clause, for each level of parentheses
+    Deque<Boolean> levels = new ArrayDeque<>();
+    boolean inFrom = false;
+    for (int i = 0; i < tokens.size(); i++) {
+      String keyword = tokens.get(i).toLowerCase(Locale.ENGLISH);
+      if (TABLE_KEYWORDS.contains(keyword) || inFrom && ",".equals(keyword)) {
+        boolean into = "into".equals(keyword);
+        if (!readTables(tokens, i + 1, !into, tables)) {
+          return null;
+        }
+        inFrom = !into;
+      } else if ("(".equals(keyword)) {
+        levels.push(inFrom);
+        inFrom = false;
+      } else if (")".equals(keyword)) {
+        inFrom = !levels.isEmpty() && levels.pop();
+      } else if (CLAUSE_KEYWORDS.contains(keyword)) {
+        inFrom = false;
+      }
+    }
+    return tables.isEmpty() ? null : tables.toArray(new String[0]);
+  }
+
+  /**
+   * Normalizes a list of table names declared by a statement.
+   *
+   * @param tables
+   *          comma separated table names
+   *
+   * @return the table names, or {@code null} if none is declared
+   */
+  public static String[] split(String tables) {
+    if (tables == null) {
+      return null;
+    }
+    Set<String> result = new LinkedHashSet<>();
+    for (String table : tables.split(",")) {
+      String name = normalize(table.trim().replaceAll("[\"`\\[\\]]", ""));
+      if (!name.isEmpty()) {
+        result.add(name);
+      }
+    }
+    return result.isEmpty() ? null : result.toArray(new String[0]);
+  }
+
+  private static boolean readTables(List<String> tokens, int index, boolean list, Set<String> tables) {
+    while (index < tokens.size()) {
+      String token = tokens.get(index);
+      if (token == DYNAMIC) {
+        return false;
+      }
+      if (!isWord(token) || RESERVED_WORDS.contains(token.toLowerCase(Locale.ENGLISH))) {
+        // a sub query, or no table at all (e.g. EXTRACT(YEAR FROM ...))
+        return true;
+      }
+      tables.add(normalize(token));
+      if (!list) {
+        return true;
+      }
+      // skip the alias
+      index++;
+      if (index < tokens.size() && "as".equalsIgnoreCase(tokens.get(index))) {
+        index++;
+      }
+      if (index < tokens.size() && isWord(tokens.get(index))
+          && !RESERVED_WORDS.contains(tokens.get(index).toLowerCase(Locale.ENGLISH))) {
+        index++;
+      }
+      if (index >= tokens.size() || !",".equals(tokens.get(index))) {
+        return true;
+      }
+      index++;
+    }
+    return true;
+  }
+
+  private static String normalize(String name) {
+    int dot = name.lastIndexOf('.');
+    return name.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+  }
+
+  private static boolean isWord(String token) {
+    return token != DYNAMIC && isWordChar(token.charAt(0));
+  }
+
+  private static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.' || c == '"' || c == '`' || c == '[';
+  }
+
+  private static List<String> tokenize(String sql) {
+    List<String> tokens = new ArrayList<>();
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && sql.startsWith("--", i)) {
+        int end = sql.indexOf('\n', i);
+        i = end < 0 ? length : end + 1;
+      } else if (c == '/' && sql.startsWith("/*", i)) {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else if (c == '\'') {
+        i = skipQuoted(sql, i, '\'');
+      } else if (c == '#' && sql.startsWith("#{", i)) {
+        i = skipPlaceholder(sql, i);
+        tokens.add("?");
+      } else if (c == '$' && sql.startsWith("${", i) || isWordChar(c)) {
+        i = readWord(sql, i, tokens);
+      } else {
+        tokens.add(String.valueOf(c));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private static int readWord(String sql, int start, List<String> tokens) {
+    StringBuilder word = new StringBuilder();
+    boolean dynamic = false;
+    int i = start;
+    while (i < sql.length()) {
+      char c = sql.charAt(i);
+      if (c == '$' && sql.startsWith("${", i)) {
+        dynamic = true;
+        i = skipPlaceholder(sql, i);
+      } else if (c == '"' || c == '`') {
+        int end = skipQuoted(sql, i, c);
+        word.append(sql, i + 1, end - 1);
+        i = end;
+      } else if (c == '[') {
+        int end = sql.indexOf(']', i);
+        end = end < 0 ? sql.length() : end + 1;
+        word.append(sql, i + 1, end - 1);
+        i = end;
+      } else if (isWordChar(c)) {
+        word.append(c);
+        i++;
+      } else {
+        break;
+      }
+    }
+    if (dynamic) {
+      tokens.add(DYNAMIC);
+    } else if (word.length() > 0) {
+      tokens.add(word.toString());
+    }
+    return i;
+  }
+
+  private static int skipQuoted(String sql, int start, char quote) {
+    int i = start + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i) == quote) {
+        if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return sql.length();
+  }
+
+  private static int skipPlaceholder(String sql, int start) {
+    int end = sql.indexOf('}', start);
+    return end < 0 ? sql.length() : end + 1;
+  }
+
+}
@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+/**
+ * Specifies which second level cache entries a statement flushing the cache invalidates.
+ *
+ * @since 3.5.13
+ */
+public enum CacheInvalidationMode {
+  /**
+   * All the entries of the cache of the namespace of the statement.
+   */
+  NAMESPACE,
+  /**
+   * The entries read from the tables the statement modifies, in every namespace. Statements whose tables cannot be
+   * determined keep the NAMESPACE behavior.
+   */
+  TABLE
+}
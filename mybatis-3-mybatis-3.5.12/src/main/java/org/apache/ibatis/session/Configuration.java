@@ -15,10 +15,14 @@
  */
 package org.apache.ibatis.session;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -35,13 +39,31 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheAdmission;
+import org.apache.ibatis.cache.CacheMemoryBudget;
+import org.apache.ibatis.cache.CacheSnapshot;
+import org.apache.ibatis.cache.EntityCache;
+import org.apache.ibatis.cache.Invalidation;
+import org.apache.ibatis.cache.InvalidationBus;
+import org.apache.ibatis.cache.JmxCacheStats;
+import org.apache.ibatis.cache.TableVersions;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.impl.CompactCacheSerializer;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.apache.ibatis.cache.impl.JavaCacheSerializer;
+import org.apache.ibatis.cache.impl.LocalInvalidationBus;
+import org.apache.ibatis.cache.impl.MappedFileInvalidationBus;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
+import org.apache.ibatis.datasource.routing.RoutingDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.BatchExecutor;
 import org.apache.ibatis.executor.CachingExecutor;
@@ -128,12 +150,22 @@ public class Configuration {
   protected boolean shrinkWhitespacesInSql;
   protected boolean nullableOnForEach;
   protected boolean argNameBasedConstructorAutoMapping;
+  protected boolean cacheStatsJmxEnabled;
+  protected EntityCache entityCache;
+  protected String cacheSnapshotFile;
+  protected Set<String> cacheSnapshotNamespaces = new HashSet<>();
+  protected long cacheSnapshotTimeToLive;
+  protected InvalidationBus cacheInvalidationBus;
+  protected String cacheInvalidationChannel;
 
   protected String logPrefix;
   protected Class<? extends Log> logImpl;
   protected Class<? extends VFS> vfsImpl;
   protected Class<?> defaultSqlProviderType;
   protected LocalCacheScope localCacheScope = LocalCacheScope.SESSION;
+  protected int localCacheSize;
+  protected long localCacheMaxBytes;
+  protected CacheInvalidationMode cacheInvalidationMode = CacheInvalidationMode.NAMESPACE;
   protected JdbcType jdbcTypeForNull = JdbcType.OTHER;
   protected Set<String> lazyLoadTriggerMethods = new HashSet<>(
       Arrays.asList("equals", "clone", "hashCode", "toString"));
@@ -171,6 +203,8 @@ public class Configuration {
           .conflictMessageProducer((savedValue, targetValue) -> ". please check " + savedValue.getResource() + " and "
               + targetValue.getResource());
   protected final Map<String, Cache> caches = new StrictMap<>("Caches collection");
+  protected final CacheMemoryBudget cacheMemoryBudget = new CacheMemoryBudget();
+  protected final TableVersions tableVersions = new TableVersions();
   protected final Map<String, ResultMap> resultMaps = new StrictMap<>("Result Maps collection");
   protected final Map<String, ParameterMap> parameterMaps = new StrictMap<>("Parameter Maps collection");
   protected final Map<String, KeyGenerator> keyGenerators = new StrictMap<>("Key Generators collection");
@@ -189,6 +223,17 @@ public class Configuration {
    */
   protected final Map<String, String> cacheRefMap = new HashMap<>();
 
+  /*
+   * The admission rules declared on the caches. The key is the id of the cache, so that the statements of a namespace
+   * referencing the cache of another one share its rules.
+   */
+  protected final Map<String, CacheAdmission> cacheAdmissions = new HashMap<>();
+
+  /*
+   * The ids of the caches declared read-only, whose results are shared by all the sessions.
+   */
+  protected final Set<String> readOnlyCaches = new HashSet<>();
+
   public Configuration(Environment environment) {
     this();
     this.environment = environment;
@@ -201,13 +246,24 @@ public class Configuration {
     typeAliasRegistry.registerAlias("JNDI", JndiDataSourceFactory.class);
     typeAliasRegistry.registerAlias("POOLED", PooledDataSourceFactory.class);
     typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
+    typeAliasRegistry.registerAlias("ROUTING", RoutingDataSourceFactory.class);
 
     typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+    typeAliasRegistry.registerAlias("CONCURRENT", ConcurrentPerpetualCache.class);
+    typeAliasRegistry.registerAlias("OFF_HEAP", OffHeapCache.class);
     typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
+    typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+    typeAliasRegistry.registerAlias("WEIGHTED", WeightedCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
 
+    typeAliasRegistry.registerAlias("JAVA_SERIALIZER", JavaCacheSerializer.class);
+    typeAliasRegistry.registerAlias("COMPACT_SERIALIZER", CompactCacheSerializer.class);
+
+    typeAliasRegistry.registerAlias("LOCAL", LocalInvalidationBus.class);
+    typeAliasRegistry.registerAlias("MAPPED_FILE", MappedFileInvalidationBus.class);
+
     typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
     typeAliasRegistry.registerAlias("XML", XMLLanguageDriver.class);
@@ -340,6 +396,317 @@ public class Configuration {
     return nullableOnForEach;
   }
 
+  /**
+   * Gets the maximum number of bytes shared by all the weighted second level caches.
+   *
+   * @return the maximum number of bytes, {@code 0} meaning unbounded
+   *
+   * @since 3.5.13
+   */
+  public long getCacheMaxBytes() {
+    return cacheMemoryBudget.getMaxBytes();
+  }
+
+  /**
+   * Sets the maximum number of bytes shared by all the weighted second level caches (caches using the
+   * {@code WEIGHTED} eviction). The default value is {@code 0} (unbounded).
+   *
+   * @param cacheMaxBytes
+   *          the maximum number of bytes
+   *
+   * @since 3.5.13
+   */
+  public void setCacheMaxBytes(long cacheMaxBytes) {
+    cacheMemoryBudget.setMaxBytes(cacheMaxBytes);
+  }
+
+  /**
+   * Gets the memory budget shared by all the weighted second level caches.
+   *
+   * @return the memory budget
+   *
+   * @since 3.5.13
+   */
+  public CacheMemoryBudget getCacheMemoryBudget() {
+    return cacheMemoryBudget;
+  }
+
+  /**
+   * Gets which second level cache entries are invalidated by the statements flushing the cache.
+   *
+   * @return the cache invalidation mode
+   *
+   * @since 3.5.13
+   */
+  public CacheInvalidationMode getCacheInvalidationMode() {
+    return cacheInvalidationMode;
+  }
+
+  /**
+   * Sets which second level cache entries are invalidated by the statements flushing the cache. The default value is
+   * {@link CacheInvalidationMode#NAMESPACE}.
+   * <p>
+   * Must be set before the mappers are loaded.
+   *
+   * @param cacheInvalidationMode
+   *          the cache invalidation mode
+   *
+   * @since 3.5.13
+   */
+  public void setCacheInvalidationMode(CacheInvalidationMode cacheInvalidationMode) {
+    this.cacheInvalidationMode = cacheInvalidationMode;
+  }
+
+  /**
+   * Gets the versions of the tables used by the {@link CacheInvalidationMode#TABLE TABLE} cache invalidation mode.
+   *
+   * @return the table versions
+   *
+   * @since 3.5.13
+   */
+  public TableVersions getTableVersions() {
+    return tableVersions;
+  }
+
+  /**
+   * Gets whether the statistics of the caches are published as JMX MBeans.
+   *
+   * @return {@code true} if the statistics are published
+   *
+   * @since 3.5.13
+   */
+  public boolean isCacheStatsJmxEnabled() {
+    return cacheStatsJmxEnabled;
+  }
+
+  /**
+   * Sets whether the statistics of the caches are published as JMX MBeans. The default value is {@code false}.
+   * <p>
+   * Must be set before the mappers are loaded.
+   *
+   * @param cacheStatsJmxEnabled
+   *          {@code true} to publish the statistics
+   *
+   * @since 3.5.13
+   *
+   * @see JmxCacheStats
+   */
+  public void setCacheStatsJmxEnabled(boolean cacheStatsJmxEnabled) {
+    this.cacheStatsJmxEnabled = cacheStatsJmxEnabled;
+  }
+
+  public boolean isEntityCacheEnabled() {
+    return entityCache != null;
+  }
+
+  /**
+   * Sets whether the rows mapped by the result maps declaring {@code <id>} columns are shared by all the statements
+   * whose results are put in a read-only second level cache. The default value is {@code false}.
+   *
+   * @param entityCacheEnabled
+   *          {@code true} to share the mapped rows
+   *
+   * @since 3.5.13
+   *
+   * @see EntityCache
+   */
+  public void setEntityCacheEnabled(boolean entityCacheEnabled) {
+    if (entityCacheEnabled != isEntityCacheEnabled()) {
+      entityCache = entityCacheEnabled ? new EntityCache() : null;
+    }
+  }
+
+  /**
+   * Gets the file the second level caches are restored from when the session factory is built, and written to by
+   * {@link #saveCacheSnapshot()} and {@link #close()}.
+   *
+   * @return the snapshot file, {@code null} when the caches are not persisted
+   *
+   * @since 3.5.13
+   *
+   * @see CacheSnapshot
+   */
+  public String getCacheSnapshotFile() {
+    return cacheSnapshotFile;
+  }
+
+  public void setCacheSnapshotFile(String cacheSnapshotFile) {
+    this.cacheSnapshotFile = cacheSnapshotFile;
+  }
+
+  /**
+   * Gets the namespaces of the caches written to the snapshot file.
+   *
+   * @return the namespaces, all the caches being written when it is empty
+   *
+   * @since 3.5.13
+   */
+  public Set<String> getCacheSnapshotNamespaces() {
+    return cacheSnapshotNamespaces;
+  }
+
+  public void setCacheSnapshotNamespaces(Set<String> cacheSnapshotNamespaces) {
+    this.cacheSnapshotNamespaces = cacheSnapshotNamespaces;
+  }
+
+  /**
+   * Gets the age after which a snapshot file is not restored anymore.
+   *
+   * @return the number of milliseconds, {@code 0} for no limit
+   *
+   * @since 3.5.13
+   */
+  public long getCacheSnapshotTimeToLive() {
+    return cacheSnapshotTimeToLive;
+  }
+
+  public void setCacheSnapshotTimeToLive(long cacheSnapshotTimeToLive) {
+    this.cacheSnapshotTimeToLive = cacheSnapshotTimeToLive;
+  }
+
+  /**
+   * Writes the second level caches to the snapshot file. The file is replaced atomically, so this method can also be
+   * called periodically, e.g. to survive a crash.
+   *
+   * @return the number of entries written, {@code 0} when no snapshot file is set
+   *
+   * @throws IOException
+   *           if the file can not be written
+   *
+   * @since 3.5.13
+   */
+  public int saveCacheSnapshot() throws IOException {
+    return cacheSnapshotFile == null ? 0 : CacheSnapshot.write(this, Paths.get(cacheSnapshotFile));
+  }
+
+  /**
+   * Gets the bus the invalidations of the second level caches are exchanged with the other nodes through.
+   *
+   * @return the invalidation bus, {@code null} when the caches are only invalidated by this node
+   *
+   * @since 3.5.13
+   */
+  public InvalidationBus getCacheInvalidationBus() {
+    return cacheInvalidationBus;
+  }
+
+  /**
+   * Sets the bus the invalidations of the second level caches are exchanged with the other nodes through, and
+   * applies the invalidations it receives to the caches of this configuration. The bus is closed by {@link #close()}.
+   *
+   * @param cacheInvalidationBus
+   *          the invalidation bus
+   *
+   * @since 3.5.13
+   */
+  public void setCacheInvalidationBus(InvalidationBus cacheInvalidationBus) {
+    this.cacheInvalidationBus = cacheInvalidationBus;
+    if (cacheInvalidationBus != null) {
+      cacheInvalidationBus.subscribe(this::applyCacheInvalidation);
+    }
+  }
+
+  /**
+   * Gets the channel of the bus created from the {@code cacheInvalidationBus} setting: the name shared by the
+   * configurations of a {@link LocalInvalidationBus}, or the file of a {@link MappedFileInvalidationBus}, which
+   * requires it.
+   *
+   * @return the channel, {@code null} for the default channel of a {@link LocalInvalidationBus}
+   *
+   * @since 3.5.13
+   */
+  public String getCacheInvalidationChannel() {
+    return cacheInvalidationChannel;
+  }
+
+  public void setCacheInvalidationChannel(String cacheInvalidationChannel) {
+    this.cacheInvalidationChannel = cacheInvalidationChannel;
+  }
+
+  /**
+   * Applies an invalidation published by another node.
+   *
+   * @param invalidation
+   *          the invalidation
+   *
+   * @since 3.5.13
+   */
+  public void applyCacheInvalidation(Invalidation invalidation) {
+    if (invalidation.getType() == Invalidation.Type.TABLES) {
+      tableVersions.invalidate(invalidation.getNames());
+      return;
+    }
+    // the caches are also registered by their short names, and ambiguous short names hold no cache
+    Set<Cache> cleared = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Object value : caches.values()) {
+      if (value instanceof Cache) {
+        Cache cache = (Cache) value;
+        if ((invalidation.getType() == Invalidation.Type.ALL || invalidation.getNames().contains(cache.getId()))
+            && cleared.add(cache)) {
+          cache.clear();
+        }
+      }
+    }
+  }
+
+  /**
+   * Releases the resources held by this configuration, e.g. the files and the threads of its second level caches and
+   * of its invalidation bus, and unregisters the MBeans of their statistics. The caches are written to the snapshot
+   * file first, when one is set. The session factories built from this configuration must not be used afterwards.
+   *
+   * @since 3.5.13
+   */
+  public void close() {
+    RuntimeException failure = null;
+    if (cacheInvalidationBus != null) {
+      try {
+        cacheInvalidationBus.close();
+      } catch (RuntimeException e) {
+        failure = e;
+      }
+    }
+    try {
+      saveCacheSnapshot();
+    } catch (IOException | RuntimeException e) {
+      CacheException exception = new CacheException(
+          "Error writing the cache snapshot " + cacheSnapshotFile + ".  Cause: " + e, e);
+      if (failure == null) {
+        failure = exception;
+      } else {
+        failure.addSuppressed(exception);
+      }
+    }
+    Set<Cache> closed = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Object value : caches.values()) {
+      if (value instanceof Cache && closed.add((Cache) value)) {
+        try {
+          JmxCacheStats.unregister((Cache) value, environment == null ? null : environment.getId());
+          ((Cache) value).close();
+        } catch (RuntimeException e) {
+          if (failure == null) {
+            failure = e;
+          } else {
+            failure.addSuppressed(e);
+          }
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Gets the cache of the canonical row objects.
+   *
+   * @return the entity cache, {@code null} when it is not enabled
+   *
+   * @since 3.5.13
+   */
+  public EntityCache getEntityCache() {
+    return entityCache;
+  }
+
   public boolean isArgNameBasedConstructorAutoMapping() {
     return argNameBasedConstructorAutoMapping;
   }
@@ -572,6 +939,54 @@ public class Configuration {
     this.localCacheScope = localCacheScope;
   }
 
+  /**
+   * Gets the maximum number of entries kept by the local cache of a session.
+   *
+   * @return the maximum number of entries, {@code 0} meaning unbounded
+   *
+   * @since 3.5.13
+   */
+  public int getLocalCacheSize() {
+    return localCacheSize;
+  }
+
+  /**
+   * Sets the maximum number of entries kept by the local cache of a session. The least recently used entries are
+   * evicted once a query completes. The default value is {@code 0} (unbounded).
+   *
+   * @param localCacheSize
+   *          the maximum number of entries
+   *
+   * @since 3.5.13
+   */
+  public void setLocalCacheSize(int localCacheSize) {
+    this.localCacheSize = localCacheSize;
+  }
+
+  /**
+   * Gets the maximum estimated number of bytes kept by the local cache of a session.
+   *
+   * @return the maximum number of bytes, {@code 0} meaning unbounded
+   *
+   * @since 3.5.13
+   */
+  public long getLocalCacheMaxBytes() {
+    return localCacheMaxBytes;
+  }
+
+  /**
+   * Sets the maximum estimated number of bytes kept by the local cache of a session. The results are weighed by their
+   * number of rows, as in the weighted second level caches. The default value is {@code 0} (unbounded).
+   *
+   * @param localCacheMaxBytes
+   *          the maximum number of bytes
+   *
+   * @since 3.5.13
+   */
+  public void setLocalCacheMaxBytes(long localCacheMaxBytes) {
+    this.localCacheMaxBytes = localCacheMaxBytes;
+  }
+
   public JdbcType getJdbcTypeForNull() {
     return jdbcTypeForNull;
   }
@@ -772,6 +1187,9 @@ public class Configuration {
 
   public void addCache(Cache cache) {
     caches.put(cache.getId(), cache);
+    if (cacheStatsJmxEnabled) {
+      JmxCacheStats.register(cache, environment == null ? null : environment.getId());
+    }
   }
 
   public Collection<String> getCacheNames() {
@@ -934,6 +1352,56 @@ public class Configuration {
     cacheRefMap.put(namespace, referencedNamespace);
   }
 
+  /**
+   * Sets the rules deciding whether a result is put in a cache, used by the statements that do not override them.
+   *
+   * @param cacheId
+   *          the id of the cache
+   * @param admission
+   *          the admission rules
+   *
+   * @since 3.5.13
+   */
+  public void addCacheAdmission(String cacheId, CacheAdmission admission) {
+    cacheAdmissions.put(cacheId, admission);
+  }
+
+  /**
+   * @param cacheId
+   *          the id of the cache
+   *
+   * @return the admission rules of the cache, or {@code null} when every result is cached
+   *
+   * @since 3.5.13
+   */
+  public CacheAdmission getCacheAdmission(String cacheId) {
+    return cacheAdmissions.get(cacheId);
+  }
+
+  /**
+   * Records that a cache hands out the cached objects themselves instead of copies.
+   *
+   * @param cacheId
+   *          the id of the cache
+   *
+   * @since 3.5.13
+   */
+  public void addReadOnlyCache(String cacheId) {
+    readOnlyCaches.add(cacheId);
+  }
+
+  /**
+   * @param cacheId
+   *          the id of the cache
+   *
+   * @return {@code true} if the cache was declared read-only, its results being shared by all the sessions
+   *
+   * @since 3.5.13
+   */
+  public boolean isReadOnlyCache(String cacheId) {
+    return readOnlyCaches.contains(cacheId);
+  }
+
   /*
    * Parses all the unprocessed statement nodes in the cache. It is recommended to call this method once all the mappers
    * are added as it provides fail-fast statement validation.
@@ -18,11 +18,17 @@ package org.apache.ibatis.session;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Properties;
 
 import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.cache.CacheSnapshot;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
 
 /**
@@ -32,6 +38,8 @@ import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
  */
 public class SqlSessionFactoryBuilder {
 
+  private static final Log log = LogFactory.getLog(SqlSessionFactoryBuilder.class);
+
   public SqlSessionFactory build(Reader reader) {
     return build(reader, null, null);
   }
@@ -96,7 +104,27 @@ public class SqlSessionFactoryBuilder {
   }
 
   public SqlSessionFactory build(Configuration config) {
+    if (config.getCacheSnapshotFile() != null) {
+      useCacheSnapshot(config, Paths.get(config.getCacheSnapshotFile()));
+    }
     return new DefaultSqlSessionFactory(config);
   }
 
+  /**
+   * Warms the caches up from the snapshot written by the previous run. A missing, stale or unreadable snapshot only
+   * leaves the caches cold. The next snapshot is written by {@link Configuration#close()}.
+   */
+  private void useCacheSnapshot(Configuration config, Path file) {
+    if (Files.exists(file)) {
+      try {
+        int entries = CacheSnapshot.read(config, file);
+        if (log.isDebugEnabled()) {
+          log.debug("Restored " + entries + " cache entries from " + file);
+        }
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not read the cache snapshot " + file + ".  Cause: " + e);
+      }
+    }
+  }
+
 }
@@ -24,9 +24,13 @@ import java.io.InputStream;
 import java.util.regex.Pattern;
 
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheAdmission;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.CacheBuilder;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.type.TypeHandler;
@@ -184,6 +188,27 @@ class XmlMapperBuilderTest {
     then(caughtException()).hasMessage("No cache for namespace 'eee' could be found.");
   }
 
+  @Test
+  void useNewCacheWithCacheBuilder() {
+    Configuration configuration = new Configuration();
+    MapperBuilderAssistant builder = new MapperBuilderAssistant(configuration, "resource");
+    builder.setCurrentNamespace("org.example.Mapper");
+    CacheAdmission admission = new CacheAdmission(10, 0, 0);
+    Cache cache = builder.useNewCache(new CacheBuilder("org.example.Mapper").size(10), admission);
+    assertThat(configuration.getCache("org.example.Mapper")).isSameAs(cache);
+    assertThat(configuration.getCacheAdmission("org.example.Mapper")).isSameAs(admission);
+
+    MappedStatement statement = builder.addMappedStatement("select", new StaticSqlSource(configuration, "select 1"),
+        StatementType.PREPARED, SqlCommandType.SELECT, null, null, null, null, null, Integer.class, null, false, true,
+        false, null, null, null, null, null, null, false,
+        new StatementCacheOptions().tables("author").negativeCache(false));
+    assertThat(statement.getCache()).isSameAs(cache);
+    assertThat(statement.getTables()).containsExactly("author");
+    assertThat(statement.isNegativeCache()).isFalse();
+    assertThat(statement.getCacheAdmission()).isSameAs(admission);
+    assertThat(statement.getLang()).isSameAs(configuration.getDefaultScriptingLanguageInstance());
+  }
+
   @Test
   void shouldFailedLoadXMLMapperFile() throws Exception {
     Configuration configuration = new Configuration();
@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.cache.impl.BoundedLocalCache;
+import org.junit.jupiter.api.Test;
+
+class BoundedLocalCacheTest {
+
+  @Test
+  void shouldEvictTheLeastRecentlyUsedEntriesOnTrimOnly() {
+    BoundedLocalCache cache = new BoundedLocalCache("LocalCache", 2, 0);
+    cache.putObject("a", Collections.emptyList());
+    cache.putObject("b", Collections.emptyList());
+    cache.putObject("c", Collections.emptyList());
+    assertEquals(3, cache.getSize());
+    assertNotNull(cache.getObject("a"));
+    cache.trim();
+    assertEquals(2, cache.getSize());
+    assertNotNull(cache.getObject("a"));
+    assertNull(cache.getObject("b"));
+    assertNotNull(cache.getObject("c"));
+  }
+
+  @Test
+  void shouldEvictUntilTheEstimatedBytesFit() {
+    BoundedLocalCache cache = new BoundedLocalCache("LocalCache", 0, 1000,
+        (key, value) -> 100L * ((List<?>) value).size());
+    cache.putObject("a", Arrays.asList(1, 2, 3, 4));
+    cache.putObject("b", Arrays.asList(1, 2, 3, 4));
+    cache.putObject("c", Arrays.asList(1, 2, 3, 4));
+    assertEquals(1200, cache.getWeightedSize());
+    cache.trim();
+    assertEquals(800, cache.getWeightedSize());
+    assertNull(cache.getObject("a"));
+    cache.removeObject("b");
+    assertEquals(400, cache.getWeightedSize());
+    cache.clear();
+    assertEquals(0, cache.getWeightedSize());
+    assertEquals(0, cache.getSize());
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class CacheAdmissionTest {
+
+  @Test
+  void shouldRejectResultsWithTooManyRows() {
+    CacheAdmission admission = new CacheAdmission(2, 0, 0);
+    assertTrue(admission.admits("key", rows(2), 0));
+    assertFalse(admission.admits("key", rows(3), 0));
+  }
+
+  @Test
+  void shouldRejectResultsEstimatedTooLarge() {
+    CacheAdmission admission = new CacheAdmission(0, 1024, 0);
+    assertTrue(admission.admits("key", rows(3), 0));
+    assertFalse(admission.admits("key", rows(4), 0));
+  }
+
+  @Test
+  void shouldRejectResultsLoadedTooFast() {
+    CacheAdmission admission = new CacheAdmission(0, 0, 5);
+    assertFalse(admission.admits("key", rows(1), TimeUnit.MILLISECONDS.toNanos(4)));
+    assertTrue(admission.admits("key", rows(1), TimeUnit.MILLISECONDS.toNanos(5)));
+  }
+
+  @Test
+  void shouldOverrideTheRulesOfTheCache() {
+    assertNull(CacheAdmission.of(null, 0L, null));
+    CacheAdmission cache = CacheAdmission.of(100, 4096L, null);
+    CacheAdmission statement = CacheAdmission.of(1000, null, 10L).withDefaults(cache);
+    assertEquals(1000, statement.getMaxRows());
+    assertEquals(4096, statement.getMaxBytes());
+    assertEquals(10, statement.getMinLoadTime());
+    assertSame(statement, statement.withDefaults(null));
+    assertThrows(IllegalArgumentException.class, () -> new CacheAdmission(-1, 0, 0));
+  }
+
+  private static List<Object> rows(int count) {
+    return new ArrayList<>(Collections.nCopies(count, "row"));
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.reflection.ArrayUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the construction, hashing and lookup of {@link CacheKey} with the {@code ArrayList} based key of MyBatis
+ * 3.5.12, for a key built like the ones of {@code BaseExecutor.createCacheKey}.
+ * <p>
+ * The benchmark is not run by the test suite, run it with:
+ *
+ * <pre>
+ * mvn test-compile
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.apache.ibatis.cache.CacheKeyBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyBenchmark {
+
+  private static final Object[] COMPONENTS = { "org.apache.ibatis.domain.blog.mappers.BlogMapper.selectBlogsWithPosts",
+      0, Integer.MAX_VALUE,
+      "select b.id, b.title, p.id as post_id, p.subject from blog b left join post p on p.blog_id = b.id"
+          + " where b.author_id = ? and p.created_on > ?",
+      101, new java.sql.Timestamp(1_600_000_000_000L), "development" };
+
+  private final Map<CacheKey, Object> cache = new HashMap<>();
+  private final Map<LegacyCacheKey, Object> legacyCache = new HashMap<>();
+
+  @Setup
+  public void setup() {
+    for (int i = 0; i < 1000; i++) {
+      CacheKey key = newCacheKey();
+      key.update(i);
+      cache.put(key, i);
+      LegacyCacheKey legacyKey = newLegacyCacheKey();
+      legacyKey.update(i);
+      legacyCache.put(legacyKey, i);
+    }
+  }
+
+  @Benchmark
+  public CacheKey createCacheKey() {
+    return newCacheKey();
+  }
+
+  @Benchmark
+  public LegacyCacheKey createLegacyCacheKey() {
+    return newLegacyCacheKey();
+  }
+
+  @Benchmark
+  public Object lookupCacheKey() {
+    CacheKey key = newCacheKey();
+    key.update(500);
+    return cache.get(key);
+  }
+
+  @Benchmark
+  public Object lookupLegacyCacheKey() {
+    LegacyCacheKey key = newLegacyCacheKey();
+    key.update(500);
+    return legacyCache.get(key);
+  }
+
+  @Benchmark
+  public CacheKey cloneCacheKey() throws CloneNotSupportedException {
+    return newCacheKey().clone();
+  }
+
+  @Benchmark
+  public LegacyCacheKey cloneLegacyCacheKey() {
+    return newLegacyCacheKey().copy();
+  }
+
+  private static CacheKey newCacheKey() {
+    CacheKey key = new CacheKey();
+    for (Object component : COMPONENTS) {
+      key.update(component);
+    }
+    return key;
+  }
+
+  private static LegacyCacheKey newLegacyCacheKey() {
+    LegacyCacheKey key = new LegacyCacheKey();
+    for (Object component : COMPONENTS) {
+      key.update(component);
+    }
+    return key;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(CacheKeyBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  /**
+   * The cache key of MyBatis 3.5.12.
+   */
+  public static class LegacyCacheKey {
+    private final int multiplier = 37;
+    private int hashcode = 17;
+    private long checksum;
+    private int count;
+    private List<Object> updateList = new ArrayList<>();
+
+    public void update(Object object) {
+      int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object);
+
+      count++;
+      checksum += baseHashCode;
+      baseHashCode *= count;
+
+      hashcode = multiplier * hashcode + baseHashCode;
+
+      updateList.add(object);
+    }
+
+    public LegacyCacheKey copy() {
+      LegacyCacheKey copy = new LegacyCacheKey();
+      copy.hashcode = hashcode;
+      copy.checksum = checksum;
+      copy.count = count;
+      copy.updateList = new ArrayList<>(updateList);
+      return copy;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+      if (!(object instanceof LegacyCacheKey)) {
+        return false;
+      }
+
+      final LegacyCacheKey cacheKey = (LegacyCacheKey) object;
+
+      if ((hashcode != cacheKey.hashcode) || (checksum != cacheKey.checksum) || (count != cacheKey.count)) {
+        return false;
+      }
+
+      for (int i = 0; i < updateList.size(); i++) {
+        if (!ArrayUtil.equals(updateList.get(i), cacheKey.updateList.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashcode;
+    }
+  }
+
+}
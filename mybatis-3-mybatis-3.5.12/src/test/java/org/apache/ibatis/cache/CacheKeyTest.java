@@ -16,14 +16,17 @@
 package org.apache.ibatis.cache;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Base64;
 import java.util.Date;
 
 import org.junit.jupiter.api.Test;
@@ -108,6 +111,49 @@ class CacheKeyTest {
     assertEquals(cacheKey.hashCode(), clonedCacheKey.hashCode());
   }
 
+  @Test
+  void throwExceptionWhenTryingToUpdateFrozenCacheKey() {
+    CacheKey cacheKey = new CacheKey(new Object[] { 1, "hello" }).freeze();
+    assertTrue(cacheKey.isFrozen());
+    assertThrows(CacheException.class, () -> cacheKey.update("null"));
+    assertEquals(2, cacheKey.getUpdateCount());
+  }
+
+  @Test
+  void shouldUpdateClonesIndependently() throws Exception {
+    CacheKey cacheKey = new CacheKey(new Object[] { 1, "hello" }).freeze();
+    CacheKey clonedCacheKey = cacheKey.clone();
+    assertFalse(clonedCacheKey.isFrozen());
+    assertEquals(cacheKey, clonedCacheKey);
+    clonedCacheKey.update("world");
+    assertEquals(new CacheKey(new Object[] { 1, "hello", "world" }), clonedCacheKey);
+    assertEquals(new CacheKey(new Object[] { 1, "hello" }), cacheKey);
+
+    CacheKey otherKey = new CacheKey(new Object[] { 1, "hello" });
+    CacheKey otherClone = otherKey.clone();
+    otherKey.update("world");
+    otherClone.update("again");
+    assertEquals(new CacheKey(new Object[] { 1, "hello", "world" }), otherKey);
+    assertEquals(new CacheKey(new Object[] { 1, "hello", "again" }), otherClone);
+  }
+
+  @Test
+  void shouldHaveSameFingerprintWhenEqual() {
+    CacheKey key1 = new CacheKey(new Object[] { 1, "hello", new byte[] { 1 } });
+    CacheKey key2 = new CacheKey(new Object[] { 1, "hello", new byte[] { 1 } });
+    CacheKey key3 = new CacheKey(new Object[] { "hello", 1, new byte[] { 1 } });
+    assertEquals(key1.getFingerprint(), key2.getFingerprint());
+    assertNotEquals(key1.getFingerprint(), key3.getFingerprint());
+  }
+
+  @Test
+  void shouldSerializeOnlyTheComponentsOfTheKey() throws Exception {
+    CacheKey cacheKey = new CacheKey(new Object[] { "serializable" });
+    CacheKey clonedCacheKey = cacheKey.clone();
+    cacheKey.update(new Object());
+    assertEquals(clonedCacheKey, serialize(clonedCacheKey));
+  }
+
   @Test
   void serializationExceptionTest() {
     CacheKey cacheKey = new CacheKey();
@@ -124,6 +170,27 @@ class CacheKeyTest {
     assertEquals(cacheKey, serialize(cacheKey));
   }
 
+  @Test
+  void shouldReadTheSerializedFormOfThePreviousVersions() throws Exception {
+    // new CacheKey(new Object[] { "select", 1, null, 2L }) serialized by MyBatis 3.5.12
+    String serialized = "rO0ABXNyACBvcmcuYXBhY2hlLmliYXRpcy5jYWNoZS5DYWNoZUtleQ/p1bTNM6iCAgAFSgAIY2hlY2tzdW1JAAVjb3Vu"
+        + "dEkACGhhc2hjb2RlSQAKbXVsdGlwbGllckwACnVwZGF0ZUxpc3R0ABBMamF2YS91dGlsL0xpc3Q7eHD/////yf81AAAA"
+        + "AATG/Ny2AAAAJXNyABNqYXZhLnV0aWwuQXJyYXlMaXN0eIHSHZnHYZ0DAAFJAARzaXpleHAAAAAEdwQAAAAEdAAGc2Vs"
+        + "ZWN0c3IAEWphdmEubGFuZy5JbnRlZ2VyEuKgpPeBhzgCAAFJAAV2YWx1ZXhyABBqYXZhLmxhbmcuTnVtYmVyhqyVHQuU"
+        + "4IsCAAB4cAAAAAFwc3IADmphdmEubGFuZy5Mb25nO4vkkMyPI98CAAFKAAV2YWx1ZXhxAH4ABwAAAAAAAAACeA==";
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(serialized)));
+    CacheKey cacheKey = (CacheKey) in.readObject();
+    assertEquals(new CacheKey(new Object[] { "select", 1, null, 2L }), cacheKey);
+    cacheKey.update("more");
+    assertEquals(5, cacheKey.getUpdateCount());
+  }
+
+  @Test
+  void shouldKeepFrozenStateWhenSerialized() throws Exception {
+    CacheKey cacheKey = new CacheKey(new Object[] { "serializable" }).freeze();
+    assertTrue(serialize(cacheKey).isFrozen());
+  }
+
   private static <T> T serialize(T object) throws Exception {
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
     new ObjectOutputStream(baos).writeObject(object);
@@ -0,0 +1,127 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class CacheSnapshotTest {
+
+  private static final String NAMESPACE = "org.apache.ibatis.domain.blog.mappers.AuthorMapper";
+
+  @Test
+  void shouldRestoreTheEntriesOfUnchangedCaches() throws Exception {
+    Configuration configuration = newConfiguration("select * from author");
+    Cache cache = configuration.getCache(NAMESPACE);
+    cache.putObject(key(1), Collections.singletonList(new Author(1)));
+    cache.putObject(key(2), Collections.emptyList());
+    Path file = newFile();
+    assertEquals(2, CacheSnapshot.write(configuration, file));
+
+    Configuration restarted = newConfiguration("select * from author");
+    assertEquals(2, CacheSnapshot.read(restarted, file));
+    Cache restored = restarted.getCache(NAMESPACE);
+    List<?> authors = (List<?>) restored.getObject(key(1));
+    assertEquals(1, ((Author) authors.get(0)).getId());
+    assertEquals(Collections.emptyList(), restored.getObject(key(2)));
+  }
+
+  @Test
+  void shouldDiscardTheEntriesOfChangedCaches() throws Exception {
+    Configuration configuration = newConfiguration("select * from author");
+    configuration.getCache(NAMESPACE).putObject(key(1), Collections.singletonList(new Author(1)));
+    Path file = newFile();
+    CacheSnapshot.write(configuration, file);
+
+    Configuration restarted = newConfiguration("select id, username from author");
+    assertEquals(0, CacheSnapshot.read(restarted, file));
+    assertNull(restarted.getCache(NAMESPACE).getObject(key(1)));
+  }
+
+  @Test
+  void shouldOnlyWriteTheSelectedCaches() throws Exception {
+    Configuration configuration = newConfiguration("select * from author");
+    configuration.getCache(NAMESPACE).putObject(key(1), Collections.singletonList(new Author(1)));
+    configuration
+        .setCacheSnapshotNamespaces(Collections.singleton("org.apache.ibatis.domain.blog.mappers.BlogMapper"));
+    assertEquals(0, CacheSnapshot.write(configuration, newFile()));
+  }
+
+  @Test
+  void shouldIgnoreStaleSnapshots() throws Exception {
+    Configuration configuration = newConfiguration("select * from author");
+    configuration.getCache(NAMESPACE).putObject(key(1), Collections.singletonList(new Author(1)));
+    Path file = newFile();
+    CacheSnapshot.write(configuration, file);
+    Thread.sleep(20);
+
+    Configuration restarted = newConfiguration("select * from author");
+    restarted.setCacheSnapshotTimeToLive(10);
+    assertEquals(0, CacheSnapshot.read(restarted, file));
+    assertNull(restarted.getCache(NAMESPACE).getObject(key(1)));
+    restarted.setCacheSnapshotTimeToLive(60000);
+    assertEquals(1, CacheSnapshot.read(restarted, file));
+  }
+
+  @Test
+  void shouldWriteTheSnapshotWhenTheConfigurationIsClosed() throws Exception {
+    Configuration configuration = newConfiguration("select * from author");
+    configuration.getCache(NAMESPACE).putObject(key(1), Collections.singletonList(new Author(1)));
+    Path file = newFile();
+    configuration.setCacheSnapshotFile(file.toString());
+    configuration.close();
+
+    Configuration restarted = newConfiguration("select * from author");
+    assertEquals(1, CacheSnapshot.read(restarted, file));
+  }
+
+  private static Path newFile() throws IOException {
+    File file = File.createTempFile("mybatis-caches", ".bin");
+    file.deleteOnExit();
+    return file.toPath();
+  }
+
+  private static Configuration newConfiguration(String sql) {
+    Configuration configuration = new Configuration();
+    Cache cache = new CacheBuilder(NAMESPACE).readWrite(true).build();
+    configuration.addCache(cache);
+    configuration.addMappedStatement(new MappedStatement.Builder(configuration, NAMESPACE + ".selectAuthors",
+        new StaticSqlSource(configuration, sql), SqlCommandType.SELECT).cache(cache).build());
+    return configuration;
+  }
+
+  private static CacheKey key(int id) {
+    CacheKey key = new CacheKey();
+    key.update(NAMESPACE + ".selectAuthor");
+    key.update(id);
+    return key;
+  }
+
+}
@@ -0,0 +1,114 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class CacheStatsTest {
+
+  @Test
+  void shouldCountRequestsPutsAndEvictions() {
+    Cache cache = new CacheBuilder("default").addDecorator(LruCache.class).size(2).build();
+    CacheStats stats = cache.getStats();
+    assertNotNull(stats);
+    for (int i = 0; i < 3; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(2, cache.getObject(2));
+    assertNull(cache.getObject(0));
+    cache.removeObject(1);
+    cache.clear();
+    assertEquals(3, stats.getPutCount());
+    assertEquals(1, stats.getHitCount());
+    assertEquals(1, stats.getMissCount());
+    assertEquals(0.5, stats.getHitRatio());
+    assertEquals(1, stats.getEvictionCount());
+    assertEquals(1, stats.getRemovalCount());
+    assertEquals(1, stats.getClearCount());
+    stats.reset();
+    assertEquals(0, stats.getRequestCount());
+  }
+
+  @Test
+  void shouldEstimateTheSizeOfWeightedCaches() {
+    Cache cache = new CacheBuilder("default").addDecorator(WeightedCache.class).build();
+    cache.putObject("rows", Collections.nCopies(10, "row"));
+    CacheStats stats = cache.getStats();
+    assertTrue(stats.getEstimatedBytes() > 0);
+    cache.clear();
+    assertEquals(0, stats.getEstimatedBytes());
+  }
+
+  @Test
+  void shouldReturnTheStatsOfTheDecoratedCache() {
+    Cache cache = new CacheBuilder("default").blocking(true).build();
+    assertNotNull(cache.getStats());
+    assertNull(new SynchronizedCache(new PerpetualCache("default")).getStats());
+  }
+
+  @Test
+  void shouldPublishTheStatsAsMBean() throws Exception {
+    Cache cache = new CacheBuilder("org.apache.ibatis.cache.CacheStatsTest").build();
+    cache.getObject("missing");
+    JmxCacheStats.register(cache, "test");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(
+        "org.apache.ibatis:type=CacheStats,environment=\"test\",name=\"org.apache.ibatis.cache.CacheStatsTest\"");
+    try {
+      assertEquals(1L, server.getAttribute(name, "MissCount"));
+      cache.getObject("missing");
+      // registering again replaces the previous MBean
+      JmxCacheStats.register(cache, "test");
+      assertEquals(2L, server.getAttribute(name, "MissCount"));
+    } finally {
+      JmxCacheStats.unregister(cache, "test");
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+  @Test
+  void shouldNotUnregisterTheStatsOfAnotherCache() throws Exception {
+    Cache cache = new CacheBuilder("org.apache.ibatis.cache.CacheStatsTest").build();
+    Cache reloaded = new CacheBuilder("org.apache.ibatis.cache.CacheStatsTest").build();
+    JmxCacheStats.register(cache, "test");
+    JmxCacheStats.register(reloaded, "test");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(
+        "org.apache.ibatis:type=CacheStats,environment=\"test\",name=\"org.apache.ibatis.cache.CacheStatsTest\"");
+    JmxCacheStats.unregister(cache, "test");
+    assertTrue(server.isRegistered(name));
+    JmxCacheStats.unregister(reloaded, "test");
+    assertFalse(server.isRegistered(name));
+  }
+
+}
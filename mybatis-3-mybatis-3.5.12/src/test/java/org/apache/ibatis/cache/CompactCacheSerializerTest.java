@@ -0,0 +1,221 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.impl.CompactCacheSerializer;
+import org.apache.ibatis.cache.impl.JavaCacheSerializer;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class CompactCacheSerializerTest {
+
+  private final CacheSerializer serializer = new CompactCacheSerializer();
+
+  @Test
+  void shouldCopyResultObjects() {
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "Something...", Section.NEWS);
+    List<Author> authors = new ArrayList<>();
+    authors.add(author);
+    authors.add(null);
+    @SuppressWarnings("unchecked")
+    List<Author> copy = (List<Author>) copy(authors);
+    assertEquals(authors, copy);
+    assertNotSame(author, copy.get(0));
+  }
+
+  @Test
+  void shouldCopyValueTypes() {
+    Map<String, Object> row = new HashMap<>();
+    row.put("decimal", new BigDecimal("12.345"));
+    row.put("date", new Date(1000));
+    row.put("timestamp", new Timestamp(123456789L));
+    row.put("localDateTime", LocalDateTime.of(2023, 1, 2, 3, 4, 5, 6));
+    row.put("long", 1L);
+    row.put("string", "été");
+    row.put("section", Section.IMAGES);
+    assertEquals(row, copy(row));
+    byte[] bytes = { 1, 2, 3 };
+    assertArrayEquals(bytes, (byte[]) copy(bytes));
+    assertNull(copy(null));
+  }
+
+  @Test
+  void shouldPreserveSharedReferencesAndCycles() {
+    Node parent = new Node();
+    Node child = new Node();
+    parent.setName("parent");
+    parent.getChildren().add(child);
+    parent.getChildren().add(child);
+    child.setName("child");
+    child.setParent(parent);
+    Node copy = (Node) copy(parent);
+    assertEquals("parent", copy.getName());
+    assertEquals(2, copy.getChildren().size());
+    assertSame(copy.getChildren().get(0), copy.getChildren().get(1));
+    assertSame(copy, copy.getChildren().get(0).getParent());
+  }
+
+  @Test
+  void shouldFallBackToJavaSerialization() {
+    CustomSerialization custom = new CustomSerialization();
+    custom.setValue("value");
+    List<Object> unmodifiable = Collections.unmodifiableList(new ArrayList<>(Collections.singletonList("a")));
+    assertEquals("value", ((CustomSerialization) copy(custom)).getValue());
+    assertEquals(unmodifiable, copy(unmodifiable));
+  }
+
+  @Test
+  void shouldFallBackToJavaSerializationWhenAFieldIsNotAProperty() {
+    Hiding hiding = new Hiding();
+    hiding.setName("sub");
+    ((Hidden) hiding).name = "super";
+    Hiding copy = (Hiding) copy(hiding);
+    assertEquals("sub", copy.getName());
+    assertEquals("super", ((Hidden) copy).name);
+  }
+
+  @Test
+  void shouldBeSmallerThanJavaSerialization() {
+    List<Author> authors = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      authors.add(new Author(i, "user" + i, "********", "user" + i + "@ibatis.apache.org", null, Section.NEWS));
+    }
+    int compact = serializer.serialize(authors).length;
+    int java = new JavaCacheSerializer().serialize(authors).length;
+    assertTrue(compact < java, compact + " bytes should be less than " + java + " bytes");
+  }
+
+  @Test
+  void shouldRejectNonSerializableObjects() {
+    assertThrows(CacheException.class, () -> serializer.serialize(Collections.singletonList(new Object())));
+  }
+
+  @Test
+  void shouldBeUsedByReadWriteCaches() {
+    Cache cache = new CacheBuilder("default").implementation(PerpetualCache.class).readWrite(true)
+        .serializer(CompactCacheSerializer.class).build();
+    Author author = new Author(101);
+    cache.putObject(1, author);
+    assertEquals(author, cache.getObject(1));
+    assertNotSame(author, cache.getObject(1));
+    Cache serializedCache = new SerializedCache(new PerpetualCache("default"), serializer);
+    serializedCache.putObject(1, author);
+    assertEquals(author, serializedCache.getObject(1));
+  }
+
+  private Object copy(Object value) {
+    return serializer.deserialize(serializer.serialize(value));
+  }
+
+  public static class Node implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String name;
+    private Node parent;
+    private List<Node> children = new ArrayList<>();
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public Node getParent() {
+      return parent;
+    }
+
+    public void setParent(Node parent) {
+      this.parent = parent;
+    }
+
+    public List<Node> getChildren() {
+      return children;
+    }
+
+    public void setChildren(List<Node> children) {
+      this.children = children;
+    }
+  }
+
+  public static class Hidden implements Serializable {
+    private static final long serialVersionUID = 1L;
+    protected String name;
+  }
+
+  public static class Hiding extends Hidden {
+    private static final long serialVersionUID = 1L;
+    private String name;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+  }
+
+  public static class CustomSerialization implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private transient String value;
+
+    public String getValue() {
+      return value;
+    }
+
+    public void setValue(String value) {
+      this.value = value;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      out.defaultWriteObject();
+      out.writeObject(value);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      value = (String) in.readObject();
+    }
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentPerpetualCacheTest {
+
+  @Test
+  void shouldDemonstrateHowAllObjectsAreKept() {
+    Cache cache = new ConcurrentPerpetualCache("default");
+    for (int i = 0; i < 100000; i++) {
+      cache.putObject(i, i);
+      assertEquals(i, cache.getObject(i));
+    }
+    assertEquals(100000, cache.getSize());
+  }
+
+  @Test
+  void shouldRemoveItemWhenNullValueIsPut() {
+    Cache cache = new ConcurrentPerpetualCache("default");
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.putObject(0, null);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    Cache cache = new ConcurrentPerpetualCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+  }
+
+  @Test
+  void shouldDemonstrateIdIsNull() {
+    Cache cache = new ConcurrentPerpetualCache(null);
+    assertThrows(CacheException.class, () -> cache.hashCode());
+    assertThrows(CacheException.class, () -> cache.equals(new Object()));
+  }
+
+  @Test
+  void shouldNotSynchronizeConcurrentDecoratorChain() {
+    Cache cache = new CacheBuilder("default").implementation(ConcurrentPerpetualCache.class)
+        .addDecorator(LruCache.class).build();
+    assertTrue(cache instanceof LoggingCache);
+  }
+
+  @Test
+  void shouldSynchronizeWhenADecoratorIsNotConcurrent() {
+    Cache cache = new CacheBuilder("default").implementation(ConcurrentPerpetualCache.class)
+        .addDecorator(SoftCache.class).build();
+    assertTrue(cache instanceof SynchronizedCache);
+  }
+
+  @Test
+  void shouldKeepBlockingOnTopOfConcurrentDecoratorChain() {
+    Cache cache = new CacheBuilder("default").implementation(ConcurrentPerpetualCache.class)
+        .addDecorator(LruCache.class).blocking(true).build();
+    assertTrue(cache instanceof BlockingCache);
+  }
+
+  @Test
+  void shouldKeepLruCacheBoundedUnderConcurrentAccess() throws Exception {
+    LruCache lru = new LruCache(new ConcurrentPerpetualCache("default"));
+    lru.setSize(100);
+    Cache cache = lru;
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final int offset = t * 10000;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 10000; i++) {
+            cache.putObject(offset + i, i);
+            cache.getObject(offset + i / 2);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(100, cache.getSize());
+  }
+
+  @Test
+  void shouldCountEveryRequestOfAConcurrentDecoratorChain() throws Exception {
+    Cache cache = new CacheBuilder("default").implementation(ConcurrentPerpetualCache.class).build();
+    assertTrue(cache instanceof LoggingCache);
+    cache.putObject("present", "value");
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 10000; i++) {
+            cache.getObject("present");
+            cache.getObject("missing");
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(80000, cache.getStats().getHitCount());
+    assertEquals(80000, cache.getStats().getMissCount());
+    assertEquals(0.5, cache.getStats().getHitRatio());
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.mapping.ResultFlag;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class EntityCacheTest {
+
+  private static final String NAMESPACE = "org.apache.ibatis.domain.blog.mappers.AuthorMapper";
+  private static final List<String> COLUMNS = Arrays.asList("ID", "USERNAME");
+
+  @Test
+  void shouldShareTheFirstEntityMappedFromTheSameColumns() {
+    EntityCache cache = new EntityCache();
+    Author first = new Author(1);
+    Author second = new Author(1);
+    assertSame(first, cache.putObject(NAMESPACE, key(1), COLUMNS, first, cache.getVersion()));
+    assertSame(first, cache.putObject(NAMESPACE, key(1), COLUMNS, second, cache.getVersion()));
+    assertSame(first, cache.getObject(NAMESPACE, key(1), COLUMNS));
+    assertNull(cache.getObject(NAMESPACE, key(1), Collections.singletonList("ID")));
+  }
+
+  @Test
+  void shouldReplaceTheEntityWhenTheRowWasModified() {
+    EntityCache cache = new EntityCache();
+    Author first = new Author(1, "jim", "********", "jim@ibatis.apache.org", "", null);
+    Author modified = new Author(1, "jim", "********", "jim@mybatis.org", "", null);
+    assertSame(first, cache.putObject(NAMESPACE, key(1), COLUMNS, first, cache.getVersion()));
+    assertSame(modified, cache.putObject(NAMESPACE, key(1), COLUMNS, modified, cache.getVersion()));
+    assertSame(modified, cache.getObject(NAMESPACE, key(1), COLUMNS));
+  }
+
+  @Test
+  void shouldNotCacheEntitiesReadBeforeAWrite() {
+    EntityCache cache = new EntityCache();
+    long readVersion = cache.getVersion();
+    cache.beginWrite(NAMESPACE);
+    Author author = new Author(1);
+    assertSame(author, cache.putObject(NAMESPACE, key(1), COLUMNS, author, cache.getVersion()));
+    assertNull(cache.getObject(NAMESPACE, key(1), COLUMNS));
+    cache.endWrite(NAMESPACE, Collections.emptySet());
+    cache.putObject(NAMESPACE, key(1), COLUMNS, author, readVersion);
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldEvictTheWrittenEntities() {
+    EntityCache cache = new EntityCache();
+    Author one = new Author(1);
+    Author two = new Author(2);
+    cache.putObject(NAMESPACE, key(1), COLUMNS, one, cache.getVersion());
+    cache.putObject(NAMESPACE, key(2), COLUMNS, two, cache.getVersion());
+    cache.beginWrite(NAMESPACE);
+    cache.endWrite(NAMESPACE, Collections.singleton(key(1)));
+    assertNull(cache.getObject(NAMESPACE, key(1), COLUMNS));
+    assertSame(two, cache.getObject(NAMESPACE, key(2), COLUMNS));
+    cache.beginWrite(NAMESPACE);
+    cache.endWrite(NAMESPACE, null);
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldCreateTheKeysOfTheWrittenEntitiesFromTheParameter() {
+    Configuration configuration = new Configuration();
+    ResultMapping id = new ResultMapping.Builder(configuration, "id", "id", Integer.class)
+        .flags(Collections.singletonList(ResultFlag.ID)).build();
+    ResultMapping username = new ResultMapping.Builder(configuration, "username", "username", String.class).build();
+    ResultMap resultMap = new ResultMap.Builder(configuration, NAMESPACE + ".author", Author.class,
+        Arrays.asList(id, username)).build();
+    configuration.addResultMap(resultMap);
+    assertTrue(EntityCache.isEntity(resultMap));
+    Set<CacheKey> keys = EntityCache.createKeys(configuration, NAMESPACE, new Author(1));
+    assertEquals(Collections.singleton(key(1)), keys);
+    assertNull(EntityCache.createKeys(configuration, NAMESPACE, 1));
+    assertFalse(EntityCache.isEntity(new ResultMap.Builder(configuration, NAMESPACE + ".username", Author.class,
+        Collections.singletonList(username)).build()));
+  }
+
+  private static CacheKey key(int id) {
+    CacheKey key = new CacheKey();
+    key.update(NAMESPACE + ".author");
+    key.update(id);
+    return key;
+  }
+
+}
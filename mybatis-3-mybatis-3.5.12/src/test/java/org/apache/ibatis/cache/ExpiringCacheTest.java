@@ -0,0 +1,183 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.junit.jupiter.api.Test;
+
+class ExpiringCacheTest {
+
+  @Test
+  void shouldExpireEachEntryAfterItsTimeToLive() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(300);
+    cache.putObject("first", 1);
+    Thread.sleep(200);
+    cache.putObject("second", 2);
+    assertNotNull(cache.getObject("first"));
+    Thread.sleep(200);
+    assertNull(cache.getObject("first"));
+    assertEquals(2, cache.getObject("second"));
+  }
+
+  @Test
+  void shouldKeepEntriesThatAreReadWithinTheirTimeToIdle() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToIdle(300);
+    cache.putObject("read", 1);
+    cache.putObject("unread", 2);
+    for (int i = 0; i < 4; i++) {
+      Thread.sleep(100);
+      assertNotNull(cache.getObject("read"));
+    }
+    assertNull(cache.getObject("unread"));
+  }
+
+  @Test
+  void shouldSweepExpiredEntriesOnPut() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(100);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    Thread.sleep(200);
+    cache.putObject("fresh", "fresh");
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  void shouldSpreadExpirationsWithJitter() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(100);
+    cache.setExpiryJitter(10_000);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    Thread.sleep(300);
+    int alive = 0;
+    for (int i = 0; i < 100; i++) {
+      if (cache.getObject(i) != null) {
+        alive++;
+      }
+    }
+    assertTrue(alive > 50, "only " + alive + " entries survived");
+  }
+
+  @Test
+  void shouldBeAddedByCacheBuilder() throws Exception {
+    Cache cache = new CacheBuilder("default").timeToLive(100L).build();
+    cache.putObject(0, 0);
+    assertEquals(0, cache.getObject(0));
+    Thread.sleep(200);
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  void shouldRemoveItemOnDemand() {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(60000);
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(60000);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+  }
+
+  @Test
+  void shouldForgetTheEntriesEvictedBelow() {
+    Cache cache = new CacheBuilder("default").size(10).timeToLive(3_600_000L).build();
+    for (int i = 0; i < 10_000; i++) {
+      cache.putObject(i, i);
+    }
+    ExpiringCache expiringCache = findExpiringCache(cache);
+    MetaObject metaCache = SystemMetaObject.forObject(expiringCache);
+    assertEquals(10, ((Map<?, ?>) metaCache.getValue("expiries")).size());
+    assertTrue(((Queue<?>) metaCache.getValue("sweepQueue")).size() <= 20);
+  }
+
+  @Test
+  void shouldForgetTheEntriesRemovedBelowWithoutNotice() {
+    PerpetualCache base = new PerpetualCache("default");
+    ExpiringCache cache = new ExpiringCache(base);
+    cache.setTimeToLive(3_600_000L);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    base.clear();
+    for (int i = 100; i < 200; i++) {
+      cache.putObject(i, i);
+    }
+    MetaObject metaCache = SystemMetaObject.forObject(cache);
+    assertEquals(100, ((Map<?, ?>) metaCache.getValue("expiries")).size());
+  }
+
+  @Test
+  void shouldNotReadTheEntriesBelowWhenSweeping() {
+    AtomicInteger reads = new AtomicInteger();
+    LruCache lruCache = new LruCache(new PerpetualCache("default") {
+      @Override
+      public Object getObject(Object key) {
+        reads.incrementAndGet();
+        return super.getObject(key);
+      }
+    });
+    lruCache.setSize(10);
+    ExpiringCache cache = new ExpiringCache(lruCache);
+    cache.setTimeToLive(3_600_000L);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(0, reads.get());
+    MetaObject metaCache = SystemMetaObject.forObject(cache);
+    assertTrue(((Map<?, ?>) metaCache.getValue("expiries")).size() <= 20);
+  }
+
+  private static ExpiringCache findExpiringCache(Cache cache) {
+    MetaObject metaCache = SystemMetaObject.forObject(cache);
+    while (!(metaCache.getOriginalObject() instanceof ExpiringCache)) {
+      metaCache = SystemMetaObject.forObject(metaCache.getValue("delegate"));
+    }
+    return (ExpiringCache) metaCache.getOriginalObject();
+  }
+
+}
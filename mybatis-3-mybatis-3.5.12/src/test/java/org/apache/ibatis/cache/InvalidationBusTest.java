@@ -0,0 +1,149 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.impl.LocalInvalidationBus;
+import org.apache.ibatis.cache.impl.MappedFileInvalidationBus;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class InvalidationBusTest {
+
+  @Test
+  void shouldDeliverToTheOtherBusesOfTheChannelOnly() {
+    LocalInvalidationBus first = new LocalInvalidationBus("shouldDeliverToTheOtherBusesOfTheChannelOnly");
+    LocalInvalidationBus second = new LocalInvalidationBus("shouldDeliverToTheOtherBusesOfTheChannelOnly");
+    LocalInvalidationBus other = new LocalInvalidationBus("other");
+    BlockingQueue<Invalidation> firstReceived = new LinkedBlockingQueue<>();
+    BlockingQueue<Invalidation> secondReceived = new LinkedBlockingQueue<>();
+    BlockingQueue<Invalidation> otherReceived = new LinkedBlockingQueue<>();
+    first.subscribe(firstReceived::add);
+    second.subscribe(secondReceived::add);
+    other.subscribe(otherReceived::add);
+    try {
+      first.publish(Invalidation.caches(Collections.singletonList("org.apache.ibatis.domain.AuthorMapper")));
+      assertEquals(Invalidation.caches(Collections.singletonList("org.apache.ibatis.domain.AuthorMapper")),
+          secondReceived.poll());
+      assertTrue(firstReceived.isEmpty());
+      assertTrue(otherReceived.isEmpty());
+    } finally {
+      first.close();
+      second.close();
+      other.close();
+    }
+  }
+
+  @Test
+  void shouldDeliverThroughTheMappedFile() throws Exception {
+    File file = File.createTempFile("mybatis", ".invalidations");
+    file.deleteOnExit();
+    assertTrue(file.delete());
+    MappedFileInvalidationBus publisher = new MappedFileInvalidationBus(file.toPath(), 4, 48, 1);
+    MappedFileInvalidationBus subscriber = new MappedFileInvalidationBus(file.toPath(), 1, 48, 200);
+    BlockingQueue<Invalidation> published = new LinkedBlockingQueue<>();
+    BlockingQueue<Invalidation> received = new LinkedBlockingQueue<>();
+    publisher.subscribe(published::add);
+    subscriber.subscribe(received::add);
+    try {
+      List<String> tables = Arrays.asList("author", "blog", "comment", "post", "tag");
+      publisher.publish(Invalidation.tables(tables));
+      // the names are split among the slots
+      assertEquals(Invalidation.tables(Arrays.asList("author", "blog", "comment", "post")),
+          received.poll(5, TimeUnit.SECONDS));
+      assertEquals(Invalidation.tables(Collections.singletonList("tag")), received.poll(5, TimeUnit.SECONDS));
+      assertNull(published.poll(50, TimeUnit.MILLISECONDS));
+      // more invalidations than slots, the subscriber falls behind and must clear everything
+      for (int i = 0; i < 10; i++) {
+        publisher.publish(Invalidation.caches(Collections.singletonList("cache" + i)));
+      }
+      Invalidation invalidation;
+      do {
+        invalidation = received.poll(5, TimeUnit.SECONDS);
+      } while (invalidation != null && invalidation.getType() == Invalidation.Type.CACHE);
+      assertEquals(Invalidation.all(), invalidation);
+    } finally {
+      publisher.close();
+      subscriber.close();
+    }
+  }
+
+  @Test
+  void shouldCloseTheBusWithTheConfiguration() throws Exception {
+    File file = File.createTempFile("mybatis", ".invalidations");
+    file.deleteOnExit();
+    assertTrue(file.delete());
+    LocalInvalidationBus publisher = new LocalInvalidationBus("shouldCloseTheBusWithTheConfiguration");
+    Configuration configuration = new Configuration();
+    configuration.setCacheInvalidationBus(new LocalInvalidationBus("shouldCloseTheBusWithTheConfiguration"));
+    Cache cache = new PerpetualCache("org.apache.ibatis.domain.AuthorMapper");
+    configuration.addCache(cache);
+    MappedFileInvalidationBus mappedFileBus = new MappedFileInvalidationBus(file.toPath(), 4, 48, 1);
+    try {
+      configuration.close();
+      cache.putObject("key", "value");
+      publisher.publish(Invalidation.all());
+      assertEquals(1, cache.getSize());
+
+      Configuration other = new Configuration();
+      other.setCacheInvalidationBus(mappedFileBus);
+      other.close();
+      Thread poller = Thread.getAllStackTraces().keySet().stream()
+          .filter(thread -> thread.getName().equals("mybatis-invalidation-" + file.getName())).findFirst()
+          .orElse(null);
+      assertTrue(poller == null || !poller.isAlive());
+    } finally {
+      publisher.close();
+      mappedFileBus.close();
+    }
+  }
+
+  @Test
+  void shouldRequireTheFileOfAMappedFileBus() {
+    assertThrows(CacheException.class, () -> new MappedFileInvalidationBus((String) null));
+  }
+
+  @Test
+  void shouldClearTheCachesOfTheConfiguration() {
+    Configuration configuration = new Configuration();
+    Cache author = new PerpetualCache("org.apache.ibatis.domain.AuthorMapper");
+    Cache blog = new PerpetualCache("org.apache.ibatis.domain.BlogMapper");
+    configuration.addCache(author);
+    configuration.addCache(blog);
+    author.putObject("key", "value");
+    blog.putObject("key", "value");
+    configuration.applyCacheInvalidation(
+        Invalidation.caches(Collections.singletonList("org.apache.ibatis.domain.AuthorMapper")));
+    assertEquals(0, author.getSize());
+    assertEquals(1, blog.getSize());
+    configuration.applyCacheInvalidation(Invalidation.all());
+    assertEquals(0, blog.getSize());
+  }
+
+}
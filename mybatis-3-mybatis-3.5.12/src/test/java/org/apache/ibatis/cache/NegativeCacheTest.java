@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.cache.decorators.NegativeCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+class NegativeCacheTest {
+
+  @Test
+  void shouldReturnAFreshEmptyListOnEachHit() {
+    NegativeCache cache = new NegativeCache(new PerpetualCache("default"));
+    cache.putObject("key", new ArrayList<>());
+    Object first = cache.getObject("key");
+    Object second = cache.getObject("key");
+    assertEquals(Collections.emptyList(), first);
+    assertNotSame(first, second);
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  void shouldExpireEmptyResultsOnly() throws Exception {
+    NegativeCache cache = new NegativeCache(new PerpetualCache("default"));
+    cache.setTimeToLive(50);
+    cache.putObject("missing", new ArrayList<>());
+    cache.putObject("found", Collections.singletonList("row"));
+    Thread.sleep(100);
+    assertNull(cache.getObject("missing"));
+    assertEquals(Collections.singletonList("row"), cache.getObject("found"));
+  }
+
+  @Test
+  void shouldKeepTheNewestEmptyResultsBeyondTheSizeLimit() {
+    NegativeCache cache = new NegativeCache(new PerpetualCache("default"));
+    cache.setSize(10);
+    for (int i = 0; i < 20; i++) {
+      cache.putObject(i, new ArrayList<>());
+    }
+    cache.putObject("found", Collections.singletonList("row"));
+    assertEquals(11, cache.getSize());
+    assertNull(cache.getObject(0));
+    assertEquals(Collections.emptyList(), cache.getObject(19));
+    assertEquals(Collections.singletonList("row"), cache.getObject("found"));
+  }
+
+  @Test
+  void shouldReplaceAnEmptyResultWithARow() {
+    NegativeCache cache = new NegativeCache(new PerpetualCache("default"));
+    cache.putObject("key", new ArrayList<>());
+    List<String> rows = Collections.singletonList("row");
+    cache.putObject("key", rows);
+    assertSame(rows, cache.getObject("key"));
+    cache.removeObject("key");
+    assertNull(cache.getObject("key"));
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class OffHeapCacheTest {
+
+  @Test
+  void shouldReturnCopiesOfTheStoredObjects() {
+    Cache cache = newCache(64 * 1024, 4 * 1024);
+    List<String> value = new ArrayList<>();
+    value.add("a");
+    value.add("b");
+    cache.putObject(1, value);
+    Object cached = cache.getObject(1);
+    assertEquals(value, cached);
+    assertNotSame(value, cached);
+  }
+
+  @Test
+  void shouldEvictTheOldestSlabWhenFull() {
+    Cache cache = newCache(8 * 1024, 2 * 1024);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, "value" + i);
+    }
+    assertTrue(cache.getSize() < 1000);
+    assertNull(cache.getObject(0));
+    assertEquals("value999", cache.getObject(999));
+  }
+
+  @Test
+  void shouldReplaceAndRemoveObjects() {
+    Cache cache = newCache(64 * 1024, 4 * 1024);
+    cache.putObject(1, "a");
+    cache.putObject(1, "b");
+    assertEquals("b", cache.getObject(1));
+    assertEquals(1, cache.getSize());
+    cache.removeObject(1);
+    assertNull(cache.getObject(1));
+    cache.putObject(2, "c");
+    cache.putObject(2, null);
+    assertNull(cache.getObject(2));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    Cache cache = newCache(64 * 1024, 4 * 1024);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+    cache.putObject(5, 5);
+    assertEquals(5, cache.getObject(5));
+  }
+
+  @Test
+  void shouldNotCacheObjectsLargerThanASlab() {
+    Cache cache = newCache(8 * 1024, 1024);
+    cache.putObject(1, new byte[2048]);
+    assertNull(cache.getObject(1));
+  }
+
+  @Test
+  void shouldRejectNonSerializableObjects() {
+    Cache cache = newCache(8 * 1024, 1024);
+    assertThrows(CacheException.class, () -> cache.putObject(1, new Object()));
+  }
+
+  @Test
+  void shouldStoreObjectsInAMappedFile() throws Exception {
+    File file = File.createTempFile("mybatis-off-heap", ".cache");
+    file.deleteOnExit();
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setMaxBytes(8 * 1024);
+    cache.setSlabSize(2 * 1024);
+    cache.setFile(file.getAbsolutePath());
+    cache.initialize();
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, "value" + i);
+    }
+    assertEquals("value3", cache.getObject(3));
+    assertTrue(file.length() > 0);
+  }
+
+  @Test
+  void shouldDropEntriesAndReopenTheFileAfterClose() throws Exception {
+    File file = File.createTempFile("mybatis-off-heap", ".cache");
+    file.deleteOnExit();
+    Properties props = new Properties();
+    props.setProperty("maxBytes", "8192");
+    props.setProperty("slabSize", "2048");
+    props.setProperty("file", file.getAbsolutePath());
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).properties(props).build();
+    cache.putObject(1, "a");
+    cache.close();
+    assertNull(cache.getObject(1));
+    assertEquals(0, cache.getSize());
+    cache.putObject(2, "b");
+    assertEquals("b", cache.getObject(2));
+    cache.close();
+  }
+
+  @Test
+  void shouldBeBuiltWithProperties() {
+    Properties props = new Properties();
+    props.setProperty("maxBytes", "16384");
+    props.setProperty("slabSize", "4096");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).properties(props).build();
+    cache.putObject(1, "a");
+    assertEquals("a", cache.getObject(1));
+  }
+
+  private Cache newCache(long maxBytes, int slabSize) {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setMaxBytes(maxBytes);
+    cache.setSlabSize(slabSize);
+    cache.initialize();
+    return cache;
+  }
+
+}
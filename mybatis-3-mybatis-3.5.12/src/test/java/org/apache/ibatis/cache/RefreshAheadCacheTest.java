@@ -0,0 +1,150 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.RefreshAheadCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class RefreshAheadCacheTest {
+
+  @Test
+  void shouldServeStaleEntriesWhileTheyAreRefreshed() throws Exception {
+    RefreshAheadCache cache = (RefreshAheadCache) new CacheBuilder("default").refreshAfter(100L).build();
+    cache.putObject("key", "old");
+    assertFalse(cache.isRefreshDue("key"));
+    Thread.sleep(150);
+    assertEquals("old", cache.getObject("key"));
+    assertTrue(cache.isRefreshDue("key"));
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger loads = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      cache.refresh("key", () -> {
+        loads.incrementAndGet();
+        await(release);
+        return "new";
+      });
+    }
+    assertFalse(cache.isRefreshDue("key"));
+    assertEquals("old", cache.getObject("key"));
+    release.countDown();
+    waitFor(cache, "new");
+    assertEquals(1, loads.get());
+    assertFalse(cache.isRefreshDue("key"));
+  }
+
+  @Test
+  void shouldDropRefreshedValuesReadBeforeAClear() throws Exception {
+    RefreshAheadCache cache = (RefreshAheadCache) new CacheBuilder("default").refreshAfter(1L).build();
+    cache.putObject("key", "old");
+    Thread.sleep(10);
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch loaded = new CountDownLatch(1);
+    cache.refresh("key", () -> {
+      loading.countDown();
+      await(release);
+      loaded.countDown();
+      return "new";
+    });
+    assertTrue(loading.await(5, TimeUnit.SECONDS));
+    cache.clear();
+    release.countDown();
+    assertTrue(loaded.await(5, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    assertNull(cache.getObject("key"));
+  }
+
+  @Test
+  void shouldRefreshAgainAfterAFailure() throws Exception {
+    RefreshAheadCache cache = (RefreshAheadCache) new CacheBuilder("default").refreshAfter(1L).build();
+    cache.putObject("key", "old");
+    Thread.sleep(10);
+    cache.refresh("key", () -> {
+      throw new SQLException("failed");
+    });
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!cache.isRefreshDue("key") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals("old", cache.getObject("key"));
+    cache.refresh("key", () -> "new");
+    waitFor(cache, "new");
+  }
+
+  @Test
+  void shouldRemoveEntriesWhoseRefreshMustNotBeCached() throws Exception {
+    RefreshAheadCache cache = (RefreshAheadCache) new CacheBuilder("default").refreshAfter(1L).build();
+    cache.putObject("key", "old");
+    Thread.sleep(10);
+    cache.refresh("key", () -> null);
+    waitFor(cache, null);
+  }
+
+  @Test
+  void shouldStopTheRefreshThreadsOnClose() throws Exception {
+    RefreshAheadCache cache = (RefreshAheadCache) new CacheBuilder("closing").refreshAfter(1L).build();
+    cache.putObject("key", "old");
+    Thread.sleep(10);
+    CountDownLatch loading = new CountDownLatch(1);
+    cache.refresh("key", () -> {
+      loading.countDown();
+      await(new CountDownLatch(1));
+      return "new";
+    });
+    assertTrue(loading.await(5, TimeUnit.SECONDS));
+    cache.close();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (hasRefreshThread("closing") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(hasRefreshThread("closing"));
+    assertEquals("old", cache.getObject("key"));
+  }
+
+  private static boolean hasRefreshThread(String cacheId) {
+    return Thread.getAllStackTraces().keySet().stream()
+        .anyMatch(thread -> thread.getName().startsWith("mybatis-refresh-" + cacheId + "-"));
+  }
+
+  private static void await(CountDownLatch latch) throws SQLException {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new SQLException(e);
+    }
+  }
+
+  private static void waitFor(Cache cache, Object value) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!Objects.equals(value, cache.getObject("key")) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(value, cache.getObject("key"));
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightCacheTest {
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final CountDownLatch loading = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void shouldLoadConcurrentMissesOnce() throws Exception {
+    SingleFlightCache cache = (SingleFlightCache) new CacheBuilder("default").singleFlight(true).readWrite(true)
+        .build();
+    AtomicInteger loads = new AtomicInteger();
+    Future<Object> leader = startLoad(cache, () -> {
+      loads.incrementAndGet();
+      return new ArrayList<>(Collections.singletonList("row"));
+    });
+    List<Future<Object>> followers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      followers.add(executor.submit(() -> cache.load("key", () -> {
+        loads.incrementAndGet();
+        return null;
+      })));
+    }
+    Thread.sleep(200);
+    release.countDown();
+    Object leaderValue = leader.get(5, TimeUnit.SECONDS);
+    for (Future<Object> follower : followers) {
+      Object value = follower.get(5, TimeUnit.SECONDS);
+      assertEquals(leaderValue, value);
+      // read-write caches hand out copies
+      assertNotSame(leaderValue, value);
+    }
+    assertEquals(1, loads.get());
+    assertEquals(4, cache.getStats().getCoalescedCount());
+    // the value is added to the cache by the transaction, not by the load
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldShareTheSameValueWithReadOnlyCaches() throws Exception {
+    SingleFlightCache cache = (SingleFlightCache) new CacheBuilder("default").singleFlight(true).readWrite(false)
+        .build();
+    Object value = new Object();
+    Future<Object> leader = startLoad(cache, () -> value);
+    Future<Object> follower = executor.submit(() -> cache.load("key", Object::new));
+    Thread.sleep(200);
+    release.countDown();
+    assertSame(value, leader.get(5, TimeUnit.SECONDS));
+    assertSame(value, follower.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void shouldLoadAgainWhenTheLoadFails() throws Exception {
+    SingleFlightCache cache = (SingleFlightCache) new CacheBuilder("default").singleFlight(true).build();
+    Future<Object> leader = startLoad(cache, () -> {
+      throw new SQLException("failed");
+    });
+    Future<Object> follower = executor.submit(() -> cache.load("key", () -> "reloaded"));
+    Thread.sleep(200);
+    release.countDown();
+    ExecutionException e = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof SQLException);
+    assertEquals("reloaded", follower.get(5, TimeUnit.SECONDS));
+    assertEquals("next", cache.load("key", () -> "next"));
+  }
+
+  @Test
+  void shouldReturnValuesThatCannotBeCopiedToTheLoadingSessionOnly() throws Exception {
+    SingleFlightCache cache = (SingleFlightCache) new CacheBuilder("default").singleFlight(true).readWrite(true)
+        .build();
+    Object value = new Object();
+    Future<Object> leader = startLoad(cache, () -> value);
+    Future<Object> follower = executor.submit(() -> cache.load("key", () -> "own copy"));
+    Thread.sleep(200);
+    release.countDown();
+    assertSame(value, leader.get(5, TimeUnit.SECONDS));
+    assertEquals("own copy", follower.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void shouldLoadAloneWhenTheWaitTimesOut() throws Exception {
+    SingleFlightCache cache = (SingleFlightCache) new CacheBuilder("default").singleFlight(true).build();
+    cache.setLoadTimeout(100);
+    Future<Object> leader = startLoad(cache, () -> "slow");
+    assertEquals("fast", executor.submit(() -> cache.load("key", () -> "fast")).get(5, TimeUnit.SECONDS));
+    release.countDown();
+    assertEquals("slow", leader.get(5, TimeUnit.SECONDS));
+  }
+
+  private Future<Object> startLoad(SingleFlightCache cache, SingleFlightCache.Loader loader) throws Exception {
+    Future<Object> leader = executor.submit(() -> cache.load("key", () -> {
+      loading.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new SQLException(e);
+      }
+      return loader.load();
+    }));
+    assertTrue(loading.await(5, TimeUnit.SECONDS));
+    return leader;
+  }
+
+}
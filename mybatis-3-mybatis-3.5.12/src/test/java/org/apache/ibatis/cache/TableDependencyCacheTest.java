@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.ibatis.cache.decorators.TableDependencyCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class TableDependencyCacheTest {
+
+  private static final String[] BLOG_AND_AUTHOR = { "blog", "author" };
+  private static final String[] POST = { "post" };
+
+  @Test
+  void shouldReturnEntriesUntilOneOfTheirTablesIsModified() {
+    TableVersions tableVersions = new TableVersions();
+    TableDependencyCache cache = new TableDependencyCache(new PerpetualCache("default"));
+    cache.setTableVersions(tableVersions);
+    cache.putObject("blogs", entry(tableVersions, BLOG_AND_AUTHOR, "blogs"));
+    cache.putObject("posts", entry(tableVersions, POST, "posts"));
+    assertEquals("blogs", cache.getObject("blogs"));
+    tableVersions.invalidate(Collections.singleton("author"));
+    assertNull(cache.getObject("blogs"));
+    assertEquals(1, cache.getSize());
+    assertEquals("posts", cache.getObject("posts"));
+  }
+
+  @Test
+  void shouldNotReturnEntriesReadBeforeAWrite() {
+    TableVersions tableVersions = new TableVersions();
+    long[] versions = tableVersions.snapshot(POST);
+    tableVersions.invalidate(Collections.singleton("post"));
+    assertFalse(tableVersions.isCurrent(POST, versions));
+    assertTrue(tableVersions.isCurrent(POST, tableVersions.snapshot(POST)));
+  }
+
+  @Test
+  void shouldInvalidateTablesWhenTheTransactionIsCommitted() {
+    TableVersions tableVersions = new TableVersions();
+    Cache cache = new CacheBuilder("default").tableVersions(tableVersions).build();
+    TransactionalCacheManager tcm = new TransactionalCacheManager();
+    cache.putObject("posts", entry(tableVersions, POST, "posts"));
+    tcm.invalidateOnCommit(tableVersions, POST);
+    assertTrue(tcm.isInvalidated(new String[] { "blog", "post" }));
+    assertEquals("posts", cache.getObject("posts"));
+    tcm.commit();
+    assertFalse(tcm.isInvalidated(POST));
+    assertNull(cache.getObject("posts"));
+  }
+
+  @Test
+  void shouldNotInvalidateTablesWhenTheTransactionIsRolledBack() {
+    TableVersions tableVersions = new TableVersions();
+    Cache cache = new CacheBuilder("default").tableVersions(tableVersions).build();
+    TransactionalCacheManager tcm = new TransactionalCacheManager();
+    cache.putObject("posts", entry(tableVersions, POST, "posts"));
+    tcm.invalidateOnCommit(tableVersions, POST);
+    tcm.rollback();
+    tcm.commit();
+    assertEquals("posts", cache.getObject("posts"));
+  }
+
+  private static TableDependencyCache.Entry entry(TableVersions tableVersions, String[] tables, Object value) {
+    return new TableDependencyCache.Entry(tables, tableVersions.snapshot(tables), value);
+  }
+
+}
@@ -0,0 +1,171 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class WeightedCacheTest {
+
+  @Test
+  void shouldEvictLeastRecentlyUsedItemsToStayUnderMaxBytes() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setCacheWeigher((key, value) -> 100);
+    cache.setMaxBytes(500);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(0, cache.getObject(0));
+    cache.putObject(5, 5);
+    assertNull(cache.getObject(1));
+    assertEquals(5, cache.getSize());
+    assertEquals(500, cache.getWeightedSize());
+  }
+
+  @Test
+  void shouldWeighListsByNumberOfRows() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setEstimatedRowBytes(1000);
+    cache.setMaxBytes(60_000);
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, Collections.singletonList(i));
+    }
+    assertEquals(10, cache.getSize());
+    cache.putObject("big", rows(50));
+    assertNotNull(cache.getObject("big"));
+    assertTrue(cache.getWeightedSize() <= 60_000);
+    assertTrue(cache.getSize() < 11);
+  }
+
+  @Test
+  void shouldNotKeepAnEntryBiggerThanMaxBytes() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setEstimatedRowBytes(1000);
+    cache.setMaxBytes(10_000);
+    cache.putObject("small", rows(1));
+    cache.putObject("huge", rows(50));
+    assertNull(cache.getObject("huge"));
+    assertNotNull(cache.getObject("small"));
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  void shouldShareTheGlobalBudget() {
+    CacheMemoryBudget budget = new CacheMemoryBudget(1000);
+    WeightedCache first = new WeightedCache(new PerpetualCache("first"));
+    WeightedCache second = new WeightedCache(new PerpetualCache("second"));
+    for (WeightedCache cache : new WeightedCache[] { first, second }) {
+      cache.setCacheWeigher((key, value) -> 100);
+      cache.setMemoryBudget(budget);
+    }
+    for (int i = 0; i < 6; i++) {
+      first.putObject(i, i);
+    }
+    for (int i = 0; i < 6; i++) {
+      second.putObject(i, i);
+    }
+    assertEquals(1000, budget.getUsedBytes());
+    assertEquals(6, first.getSize());
+    assertEquals(4, second.getSize());
+    first.clear();
+    assertEquals(400, budget.getUsedBytes());
+  }
+
+  @Test
+  void shouldNotEvictTheEntryJustWrittenForTheSharedBudget() {
+    CacheMemoryBudget budget = new CacheMemoryBudget(1000);
+    WeightedCache first = new WeightedCache(new PerpetualCache("first"));
+    WeightedCache second = new WeightedCache(new PerpetualCache("second"));
+    for (WeightedCache cache : new WeightedCache[] { first, second }) {
+      cache.setCacheWeigher((key, value) -> 100);
+      cache.setMemoryBudget(budget);
+    }
+    for (int i = 0; i < 10; i++) {
+      first.putObject(i, i);
+    }
+    second.putObject("a", "a");
+    assertNotNull(second.getObject("a"));
+    assertEquals(1100, budget.getUsedBytes());
+    second.putObject("b", "b");
+    assertNull(second.getObject("a"));
+    assertNotNull(second.getObject("b"));
+    assertEquals(10, first.getSize());
+    first.putObject(10, 10);
+    assertEquals(9, first.getSize());
+    assertEquals(1000, budget.getUsedBytes());
+  }
+
+  @Test
+  void shouldWeighTheSerializedValuesOfReadWriteCaches() {
+    CacheMemoryBudget budget = new CacheMemoryBudget();
+    Properties props = new Properties();
+    props.setProperty("maxBytes", "100000");
+    Cache cache = new CacheBuilder("default").implementation(PerpetualCache.class).addDecorator(WeightedCache.class)
+        .readWrite(true).memoryBudget(budget).properties(props).build();
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, rows(5000));
+    }
+    assertEquals(rows(5000), cache.getObject(9));
+    assertTrue(cache.getSize() < 10);
+    assertTrue(budget.getUsedBytes() > 5000);
+    assertTrue(budget.getUsedBytes() <= 100_000);
+  }
+
+  @Test
+  void shouldRemoveItemOnDemand() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getWeightedSize());
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+    assertEquals(0, cache.getWeightedSize());
+  }
+
+  private static List<Integer> rows(int count) {
+    List<Integer> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      rows.add(i);
+    }
+    return rows;
+  }
+
+}
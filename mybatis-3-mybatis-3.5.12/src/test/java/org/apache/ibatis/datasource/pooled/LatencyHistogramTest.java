@@ -0,0 +1,62 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void shouldReportPercentilesWithinTheBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500.5, histogram.getMean(), 0.001);
+    assertEquals(1000, histogram.getMax(), 0.001);
+    double median = histogram.getPercentile(50);
+    assertTrue(median >= 500 && median <= 500 * 1.125, "p50 " + median);
+    double p99 = histogram.getPercentile(99);
+    assertTrue(p99 >= 990 && p99 <= 1000, "p99 " + p99);
+    assertEquals(1000, histogram.getPercentile(100), 0.001);
+  }
+
+  @Test
+  void shouldCoverTheWholeRangeOfDurations() {
+    for (long micros : new long[] { 0, 1, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE }) {
+      int index = LatencyHistogram.indexOf(micros);
+      assertTrue(micros <= LatencyHistogram.upperBoundOf(index));
+      assertTrue(index == 0 || micros > LatencyHistogram.upperBoundOf(index - 1));
+    }
+  }
+
+  @Test
+  void shouldForgetTheDurationsWhenReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.SECONDS.toNanos(1));
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(99), 0.001);
+    assertEquals(0, histogram.getMax(), 0.001);
+  }
+
+}
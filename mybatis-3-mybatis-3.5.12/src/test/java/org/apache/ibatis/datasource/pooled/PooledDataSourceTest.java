@@ -18,15 +18,35 @@ package org.apache.ibatis.datasource.pooled;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.executor.ErrorContext;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -158,4 +178,290 @@ class PooledDataSourceTest {
     assertEquals(0, poolState.getActiveConnectionCount());
     assertEquals(0, poolState.getIdleConnectionCount());
   }
+
+  @Test
+  void shouldReuseTheConnectionLastReturnedByTheThread() throws Exception {
+    PooledDataSource dataSource = new PooledDataSource(new StubDataSource(new AtomicInteger()));
+    dataSource.setPoolMaximumIdleConnections(5);
+    Connection first = dataSource.getConnection();
+    Connection second = dataSource.getConnection();
+    Connection realSecond = PooledDataSource.unwrapConnection(second);
+    first.close();
+    second.close();
+    assertEquals(2, dataSource.getPoolState().getIdleConnectionCount());
+    assertEquals(realSecond, PooledDataSource.unwrapConnection(dataSource.getConnection()));
+    assertEquals(1, dataSource.getPoolState().getIdleConnectionCount());
+  }
+
+  @Test
+  void shouldNeverExceedTheMaximumActiveConnectionsUnderContention() throws Exception {
+    AtomicInteger opened = new AtomicInteger();
+    PooledDataSource dataSource = new PooledDataSource(new StubDataSource(opened));
+    dataSource.setPoolMaximumActiveConnections(4);
+    dataSource.setPoolMaximumIdleConnections(4);
+    dataSource.setPoolTimeToWait(50);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 200; j++) {
+            try (Connection connection = dataSource.getConnection()) {
+              assertTrue(dataSource.getPoolState().getActiveConnectionCount() <= 4);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(opened.get() <= 4);
+    assertEquals(0, dataSource.getPoolState().getActiveConnectionCount());
+    assertEquals(3200, dataSource.getPoolState().getRequestCount());
+  }
+
+  @Test
+  void shouldKeepTheMinimumIdleConnectionsAndEvictTheOthers() throws Exception {
+    PooledDataSource dataSource = new PooledDataSource(new StubDataSource(new AtomicInteger()));
+    dataSource.setPoolMaximumIdleConnections(5);
+    dataSource.setPoolMinimumIdleConnections(2);
+    dataSource.setPoolMaximumIdleTime(50);
+    dataSource.setPoolHousekeepingInterval(10);
+    List<Connection> connections = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      connections.add(dataSource.getConnection());
+    }
+    awaitIdleConnections(dataSource, 2);
+    for (Connection connection : connections) {
+      connection.close();
+    }
+    assertTrue(dataSource.getPoolState().getIdleConnectionCount() > 2);
+    awaitIdleConnections(dataSource, 2);
+  }
+
+  @Test
+  void shouldReportTheConnectionsHeldLongerThanTheLeakDetectionThreshold() throws Exception {
+    PooledDataSource dataSource = new PooledDataSource(new StubDataSource(new AtomicInteger()));
+    dataSource.setPoolMaximumIdleConnections(5);
+    dataSource.setPoolMaximumCheckoutTime(-1);
+    dataSource.setPoolLeakDetectionThreshold(50);
+    dataSource.setPoolHousekeepingInterval(10);
+    Connection leaked;
+    try {
+      ErrorContext.instance().object("org.example.Mapper.select");
+      leaked = dataSource.getConnection();
+      dataSource.getConnection().close();
+    } finally {
+      ErrorContext.instance().reset();
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dataSource.getPoolState().getSuspectedLeakCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1L, dataSource.getPoolState().getSuspectedLeakCount());
+    PooledConnection pooled = ((ProxyConnection) leaked).getPooledConnection();
+    assertTrue(pooled.isLeakReported());
+    assertEquals(Thread.currentThread().getName(), pooled.getCheckoutThread());
+    assertEquals(getClass().getName(), pooled.getCheckoutStackTrace()[0].getClassName());
+
+    leaked.close();
+    LatencyHistogram checkoutTime = dataSource.getPoolState().getStatementCheckoutTimes()
+        .get("org.example.Mapper.select");
+    assertEquals(2L, checkoutTime.getCount());
+    assertTrue(checkoutTime.getMax() >= 50);
+    assertEquals(1L, dataSource.getPoolState().getSuspectedLeakCount());
+  }
+
+  @Test
+  void shouldPublishThePoolStatisticsToJmx() throws Exception {
+    PooledDataSource dataSource = new PooledDataSource(new StubDataSource(new AtomicInteger()));
+    dataSource.setPoolMaximumIdleConnections(5);
+    dataSource.setPoolJmxName("test");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.apache.ibatis:type=PooledDataSource,name=\"test\"");
+    try {
+      dataSource.getConnection().close();
+      dataSource.getConnection().close();
+      assertEquals(2L, server.getAttribute(name, "RequestCount"));
+      assertEquals(1L, server.getAttribute(name, "ConnectionCreationCount"));
+      assertEquals(2L, dataSource.getPoolState().getAcquireTime().getCount());
+      assertEquals(2L, dataSource.getPoolState().getCheckoutTime().getCount());
+      assertTrue((Double) server.getAttribute(name, "AcquireTime99thPercentile") >= 0);
+      server.invoke(name, "resetStats", null, null);
+      assertEquals(0L, server.getAttribute(name, "RequestCount"));
+    } finally {
+      dataSource.setPoolJmxName(null);
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+  @Test
+  void shouldReusePreparedStatementsAcrossCheckouts() throws Exception {
+    StubDataSource stub = new StubDataSource(new AtomicInteger());
+    PooledDataSource dataSource = new PooledDataSource(stub);
+    dataSource.setPoolMaximumIdleConnections(5);
+    dataSource.setPoolPreparedStatementCacheSize(1);
+    for (int i = 0; i < 3; i++) {
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement statement = connection.prepareStatement("select 1")) {
+        assertSame(connection, statement.getConnection());
+        statement.setQueryTimeout(10);
+      }
+    }
+    assertEquals(1, stub.prepared.get());
+    try (Connection connection = dataSource.getConnection()) {
+      PreparedStatement first = connection.prepareStatement("select 1");
+      // the cached statement is in use
+      connection.prepareStatement("select 1").close();
+      first.close();
+      assertTrue(first.isClosed());
+      assertThrows(SQLException.class, first::executeQuery);
+      // evicts the least recently used statement
+      connection.prepareStatement("select 2").close();
+      connection.prepareStatement("select 1").close();
+    }
+    assertEquals(4, stub.prepared.get());
+  }
+
+  @Test
+  void shouldDiscardAConnectionThatCannotBeResetOnCheckout() throws Exception {
+    AtomicInteger opened = new AtomicInteger();
+    StubDataSource stub = new StubDataSource(opened);
+    PooledDataSource dataSource = new PooledDataSource(stub);
+    dataSource.setPoolMaximumActiveConnections(1);
+    Connection connection = dataSource.getConnection();
+    Connection broken = PooledDataSource.unwrapConnection(connection);
+    connection.close();
+    stub.broken.add(broken);
+    try (Connection another = dataSource.getConnection()) {
+      assertNotSame(broken, PooledDataSource.unwrapConnection(another));
+    }
+    assertEquals(2, opened.get());
+    assertEquals(1, dataSource.getPoolState().getBadConnectionCount());
+    assertEquals(1, dataSource.getPoolState().getIdleConnectionCount());
+  }
+
+  @Test
+  void shouldRestoreTheStatementSettingsBeforeReuse() throws Exception {
+    StubDataSource stub = new StubDataSource(new AtomicInteger());
+    PooledDataSource dataSource = new PooledDataSource(stub);
+    dataSource.setPoolPreparedStatementCacheSize(1);
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement("select 1")) {
+      statement.setMaxFieldSize(10);
+      statement.setFetchDirection(ResultSet.FETCH_REVERSE);
+      statement.setPoolable(false);
+      statement.setEscapeProcessing(false);
+    }
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement("select 1")) {
+      assertEquals(0, statement.getMaxFieldSize());
+      assertEquals(ResultSet.FETCH_FORWARD, statement.getFetchDirection());
+      assertTrue(statement.isPoolable());
+      // cannot be undone, the statement is not reused
+      statement.setCursorName("cursor");
+    }
+    assertEquals(1, stub.prepared.get());
+    try (Connection connection = dataSource.getConnection()) {
+      connection.prepareStatement("select 1").close();
+    }
+    assertEquals(2, stub.prepared.get());
+  }
+
+  @Test
+  void shouldBoundTheNumberOfTrackedStatements() throws Exception {
+    PooledDataSource dataSource = new PooledDataSource(new StubDataSource(new AtomicInteger()));
+    try {
+      for (int i = 0; i < PoolState.MAX_TRACKED_STATEMENTS + 10; i++) {
+        ErrorContext.instance().object("org.example.Mapper.select" + i);
+        dataSource.getConnection().close();
+      }
+    } finally {
+      ErrorContext.instance().reset();
+    }
+    Map<String, LatencyHistogram> checkoutTimes = dataSource.getPoolState().getStatementCheckoutTimes();
+    assertEquals(PoolState.MAX_TRACKED_STATEMENTS + 1, checkoutTimes.size());
+    assertEquals(10L, checkoutTimes.get(PoolState.OTHER_STATEMENTS).getCount());
+  }
+
+  private static void awaitIdleConnections(PooledDataSource dataSource, int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dataSource.getPoolState().getIdleConnectionCount() != expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, dataSource.getPoolState().getIdleConnectionCount());
+  }
+
+  static class StubDataSource extends UnpooledDataSource {
+
+    private final AtomicInteger opened;
+    private final AtomicInteger prepared = new AtomicInteger();
+    private final Set<Connection> broken = ConcurrentHashMap.newKeySet();
+
+    StubDataSource(AtomicInteger opened) {
+      this.opened = opened;
+    }
+
+    @Override
+    public Connection getConnection() {
+      opened.incrementAndGet();
+      return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "getAutoCommit":
+                if (broken.contains(proxy)) {
+                  throw new SQLException("Connection reset");
+                }
+                return true;
+              case "isClosed":
+                return false;
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              case "equals":
+                return proxy == args[0];
+              case "prepareStatement":
+                prepared.incrementAndGet();
+                return prepareStatement();
+              default:
+                return null;
+            }
+          });
+    }
+
+    private PreparedStatement prepareStatement() {
+      Map<String, Object> settings = new HashMap<>();
+      settings.put("QueryTimeout", 0);
+      settings.put("FetchSize", 0);
+      settings.put("MaxRows", 0);
+      settings.put("MaxFieldSize", 0);
+      settings.put("FetchDirection", ResultSet.FETCH_FORWARD);
+      settings.put("Poolable", true);
+      return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && settings.containsKey(name.substring(3))) {
+              settings.put(name.substring(3), args[0]);
+              return null;
+            }
+            String property = name.startsWith("get") ? name.substring(3) : name.substring(2);
+            if ((name.startsWith("get") || name.startsWith("is")) && settings.containsKey(property)) {
+              return settings.get(property);
+            }
+            switch (name) {
+              case "isClosed":
+                return false;
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              case "equals":
+                return proxy == args[0];
+              default:
+                return null;
+            }
+          });
+    }
+  }
 }
@@ -0,0 +1,134 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs many virtual threads through the pool and a synchronized cache, and checks with JFR that none of them pinned
+ * its carrier thread while blocked in MyBatis.
+ */
+class VirtualThreadPinningTest {
+
+  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+  private static final int THREADS = 10000;
+
+  @Test
+  void shouldNotPinCarrierThreadsWhileBlocked() throws Exception {
+    ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    PooledDataSource dataSource = new PooledDataSource(new PooledDataSourceTest.StubDataSource(new AtomicInteger()));
+    dataSource.setPoolMaximumActiveConnections(4);
+    dataSource.setPoolMaximumIdleConnections(4);
+    Cache cache = new SynchronizedCache(new PerpetualCache("pinning") {
+      @Override
+      public Object getObject(Object key) {
+        if ((Integer) key % 100 == 0) {
+          // blocks while holding the lock of the synchronized cache
+          sleep();
+        }
+        return super.getObject(key);
+      }
+    });
+    List<String> pinnedFrames = new ArrayList<>();
+    try (Recording recording = new Recording()) {
+      recording.enable(PINNED_EVENT).withoutThreshold().withStackTrace();
+      recording.start();
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+          int key = i;
+          futures.add(executor.submit(() -> {
+            try (Connection connection = dataSource.getConnection()) {
+              cache.putObject(key, connection.toString());
+              return cache.getObject(key);
+            }
+          }));
+        }
+        for (Future<?> future : futures) {
+          future.get(60, TimeUnit.SECONDS);
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+      recording.stop();
+      Path file = Files.createTempFile("pinning", ".jfr");
+      try {
+        recording.dump(file);
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+          if (PINNED_EVENT.equals(event.getEventType().getName()) && event.getStackTrace() != null) {
+            for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+              String type = frame.getMethod().getType().getName();
+              if (type.startsWith("org.apache.ibatis.")) {
+                pinnedFrames.add(type + "." + frame.getMethod().getName());
+                break;
+              }
+            }
+          }
+        }
+      } finally {
+        Files.delete(file);
+      }
+    }
+    assertTrue(pinnedFrames.isEmpty(), "Pinned in " + pinnedFrames);
+    assertEquals(THREADS, dataSource.getPoolState().getRequestCount());
+    assertEquals(0, dataSource.getPoolState().getActiveConnectionCount());
+  }
+
+  private static ExecutorService newVirtualThreadPerTaskExecutor() throws Exception {
+    boolean supported;
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      supported = true;
+    } catch (NoSuchMethodException e) {
+      supported = false;
+    }
+    assumeTrue(supported, "Virtual threads require Java 21");
+    // by reflection, as the tests are compiled for an older release
+    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+  }
+
+  private static void sleep() {
+    try {
+      Thread.sleep(1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
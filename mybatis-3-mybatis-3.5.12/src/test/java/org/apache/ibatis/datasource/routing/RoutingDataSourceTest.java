@@ -0,0 +1,372 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.datasource.DataSourceException;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RoutingDataSourceTest {
+
+  private StubDataSource primary;
+  private StubDataSource replica1;
+  private StubDataSource replica2;
+  private RoutingDataSource dataSource;
+
+  @BeforeEach
+  void setUp() {
+    primary = new StubDataSource();
+    replica1 = new StubDataSource();
+    replica2 = new StubDataSource();
+    dataSource = new RoutingDataSource(primary);
+    dataSource.addReplica(replica1);
+    dataSource.addReplica(replica2);
+  }
+
+  @AfterEach
+  void tearDown() {
+    RoutingDataSource.clearRouteHint();
+    RoutingDataSource.setStatementRoute(null);
+  }
+
+  @Test
+  void shouldSendTheWritesToThePrimaryAndTheReadsToAReplica() throws SQLException {
+    RoutingConnection connection = (RoutingConnection) dataSource.getConnection();
+    assertNull(connection.getTargetConnection());
+    assertEquals(0, primary.opened.get() + replica1.opened.get() + replica2.opened.get());
+
+    RoutingDataSource.setStatementRoute(Route.REPLICA);
+    connection.prepareStatement("select 1");
+    assertTrue(connection.isOnReplica());
+    assertEquals(0, primary.opened.get());
+    assertEquals(1, replica1.opened.get() + replica2.opened.get());
+    assertTrue(connection.getTargetConnection().getAutoCommit());
+
+    RoutingDataSource.setStatementRoute(Route.PRIMARY);
+    connection.prepareStatement("update t set c = 1");
+    assertFalse(connection.isOnReplica());
+    assertEquals(1, primary.opened.get());
+    assertTrue(connection.getTargetConnection().getAutoCommit());
+
+    // once written, the reads see the writes
+    RoutingDataSource.setStatementRoute(Route.REPLICA);
+    connection.prepareStatement("select 1");
+    assertFalse(connection.isOnReplica());
+    assertEquals(1, primary.opened.get());
+    assertEquals(1, replica1.opened.get() + replica2.opened.get());
+
+    connection.close();
+    assertEquals(0, primary.active.get() + replica1.active.get() + replica2.active.get());
+    assertThrows(SQLException.class, () -> connection.prepareStatement("select 1"));
+  }
+
+  @Test
+  void shouldReadFromAReplicaInATransactionUntilItsFirstWrite() throws SQLException {
+    try (RoutingConnection connection = (RoutingConnection) dataSource.getConnection()) {
+      connection.setAutoCommit(false);
+      RoutingDataSource.setStatementRoute(Route.REPLICA);
+      connection.prepareStatement("select 1");
+      assertTrue(connection.isOnReplica());
+      assertFalse(connection.getTargetConnection().getAutoCommit());
+
+      RoutingDataSource.setStatementRoute(Route.PRIMARY);
+      connection.prepareStatement("update t set c = 1");
+      assertFalse(connection.isOnReplica());
+      assertFalse(connection.getTargetConnection().getAutoCommit());
+
+      RoutingDataSource.setStatementRoute(Route.REPLICA);
+      connection.prepareStatement("select 1");
+      assertFalse(connection.isOnReplica());
+    }
+    assertEquals(1, primary.opened.get());
+    assertEquals(1, replica1.opened.get() + replica2.opened.get());
+  }
+
+  @Test
+  void shouldSendReadWriteTransactionsToThePrimaryFromTheFirstStatement() throws SQLException {
+    dataSource.setTransactionsOnPrimary(true);
+    RoutingDataSource.setStatementRoute(Route.REPLICA);
+    try (RoutingConnection connection = (RoutingConnection) dataSource.getConnection()) {
+      connection.setAutoCommit(false);
+      connection.prepareStatement("select 1");
+      assertFalse(connection.isOnReplica());
+      assertFalse(connection.getTargetConnection().getAutoCommit());
+    }
+    try (RoutingConnection connection = (RoutingConnection) dataSource.getConnection()) {
+      connection.prepareStatement("select 1");
+      assertTrue(connection.isOnReplica());
+      // a transaction started after a read on a replica
+      connection.setAutoCommit(false);
+      connection.prepareStatement("select 1");
+      assertFalse(connection.isOnReplica());
+    }
+    assertEquals(2, primary.opened.get());
+    assertEquals(1, replica1.opened.get() + replica2.opened.get());
+  }
+
+  @Test
+  void shouldUseThePrimaryWithoutAStatementRoute() throws SQLException {
+    try (RoutingConnection connection = (RoutingConnection) dataSource.getConnection()) {
+      connection.createStatement();
+      assertFalse(connection.isOnReplica());
+      assertEquals(1, primary.opened.get());
+    }
+  }
+
+  @Test
+  void shouldFollowTheRouteHint() throws SQLException {
+    RoutingDataSource.setRouteHint(Route.PRIMARY);
+    RoutingDataSource.setStatementRoute(Route.REPLICA);
+    try (RoutingConnection connection = (RoutingConnection) dataSource.getConnection()) {
+      connection.prepareStatement("select 1");
+      assertFalse(connection.isOnReplica());
+    }
+    RoutingDataSource.setRouteHint(Route.REPLICA);
+    RoutingDataSource.setStatementRoute(Route.PRIMARY);
+    try (RoutingConnection connection = (RoutingConnection) dataSource.getConnection()) {
+      connection.prepareStatement("update t set c = 1");
+      assertTrue(connection.isOnReplica());
+    }
+  }
+
+  @Test
+  void shouldSendTheReadOnlyConnectionsToAReplica() throws SQLException {
+    RoutingDataSource.setStatementRoute(Route.PRIMARY);
+    try (RoutingConnection connection = (RoutingConnection) dataSource.getConnection()) {
+      connection.setReadOnly(true);
+      connection.prepareStatement("select 1");
+      assertTrue(connection.isOnReplica());
+      assertTrue(connection.getTargetConnection().isReadOnly());
+    }
+  }
+
+  @Test
+  void shouldBalanceOnTheOutstandingConnections() throws SQLException {
+    RoutingDataSource.setRouteHint(Route.REPLICA);
+    List<Connection> connections = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Connection connection = dataSource.getConnection();
+      connection.createStatement();
+      connections.add(connection);
+    }
+    assertEquals(2, replica1.active.get());
+    assertEquals(2, replica2.active.get());
+    connections.get(0).close();
+    connections.get(1).close();
+    connections.get(2).close();
+    connections.get(3).close();
+
+    RoutingDataSource weighted = new RoutingDataSource(primary);
+    weighted.addReplica(replica1, 1);
+    weighted.addReplica(replica2, 3);
+    for (int i = 0; i < 2; i++) {
+      weighted.getConnection().createStatement();
+    }
+    assertEquals(0, replica1.active.get());
+    assertEquals(2, replica2.active.get());
+  }
+
+  @Test
+  void shouldSpreadTheReadsByWeight() throws SQLException {
+    RoutingDataSource weighted = new RoutingDataSource(primary);
+    weighted.setLoadBalancing(LoadBalancing.WEIGHTED_RANDOM);
+    weighted.addReplica(replica1, 1);
+    weighted.addReplica(replica2, 9);
+    RoutingDataSource.setRouteHint(Route.REPLICA);
+    for (int i = 0; i < 1000; i++) {
+      try (Connection connection = weighted.getConnection()) {
+        connection.createStatement();
+      }
+    }
+    assertEquals(1000, replica1.opened.get() + replica2.opened.get());
+    assertTrue(replica2.opened.get() > 3 * replica1.opened.get(), replica1.opened + " vs " + replica2.opened);
+  }
+
+  @Test
+  void shouldEjectAReplicaThatFailsToConnect() throws Exception {
+    RoutingDataSource single = new RoutingDataSource(primary);
+    single.addReplica(replica1);
+    single.setEjectionThreshold(2);
+    single.setEjectionTime(500);
+    replica1.down = true;
+    RoutingDataSource.setRouteHint(Route.REPLICA);
+
+    for (int i = 0; i < 3; i++) {
+      try (RoutingConnection connection = (RoutingConnection) single.getConnection()) {
+        connection.createStatement();
+        assertFalse(connection.isOnReplica());
+      }
+    }
+    assertTrue(single.isEjected(replica1));
+    assertEquals(2, replica1.attempts.get());
+    assertEquals(3, primary.opened.get());
+
+    replica1.down = false;
+    Thread.sleep(600);
+    try (RoutingConnection connection = (RoutingConnection) single.getConnection()) {
+      connection.createStatement();
+      assertTrue(connection.isOnReplica());
+    }
+    assertFalse(single.isEjected(replica1));
+  }
+
+  @Test
+  void shouldTellTheRouteOfTheStatement() throws Throwable {
+    Configuration configuration = new Configuration();
+    MappedStatement select = new MappedStatement.Builder(configuration, "select",
+        new StaticSqlSource(configuration, "select 1"), SqlCommandType.SELECT).build();
+    MappedStatement insert = new MappedStatement.Builder(configuration, "insert",
+        new StaticSqlSource(configuration, "insert into t values (1)"), SqlCommandType.INSERT).build();
+    List<Route> routes = new ArrayList<>();
+    RoutingInterceptor interceptor = new RoutingInterceptor();
+    Executor executor = (Executor) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { Executor.class }, (proxy, method, args) -> {
+          routes.add(RoutingDataSource.getStatementRoute());
+          if ("update".equals(method.getName())) {
+            // like a selectKey, run while the insert is executed
+            query(interceptor, (Executor) proxy, select);
+            return 1;
+          }
+          return null;
+        });
+
+    query(interceptor, executor, select);
+    interceptor.intercept(new Invocation(executor,
+        Executor.class.getMethod("update", MappedStatement.class, Object.class), new Object[] { insert, null }));
+
+    assertEquals(3, routes.size());
+    assertSame(Route.REPLICA, routes.get(0));
+    assertSame(Route.PRIMARY, routes.get(1));
+    assertSame(Route.PRIMARY, routes.get(2));
+    assertNull(RoutingDataSource.getStatementRoute());
+  }
+
+  private static void query(RoutingInterceptor interceptor, Executor executor, MappedStatement ms)
+      throws Throwable {
+    interceptor.intercept(new Invocation(executor,
+        Executor.class.getMethod("query", MappedStatement.class, Object.class, RowBounds.class,
+            ResultHandler.class),
+        new Object[] { ms, null, RowBounds.DEFAULT, null }));
+  }
+
+  @Test
+  void shouldCreateAPoolForThePrimaryAndEachReplica() {
+    Properties properties = new Properties();
+    properties.setProperty("driver", "org.hsqldb.jdbcDriver");
+    properties.setProperty("username", "sa");
+    properties.setProperty("poolMaximumActiveConnections", "20");
+    properties.setProperty("primary.url", "jdbc:hsqldb:mem:primary");
+    properties.setProperty("replicas", "r1, r2");
+    properties.setProperty("replica.r1.url", "jdbc:hsqldb:mem:replica1");
+    properties.setProperty("replica.r2.url", "jdbc:hsqldb:mem:replica2");
+    properties.setProperty("replica.r2.weight", "2");
+    properties.setProperty("replica.r2.poolMaximumActiveConnections", "5");
+    properties.setProperty("loadBalancing", "weighted_random");
+    properties.setProperty("ejectionThreshold", "5");
+    properties.setProperty("transactionsOnPrimary", "true");
+    RoutingDataSourceFactory factory = new RoutingDataSourceFactory();
+    factory.setProperties(properties);
+
+    RoutingDataSource routing = (RoutingDataSource) factory.getDataSource();
+    assertSame(LoadBalancing.WEIGHTED_RANDOM, routing.getLoadBalancing());
+    assertEquals(5, routing.getEjectionThreshold());
+    assertTrue(routing.isTransactionsOnPrimary());
+    PooledDataSource primaryPool = (PooledDataSource) routing.getPrimary();
+    assertEquals("jdbc:hsqldb:mem:primary", primaryPool.getUrl());
+    assertEquals(20, primaryPool.getPoolMaximumActiveConnections());
+    assertEquals(2, routing.getReplicas().size());
+    PooledDataSource replica1Pool = (PooledDataSource) routing.getReplicas().get(0);
+    PooledDataSource replica2Pool = (PooledDataSource) routing.getReplicas().get(1);
+    assertEquals("jdbc:hsqldb:mem:replica1", replica1Pool.getUrl());
+    assertEquals("sa", replica1Pool.getUsername());
+    assertEquals(20, replica1Pool.getPoolMaximumActiveConnections());
+    assertEquals("jdbc:hsqldb:mem:replica2", replica2Pool.getUrl());
+    assertEquals(5, replica2Pool.getPoolMaximumActiveConnections());
+
+    Properties unknownReplica = new Properties();
+    unknownReplica.setProperty("replica.r3.url", "jdbc:hsqldb:mem:replica3");
+    assertThrows(DataSourceException.class, () -> factory.setProperties(unknownReplica));
+  }
+
+  static class StubDataSource extends UnpooledDataSource {
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private volatile boolean down;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      attempts.incrementAndGet();
+      if (down) {
+        throw new SQLException("Connection refused");
+      }
+      opened.incrementAndGet();
+      active.incrementAndGet();
+      boolean[] state = { true, false };
+      return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "getAutoCommit":
+                return state[0];
+              case "setAutoCommit":
+                state[0] = (Boolean) args[0];
+                return null;
+              case "isReadOnly":
+                return state[1];
+              case "setReadOnly":
+                state[1] = (Boolean) args[0];
+                return null;
+              case "close":
+                active.decrementAndGet();
+                return null;
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              case "equals":
+                return proxy == args[0];
+              default:
+                return null;
+            }
+          });
+    }
+  }
+}
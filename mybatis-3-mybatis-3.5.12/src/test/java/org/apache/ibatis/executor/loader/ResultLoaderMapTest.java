@@ -0,0 +1,37 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Constructor;
+
+import org.apache.ibatis.executor.Executor;
+import org.junit.jupiter.api.Test;
+
+class ResultLoaderMapTest {
+
+  @Test
+  void shouldCreateTheExecutorOfDeserializedLoadersWithoutConfiguration() throws Exception {
+    // the executor a deserialized lazy loader starts with, which makes the result loader open a new one
+    Constructor<?> constructor = Class.forName(ResultLoaderMap.class.getName() + "$ClosedExecutor")
+        .getDeclaredConstructor();
+    constructor.setAccessible(true);
+    Executor executor = (Executor) constructor.newInstance();
+    assertTrue(executor.isClosed());
+  }
+
+}
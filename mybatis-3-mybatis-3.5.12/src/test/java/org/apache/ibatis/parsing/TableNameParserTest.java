@@ -0,0 +1,61 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.parsing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class TableNameParserTest {
+
+  @Test
+  void shouldFindTablesOfSelectWithJoinsAndAliases() {
+    String sql = "select b.id, a.username from Blog b left outer join blog_schema.Author as a on b.author_id = a.id"
+        + " join Post p using (blog_id), comment c where b.id = #{id}";
+    assertArrayEquals(new String[] { "blog", "author", "post", "comment" }, TableNameParser.parse(sql));
+  }
+
+  @Test
+  void shouldFindTablesOfWrites() {
+    assertArrayEquals(new String[] { "author" },
+        TableNameParser.parse("insert into Author (id, username) values (#{id}, #{username})"));
+    assertArrayEquals(new String[] { "author" },
+        TableNameParser.parse("update author set username = #{username} where id = #{id}"));
+    assertArrayEquals(new String[] { "author", "blog" },
+        TableNameParser.parse("delete from author where id not in (select author_id from blog)"));
+  }
+
+  @Test
+  void shouldIgnoreCommentsLiteralsAndDynamicTags() {
+    String sql = "select * from /* from comments */ post -- join tag\n"
+        + " <where><if test=\"title != null\">title = 'from tag'</if></where>";
+    assertArrayEquals(new String[] { "post" }, TableNameParser.parse(sql));
+  }
+
+  @Test
+  void shouldNotFindTablesOfDynamicTableNames() {
+    assertNull(TableNameParser.parse("select * from ${table} where id = #{id}"));
+    assertNull(TableNameParser.parse("call next_value()"));
+  }
+
+  @Test
+  void shouldSplitDeclaredTables() {
+    assertArrayEquals(new String[] { "blog", "author" }, TableNameParser.split(" Blog, schema.AUTHOR ,,blog "));
+    assertNull(TableNameParser.split(" "));
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.entity_cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.Reader;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class EntityCacheTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/entity_cache/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/entity_cache/CreateDB.sql");
+  }
+
+  @Test
+  void shouldNotShareTheRowsOfStatementsWithoutReadOnlyCache() {
+    try (SqlSession first = sqlSessionFactory.openSession(); SqlSession second = sqlSessionFactory.openSession()) {
+      User user = first.getMapper(UserMapper.class).getUser(1);
+      user.setName("Modified");
+      User other = second.getMapper(UserMapper.class).getUser(1);
+      assertNotSame(user, other);
+      assertEquals("User1", other.getName());
+      assertNotSame(user, first.getMapper(UserMapper.class).getUsers().get(0));
+    }
+  }
+
+  @Test
+  void shouldShareTheRowsOfStatementsWithReadOnlyCache() {
+    try (SqlSession first = sqlSessionFactory.openSession(); SqlSession second = sqlSessionFactory.openSession()) {
+      User user = first.getMapper(SharedUserMapper.class).getUser(1);
+      assertSame(user, second.getMapper(SharedUserMapper.class).getUsers().get(0));
+      assertNotSame(user, second.getMapper(UserMapper.class).getUser(1));
+    }
+  }
+
+}